@@ -0,0 +1,242 @@
+package dev.chux.gcp.crun.echo;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.primitives.Doubles;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Strings.isNullOrEmpty;
+
+/**
+ * Non-negative random values, i/e: response delays in milliseconds, or response sizes in bytes.
+ *
+ * <p>Specs are {@code name:arg,...}, or a single number for a fixed value:</p>
+ * <ul>
+ *   <li>{@code fixed:100}, or just {@code 100}</li>
+ *   <li>{@code uniform:50,150}: between min and max</li>
+ *   <li>{@code normal:100,20}: mean and standard deviation; negative samples become 0</li>
+ *   <li>{@code lognormal:100,50}: mean and standard deviation of the values, not of their logarithm</li>
+ *   <li>{@code percentiles:50=20,90=80,99=250,100=400}: linear between percentiles; {@code 0=0} unless given</li>
+ * </ul>
+ */
+public abstract class Distribution {
+
+  private static final Splitter NAME = Splitter.on(':').trimResults().limit(2);
+  private static final Splitter ARGS = Splitter.on(',').trimResults().omitEmptyStrings();
+  private static final Splitter PERCENTILE = Splitter.on('=').trimResults().limit(2);
+
+  public abstract double sample(final Random random);
+
+  public static Distribution parse(final String spec) {
+    checkArgument(!isNullOrEmpty(spec), "missing distribution");
+    final List<String> parts = NAME.splitToList(spec);
+    if (parts.size() == 1) {
+      return new Fixed(number(spec, parts.get(0)));
+    }
+    final String name = parts.get(0).toLowerCase();
+    final List<String> args = ARGS.splitToList(parts.get(1));
+    switch (name) {
+      case "fixed":
+        checkArgument(args.size() == 1, "usage: fixed:value => %s", spec);
+        return new Fixed(number(spec, args.get(0)));
+      case "uniform":
+        checkArgument(args.size() == 2, "usage: uniform:min,max => %s", spec);
+        return new Uniform(number(spec, args.get(0)), number(spec, args.get(1)));
+      case "normal":
+      case "gaussian":
+        checkArgument(args.size() == 2, "usage: normal:mean,stddev => %s", spec);
+        return new Normal(number(spec, args.get(0)), number(spec, args.get(1)));
+      case "lognormal":
+        checkArgument(args.size() == 2, "usage: lognormal:mean,stddev => %s", spec);
+        return new LogNormal(number(spec, args.get(0)), number(spec, args.get(1)));
+      case "percentiles":
+      case "table":
+        return Percentiles.parse(spec, args);
+      default:
+        throw new IllegalArgumentException("unknown distribution: " + spec);
+    }
+  }
+
+  private static double number(final String spec, final String value) {
+    final Double number = Doubles.tryParse(value);
+    checkArgument(number != null && number >= 0 && !number.isInfinite(),
+      "invalid number '%s' => %s", value, spec);
+    return number.doubleValue();
+  }
+
+  static final class Fixed extends Distribution {
+
+    private final double value;
+
+    private Fixed(final double value) {
+      this.value = value;
+    }
+
+    @Override
+    public double sample(final Random random) {
+      return this.value;
+    }
+
+    @Override
+    public String toString() {
+      return toStringHelper("fixed").addValue(this.value).toString();
+    }
+
+  }
+
+  static final class Uniform extends Distribution {
+
+    private final double min;
+    private final double max;
+
+    private Uniform(final double min, final double max) {
+      checkArgument(min <= max, "invalid uniform distribution: [%s, %s]", min, max);
+      this.min = min;
+      this.max = max;
+    }
+
+    @Override
+    public double sample(final Random random) {
+      return this.min + ((this.max - this.min) * random.nextDouble());
+    }
+
+    @Override
+    public String toString() {
+      return toStringHelper("uniform")
+        .add("min", this.min)
+        .add("max", this.max)
+        .toString();
+    }
+
+  }
+
+  static final class Normal extends Distribution {
+
+    private final double mean;
+    private final double stddev;
+
+    private Normal(final double mean, final double stddev) {
+      this.mean = mean;
+      this.stddev = stddev;
+    }
+
+    @Override
+    public double sample(final Random random) {
+      return Math.max(0d, this.mean + (this.stddev * random.nextGaussian()));
+    }
+
+    @Override
+    public String toString() {
+      return toStringHelper("normal")
+        .add("mean", this.mean)
+        .add("stddev", this.stddev)
+        .toString();
+    }
+
+  }
+
+  static final class LogNormal extends Distribution {
+
+    private final double mean;
+    private final double stddev;
+    // parameters of the underlying normal distribution
+    private final double mu;
+    private final double sigma;
+
+    private LogNormal(final double mean, final double stddev) {
+      checkArgument(mean > 0, "invalid lognormal mean: %s", mean);
+      this.mean = mean;
+      this.stddev = stddev;
+      final double variance = Math.log(1d + ((stddev * stddev) / (mean * mean)));
+      this.sigma = Math.sqrt(variance);
+      this.mu = Math.log(mean) - (variance / 2d);
+    }
+
+    @Override
+    public double sample(final Random random) {
+      return Math.exp(this.mu + (this.sigma * random.nextGaussian()));
+    }
+
+    @Override
+    public String toString() {
+      return toStringHelper("lognormal")
+        .add("mean", this.mean)
+        .add("stddev", this.stddev)
+        .toString();
+    }
+
+  }
+
+  static final class Percentiles extends Distribution {
+
+    // percentile to value, including 0 and 100
+    private final double[] percentiles;
+    private final double[] values;
+
+    private Percentiles(final Map<Double, Double> table) {
+      this.percentiles = Doubles.toArray(table.keySet());
+      this.values = Doubles.toArray(table.values());
+    }
+
+    private static Percentiles parse(final String spec, final List<String> args) {
+      checkArgument(!args.isEmpty(), "usage: percentiles:p=value,... => %s", spec);
+      final ImmutableSortedMap.Builder<Double, Double> table = ImmutableSortedMap.naturalOrder();
+      boolean zero = false;
+      for (final String arg : args) {
+        final List<String> entry = PERCENTILE.splitToList(arg);
+        checkArgument(entry.size() == 2, "usage: percentiles:p=value,... => %s", spec);
+        // both `90=80` and `p90=80`
+        final double percentile = number(spec, entry.get(0).replaceFirst("^[pP]", ""));
+        checkArgument(percentile <= 100, "invalid percentile '%s' => %s", entry.get(0), spec);
+        zero |= (percentile == 0);
+        table.put(percentile, number(spec, entry.get(1)));
+      }
+      if (!zero) {
+        table.put(0d, 0d);
+      }
+      final ImmutableSortedMap<Double, Double> sorted;
+      try {
+        sorted = table.buildOrThrow();
+      } catch(final IllegalArgumentException ex) {
+        throw new IllegalArgumentException("duplicate percentiles => " + spec);
+      }
+      final ImmutableList<Double> values = sorted.values().asList();
+      for (int i = 1; i < values.size(); i++) {
+        checkArgument(values.get(i) >= values.get(i-1), "percentile values must not decrease => %s", spec);
+      }
+      return new Percentiles(sorted);
+    }
+
+    @Override
+    public double sample(final Random random) {
+      final double percentile = 100d * random.nextDouble();
+      for (int i = 1; i < this.percentiles.length; i++) {
+        if (percentile <= this.percentiles[i]) {
+          final double from = this.percentiles[i-1];
+          final double to = this.percentiles[i];
+          final double fraction = (to == from) ? 1d : (percentile - from) / (to - from);
+          return this.values[i-1] + ((this.values[i] - this.values[i-1]) * fraction);
+        }
+      }
+      // above the highest percentile given
+      return this.values[this.values.length - 1];
+    }
+
+    @Override
+    public String toString() {
+      final StringBuilder table = new StringBuilder();
+      for (int i = 0; i < this.percentiles.length; i++) {
+        table.append(i == 0 ? "" : ",").append(this.percentiles[i]).append('=').append(this.values[i]);
+      }
+      return toStringHelper("percentiles").addValue(table).toString();
+    }
+
+  }
+
+}
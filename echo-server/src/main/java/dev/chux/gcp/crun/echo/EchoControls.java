@@ -0,0 +1,153 @@
+package dev.chux.gcp.crun.echo;
+
+import java.util.Random;
+import java.util.function.Function;
+
+import com.google.common.base.Optional;
+import com.google.common.primitives.Ints;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Optional.fromNullable;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Strings.emptyToNull;
+
+/**
+ * How to shape one response: read from query params, or else from the same headers prefixed with `x-echo-`.
+ *
+ * @see Distribution
+ * @see StatusMix
+ */
+public final class EchoControls {
+
+  public static final String HEADER_PREFIX = "x-echo-";
+
+  public static final int DEFAULT_CHUNK_SIZE = 8 * 1024;
+
+  private static final String DELAY = "delay";
+  private static final String SIZE = "size";
+  private static final String STATUS = "status";
+  private static final String TRANSFER = "transfer";
+  private static final String CHUNK = "chunk";
+
+  private static final String TRANSFER_CHUNKED = "chunked";
+  private static final String TRANSFER_LENGTH = "length";
+
+  private final Optional<Distribution> delay;
+  private final Optional<Distribution> size;
+  private final Optional<StatusMix> status;
+  private final Optional<String> transfer;
+  private final int chunk;
+
+  private EchoControls(
+    final Optional<Distribution> delay,
+    final Optional<Distribution> size,
+    final Optional<StatusMix> status,
+    final Optional<String> transfer,
+    final int chunk
+  ) {
+    this.delay = delay;
+    this.size = size;
+    this.status = status;
+    this.transfer = transfer;
+    this.chunk = chunk;
+  }
+
+  /**
+   * @param query first value of a query param, or {@code null}.
+   * @param headers value of a header, or {@code null}.
+   *
+   * @throws IllegalArgumentException if any control is invalid.
+   */
+  public static EchoControls parse(
+    final Function<String, String> query,
+    final Function<String, String> headers
+  ) {
+    final Optional<String> transfer = control(query, headers, TRANSFER).transform(String::toLowerCase);
+    checkArgument(!transfer.isPresent()
+      || transfer.get().equals(TRANSFER_CHUNKED) || transfer.get().equals(TRANSFER_LENGTH),
+      "invalid transfer: %s", transfer.orNull());
+    int chunk = DEFAULT_CHUNK_SIZE;
+    final Optional<String> chunkSize = control(query, headers, CHUNK);
+    if (chunkSize.isPresent()) {
+      final Integer bytes = Ints.tryParse(chunkSize.get());
+      checkArgument(bytes != null && bytes > 0, "invalid chunk: %s", chunkSize.get());
+      chunk = bytes.intValue();
+    }
+    return new EchoControls(
+      control(query, headers, DELAY).transform(Distribution::parse),
+      control(query, headers, SIZE).transform(Distribution::parse),
+      control(query, headers, STATUS).transform(StatusMix::parse),
+      transfer, chunk);
+  }
+
+  private static Optional<String> control(
+    final Function<String, String> query,
+    final Function<String, String> headers,
+    final String name
+  ) {
+    final Optional<String> value = fromNullable(emptyToNull(query.apply(name)));
+    if (value.isPresent()) {
+      return value;
+    }
+    return fromNullable(emptyToNull(headers.apply(HEADER_PREFIX + name)));
+  }
+
+  public boolean isDelayed() {
+    return this.delay.isPresent();
+  }
+
+  /**
+   * @return nanoseconds between arrival and response; {@code 0} if not delayed.
+   */
+  public long delayNanos(final Random random, final long maxDelayMillis) {
+    return this.delay.isPresent()
+      ? (long) (Math.min(this.delay.get().sample(random), maxDelayMillis) * 1_000_000d) : 0L;
+  }
+
+  /**
+   * Whether to respond with a synthetic payload instead of the echo.
+   */
+  public boolean isSynthetic() {
+    return this.size.isPresent();
+  }
+
+  /**
+   * @return bytes of synthetic payload; {@code 0} if not synthetic.
+   */
+  public long size(final Random random, final long maxSize) {
+    return this.size.isPresent()
+      ? Math.min(Math.round(this.size.get().sample(random)), maxSize) : 0L;
+  }
+
+  public Optional<Integer> status(final Random random) {
+    return this.status.isPresent()
+      ? Optional.of(Integer.valueOf(this.status.get().sample(random))) : Optional.<Integer>absent();
+  }
+
+  public boolean isChunked() {
+    return this.transfer.isPresent() && this.transfer.get().equals(TRANSFER_CHUNKED);
+  }
+
+  public boolean hasLength() {
+    return this.transfer.isPresent() && this.transfer.get().equals(TRANSFER_LENGTH);
+  }
+
+  /**
+   * Bytes per chunk when {@link #isChunked}.
+   */
+  public int chunk() {
+    return this.chunk;
+  }
+
+  @Override
+  public String toString() {
+    return toStringHelper(this)
+      .add("delay", this.delay.orNull())
+      .add("size", this.size.orNull())
+      .add("status", this.status.orNull())
+      .add("transfer", this.transfer.orNull())
+      .add("chunk", this.chunk)
+      .toString();
+  }
+
+}
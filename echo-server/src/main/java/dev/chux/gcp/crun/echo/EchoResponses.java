@@ -0,0 +1,105 @@
+package dev.chux.gcp.crun.echo;
+
+import java.io.Writer;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.Map;
+
+import com.google.inject.Inject;
+
+import com.google.common.collect.ImmutableMap;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+
+import dev.chux.gcp.crun.ConfigService;
+import dev.chux.gcp.crun.echo.rest.RestModule;
+
+/**
+ * What every echo engine responds with, regardless of how it serves requests.
+ */
+public class EchoResponses {
+
+  public static final String PROPERTIES_PREFIX = RestModule.PROPERTIES_PREFIX + ".echo.request";
+
+  public static final String PROPERTY_MAX_DELAY_MS = PROPERTIES_PREFIX + ".max-delay-ms";
+  public static final String PROPERTY_MAX_SIZE = PROPERTIES_PREFIX + ".max-size";
+
+  private static final long DEFAULT_MAX_DELAY_MS = 300_000L;
+  private static final long DEFAULT_MAX_SIZE = 64L * 1024L * 1024L;
+
+  // synthetic payloads are slices of this, repeated as needed
+  private static final byte[] FILLER = filler(64 * 1024);
+
+  // `cloud_run` never changes: it is encoded once, along with the end of every echo
+  private final byte[] cloudRunTail;
+  private final long maxDelayMillis;
+  private final long maxSize;
+
+  @Inject
+  EchoResponses(
+    final ConfigService configService,
+    final Gson gson
+  ) {
+    this.cloudRunTail = (",\"cloud_run\":" + gson.toJson(cloudRun(configService)) + "}")
+      .getBytes(StandardCharsets.UTF_8);
+    this.maxDelayMillis = configService.getLongAppProp(PROPERTY_MAX_DELAY_MS).or(DEFAULT_MAX_DELAY_MS).longValue();
+    this.maxSize = configService.getLongAppProp(PROPERTY_MAX_SIZE).or(DEFAULT_MAX_SIZE).longValue();
+  }
+
+  private static byte[] filler(final int size) {
+    final byte[] alphabet = "abcdefghijklmnopqrstuvwxyz0123456789".getBytes(StandardCharsets.US_ASCII);
+    final byte[] filler = new byte[size];
+    for (int i = 0; i < size; i++) {
+      filler[i] = alphabet[i % alphabet.length];
+    }
+    return filler;
+  }
+
+  private static Map<String, String> cloudRun(
+    final ConfigService configService
+  ) {
+    return ImmutableMap.<String, String>builder()
+      .put("project_id", configService.getSysPropOrDefault("com.google.cloud.project.id", "undefined"))
+      .put("project_num", configService.getSysPropOrDefault("com.google.cloud.project.num", "0"))
+      .put("region", configService.getSysPropOrDefault("com.google.cloud.run.region", "undefined"))
+      .put("service", configService.getSysPropOrDefault("com.google.cloud.run.service", "undefined"))
+      .put("revision", configService.getSysPropOrDefault("com.google.cloud.run.revision", "undefined"))
+      .put("instance", configService.getSysPropOrDefault("com.google.cloud.run.instance.id", "0a1b2c3d4e5f"))
+      .build();
+  }
+
+  /**
+   * Same escaping as {@code Gson#toJson}. Echoes are objects with {@code proto}, {@code method}, {@code url},
+   * {@code query}, {@code headers} and {@code body}, in that order, left open for {@link #cloudRunTail}.
+   */
+  public static JsonWriter newJsonWriter(final Writer writer) {
+    final JsonWriter json = new JsonWriter(writer);
+    json.setHtmlSafe(true);
+    return json;
+  }
+
+  /**
+   * Closes an echo: {@code cloud_run}, and the end of the object.
+   */
+  public byte[] cloudRunTail() {
+    return this.cloudRunTail;
+  }
+
+  /**
+   * Read-only: synthetic payloads are slices of it.
+   */
+  public byte[] filler() {
+    return FILLER;
+  }
+
+  public long maxDelayMillis() {
+    return this.maxDelayMillis;
+  }
+
+  public long maxSize() {
+    return this.maxSize;
+  }
+
+}
@@ -0,0 +1,88 @@
+package dev.chux.gcp.crun.echo;
+
+import java.util.concurrent.CountDownLatch;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+
+import dev.chux.gcp.crun.AppMainThread;
+import dev.chux.gcp.crun.ConfigService;
+import dev.chux.gcp.crun.echo.netty.NettyEchoServer;
+import dev.chux.gcp.crun.http.HttpServer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Throwables.getStackTraceAsString;
+
+/**
+ * Starts the configured engine, and keeps the app alive until the JVM shuts down:
+ *   - spark: thread per request; serves every route.
+ *   - netty: a few event loops; serves only echoes, with HTTP/1.1 and h2c.
+ */
+@Singleton
+final class EchoServerMainThread implements AppMainThread {
+  private static final Logger logger = LoggerFactory.getLogger(EchoServerMainThread.class);
+
+  private static final String ENV__ENGINE = "ECHO_ENGINE";
+  private static final String PROPERTY__ENGINE = "echo-server.engine";
+
+  private static final String ENGINE_SPARK = "spark";
+  private static final String ENGINE_NETTY = "netty";
+
+  private final CountDownLatch doneSignal;
+  private final String engine;
+  private final Provider<HttpServer> httpServer;
+  private final Provider<NettyEchoServer> nettyServer;
+
+  private volatile int exitCode = 0;
+
+  @Inject
+  EchoServerMainThread(
+    final ConfigService configService,
+    final Provider<HttpServer> httpServer,
+    final Provider<NettyEchoServer> nettyServer
+  ) {
+    this.doneSignal = new CountDownLatch(1);
+    this.engine = configService.getOptionalEnvVar(ENV__ENGINE)
+      .or(configService.getOptionalAppProp(PROPERTY__ENGINE))
+      .or(ENGINE_SPARK).toLowerCase();
+    checkArgument(this.engine.equals(ENGINE_SPARK) || this.engine.equals(ENGINE_NETTY),
+      "invalid engine: %s", this.engine);
+    this.httpServer = httpServer;
+    this.nettyServer = nettyServer;
+  }
+
+  void start() {
+    logger.info("echo server engine: {}", this.engine);
+    if (this.engine.equals(ENGINE_SPARK)) {
+      this.httpServer.get().start();
+      return;
+    }
+    try {
+      this.nettyServer.get().start();
+    } catch(final Exception ex) {
+      logger.error("failed to start netty: {}", getStackTraceAsString(ex));
+      this.exitCode = 1;
+      this.doneSignal.countDown();
+    }
+  }
+
+  @Override
+  public void run() {
+    if (this.engine.equals(ENGINE_NETTY)) {
+      this.nettyServer.get().stop();
+    }
+    this.doneSignal.countDown();
+  }
+
+  @Override
+  public int await() throws InterruptedException {
+    this.doneSignal.await();
+    logger.info("echo server terminated");
+    return this.exitCode;
+  }
+
+}
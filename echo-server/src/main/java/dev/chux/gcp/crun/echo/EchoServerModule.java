@@ -1,13 +1,32 @@
 package dev.chux.gcp.crun.echo;
 
+import java.util.function.Consumer;
+
 import com.google.inject.AbstractModule;
+import com.google.inject.Injector;
+import com.google.inject.Scopes;
 
+import dev.chux.gcp.crun.AppMainThread;
+import dev.chux.gcp.crun.annotations.MainThread;
+import dev.chux.gcp.crun.echo.netty.NettyEchoServer;
 import dev.chux.gcp.crun.echo.rest.RestModule;
+import dev.chux.gcp.crun.http.HttpModule;
 
-public class EchoServerModule extends AbstractModule {
+public class EchoServerModule extends AbstractModule implements Consumer<Injector> {
 
   protected void configure() {
+    bind(AppMainThread.class).annotatedWith(MainThread.class).to(EchoServerMainThread.class);
+    bind(EchoResponses.class).in(Scopes.SINGLETON);
+    bind(NettyEchoServer.class).in(Scopes.SINGLETON);
+
+    install(new dev.chux.gcp.crun.rest.RestModule());
+    install(new HttpModule());
     install(new RestModule());
   }
 
+  @Override
+  public void accept(final Injector injector) {
+    injector.getInstance(EchoServerMainThread.class).start();
+  }
+
 }
@@ -0,0 +1,72 @@
+package dev.chux.gcp.crun.echo;
+
+import java.util.List;
+import java.util.Random;
+
+import com.google.common.base.Splitter;
+import com.google.common.primitives.Doubles;
+import com.google.common.primitives.Ints;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Strings.isNullOrEmpty;
+
+/**
+ * Weighted HTTP status codes; i/e: {@code 200:90,500:7,503:3}, or just {@code 404}.
+ */
+public final class StatusMix {
+
+  private static final Splitter ENTRIES = Splitter.on(',').trimResults().omitEmptyStrings();
+  private static final Splitter ENTRY = Splitter.on(':').trimResults().limit(2);
+
+  private final int[] codes;
+  // cumulative weights
+  private final double[] weights;
+
+  private StatusMix(final int[] codes, final double[] weights) {
+    this.codes = codes;
+    this.weights = weights;
+  }
+
+  public static StatusMix parse(final String spec) {
+    checkArgument(!isNullOrEmpty(spec), "missing status");
+    final List<String> entries = ENTRIES.splitToList(spec);
+    checkArgument(!entries.isEmpty(), "usage: code[:weight],... => %s", spec);
+    final int[] codes = new int[entries.size()];
+    final double[] weights = new double[entries.size()];
+    double total = 0d;
+    for (int i = 0; i < entries.size(); i++) {
+      final List<String> entry = ENTRY.splitToList(entries.get(i));
+      final Integer code = Ints.tryParse(entry.get(0));
+      checkArgument(code != null && code >= 200 && code <= 599, "invalid status code '%s' => %s", entry.get(0), spec);
+      final Double weight = (entry.size() == 1) ? Double.valueOf(1d) : Doubles.tryParse(entry.get(1));
+      checkArgument(weight != null && weight > 0 && !weight.isInfinite(), "invalid weight '%s' => %s", entries.get(i), spec);
+      total += weight.doubleValue();
+      codes[i] = code.intValue();
+      weights[i] = total;
+    }
+    return new StatusMix(codes, weights);
+  }
+
+  public int sample(final Random random) {
+    final double point = this.weights[this.weights.length - 1] * random.nextDouble();
+    for (int i = 0; i < this.weights.length; i++) {
+      if (point < this.weights[i]) {
+        return this.codes[i];
+      }
+    }
+    return this.codes[this.codes.length - 1];
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder mix = new StringBuilder();
+    double previous = 0d;
+    for (int i = 0; i < this.codes.length; i++) {
+      mix.append(i == 0 ? "" : ",").append(this.codes[i]).append(':').append(this.weights[i] - previous);
+      previous = this.weights[i];
+    }
+    return toStringHelper(this).addValue(mix).toString();
+  }
+
+}
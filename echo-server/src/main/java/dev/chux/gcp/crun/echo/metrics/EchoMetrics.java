@@ -0,0 +1,106 @@
+package dev.chux.gcp.crun.echo.metrics;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+import dev.chux.gcp.crun.ConfigService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Strings.isNullOrEmpty;
+
+/**
+ * Metrics of echoes by test: requests are tracked only if they carry {@link #HEADER}, which is set
+ * by load generators on every request of a test. Shared by every engine.
+ */
+@Singleton
+public class EchoMetrics {
+  private static final Logger logger = LoggerFactory.getLogger(EchoMetrics.class);
+
+  public static final String HEADER = "x-jmaas-test-id";
+
+  public static final String PROPERTIES_PREFIX = "echo-server.metrics";
+
+  public static final String PROPERTY_MAX_TESTS = PROPERTIES_PREFIX + ".max-tests";
+  public static final String PROPERTY_SECONDS = PROPERTIES_PREFIX + ".seconds";
+
+  private static final int DEFAULT_MAX_TESTS = 100;
+  private static final int DEFAULT_SECONDS = 300;
+
+  private final ConcurrentMap<String, TestMetrics> tests;
+  private final int maxTests;
+  private final int seconds;
+
+  @Inject
+  EchoMetrics(
+    final ConfigService configService
+  ) {
+    this.maxTests = configService.getIntAppProp(PROPERTY_MAX_TESTS).or(DEFAULT_MAX_TESTS).intValue();
+    this.seconds = configService.getIntAppProp(PROPERTY_SECONDS).or(DEFAULT_SECONDS).intValue();
+    checkArgument(this.maxTests > 0, "invalid %s: %s", PROPERTY_MAX_TESTS, this.maxTests);
+    checkArgument(this.seconds > 0, "invalid %s: %s", PROPERTY_SECONDS, this.seconds);
+    this.tests = new ConcurrentHashMap<String, TestMetrics>();
+  }
+
+  /**
+   * @param testId the value of {@link #HEADER}; requests without it are not tracked.
+   */
+  public Optional<RequestTracker> begin(
+    final String testId,
+    final long bodyBytes
+  ) {
+    if (isNullOrEmpty(testId)) {
+      return Optional.absent();
+    }
+    TestMetrics metrics = this.tests.get(testId);
+    if (metrics == null) {
+      metrics = this.newTest(testId);
+    }
+    return Optional.of(metrics.begin(bodyBytes));
+  }
+
+  private TestMetrics newTest(final String testId) {
+    // only new tests pay for eviction: the test that has been idle for longer goes first
+    while (this.tests.size() >= this.maxTests) {
+      TestMetrics idle = null;
+      for (final TestMetrics test : this.tests.values()) {
+        if (idle == null || test.lastArrivalMillis() < idle.lastArrivalMillis()) {
+          idle = test;
+        }
+      }
+      if (idle == null) {
+        break;
+      }
+      if (this.tests.remove(idle.testId(), idle)) {
+        logger.info("evicted metrics of test: {}", idle.testId());
+      }
+    }
+    return this.tests.computeIfAbsent(testId, id -> new TestMetrics(id, this.seconds));
+  }
+
+  public Optional<TestMetrics> get(final String testId) {
+    return Optional.fromNullable(this.tests.get(testId));
+  }
+
+  public List<TestMetrics> all() {
+    return ImmutableList.copyOf(this.tests.values());
+  }
+
+  public boolean remove(final String testId) {
+    return this.tests.remove(testId) != null;
+  }
+
+  public void clear() {
+    this.tests.clear();
+  }
+
+}
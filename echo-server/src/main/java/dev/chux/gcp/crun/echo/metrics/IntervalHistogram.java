@@ -0,0 +1,169 @@
+package dev.chux.gcp.crun.echo.metrics;
+
+import java.util.Map;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.collect.ImmutableMap;
+
+import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.Since;
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * Microsecond histogram with power-of-2 buckets, from {@code <= 1us} to {@code > 2^30us}: quantiles are bucket
+ * bounds, while mean, standard deviation, min and max are exact.
+ */
+final class IntervalHistogram {
+
+  private static final int BUCKETS = 32;
+
+  private final LongAdder[] buckets;
+  private final LongAdder sum;
+  // squares of second-long intervals would overflow a `long` after a few million of them
+  private final DoubleAdder sumOfSquares;
+  private final LongAccumulator min;
+  private final LongAccumulator max;
+
+  IntervalHistogram() {
+    this.buckets = new LongAdder[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      this.buckets[i] = new LongAdder();
+    }
+    this.sum = new LongAdder();
+    this.sumOfSquares = new DoubleAdder();
+    this.min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+    this.max = new LongAccumulator(Math::max, 0L);
+  }
+
+  void record(final long micros) {
+    final long value = Math.max(0L, micros);
+    this.buckets[bucket(value)].increment();
+    this.sum.add(value);
+    this.sumOfSquares.add(((double) value) * value);
+    this.min.accumulate(value);
+    this.max.accumulate(value);
+  }
+
+  private static int bucket(final long micros) {
+    if (micros <= 1L) {
+      return 0;
+    }
+    // smallest `i` such that `micros <= 2^i`
+    return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros - 1L));
+  }
+
+  private static long upperBound(final int bucket) {
+    return 1L << bucket;
+  }
+
+  Snapshot snapshot() {
+    final long[] counts = new long[BUCKETS];
+    long count = 0L;
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] = this.buckets[i].sum();
+      count += counts[i];
+    }
+    return new Snapshot(counts, count, this.sum.sum(), this.sumOfSquares.sum(),
+      (count == 0L) ? 0L : this.min.get(), this.max.get());
+  }
+
+  static final class Snapshot {
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="count")
+    private final long count;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="mean_us")
+    private final double mean;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="stddev_us")
+    private final double stddev;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="min_us")
+    private final long min;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="max_us")
+    private final long max;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="p50_us")
+    private final long p50;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="p90_us")
+    private final long p90;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="p99_us")
+    private final long p99;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="p999_us")
+    private final long p999;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="buckets")
+    private final Map<String, Long> buckets;
+
+    private Snapshot(
+      final long[] counts,
+      final long count,
+      final long sum,
+      final double sumOfSquares,
+      final long min,
+      final long max
+    ) {
+      this.count = count;
+      this.mean = (count == 0L) ? 0.0 : ((double) sum) / count;
+      this.stddev = (count == 0L) ? 0.0
+        : Math.sqrt(Math.max(0.0, (sumOfSquares / count) - (this.mean * this.mean)));
+      this.min = min;
+      this.max = max;
+      this.p50 = quantile(counts, count, 0.50);
+      this.p90 = quantile(counts, count, 0.90);
+      this.p99 = quantile(counts, count, 0.99);
+      this.p999 = quantile(counts, count, 0.999);
+      final ImmutableMap.Builder<String, Long> buckets = ImmutableMap.builder();
+      for (int i = 0; i < counts.length; i++) {
+        if (counts[i] > 0L) {
+          final String bound = (i == counts.length - 1) ? "inf" : Long.toString(upperBound(i));
+          buckets.put("le_" + bound, Long.valueOf(counts[i]));
+        }
+      }
+      this.buckets = buckets.build();
+    }
+
+    private static long quantile(final long[] counts, final long count, final double q) {
+      if (count == 0L) {
+        return 0L;
+      }
+      final long rank = (long) Math.ceil(q * count);
+      long seen = 0L;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= rank) {
+          return upperBound(i);
+        }
+      }
+      return upperBound(counts.length - 1);
+    }
+
+  }
+
+}
@@ -0,0 +1,46 @@
+package dev.chux.gcp.crun.echo.metrics;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.escape.Escaper;
+import com.google.common.net.UrlEscapers;
+
+import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.Since;
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * Same shape as every REST response: {@code data}, and {@code links} to each test; served by every engine.
+ */
+public final class MetricsResponse {
+
+  private static final Escaper PATH_ESCAPER = UrlEscapers.urlPathSegmentEscaper();
+
+  @Since(1.0)
+  @Expose(deserialize=false, serialize=true)
+  @SerializedName(value="data")
+  private final List<TestMetrics.Snapshot> data;
+
+  @Since(1.0)
+  @Expose(deserialize=false, serialize=true)
+  @SerializedName(value="links")
+  private final Map<String, String> links;
+
+  /**
+   * @param base path of the metrics endpoint: tests are linked as {@code <base>/<test_id>}.
+   */
+  public MetricsResponse(
+    final String base,
+    final List<TestMetrics.Snapshot> snapshots
+  ) {
+    this.data = snapshots;
+    final ImmutableMap.Builder<String, String> links = ImmutableMap.builder();
+    for (final TestMetrics.Snapshot snapshot : snapshots) {
+      links.put(snapshot.testId(), base + "/" + PATH_ESCAPER.escape(snapshot.testId()));
+    }
+    this.links = links.build();
+  }
+
+}
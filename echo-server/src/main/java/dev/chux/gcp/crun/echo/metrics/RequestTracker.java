@@ -0,0 +1,37 @@
+package dev.chux.gcp.crun.echo.metrics;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Metrics of a single request; used by one thread at a time, like the request itself.
+ */
+public final class RequestTracker {
+
+  private final TestMetrics metrics;
+
+  private boolean ended = false;
+
+  RequestTracker(final TestMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * Records the end of the response, with {@code bodyBytes} of body; only the first end counts.
+   */
+  public void end(final long bodyBytes) {
+    if (this.ended) {
+      return;
+    }
+    this.ended = true;
+    this.metrics.end(bodyBytes);
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+      .add("test", this.metrics.testId())
+      .add("ended", this.ended)
+      .toString();
+  }
+
+}
@@ -0,0 +1,72 @@
+package dev.chux.gcp.crun.echo.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * One value per second over the last {@code seconds}: a ring of slots, each packing its second and its value
+ * into a single {@code long}, so a slot is recycled and updated with the same compare-and-set.
+ */
+final class SecondSeries {
+
+  private static final int VALUE_BITS = 40;
+  private static final long VALUE_MASK = (1L << VALUE_BITS) - 1L;
+  private static final long TAG_MASK = (1L << (Long.SIZE - VALUE_BITS)) - 1L;
+
+  private final AtomicLongArray slots;
+
+  SecondSeries(final int seconds) {
+    checkArgument(seconds > 0, "invalid seconds: %s", seconds);
+    // one more slot than seconds: the slot being filled is never the oldest one
+    this.slots = new AtomicLongArray(seconds + 1);
+  }
+
+  private int slot(final long second) {
+    return (int) Math.floorMod(second, (long) this.slots.length());
+  }
+
+  private static long tag(final long second) {
+    return second & TAG_MASK;
+  }
+
+  void add(final long second, final long delta) {
+    final int slot = this.slot(second);
+    final long tag = tag(second);
+    long current;
+    long next;
+    do {
+      current = this.slots.get(slot);
+      next = ((current >>> VALUE_BITS) == tag)
+        ? ((tag << VALUE_BITS) | (((current & VALUE_MASK) + delta) & VALUE_MASK))
+        : ((tag << VALUE_BITS) | (delta & VALUE_MASK));
+    } while (!this.slots.compareAndSet(slot, current, next));
+  }
+
+  void max(final long second, final long value) {
+    final int slot = this.slot(second);
+    final long tag = tag(second);
+    long current;
+    long next;
+    do {
+      current = this.slots.get(slot);
+      if (((current >>> VALUE_BITS) == tag) && ((current & VALUE_MASK) >= value)) {
+        return;
+      }
+      next = (tag << VALUE_BITS) | (value & VALUE_MASK);
+    } while (!this.slots.compareAndSet(slot, current, next));
+  }
+
+  /**
+   * @return the value of {@code second}, or {@code 0} if it was never set or was already recycled.
+   */
+  long get(final long second) {
+    final long value = this.slots.get(this.slot(second));
+    return ((value >>> VALUE_BITS) == tag(second)) ? (value & VALUE_MASK) : 0L;
+  }
+
+  int seconds() {
+    return this.slots.length() - 1;
+  }
+
+}
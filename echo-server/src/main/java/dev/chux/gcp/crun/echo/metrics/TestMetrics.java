@@ -0,0 +1,296 @@
+package dev.chux.gcp.crun.echo.metrics;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.Since;
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * Requests of one test, as seen by the server: to be compared with what its load generator reports.
+ * Seconds are wall-clock epoch seconds, so they line up with the timestamps of generator samples.
+ */
+public final class TestMetrics {
+
+  private static final long NO_ARRIVAL = Long.MIN_VALUE;
+
+  private final String testId;
+  private final long firstArrivalMillis;
+
+  private final LongAdder requests;
+  private final LongAdder completed;
+  private final LongAdder bytesIn;
+  private final LongAdder bytesOut;
+  private final AtomicLong active;
+  private final LongAccumulator peakActive;
+  private final AtomicLong lastArrivalNanos;
+  private final IntervalHistogram interArrival;
+
+  private final SecondSeries requestsPerSecond;
+  private final SecondSeries bytesInPerSecond;
+  private final SecondSeries bytesOutPerSecond;
+  private final SecondSeries activePerSecond;
+
+  private volatile long lastArrivalMillis;
+
+  TestMetrics(final String testId, final int seconds) {
+    this.testId = testId;
+    this.firstArrivalMillis = System.currentTimeMillis();
+    this.lastArrivalMillis = this.firstArrivalMillis;
+    this.requests = new LongAdder();
+    this.completed = new LongAdder();
+    this.bytesIn = new LongAdder();
+    this.bytesOut = new LongAdder();
+    this.active = new AtomicLong(0L);
+    this.peakActive = new LongAccumulator(Math::max, 0L);
+    this.lastArrivalNanos = new AtomicLong(NO_ARRIVAL);
+    this.interArrival = new IntervalHistogram();
+    this.requestsPerSecond = new SecondSeries(seconds);
+    this.bytesInPerSecond = new SecondSeries(seconds);
+    this.bytesOutPerSecond = new SecondSeries(seconds);
+    this.activePerSecond = new SecondSeries(seconds);
+  }
+
+  /**
+   * Accounts for a new request with {@code bodyBytes} of body; it stays active until its tracker ends.
+   */
+  public RequestTracker begin(final long bodyBytes) {
+    final long nanos = System.nanoTime();
+    final long millis = System.currentTimeMillis();
+    final long second = TimeUnit.MILLISECONDS.toSeconds(millis);
+
+    // concurrent arrivals may swap places: the 2nd one is then recorded as a `0us` interval
+    final long previous = this.lastArrivalNanos.getAndSet(nanos);
+    if (previous != NO_ARRIVAL) {
+      this.interArrival.record(TimeUnit.NANOSECONDS.toMicros(nanos - previous));
+    }
+    this.lastArrivalMillis = millis;
+
+    this.requests.increment();
+    this.requestsPerSecond.add(second, 1L);
+    if (bodyBytes > 0) {
+      this.bytesIn.add(bodyBytes);
+      this.bytesInPerSecond.add(second, bodyBytes);
+    }
+
+    final long active = this.active.incrementAndGet();
+    this.peakActive.accumulate(active);
+    this.activePerSecond.max(second, active);
+    return new RequestTracker(this);
+  }
+
+  void end(final long bodyBytes) {
+    final long second = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+    // a request still counts for the second it ends in
+    this.activePerSecond.max(second, this.active.getAndDecrement());
+    this.completed.increment();
+    if (bodyBytes > 0) {
+      this.bytesOut.add(bodyBytes);
+      this.bytesOutPerSecond.add(second, bodyBytes);
+    }
+  }
+
+  public String testId() {
+    return this.testId;
+  }
+
+  long lastArrivalMillis() {
+    return this.lastArrivalMillis;
+  }
+
+  private double perSecond(final long now, final int window) {
+    long count = 0L;
+    for (long second = now - window; second < now; second++) {
+      count += this.requestsPerSecond.get(second);
+    }
+    return ((double) count) / window;
+  }
+
+  /**
+   * @param withSeconds whether to include the value of every complete second since the test started,
+   *                    up to the configured window.
+   */
+  public Snapshot snapshot(final boolean withSeconds) {
+    return new Snapshot(this, withSeconds);
+  }
+
+  public static final class Snapshot {
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="test_id")
+    private final String testId;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="first_arrival_ms")
+    private final long firstArrivalMillis;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="last_arrival_ms")
+    private final long lastArrivalMillis;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="requests")
+    private final long requests;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="completed")
+    private final long completed;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="active")
+    private final long active;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="peak_active")
+    private final long peakActive;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="bytes_in")
+    private final long bytesIn;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="bytes_out")
+    private final long bytesOut;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="requests_per_second")
+    private final Rate rate;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="inter_arrival")
+    private final IntervalHistogram.Snapshot interArrival;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="seconds")
+    private final Optional<List<Second>> seconds;
+
+    private Snapshot(final TestMetrics metrics, final boolean withSeconds) {
+      final long now = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+      this.testId = metrics.testId;
+      this.firstArrivalMillis = metrics.firstArrivalMillis;
+      this.lastArrivalMillis = metrics.lastArrivalMillis;
+      this.requests = metrics.requests.sum();
+      this.completed = metrics.completed.sum();
+      this.active = metrics.active.get();
+      this.peakActive = metrics.peakActive.get();
+      this.bytesIn = metrics.bytesIn.sum();
+      this.bytesOut = metrics.bytesOut.sum();
+      this.rate = new Rate(metrics.perSecond(now, 1),
+        metrics.perSecond(now, 10), metrics.perSecond(now, 60));
+      this.interArrival = metrics.interArrival.snapshot();
+      this.seconds = withSeconds ? Optional.of(seconds(metrics, now)) : Optional.<List<Second>>absent();
+    }
+
+    private static List<Second> seconds(final TestMetrics metrics, final long now) {
+      final long first = Math.max(
+        TimeUnit.MILLISECONDS.toSeconds(metrics.firstArrivalMillis),
+        now - metrics.requestsPerSecond.seconds());
+      final ImmutableList.Builder<Second> seconds = ImmutableList.builder();
+      // the current second is not complete yet
+      for (long second = first; second < now; second++) {
+        seconds.add(new Second(second,
+          metrics.requestsPerSecond.get(second),
+          metrics.activePerSecond.get(second),
+          metrics.bytesInPerSecond.get(second),
+          metrics.bytesOutPerSecond.get(second)));
+      }
+      return seconds.build();
+    }
+
+    public String testId() {
+      return this.testId;
+    }
+
+  }
+
+  static final class Rate {
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="last_1s")
+    private final double last1s;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="last_10s")
+    private final double last10s;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="last_60s")
+    private final double last60s;
+
+    private Rate(final double last1s, final double last10s, final double last60s) {
+      this.last1s = last1s;
+      this.last10s = last10s;
+      this.last60s = last60s;
+    }
+
+  }
+
+  /**
+   * 1 complete second: arrivals, peak of active requests, and body bytes received and sent.
+   */
+  static final class Second {
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="epoch_s")
+    private final long second;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="requests")
+    private final long requests;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="peak_active")
+    private final long peakActive;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="bytes_in")
+    private final long bytesIn;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="bytes_out")
+    private final long bytesOut;
+
+    private Second(
+      final long second,
+      final long requests,
+      final long peakActive,
+      final long bytesIn,
+      final long bytesOut
+    ) {
+      this.second = second;
+      this.requests = requests;
+      this.peakActive = peakActive;
+      this.bytesIn = bytesIn;
+      this.bytesOut = bytesOut;
+    }
+
+  }
+
+}
@@ -0,0 +1,127 @@
+package dev.chux.gcp.crun.echo.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.FullHttpMessage;
+import io.netty.handler.codec.http.HttpMessage;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpServerKeepAliveHandler;
+import io.netty.handler.codec.http.HttpServerUpgradeHandler;
+import io.netty.handler.codec.http2.CleartextHttp2ServerUpgradeHandler;
+import io.netty.handler.codec.http2.Http2CodecUtil;
+import io.netty.handler.codec.http2.Http2FrameCodec;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.codec.http2.Http2ServerUpgradeCodec;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.codec.http2.Http2StreamFrameToHttpObjectCodec;
+import io.netty.util.AsciiString;
+import io.netty.util.ReferenceCountUtil;
+
+import dev.chux.gcp.crun.echo.EchoResponses;
+
+/**
+ * Every connection starts as HTTP/1.1, and becomes HTTP/2 if the client asks for it: with
+ * {@code Upgrade: h2c}, or by sending the HTTP/2 preface right away (prior knowledge).
+ *
+ * <p>HTTP/2 streams are converted into HTTP/1.1 objects, so both protocols are served by {@link EchoHandler}.</p>
+ */
+final class EchoChannelInitializer extends ChannelInitializer<Channel> {
+
+  private final EchoResponses responses;
+  private final MetricsRoute metrics;
+  private final String path;
+  private final int maxContentLength;
+  private final ByteBuf filler;
+
+  EchoChannelInitializer(
+    final EchoResponses responses,
+    final MetricsRoute metrics,
+    final String path,
+    final int maxContentLength
+  ) {
+    this.responses = responses;
+    this.metrics = metrics;
+    this.path = path;
+    this.maxContentLength = maxContentLength;
+    // direct: written to sockets without copies
+    final byte[] filler = responses.filler();
+    this.filler = Unpooled.unreleasableBuffer(
+      Unpooled.directBuffer(filler.length).writeBytes(filler)).asReadOnly();
+  }
+
+  @Override
+  protected void initChannel(final Channel channel) {
+    final HttpServerCodec codec = new HttpServerCodec();
+    final HttpServerUpgradeHandler upgrade = new HttpServerUpgradeHandler(codec, (protocol) ->
+      AsciiString.contentEquals(Http2CodecUtil.HTTP_UPGRADE_PROTOCOL_NAME, protocol)
+        ? new Http2ServerUpgradeCodec(Http2FrameCodecBuilder.forServer().build(), this.http2())
+        : null,
+      this.maxContentLength);
+
+    final ChannelPipeline pipeline = channel.pipeline();
+    pipeline.addLast(new CleartextHttp2ServerUpgradeHandler(codec, upgrade, new PriorKnowledge()));
+    pipeline.addLast(new Http1());
+  }
+
+  private Http2MultiplexHandler http2() {
+    return new Http2MultiplexHandler(new ChannelInitializer<Http2StreamChannel>() {
+      @Override
+      protected void initChannel(final Http2StreamChannel stream) {
+        stream.pipeline().addLast(
+          new Http2StreamFrameToHttpObjectCodec(true),
+          aggregator(),
+          new EchoHandler(responses, metrics, path, filler));
+      }
+    });
+  }
+
+  /**
+   * Echoes include request headers as sent: {@code content-length} is not added to requests without one.
+   */
+  private HttpObjectAggregator aggregator() {
+    return new HttpObjectAggregator(this.maxContentLength) {
+      @Override
+      protected void finishAggregation(final FullHttpMessage aggregated) {}
+    };
+  }
+
+  /**
+   * Same handlers as an upgrade, at the same position.
+   */
+  private final class PriorKnowledge extends ChannelInboundHandlerAdapter {
+
+    @Override
+    public void handlerAdded(final ChannelHandlerContext ctx) {
+      // the frame codec must be in place before the multiplexer is added
+      final Http2FrameCodec codec = Http2FrameCodecBuilder.forServer().build();
+      final ChannelPipeline pipeline = ctx.pipeline().replace(this, null, codec);
+      pipeline.addAfter(pipeline.context(codec).name(), null, http2());
+    }
+
+  }
+
+  /**
+   * Reached only if the connection was not upgraded: replaces itself with the HTTP/1.1 handlers.
+   */
+  private final class Http1 extends SimpleChannelInboundHandler<HttpMessage> {
+
+    @Override
+    protected void channelRead0(final ChannelHandlerContext ctx, final HttpMessage message) {
+      final ChannelPipeline pipeline = ctx.pipeline();
+      pipeline.addAfter(ctx.name(), null, new EchoHandler(responses, metrics, path, filler));
+      pipeline.addAfter(ctx.name(), null, aggregator());
+      pipeline.replace(this, null, new HttpServerKeepAliveHandler());
+      ctx.fireChannelRead(ReferenceCountUtil.retain(message));
+    }
+
+  }
+
+}
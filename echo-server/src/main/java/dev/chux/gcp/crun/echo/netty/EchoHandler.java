@@ -0,0 +1,433 @@
+package dev.chux.gcp.crun.echo.netty;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import java.net.InetSocketAddress;
+
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+
+import com.google.gson.stream.JsonWriter;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.EmptyHttpHeaders;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.util.AsciiString;
+import io.netty.util.concurrent.FastThreadLocal;
+
+import dev.chux.gcp.crun.echo.EchoControls;
+import dev.chux.gcp.crun.echo.EchoResponses;
+import dev.chux.gcp.crun.echo.metrics.RequestTracker;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Same responses as {@code EchoController}, but delays never hold a thread: responses are scheduled
+ * on the event loop of their connection, and written in the order in which requests arrived.
+ *
+ * <p>One instance per HTTP/1.1 connection, or per HTTP/2 stream.</p>
+ */
+final class EchoHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+  private static final Logger logger = LoggerFactory.getLogger(EchoHandler.class);
+
+  private static final ImmutableSet<HttpMethod> METHODS = ImmutableSet.of(HttpMethod.GET, HttpMethod.HEAD,
+    HttpMethod.POST, HttpMethod.PUT, HttpMethod.PATCH, HttpMethod.DELETE, HttpMethod.OPTIONS);
+
+  private static final AsciiString X_ECHO_DELAY_MS = AsciiString.cached("x-echo-delay-ms");
+  private static final AsciiString X_ECHO_SIZE = AsciiString.cached("x-echo-size");
+  private static final AsciiString TEXT_HTML_UTF_8 = AsciiString.cached("text/html;charset=utf-8");
+
+  // added when converting HTTP/2 streams: not sent by clients
+  private static final String HTTP2_EXTENSION_HEADERS_PREFIX = "x-http2-";
+
+  private static final byte[] NOT_FOUND = "<html><body><h2>404 Not found</h2></body></html>"
+    .getBytes(StandardCharsets.UTF_8);
+
+  // echoes are encoded by the event loop thread straight into response buffers
+  private static final FastThreadLocal<ByteBufWriter> WRITERS = new FastThreadLocal<ByteBufWriter>() {
+    @Override
+    protected ByteBufWriter initialValue() {
+      return new ByteBufWriter();
+    }
+  };
+
+  private final EchoResponses responses;
+  private final MetricsRoute metrics;
+  private final String path;
+  // synthetic payloads are slices of it
+  private final ByteBuf filler;
+
+  // the last response written, or to be written, to this channel
+  private ChannelFuture last;
+
+  /**
+   * @param filler {@link EchoResponses#filler}, shared by all channels: never released, and never modified.
+   */
+  EchoHandler(
+    final EchoResponses responses,
+    final MetricsRoute metrics,
+    final String path,
+    final ByteBuf filler
+  ) {
+    this.responses = responses;
+    this.metrics = metrics;
+    this.path = path;
+    this.filler = filler;
+  }
+
+  @Override
+  protected void channelRead0(
+    final ChannelHandlerContext ctx,
+    final FullHttpRequest request
+  ) {
+    final long arrival = System.nanoTime();
+
+    final QueryStringDecoder uri = new QueryStringDecoder(request.uri());
+    final String path = uri.path();
+    if (this.metrics.matches(path)) {
+      final FullHttpResponse response = this.metrics.respond(ctx, request, path);
+      this.respond(ctx, arrival, (response != null) ? response
+        : text(ctx, HttpResponseStatus.NOT_FOUND, NOT_FOUND), null, 0L, false, 0);
+      return;
+    }
+    if (!path.equals(this.path) || !METHODS.contains(request.method())) {
+      this.respond(ctx, arrival, text(ctx, HttpResponseStatus.NOT_FOUND, NOT_FOUND), null, 0L, false, 0);
+      return;
+    }
+
+    // tracked until its response is written: delays count as concurrency, just like for clients
+    final Optional<RequestTracker> tracker = this.metrics.begin(request);
+
+    final Map<String, List<String>> query = uri.parameters();
+    final HttpHeaders headers = request.headers();
+    final EchoControls controls;
+    try {
+      controls = EchoControls.parse((name) -> first(query, name), headers::get);
+    } catch(final IllegalArgumentException ex) {
+      logger.error("invalid controls: {}", ex.getMessage());
+      final byte[] message = ex.getMessage().getBytes(StandardCharsets.UTF_8);
+      end(tracker, this.respond(ctx, arrival, text(ctx, HttpResponseStatus.BAD_REQUEST, message),
+        null, 0L, false, 0), message.length);
+      return;
+    }
+
+    final Random random = ThreadLocalRandom.current();
+    final long delayNanos = controls.delayNanos(random, this.responses.maxDelayMillis());
+
+    // synthetic payloads are never materialized
+    final ByteBuf payload = controls.isSynthetic() ? null : this.echo(ctx, request, uri);
+    final long length = controls.isSynthetic()
+      ? controls.size(random, this.responses.maxSize()) : payload.readableBytes();
+
+    final Optional<Integer> status = controls.status(random);
+    final HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1,
+      status.isPresent() ? HttpResponseStatus.valueOf(status.get().intValue()) : HttpResponseStatus.OK);
+    if (controls.isDelayed()) {
+      response.headers().set(X_ECHO_DELAY_MS, Double.toString(delayNanos / 1_000_000d));
+    }
+    if (controls.isSynthetic()) {
+      response.headers().set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.APPLICATION_OCTET_STREAM);
+      response.headers().set(X_ECHO_SIZE, Long.toString(length));
+    }
+
+    final boolean chunked = controls.isChunked();
+    if (chunked) {
+      HttpUtil.setTransferEncodingChunked(response, true);
+    } else {
+      // without an explicit transfer, the length is known upfront anyway
+      HttpUtil.setContentLength(response, length);
+    }
+
+    if (HttpMethod.HEAD.equals(request.method())) {
+      if (payload != null) {
+        payload.release();
+      }
+      end(tracker, this.respond(ctx, arrival + delayNanos, response, null, 0L, false, 0), 0L);
+    } else {
+      end(tracker, this.respond(ctx, arrival + delayNanos, response, payload, length, chunked, controls.chunk()), length);
+    }
+  }
+
+  private static void end(
+    final Optional<RequestTracker> tracker,
+    final ChannelFuture written,
+    final long bodyBytes
+  ) {
+    if (tracker.isPresent()) {
+      written.addListener((future) -> tracker.get().end(future.isSuccess() ? bodyBytes : 0L));
+    }
+  }
+
+  private static String first(
+    final Map<String, List<String>> query,
+    final String name
+  ) {
+    final List<String> values = query.get(name);
+    return (values == null || values.isEmpty()) ? null : values.get(0);
+  }
+
+  static FullHttpResponse text(
+    final ChannelHandlerContext ctx,
+    final HttpResponseStatus status,
+    final byte[] text
+  ) {
+    final ByteBuf content = ctx.alloc().buffer(text.length).writeBytes(text);
+    final FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status, content);
+    response.headers().set(HttpHeaderNames.CONTENT_TYPE, TEXT_HTML_UTF_8);
+    HttpUtil.setContentLength(response, text.length);
+    return response;
+  }
+
+  /**
+   * Writes the response at {@code deadline}, as given by {@link System#nanoTime()}, but never before
+   * the responses to previous requests.
+   *
+   * @param payload the echo, or {@code null} for a synthetic payload of {@code length} bytes.
+   * @return completed once the response is written.
+   */
+  private ChannelFuture respond(
+    final ChannelHandlerContext ctx,
+    final long deadline,
+    final HttpResponse response,
+    final ByteBuf payload,
+    final long length,
+    final boolean chunked,
+    final int chunk
+  ) {
+    final ChannelFuture previous = this.last;
+    final ChannelPromise written = ctx.newPromise();
+    this.last = written;
+
+    final Runnable write = () -> {
+      if (previous == null || previous.isDone()) {
+        this.write(ctx, response, payload, length, chunked, chunk, written);
+      } else {
+        previous.addListener((ignored) -> this.write(ctx, response, payload, length, chunked, chunk, written));
+      }
+    };
+
+    final long delay = deadline - System.nanoTime();
+    if (delay <= 0L) {
+      write.run();
+    } else {
+      // the deadline was fixed on arrival: time spent so far is not added to the delay
+      ctx.executor().schedule(write, delay, TimeUnit.NANOSECONDS);
+    }
+    return written;
+  }
+
+  private void write(
+    final ChannelHandlerContext ctx,
+    final HttpResponse response,
+    final ByteBuf payload,
+    final long length,
+    final boolean chunked,
+    final int chunk,
+    final ChannelPromise written
+  ) {
+    if (response instanceof FullHttpResponse) {
+      ctx.writeAndFlush(response, written);
+      return;
+    }
+    if (payload != null && !chunked) {
+      ctx.writeAndFlush(new DefaultFullHttpResponse(response.protocolVersion(),
+        response.status(), payload, response.headers(), EmptyHttpHeaders.INSTANCE), written);
+      return;
+    }
+    ctx.write(response);
+    if (payload != null) {
+      // with `transfer=chunked`: each chunk is flushed on its own
+      while (payload.isReadable()) {
+        ctx.writeAndFlush(new DefaultHttpContent(
+          payload.readRetainedSlice(Math.min(chunk, payload.readableBytes()))));
+      }
+      payload.release();
+    } else {
+      this.writeFiller(ctx, length, chunked ? chunk : Integer.MAX_VALUE);
+    }
+    ctx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT, written);
+  }
+
+  private void writeFiller(
+    final ChannelHandlerContext ctx,
+    final long length,
+    final int chunk
+  ) {
+    final int size = this.filler.readableBytes();
+    long remaining = length;
+    int offset = 0;
+    while (remaining > 0) {
+      final int bytes = (int) Math.min(remaining, chunk);
+      final ByteBuf content;
+      if (offset + bytes <= size) {
+        content = this.filler.slice(offset, bytes);
+      } else {
+        // wraps around the filler: no copies either way
+        final CompositeByteBuf composite = ctx.alloc().compositeDirectBuffer(Integer.MAX_VALUE);
+        int filled = 0;
+        int from = offset;
+        while (filled < bytes) {
+          final int slice = Math.min(bytes - filled, size - from);
+          composite.addComponent(true, this.filler.slice(from, slice));
+          filled += slice;
+          from = (from + slice) % size;
+        }
+        content = composite;
+      }
+      remaining -= bytes;
+      offset = (int) ((offset + (long) bytes) % size);
+      if (chunk == Integer.MAX_VALUE) {
+        ctx.write(new DefaultHttpContent(content));
+      } else {
+        ctx.writeAndFlush(new DefaultHttpContent(content));
+      }
+    }
+  }
+
+  /**
+   * Same JSON as {@code EchoController}, encoded into a pooled buffer.
+   */
+  private ByteBuf echo(
+    final ChannelHandlerContext ctx,
+    final FullHttpRequest request,
+    final QueryStringDecoder uri
+  ) {
+    final ByteBuf buffer = ctx.alloc().buffer();
+    final ByteBufWriter writer = WRITERS.get();
+    try {
+      final JsonWriter json = EchoResponses.newJsonWriter(writer.reset(buffer));
+      json.beginObject();
+      json.name("proto").value((ctx.channel() instanceof Http2StreamChannel)
+        ? "HTTP/2.0" : request.protocolVersion().text());
+      json.name("method").value(request.method().name());
+      json.name("url").value(this.url(ctx, request, uri));
+
+      json.name("query").beginObject();
+      for (final Map.Entry<String, List<String>> entry : uri.parameters().entrySet()) {
+        json.name(entry.getKey()).beginArray();
+        for (final String value : entry.getValue()) {
+          json.value(value);
+        }
+        json.endArray();
+      }
+      json.endObject();
+
+      json.name("headers").beginObject();
+      final HttpHeaders headers = request.headers();
+      for (final String header : headers.names()) {
+        if (!header.startsWith(HTTP2_EXTENSION_HEADERS_PREFIX)) {
+          json.name(header).value(headers.get(header));
+        }
+      }
+      json.endObject();
+
+      json.name("body").value(request.content().toString(StandardCharsets.UTF_8));
+      // the object is closed by `cloud_run`
+      json.flush();
+      buffer.writeBytes(this.responses.cloudRunTail());
+    } catch(final IOException ex) {
+      // writing into a buffer never fails
+      buffer.release();
+      throw new IllegalStateException(ex);
+    } finally {
+      writer.reset(null);
+    }
+
+    if (logger.isDebugEnabled()) {
+      logger.debug("Request[{}]: {}", this.path, buffer.toString(0,
+        buffer.readableBytes() - this.responses.cloudRunTail().length, StandardCharsets.UTF_8));
+    }
+    return buffer;
+  }
+
+  private String url(
+    final ChannelHandlerContext ctx,
+    final FullHttpRequest request,
+    final QueryStringDecoder uri
+  ) {
+    // HTTP/2 `:authority` is converted into `host`
+    String host = request.headers().get(HttpHeaderNames.HOST);
+    if (host == null) {
+      final InetSocketAddress address = (InetSocketAddress) ctx.channel().localAddress();
+      host = address.getHostString() + ":" + address.getPort();
+    }
+    return "http://" + host + uri.rawPath();
+  }
+
+  @Override
+  public void exceptionCaught(
+    final ChannelHandlerContext ctx,
+    final Throwable cause
+  ) {
+    logger.debug("closing {}: {}", ctx.channel(), cause.toString());
+    ctx.close();
+  }
+
+  /**
+   * UTF-8 straight into a {@link ByteBuf}; JSON writers never split surrogate pairs across writes.
+   */
+  private static final class ByteBufWriter extends Writer {
+
+    private ByteBuf buffer;
+
+    private ByteBufWriter reset(final ByteBuf buffer) {
+      this.buffer = buffer;
+      return this;
+    }
+
+    @Override
+    public void write(final int c) {
+      ByteBufUtil.writeUtf8(this.buffer, String.valueOf((char) c));
+    }
+
+    @Override
+    public void write(final char[] chars, final int offset, final int length) {
+      ByteBufUtil.writeUtf8(this.buffer, CharBuffer.wrap(chars, offset, length));
+    }
+
+    @Override
+    public void write(final String string, final int offset, final int length) {
+      ByteBufUtil.writeUtf8(this.buffer, string, offset, offset + length);
+    }
+
+    @Override
+    public void flush() {}
+
+    @Override
+    public void close() {}
+
+  }
+
+}
@@ -0,0 +1,102 @@
+package dev.chux.gcp.crun.echo.netty;
+
+import java.nio.charset.StandardCharsets;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+import com.google.gson.Gson;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+
+import dev.chux.gcp.crun.echo.metrics.EchoMetrics;
+import dev.chux.gcp.crun.echo.metrics.MetricsResponse;
+import dev.chux.gcp.crun.echo.metrics.RequestTracker;
+import dev.chux.gcp.crun.echo.metrics.TestMetrics;
+
+/**
+ * Same responses as {@code MetricsController}: {@code [GET|DELETE] <rest.root>/metrics[/:test]}.
+ * Shared by all channels.
+ */
+final class MetricsRoute {
+
+  private final EchoMetrics metrics;
+  private final Gson gson;
+  private final String path;
+
+  MetricsRoute(
+    final EchoMetrics metrics,
+    final Gson gson,
+    final String path
+  ) {
+    this.metrics = metrics;
+    this.gson = gson;
+    this.path = path;
+  }
+
+  Optional<RequestTracker> begin(
+    final FullHttpRequest request
+  ) {
+    return this.metrics.begin(request.headers().get(EchoMetrics.HEADER), request.content().readableBytes());
+  }
+
+  boolean matches(final String path) {
+    return path.equals(this.path)
+      || (path.startsWith(this.path) && path.charAt(this.path.length()) == '/');
+  }
+
+  /**
+   * @param path decoded path of the request, already {@link #matches matched}.
+   * @return the response, or {@code null} if the method is not served; unknown tests are not found.
+   */
+  FullHttpResponse respond(
+    final ChannelHandlerContext ctx,
+    final FullHttpRequest request,
+    final String path
+  ) {
+    final boolean delete = HttpMethod.DELETE.equals(request.method());
+    if (!delete && !HttpMethod.GET.equals(request.method())) {
+      return null;
+    }
+
+    final String testId = path.substring(Math.min(path.length(), this.path.length() + 1));
+    final ImmutableList.Builder<TestMetrics.Snapshot> snapshots = ImmutableList.builder();
+    if (!testId.isEmpty()) {
+      final Optional<TestMetrics> test = this.metrics.get(testId);
+      if (!test.isPresent()) {
+        return EchoHandler.text(ctx, HttpResponseStatus.NOT_FOUND,
+          ("test not found: " + testId).getBytes(StandardCharsets.UTF_8));
+      }
+      snapshots.add(test.get().snapshot(true));
+      if (delete) {
+        this.metrics.remove(testId);
+      }
+    } else {
+      for (final TestMetrics test : this.metrics.all()) {
+        snapshots.add(test.snapshot(false));
+      }
+      if (delete) {
+        this.metrics.clear();
+      }
+    }
+
+    final byte[] json = this.gson.toJson(new MetricsResponse(this.path, snapshots.build()),
+      MetricsResponse.class).getBytes(StandardCharsets.UTF_8);
+    final ByteBuf content = ctx.alloc().buffer(json.length).writeBytes(json);
+    final FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, content);
+    response.headers().set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON);
+    HttpUtil.setContentLength(response, json.length);
+    return response;
+  }
+
+}
@@ -0,0 +1,117 @@
+package dev.chux.gcp.crun.echo.netty;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.inject.Inject;
+
+import com.google.gson.Gson;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import dev.chux.gcp.crun.ConfigService;
+import dev.chux.gcp.crun.echo.EchoResponses;
+import dev.chux.gcp.crun.echo.metrics.EchoMetrics;
+import dev.chux.gcp.crun.rest.RestAPI;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Serves echoes from a few event loops instead of a thread per request: HTTP/1.1 with keep-alive,
+ * and HTTP/2 over cleartext; either upgraded from HTTP/1.1, or with prior knowledge.
+ *
+ * <p>Only the echo and metrics routes are served: {@code <rest.root>/request}, and {@code <rest.root>/metrics}.</p>
+ */
+public class NettyEchoServer {
+  private static final Logger logger = LoggerFactory.getLogger(NettyEchoServer.class);
+
+  public static final String PROPERTY_THREADS = "echo-server.netty.threads";
+  public static final String PROPERTY_MAX_CONTENT_LENGTH = "echo-server.netty.max-content-length";
+
+  private static final String ENV__SERVER_PORT = "PORT";
+  private static final String PROPERTY__SERVER_PORT = "server.port";
+
+  private static final int DEFAULT__SERVER_PORT = 8080;
+  private static final int DEFAULT_MAX_CONTENT_LENGTH = 16 * 1024 * 1024;
+
+  private final EchoResponses responses;
+  private final MetricsRoute metrics;
+  private final String path;
+  private final int port;
+  private final int threads;
+  private final int maxContentLength;
+
+  private EventLoopGroup group;
+  private Channel channel;
+
+  @Inject
+  NettyEchoServer(
+    final ConfigService configService,
+    final RestAPI restAPI,
+    final EchoResponses responses,
+    final EchoMetrics metrics,
+    final Gson gson
+  ) {
+    this.responses = responses;
+    this.metrics = new MetricsRoute(metrics, gson, restAPI.root() + "/metrics");
+    this.path = restAPI.root() + "/request";
+    this.port = configService.getIntEnvVar(ENV__SERVER_PORT)
+      .or(configService.getIntAppProp(PROPERTY__SERVER_PORT))
+      .or(DEFAULT__SERVER_PORT).intValue();
+    // event loops never block: more threads than cores only adds context switches
+    this.threads = configService.getIntAppProp(PROPERTY_THREADS)
+      .or(Runtime.getRuntime().availableProcessors()).intValue();
+    this.maxContentLength = configService.getIntAppProp(PROPERTY_MAX_CONTENT_LENGTH)
+      .or(DEFAULT_MAX_CONTENT_LENGTH).intValue();
+    checkArgument(this.threads > 0, "invalid threads: %s", this.threads);
+    checkArgument(this.maxContentLength > 0, "invalid max content length: %s", this.maxContentLength);
+  }
+
+  public synchronized void start() throws InterruptedException {
+    checkState(this.channel == null, "already started");
+
+    final boolean epoll = Epoll.isAvailable();
+    final DefaultThreadFactory threadFactory = new DefaultThreadFactory("echo-server-netty", true);
+    this.group = epoll
+      ? new EpollEventLoopGroup(this.threads, threadFactory)
+      : new NioEventLoopGroup(this.threads, threadFactory);
+    final Class<? extends ServerChannel> channelType = epoll
+      ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+
+    // connections are accepted by the same event loops which serve them
+    final ServerBootstrap bootstrap = new ServerBootstrap()
+      .group(this.group)
+      .channel(channelType)
+      .option(ChannelOption.SO_BACKLOG, Integer.valueOf(1024))
+      .childOption(ChannelOption.TCP_NODELAY, Boolean.TRUE)
+      .childHandler(new EchoChannelInitializer(this.responses, this.metrics, this.path, this.maxContentLength));
+
+    this.channel = bootstrap.bind(this.port).sync().channel();
+    logger.info("serving '{}' at port {}: [transport={}, threads={}, max-content-length={}]",
+      this.path, this.port, epoll ? "epoll" : "nio", this.threads, this.maxContentLength);
+  }
+
+  public synchronized void stop() {
+    if (this.channel == null) {
+      return;
+    }
+    this.channel.close().syncUninterruptibly();
+    this.group.shutdownGracefully(0L, 5L, TimeUnit.SECONDS).syncUninterruptibly();
+    this.channel = null;
+    logger.info("stopped serving '{}' at port {}", this.path, this.port);
+  }
+
+}
@@ -1,33 +1,38 @@
 package dev.chux.gcp.crun.echo.rest;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 
 import java.nio.charset.StandardCharsets;
 
-import java.util.List;
+import java.util.Enumeration;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 import com.google.inject.Inject;
 
 import com.google.common.base.Optional;
-import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMap;
 
-import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+
+import javax.servlet.http.HttpServletRequest;
 
 import spark.Request;
 import spark.Response;
 
-import dev.chux.gcp.crun.ConfigService;
+import dev.chux.gcp.crun.echo.EchoControls;
+import dev.chux.gcp.crun.echo.EchoResponses;
+import dev.chux.gcp.crun.echo.metrics.EchoMetrics;
+import dev.chux.gcp.crun.echo.metrics.RequestTracker;
 import dev.chux.gcp.crun.rest.Route;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import static com.google.common.base.MoreObjects.toStringHelper;
-import static com.google.common.base.Optional.fromNullable;
-import static com.google.common.base.Strings.emptyToNull;
+import static com.google.common.base.Strings.nullToEmpty;
 
 import static spark.Spark.*;
 
@@ -36,31 +41,24 @@ public class EchoController implements Route {
 
   public static final String NAMESPACE = RestModule.NAMESPACE + "/http/request";
 
-  public static final String PROPERTIES_PREFIX = RestModule.PROPERTIES_PREFIX + ".echo.request";
+  public static final String PROPERTIES_PREFIX = EchoResponses.PROPERTIES_PREFIX;
+
+  // echoes are encoded into a buffer per thread; larger ones are left to the garbage collector
+  private static final int MAX_REUSED_BUFFER_BYTES = 64 * 1024;
+  private static final ThreadLocal<EchoBuffer> BUFFERS = ThreadLocal.withInitial(EchoBuffer::new);
 
-  private final Gson gson;
-  private final Map<String, String> cloudRun;
+  private static final String DELAY_NOT_SERVED = "delays are served by the netty engine: set `echo-server.engine=netty`";
+
+  private final EchoResponses responses;
+  private final EchoMetrics metrics;
 
   @Inject
   public EchoController(
-    final ConfigService configService,
-    final Gson gson
+    final EchoResponses responses,
+    final EchoMetrics metrics
   ) {
-    this.gson = gson;
-    this.cloudRun = this.cloudRun(configService);
-  }
-
-  private final Map<String, String> cloudRun(
-    final ConfigService configService
-  ) {
-    return ImmutableMap.<String, String>builder()
-      .put("project_id", configService.getSysPropOrDefault("com.google.cloud.project.id", "undefined"))
-      .put("project_num", configService.getSysPropOrDefault("com.google.cloud.project.num", "0"))
-      .put("region", configService.getSysPropOrDefault("com.google.cloud.run.region", "undefined"))
-      .put("service", configService.getSysPropOrDefault("com.google.cloud.run.service", "undefined"))
-      .put("revision", configService.getSysPropOrDefault("com.google.cloud.run.revision", "undefined"))
-      .put("instance", configService.getSysPropOrDefault("com.google.cloud.run.instance.id", "0a1b2c3d4e5f"))
-      .build();
+    this.responses = responses;
+    this.metrics = metrics;
   }
 
   public void register(final String root) {
@@ -76,43 +74,219 @@ public class EchoController implements Route {
   }
 
   public String endpoint(final String root) {
-    return "* " + root + "/request";
+    return "* " + root + "/request[?[delay=DISTRIBUTION][&size=DISTRIBUTION][&status=CODE[:WEIGHT],...][&transfer=(chunked|length)][&chunk=BYTES]]";
   }
 
+  /**
+   * Responses are calibrated by query params, or by the same headers prefixed with `x-echo-`:
+   *   - delay: Optional<Distribution>   // served by the `netty` engine only: rejected with `400`
+   *   - size: Optional<Distribution>    // bytes of synthetic payload to respond with, instead of the echo
+   *   - status: Optional<StatusMix>     // i/e: `200:90,500:7,503:3`
+   *   - transfer: Optional<String>      // OneOf<chunked | length>
+   *   - chunk: Optional<Integer>        // bytes per chunk with `transfer=chunked`
+   * Responses include `x-echo-delay-ms` and `x-echo-size` with the sampled values.
+   *
+   * @see EchoControls
+   */
   public Object handle(
     final Request request,
     final Response response
   ) throws Exception {
-    final Optional<String> body = fromNullable(emptyToNull(request.body()));
+    // the body must be read before any parameter: form parameters would consume it otherwise
+    final String body = request.body();
 
-    final ImmutableMap.Builder<String, String> headers = ImmutableMap.<String, String>builder();
-    for (final String header : request.headers()) {
-      headers.put(header, request.headers(header));
+    // tracked until its response is written, just like by clients
+    final Optional<RequestTracker> tracker = this.metrics.begin(
+      request.headers(EchoMetrics.HEADER), request.bodyAsBytes().length);
+    try {
+      return this.respond(request, response, body, tracker);
+    } finally {
+      // responses that failed are ended with no body; ended ones are not ended twice
+      end(tracker, 0L);
     }
+  }
 
-    final ImmutableMap.Builder<String, List<String>> query = ImmutableMap.<String, List<String>>builder();
-    for(final Map.Entry<String, String[]> entry : request.queryMap().toMap().entrySet()) {
-      query.put(entry.getKey(), ImmutableList.<String>copyOf(entry.getValue()));
+  private static void end(
+    final Optional<RequestTracker> tracker,
+    final long bodyBytes
+  ) {
+    if (tracker.isPresent()) {
+      tracker.get().end(bodyBytes);
     }
+  }
 
-    final ImmutableMap.Builder<String, Object> reply =
-      ImmutableMap.<String, Object>builder()
-        .put("proto", request.protocol())
-        .put("method", request.requestMethod())
-        .put("url", request.url())
-        .put("query", query.build())
-        .put("headers", headers.build())
-        .put("body", body.or(""));
+  private Object respond(
+    final Request request,
+    final Response response,
+    final String body,
+    final Optional<RequestTracker> tracker
+  ) throws Exception {
+    EchoControls controls = null;
+    try {
+      controls = EchoControls.parse(request::queryParams, request::headers);
+    } catch(final IllegalArgumentException ex) {
+      logger.error("invalid controls: {}", ex.getMessage());
+      end(tracker, ex.getMessage().getBytes(StandardCharsets.UTF_8).length);
+      halt(400, ex.getMessage());
+    }
 
-    logger.debug("Request[{}]", toStringHelper(request.matchedPath()).addValue(reply.build()));
+    if (controls.isDelayed()) {
+      // a delay would park this thread until its deadline: only event loops can wait without one
+      end(tracker, DELAY_NOT_SERVED.getBytes(StandardCharsets.UTF_8).length);
+      halt(400, DELAY_NOT_SERVED);
+    }
 
-    reply.put("cloud_run", this.cloudRun);
+    final Random random = ThreadLocalRandom.current();
+
+    // synthetic payloads are never materialized
+    final EchoBuffer payload = controls.isSynthetic() ? null : this.echo(request, body);
+    final long length = controls.isSynthetic()
+      ? controls.size(random, this.responses.maxSize()) : payload.size();
+
+    final Optional<Integer> status = controls.status(random);
+    if (status.isPresent()) {
+      response.status(status.get().intValue());
+    }
+    if (controls.isSynthetic()) {
+      response.type("application/octet-stream");
+      response.header("x-echo-size", Long.toString(length));
+    }
+
+    final boolean chunked = controls.isChunked();
+    final int chunk = controls.chunk();
+    if (controls.hasLength()) {
+      response.raw().setContentLengthLong(length);
+    }
 
     final OutputStream stream = response.raw().getOutputStream();
-    final OutputStreamWriter writer = new OutputStreamWriter(stream, StandardCharsets.UTF_8);
-    this.gson.toJson(reply.build(), writer);
-    writer.flush();
+    try {
+      if ("HEAD".equalsIgnoreCase(request.requestMethod())) {
+        stream.flush();
+        return null;
+      }
+      if (payload != null) {
+        write(stream, payload.array(), payload.size(), chunked ? chunk : payload.size());
+      } else {
+        writeFiller(stream, this.responses.filler(), length, chunked ? chunk : Integer.MAX_VALUE);
+      }
+      stream.flush();
+      end(tracker, length);
+    } finally {
+      if (payload != null) {
+        payload.release();
+      }
+    }
     return null;
   }
 
+  private static void write(
+    final OutputStream stream,
+    final byte[] payload,
+    final int length,
+    final int chunk
+  ) throws IOException {
+    for (int offset = 0; offset < length; offset += chunk) {
+      stream.write(payload, offset, Math.min(chunk, length - offset));
+      // with `transfer=chunked`: each write is flushed as its own chunk
+      stream.flush();
+    }
+  }
+
+  private static void writeFiller(
+    final OutputStream stream,
+    final byte[] filler,
+    final long length,
+    final int chunk
+  ) throws IOException {
+    long remaining = length;
+    int offset = 0;
+    int chunked = 0;
+    while (remaining > 0) {
+      final int size = (int) Math.min(remaining, Math.min(chunk - chunked, filler.length - offset));
+      stream.write(filler, offset, size);
+      remaining -= size;
+      offset = (offset + size) % filler.length;
+      chunked += size;
+      if (chunked == chunk) {
+        stream.flush();
+        chunked = 0;
+      }
+    }
+  }
+
+  /**
+   * Encodes the echo straight into a reusable buffer: no intermediate maps, and no reflection.
+   */
+  private EchoBuffer echo(
+    final Request request,
+    final String body
+  ) throws IOException {
+    final HttpServletRequest raw = request.raw();
+
+    final EchoBuffer buffer = BUFFERS.get();
+    final JsonWriter json = buffer.json();
+    json.beginObject();
+    json.name("proto").value(request.protocol());
+    json.name("method").value(request.requestMethod());
+    json.name("url").value(request.url());
+
+    json.name("query").beginObject();
+    for (final Map.Entry<String, String[]> entry : raw.getParameterMap().entrySet()) {
+      json.name(entry.getKey()).beginArray();
+      for (final String value : entry.getValue()) {
+        json.value(value);
+      }
+      json.endArray();
+    }
+    json.endObject();
+
+    json.name("headers").beginObject();
+    final Enumeration<String> headers = raw.getHeaderNames();
+    while (headers.hasMoreElements()) {
+      final String header = headers.nextElement();
+      json.name(header).value(raw.getHeader(header));
+    }
+    json.endObject();
+
+    json.name("body").value(nullToEmpty(body));
+    // the object is closed by `cloud_run`
+    json.flush();
+    buffer.write(this.responses.cloudRunTail());
+
+    if (logger.isDebugEnabled()) {
+      logger.debug("Request[{}]: {}", request.matchedPath(),
+        new String(buffer.array(), 0, buffer.size() - this.responses.cloudRunTail().length, StandardCharsets.UTF_8));
+    }
+    return buffer;
+  }
+
+  /**
+   * Output buffer of 1 thread, along with its writers; {@link #json} starts a new echo.
+   */
+  private static final class EchoBuffer extends ByteArrayOutputStream {
+
+    private final OutputStreamWriter writer;
+
+    private EchoBuffer() {
+      super(4 * 1024);
+      this.writer = new OutputStreamWriter(this, StandardCharsets.UTF_8);
+    }
+
+    private JsonWriter json() {
+      this.reset();
+      return EchoResponses.newJsonWriter(this.writer);
+    }
+
+    private byte[] array() {
+      return this.buf;
+    }
+
+    private void release() {
+      if (this.buf.length > MAX_REUSED_BUFFER_BYTES) {
+        BUFFERS.remove();
+      }
+    }
+
+  }
+
 }
@@ -0,0 +1,97 @@
+package dev.chux.gcp.crun.echo.rest;
+
+import com.google.inject.Inject;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+import com.google.gson.Gson;
+
+import spark.Request;
+import spark.Response;
+
+import dev.chux.gcp.crun.echo.metrics.EchoMetrics;
+import dev.chux.gcp.crun.echo.metrics.MetricsResponse;
+import dev.chux.gcp.crun.echo.metrics.TestMetrics;
+import dev.chux.gcp.crun.rest.RestController;
+
+import static spark.Spark.*;
+
+import static com.google.common.base.Optional.fromNullable;
+import static com.google.common.base.Strings.emptyToNull;
+
+/**
+ * Metrics of echoes by test, to be compared with what load generators report:
+ * all tests without per-second values, or a single one with them.
+ */
+public class MetricsController extends RestController {
+
+  public static final String NAMESPACE = RestModule.NAMESPACE + "/metrics";
+
+  private final Gson gson;
+  private final EchoMetrics metrics;
+
+  @Inject
+  public MetricsController(
+    final Gson gson,
+    final EchoMetrics metrics
+  ) {
+    this.gson = gson;
+    this.metrics = metrics;
+  }
+
+  @Override
+  public void register(
+    final String basePath
+  ) {
+    register(basePath, "metrics", null);
+    path(apiBase(), () -> {
+      get("", "application/json", this);
+      get("/:test", "application/json", this);
+      delete("", "application/json", this);
+      delete("/:test", "application/json", this);
+    });
+  }
+
+  @Override
+  public String endpoint(
+    final String basePath
+  ) {
+    return "[GET|DELETE] " + apiBase() + "[/:test]";
+  }
+
+  public Object handle(
+    final Request request,
+    final Response response
+  ) throws Exception {
+    final Optional<String> testId = fromNullable(emptyToNull(request.params(":test")));
+    final boolean delete = requestMethod(request).equals("DELETE");
+
+    final ImmutableList.Builder<TestMetrics.Snapshot> snapshots = ImmutableList.builder();
+    if (testId.isPresent()) {
+      final Optional<TestMetrics> test = this.metrics.get(testId.get());
+      if (!test.isPresent()) {
+        halt(404, "test not found: " + testId.get());
+        return null;
+      }
+      snapshots.add(test.get().snapshot(true));
+      if (delete) {
+        this.metrics.remove(testId.get());
+      }
+    } else {
+      for (final TestMetrics test : this.metrics.all()) {
+        snapshots.add(test.snapshot(false));
+      }
+      if (delete) {
+        this.metrics.clear();
+      }
+    }
+
+    response.type("application/json");
+    return this.gson.toJson(
+      new MetricsResponse(apiBase(), snapshots.build()),
+      MetricsResponse.class
+    );
+  }
+
+}
@@ -17,6 +17,9 @@ public class RestModule extends AbstractModule {
 
     routesBinder.addBinding(EchoController.NAMESPACE)
       .to(EchoController.class).in(Scopes.SINGLETON);
+
+    routesBinder.addBinding(MetricsController.NAMESPACE)
+      .to(MetricsController.class).in(Scopes.SINGLETON);
   }
 
 }
@@ -3,33 +3,53 @@ package dev.chux.gcp.crun.process;
 import java.lang.invoke.MethodHandles;
 
 import java.util.Collection;
+import java.util.concurrent.Executors;
 import java.util.function.Consumer;
 
 import com.google.inject.Inject;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Scheduler;
 import io.reactivex.rxjava3.functions.Function;
 import io.reactivex.rxjava3.schedulers.Schedulers;
 
+import dev.chux.gcp.crun.ConfigService;
 import dev.chux.gcp.crun.process.ProcessModule.ProcessMapper;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 class ManagedMultiProcessExecutor implements Consumer<ManagedMultiProcessProvider> {
 
   private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+  public static final String PROPERTY_THREADS = "process.executor.multi.threads";
+
+  private static final int DEFAULT_THREADS = 16;
+
   private final Function<ManagedProcessProvider, ManagedProcessExecution> processMapper;
+  private final int threads;
+  private final Scheduler scheduler;
 
   @Inject
   ManagedMultiProcessExecutor(
+    final ConfigService configService,
     @ProcessMapper final Function<
       ManagedProcessProvider,
       ManagedProcessExecution
     > processMapper
   ) {
     this.processMapper = processMapper;
+    this.threads = configService.getIntAppProp(PROPERTY_THREADS).or(DEFAULT_THREADS).intValue();
+    checkArgument(this.threads > 0, "invalid multi-process threads: %s", this.threads);
+    // bounded, unlike `Schedulers.io()`: processes beyond `threads` wait for a thread to become available
+    this.scheduler = Schedulers.from(Executors.newFixedThreadPool(this.threads,
+      new ThreadFactoryBuilder().setNameFormat("multi-process-%d").setDaemon(true).build()));
+    logger.info("multi-process threads: {}", this.threads);
   }
 
   @Override
@@ -40,13 +60,13 @@ class ManagedMultiProcessExecutor implements Consumer<ManagedMultiProcessProvide
   private final void execute(final Collection<ManagedProcessProvider> providers) {
     Flowable
       .fromIterable(providers)
-      .parallel()
-      .runOn(Schedulers.io())
+      .parallel(Math.max(1, Math.min(this.threads, providers.size())))
+      .runOn(this.scheduler)
       .map(this.processMapper)
       .sequential()
       .observeOn(Schedulers.computation())
       .blockingForEach((final ManagedProcessExecution execution) -> {
-        logger.info("{} => {}", execution.provider(), execution.exitCode());
+        logger.info("{} => {}", execution.provider(), execution);
       });
   }
 
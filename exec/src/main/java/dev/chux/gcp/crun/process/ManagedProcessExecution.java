@@ -1,16 +1,33 @@
 package dev.chux.gcp.crun.process;
 
+import java.time.Duration;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Optional;
+
 final class ManagedProcessExecution {
 
   private final ManagedProcessProvider provider;
   private final Integer exitCode;
+  private final Duration wallTime;
+  private final Optional<Duration> cpuTime;
+  private final long bytesOut;
+  private final boolean timedOut;
 
   ManagedProcessExecution(
     final ManagedProcessProvider provider,
-    final Integer exitCode
+    final Integer exitCode,
+    final Duration wallTime,
+    final Optional<Duration> cpuTime,
+    final long bytesOut,
+    final boolean timedOut
   ) {
     this.provider = provider;
     this.exitCode = exitCode;
+    this.wallTime = wallTime;
+    this.cpuTime = cpuTime;
+    this.bytesOut = bytesOut;
+    this.timedOut = timedOut;
   }
 
   Integer exitCode() {
@@ -21,4 +38,40 @@ final class ManagedProcessExecution {
     return this.provider;
   }
 
+  Duration wallTime() {
+    return this.wallTime;
+  }
+
+  /**
+   * CPU time of the process and all of its descendants; absent if the process could not be observed.
+   */
+  Optional<Duration> cpuTime() {
+    return this.cpuTime;
+  }
+
+  /**
+   * Bytes written to both stdout and stderr.
+   */
+  long bytesOut() {
+    return this.bytesOut;
+  }
+
+  /**
+   * Whether the process was killed for exceeding its deadline.
+   */
+  boolean timedOut() {
+    return this.timedOut;
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+      .add("exitCode", this.exitCode)
+      .add("wallTimeMs", this.wallTime.toMillis())
+      .add("cpuTimeMs", this.cpuTime.isPresent() ? Long.valueOf(this.cpuTime.get().toMillis()) : null)
+      .add("bytesOut", this.bytesOut)
+      .add("timedOut", this.timedOut)
+      .toString();
+  }
+
 }
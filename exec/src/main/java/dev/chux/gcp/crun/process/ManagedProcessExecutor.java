@@ -2,42 +2,215 @@ package dev.chux.gcp.crun.process;
 
 import java.lang.invoke.MethodHandles;
 
+import java.time.Duration;
+import java.time.Instant;
+
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
+import com.google.inject.Inject;
+
 import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Iterables;
+import com.google.common.io.CountingOutputStream;
+import com.google.common.io.ByteStreams;
 
 import ch.vorburger.exec.ManagedProcess;
 import ch.vorburger.exec.ManagedProcessBuilder;
 
+import dev.chux.gcp.crun.ConfigService;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Throwables.getStackTraceAsString;
 
 class ManagedProcessExecutor implements Consumer<ManagedProcessProvider>, Function<ManagedProcessProvider, Integer> {
   private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+  public static final String PROPERTY_TIMEOUT_MS = "process.executor.timeout-ms";
+  public static final String PROPERTY_CPU_SAMPLE_MS = "process.executor.cpu-sample-ms";
+
+  private static final long DEFAULT_CPU_SAMPLE_MS = 50L;
+  // the child is started by another thread, and may not have exec'd yet when `start` returns
+  private static final long MAX_FIND_BACKOFF_MS = 20L;
+
+  private static final Integer EXIT_CODE_FAILED = Integer.valueOf(-1);
+
+  // absent: processes run to completion, however long they take
+  private final Optional<Long> timeoutMillis;
+  private final long cpuSampleMillis;
+
+  @Inject
+  ManagedProcessExecutor(
+    final ConfigService configService
+  ) {
+    final Optional<Long> timeoutMillis = configService.getLongAppProp(PROPERTY_TIMEOUT_MS);
+    // deadlines are opt-in: without one, long operations (i/e: deployments) are never killed
+    this.timeoutMillis = (timeoutMillis.isPresent() && timeoutMillis.get().longValue() > 0)
+      ? timeoutMillis : Optional.<Long>absent();
+    this.cpuSampleMillis = configService.getLongAppProp(PROPERTY_CPU_SAMPLE_MS)
+      .or(DEFAULT_CPU_SAMPLE_MS).longValue();
+    checkArgument(this.cpuSampleMillis > 0, "invalid CPU sampling interval: %s", this.cpuSampleMillis);
+    logger.info("processes: [timeout={}, cpu_sample={}ms]",
+      this.timeoutMillis.isPresent() ? (this.timeoutMillis.get() + "ms") : "none", this.cpuSampleMillis);
+  }
+
   public void accept(final ManagedProcessProvider provider) {
     logger.info("provider: {}", provider);
     this.apply(provider);
   }
 
   public Integer apply(final ManagedProcessProvider provider) {
+    return this.execute(provider).exitCode();
+  }
+
+  /**
+   * Runs the process to completion, or kills it along with all of its descendants once its deadline expires,
+   * if {@code process.executor.timeout-ms} sets one, or once the caller is interrupted.
+   */
+  ManagedProcessExecution execute(final ManagedProcessProvider provider) {
+    final CountingOutputStream stdout = new CountingOutputStream(ByteStreams.nullOutputStream());
+    final CountingOutputStream stderr = new CountingOutputStream(ByteStreams.nullOutputStream());
+    final Stopwatch stopwatch = Stopwatch.createUnstarted();
+    Optional<ProcessTree> tree = Optional.absent();
+    ManagedProcess process = null;
+    Integer exitCode = EXIT_CODE_FAILED;
+    boolean timedOut = false;
     try {
       final ManagedProcessBuilder builder = provider.getBuilder()
-        .setDestroyOnShutdown(true).setConsoleBufferMaxLines(0);
-      return this.execute(builder.build());
-    } catch(Exception ex) {
+        .setDestroyOnShutdown(true).setConsoleBufferMaxLines(0)
+        // exit codes are reported, not thrown
+        .setIsSuccessExitValueChecker((exitValue) -> Boolean.TRUE)
+        .addStdOut(stdout).addStdErr(stderr);
+      final String marker = ProcessTree.newMarker();
+      builder.getEnvironment().put(ProcessTree.ENV_MARKER, marker);
+      process = builder.build();
+      final Instant startedAt = Instant.now();
+      stopwatch.start();
+      final long deadline = System.nanoTime()
+        + TimeUnit.MILLISECONDS.toNanos(this.timeoutMillis.or(Long.valueOf(0L)).longValue());
+      process.start();
+      tree = this.find(process, marker, builder.getExecutable(), startedAt, deadline);
+      if (this.waitFor(process, tree, deadline)) {
+        exitCode = Integer.valueOf(process.waitForExit());
+      } else {
+        timedOut = true;
+        this.kill(process, tree);
+      }
+      logger.debug("{} => {}", process.getProcLongName(), exitCode);
+    } catch(final InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      logger.error("interrupted while waiting for process: {}", provider);
+      // nobody is waiting for it anymore: it must not outlive the caller
+      if (process != null) {
+        this.kill(process, tree);
+      }
+    } catch(final Exception ex) {
       logger.error("process failed: {}", getStackTraceAsString(ex));
+      // interruptions may also come wrapped, i/e: while waiting for the exit code
+      if (process != null && isInterruption(ex)) {
+        Thread.currentThread().interrupt();
+        this.kill(process, tree);
+      }
+    } finally {
+      if (tree.isPresent()) {
+        tree.get().release();
+      }
+    }
+    final Duration wallTime = stopwatch.isRunning() ? stopwatch.elapsed() : Duration.ZERO;
+    final Optional<Duration> cpuTime = tree.isPresent()
+      ? Optional.of(tree.get().cpuTime()) : Optional.<Duration>absent();
+    final ManagedProcessExecution execution = new ManagedProcessExecution(provider, exitCode,
+      wallTime, cpuTime, stdout.getCount() + stderr.getCount(), timedOut);
+    if (timedOut) {
+      logger.warn("process killed after {}ms: {} | {}", this.timeoutMillis.get(), provider, execution);
     }
-    return Integer.valueOf(-1);
+    return execution;
   }
 
-  private final Integer execute(final ManagedProcess process) throws Exception {
-    process.start();
-    final Integer exitCode = Integer.valueOf(process.waitForExit());
-    logger.debug("{} => {}", process.getProcLongName(), exitCode);
-    return exitCode;
+  private static boolean isInterruption(final Exception ex) {
+    return Thread.currentThread().isInterrupted()
+      || Iterables.any(Throwables.getCausalChain(ex), InterruptedException.class::isInstance);
+  }
+
+  /**
+   * Retries until the tree is found, the process exits, or its deadline expires.
+   */
+  private Optional<ProcessTree> find(
+    final ManagedProcess process,
+    final String marker,
+    final String executable,
+    final Instant startedAt,
+    final long deadline
+  ) throws InterruptedException {
+    long backoffMillis = 1L;
+    while (true) {
+      final Optional<ProcessTree> tree = ProcessTree.find(marker, executable, startedAt);
+      if (tree.isPresent()) {
+        return tree;
+      }
+      if (!process.isAlive()) {
+        logger.debug("process exited before its tree was found: {}", process.getProcLongName());
+        return tree;
+      }
+      if (this.timeoutMillis.isPresent() && deadline - System.nanoTime() <= 0) {
+        logger.warn("process tree not found before the deadline, only the process itself can be killed: {}",
+          process.getProcLongName());
+        return tree;
+      }
+      TimeUnit.MILLISECONDS.sleep(backoffMillis);
+      backoffMillis = Math.min(backoffMillis * 2, MAX_FIND_BACKOFF_MS);
+    }
+  }
+
+  // `true` if the process exited before its deadline, if any
+  private boolean waitFor(
+    final ManagedProcess process,
+    final Optional<ProcessTree> tree,
+    final long deadline
+  ) throws Exception {
+    if (!this.timeoutMillis.isPresent()) {
+      if (tree.isPresent()) {
+        while (!tree.get().waitFor(this.cpuSampleMillis)) {
+          // CPU time is sampled until the process exits
+        }
+      }
+      return true;
+    }
+    if (!tree.isPresent()) {
+      final long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+      return (remainingMillis > 0)
+        ? process.waitForExitMaxMs(remainingMillis) != ManagedProcess.EXITVALUE_STILL_RUNNING
+        : !process.isAlive();
+    }
+    long remainingMillis;
+    while ((remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())) > 0) {
+      if (tree.get().waitFor(Math.min(this.cpuSampleMillis, remainingMillis))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void kill(
+    final ManagedProcess process,
+    final Optional<ProcessTree> tree
+  ) {
+    if (tree.isPresent()) {
+      tree.get().kill();
+    }
+    try {
+      if (process.isAlive()) {
+        process.destroy();
+      }
+    } catch(final Exception ex) {
+      logger.error("failed to destroy process: {}", getStackTraceAsString(ex));
+    }
   }
 
 }
@@ -4,10 +4,6 @@ import java.lang.invoke.MethodHandles;
 
 import com.google.inject.Inject;
 
-import com.google.common.base.Function;
-
-import dev.chux.gcp.crun.process.ProcessModule.ProcessConsumer;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -16,22 +12,20 @@ class ManagedProcessMapper implements
 
   private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
-  private final Function<ManagedProcessProvider, Integer> processConsumer;
+  private final ManagedProcessExecutor processExecutor;
 
   @Inject
   ManagedProcessMapper(
-    @ProcessConsumer final Function<
-      ManagedProcessProvider, Integer
-    > processConsumer
+    final ManagedProcessExecutor processExecutor
   ) {
-    this.processConsumer = processConsumer;
+    this.processExecutor = processExecutor;
   }
 
   @Override
   public ManagedProcessExecution apply(final ManagedProcessProvider provider) {
-    final Integer exitCode = this.processConsumer.apply(provider);
-    logger.info("{} => {}", provider, exitCode);
-    return new ManagedProcessExecution(provider, exitCode);
+    final ManagedProcessExecution execution = this.processExecutor.execute(provider);
+    logger.info("{} => {}", provider, execution);
+    return execution;
   }
 
 }
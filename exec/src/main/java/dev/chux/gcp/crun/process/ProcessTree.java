@@ -0,0 +1,151 @@
+package dev.chux.gcp.crun.process;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Optional;
+import com.google.common.primitives.Bytes;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A child process of this JVM along with all of its descendants: curl wrappers are scripts
+ * that fork the actual runtime, so both CPU time and termination must cover the whole tree.
+ *
+ * <p>CPU time is only readable while a process is alive; it is sampled while waiting for
+ * the process to exit, so it is a lower bound off by at most one sampling interval.</p>
+ */
+final class ProcessTree {
+
+  /**
+   * Set on every managed process; wrappers {@code exec} into the runtime, so its command line is not reliable.
+   */
+  static final String ENV_MARKER = "X_MANAGED_PROCESS_ID";
+
+  // children already claimed by an execution; executables may be shared by concurrent executions
+  private static final Set<Long> CLAIMED = ConcurrentHashMap.newKeySet();
+
+  // `startInstant` is only as precise as the OS clock ticks
+  private static final Duration START_TOLERANCE = Duration.ofMillis(100);
+
+  private final ProcessHandle root;
+  private final Map<Long, Long> cpuNanos;
+
+  private ProcessTree(final ProcessHandle root) {
+    this.root = root;
+    this.cpuNanos = new ConcurrentHashMap<Long, Long>();
+  }
+
+  static String newMarker() {
+    return UUID.randomUUID().toString();
+  }
+
+  /**
+   * Finds the child of this JVM which started at or after {@code startedAt} and carries {@code marker}
+   * in its environment; where environments are not readable, the one running {@code executable}.
+   */
+  static Optional<ProcessTree> find(
+    final String marker,
+    final String executable,
+    final Instant startedAt
+  ) {
+    final Instant notBefore = startedAt.minus(START_TOLERANCE);
+    for (final ProcessHandle child : (Iterable<ProcessHandle>) ProcessHandle.current().children()::iterator) {
+      final ProcessHandle.Info info = child.info();
+      final boolean isNew = !info.startInstant().orElse(Instant.MAX).isBefore(notBefore);
+      if (isNew && matches(child, marker, executable) && CLAIMED.add(Long.valueOf(child.pid()))) {
+        return Optional.of(new ProcessTree(child));
+      }
+    }
+    return Optional.absent();
+  }
+
+  private static boolean matches(
+    final ProcessHandle process,
+    final String marker,
+    final String executable
+  ) {
+    final Path environ = Paths.get("/proc", Long.toString(process.pid()), "environ");
+    try {
+      // entries are NUL-terminated
+      return Bytes.indexOf(Files.readAllBytes(environ),
+        (ENV_MARKER + "=" + marker + "\0").getBytes(UTF_8)) >= 0;
+    } catch(final Exception ex) {
+      final ProcessHandle.Info info = process.info();
+      return info.commandLine().or(() -> info.command())
+        .map((command) -> command.contains(executable)).orElse(Boolean.FALSE).booleanValue();
+    }
+  }
+
+  long pid() {
+    return this.root.pid();
+  }
+
+  /**
+   * Waits at most {@code millis} for the root process to exit; CPU time is sampled first.
+   */
+  boolean waitFor(final long millis) throws InterruptedException {
+    this.sample();
+    try {
+      this.root.onExit().get(millis, TimeUnit.MILLISECONDS);
+      return true;
+    } catch(final TimeoutException ex) {
+      return false;
+    } catch(final ExecutionException ex) {
+      return !this.root.isAlive();
+    }
+  }
+
+  private void sample() {
+    this.sample(this.root);
+    this.root.descendants().forEach(this::sample);
+  }
+
+  private void sample(final ProcessHandle process) {
+    process.info().totalCpuDuration().ifPresent((cpu) ->
+      this.cpuNanos.merge(Long.valueOf(process.pid()), Long.valueOf(cpu.toNanos()), Math::max));
+  }
+
+  Duration cpuTime() {
+    long nanos = 0L;
+    for (final Long cpu : this.cpuNanos.values()) {
+      nanos += cpu.longValue();
+    }
+    return Duration.ofNanos(nanos);
+  }
+
+  /**
+   * Forcibly kills all descendants, and then the root process.
+   */
+  void kill() {
+    this.root.descendants().forEach(ProcessHandle::destroyForcibly);
+    this.root.destroyForcibly();
+  }
+
+  void release() {
+    CLAIMED.remove(Long.valueOf(this.root.pid()));
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+      .add("pid", this.root.pid())
+      .add("alive", this.root.isAlive())
+      .add("cpu", this.cpuTime())
+      .toString();
+  }
+
+}
@@ -62,8 +62,32 @@ func (c *curl) addHeader(
 	}
 }
 
+// same as `curl --header @<file>`: one header per line, `-` is stdin
+func (c *curl) headerLines(cmdHeaders []string) []string {
+	lines := []string{}
+	for _, cmdHeader := range cmdHeaders {
+		if !strings.HasPrefix(cmdHeader, "@") {
+			lines = append(lines, cmdHeader)
+			continue
+		}
+		var content []byte
+		var err error
+		if file := cmdHeader[1:]; file == "-" {
+			content, err = io.ReadAll(os.Stdin)
+		} else {
+			content, err = os.ReadFile(file)
+		}
+		if err != nil {
+			fmt.Fprintln(os.Stderr, err)
+			continue
+		}
+		lines = append(lines, strings.Split(string(content), "\n")...)
+	}
+	return lines
+}
+
 func (c *curl) setHeaders(cmd *cli.Command, request *http.Request) {
-	for _, cmdHeader := range cmd.StringSlice("header") {
+	for _, cmdHeader := range c.headerLines(cmd.StringSlice("header")) {
 		headerParts := strings.SplitN(cmdHeader, ":", 2)
 		if len(headerParts) == 2 {
 			c.addHeader(request, &headerParts[0], &headerParts[1])
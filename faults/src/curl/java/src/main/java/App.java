@@ -1,5 +1,12 @@
 package dev.chux.gcp.crun.curl;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+
 import java.util.List;
 import java.util.Map;
 
@@ -12,16 +19,27 @@ import java.net.http.HttpResponse.BodyHandler;
 import java.net.http.HttpResponse.BodyHandlers;
 import java.net.URI;
 
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
 import java.time.Duration;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableMap;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
 import org.apache.commons.cli.*;
 
 import static java.net.http.HttpRequest.BodyPublishers.noBody;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static java.util.stream.Collectors.toList;
+
 import static com.google.common.base.Optional.absent;
 import static com.google.common.base.Optional.fromNullable;
 import static com.google.common.base.Preconditions.checkArgument;
@@ -34,6 +52,8 @@ public final class App {
   private static final String OPTION_HEADER = "header";
   private static final String OPTION_DATA_RAW = "data-raw";
 
+  private static final String FLAG_DAEMON = "--daemon";
+
   // must match: https://curl.se/docs/manpage.html
   private static final Options OPTIONS = new Options();
 
@@ -53,6 +73,11 @@ public final class App {
   }
 
   public static void main(final String[] args) {
+    if (args.length == 1 && FLAG_DAEMON.equals(args[0])) {
+      daemon();
+      return;
+    }
+
     final CommandLineParser parser = new DefaultParser();
     final Optional<CommandLine> maybeCmdln = command(parser, args);
 
@@ -79,49 +104,111 @@ public final class App {
     final HttpClient client = newHttpClient();
     final HttpRequest request = newHttpRequest(url, method, headers, body);
 
-    logRequest(request, data);
+    logRequest(System.out, request, data);
 
-    exec(client, request);
+    exec(client, request, System.out, System.err);
   }
 
-  private static final void logHeader(final String name, final List<String> value) {
-      System.out.print("\t- Header[");
-      System.out.print(name);
-      System.out.print("]=");
-      System.out.println(value);
+  /**
+   * Serves requests from stdin, one JSON document per line, until stdin is closed;
+   * each result is a single JSON line on stdout carrying what a one-shot run would print.
+   */
+  private static final void daemon() {
+    final Gson gson = new Gson();
+    final PrintStream results = new PrintStream(System.out, true, UTF_8);
+    // nothing but results may ever reach stdout
+    System.setOut(System.err);
+    try {
+      final BufferedReader requests = new BufferedReader(new InputStreamReader(System.in, UTF_8));
+      String line;
+      while ((line = requests.readLine()) != null) {
+        if (!isNullOrEmpty(line)) {
+          results.println(gson.toJson(serve(gson.fromJson(line, JsonObject.class))));
+        }
+      }
+    } catch(final Exception ex) {
+      ex.printStackTrace(System.err);
+      System.exit(1);
+    }
   }
 
-  private static final void logHeaders(final Map<String, List<String>> headers) {
+  private static final JsonObject serve(final JsonObject json) {
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    final ByteArrayOutputStream error = new ByteArrayOutputStream();
+    final PrintStream out = new PrintStream(output, true, UTF_8);
+    final PrintStream err = new PrintStream(error, true, UTF_8);
+    try {
+      final String data = string(json, "data");
+      final ImmutableMap.Builder<String, String> headers = ImmutableMap.builder();
+      if (json.has("headers")) {
+        for (final Map.Entry<String, JsonElement> header : json.getAsJsonObject("headers").entrySet()) {
+          headers.put(header.getKey(), header.getValue().getAsString());
+        }
+      }
+      final String method = string(json, "method");
+      final HttpRequest request = newHttpRequest(string(json, "url"),
+        isNullOrEmpty(method) ? "GET" : method, headers.build(), body(data));
+      logRequest(out, request, data);
+      // a client per request: connections are never reused, same as a one-shot run
+      exec(newHttpClient(), request, out, err);
+    } catch(final Exception ex) {
+      ex.printStackTrace(err);
+    }
+    final JsonObject result = new JsonObject();
+    result.add("id", json.get("id"));
+    result.addProperty("output", output.toString(UTF_8));
+    result.addProperty("error", error.toString(UTF_8));
+    return result;
+  }
+
+  private static final String string(final JsonObject json, final String name) {
+    final JsonElement value = json.get(name);
+    return (value == null || value.isJsonNull()) ? null : value.getAsString();
+  }
+
+  private static final void logHeader(final PrintStream out, final String name, final List<String> value) {
+      out.print("\t- Header[");
+      out.print(name);
+      out.print("]=");
+      out.println(value);
+  }
+
+  private static final void logHeaders(final PrintStream out, final Map<String, List<String>> headers) {
     for(final Map.Entry<String, List<String>> header : headers.entrySet()) {
-      logHeader(header.getKey(), header.getValue());
+      logHeader(out, header.getKey(), header.getValue());
     }
   }
 
-  private static final void logRequest(final HttpRequest request, final String body) {
-    System.out.print("\n* Request: ");
-    System.out.println(request.method());  
-    System.out.println("\n* Request Headers:");
-    logHeaders(request.headers().map());
-    System.out.print("\n* Request Body:\n\t");
-    System.out.println(body);
+  private static final void logRequest(final PrintStream out, final HttpRequest request, final String body) {
+    out.print("\n* Request: ");
+    out.println(request.method());  
+    out.println("\n* Request Headers:");
+    logHeaders(out, request.headers().map());
+    out.print("\n* Request Body:\n\t");
+    out.println(body);
   }
 
-  private static final void logResponse(final HttpResponse<String> response) {
-    System.out.print("\n* Response: ");
-    System.out.println(response.statusCode());  
-    System.out.println("\n* Response Headers:");
-    logHeaders(response.headers().map());
-    System.out.print("\n* Response Body:\n\t");
-    System.out.println(response.body());
+  private static final void logResponse(final PrintStream out, final HttpResponse<String> response) {
+    out.print("\n* Response: ");
+    out.println(response.statusCode());  
+    out.println("\n* Response Headers:");
+    logHeaders(out, response.headers().map());
+    out.print("\n* Response Body:\n\t");
+    out.println(response.body());
   }
 
-  private static final void exec(final HttpClient client, final HttpRequest request) {
+  private static final void exec(
+    final HttpClient client,
+    final HttpRequest request,
+    final PrintStream out,
+    final PrintStream err
+  ) {
     try {
       final BodyHandler<String> handler = BodyHandlers.ofString();
       final HttpResponse<String> response = client.send(request, handler);
-      logResponse(response);
+      logResponse(out, response);
     } catch(Exception ex) {
-      ex.printStackTrace(System.err);
+      ex.printStackTrace(err);
     }
   }
 
@@ -206,11 +293,29 @@ public final class App {
 
     final ImmutableMap.Builder<String, String> headersMap = ImmutableMap.<String, String>builder();
     for(final String header : headers) {
-      setHeader(headersMap, header);
+      if (header.startsWith("@")) {
+        for (final String line : headerLines(header.substring(1))) {
+          setHeader(headersMap, line);
+        }
+      } else {
+        setHeader(headersMap, header);
+      }
     }
     return headersMap.build();
   }
 
+  // same as `curl --header @<file>`: one header per line, `-` is stdin
+  private static final List<String> headerLines(final String file) {
+    try {
+      if ("-".equals(file)) {
+        return new BufferedReader(new InputStreamReader(System.in, UTF_8)).lines().collect(toList());
+      }
+      return Files.readAllLines(Paths.get(file), UTF_8);
+    } catch(final IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
   private static final String URL(final CommandLine cmdln) {
     final String[] args = cmdln.getArgs();
     if (args.length == 0) {
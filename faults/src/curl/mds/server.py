@@ -0,0 +1,86 @@
+#!/usr/bin/env python3
+
+# Local stand-in for the GCE metadata server: serves unsigned tokens of the default
+# service account, so that `gcurl`, `gidcurl` and the faults service token cache
+# can be exercised outside of Google Cloud.
+#
+# usage: python3 server.py [port]
+#        GCE_METADATA_HOST=127.0.0.1:<port> java -jar faults.jar ...
+#
+# `X_TOKEN_TTL` sets the lifetime of tokens in seconds (default: 3600).
+
+import base64
+import json
+import os
+import sys
+import time
+import uuid
+
+from http.server import BaseHTTPRequestHandler, ThreadingHTTPServer
+from urllib.parse import parse_qs, urlparse
+
+BASE_PATH = "/computeMetadata/v1/instance/service-accounts/default"
+TOKEN_TTL = int(os.environ.get("X_TOKEN_TTL", "3600"))
+EMAIL = "faults@stand-in.iam.gserviceaccount.com"
+
+
+def b64url(data):
+    return base64.urlsafe_b64encode(data).rstrip(b"=").decode("ascii")
+
+
+def id_token(audience):
+    now = int(time.time())
+    header = {"alg": "none", "typ": "JWT"}
+    claims = {
+        "iss": "https://accounts.google.com",
+        "aud": audience,
+        "sub": EMAIL,
+        "email": EMAIL,
+        "iat": now,
+        "exp": now + TOKEN_TTL,
+    }
+    return ".".join([
+        b64url(json.dumps(header).encode("utf-8")),
+        b64url(json.dumps(claims).encode("utf-8")),
+        "",
+    ])
+
+
+class MetadataHandler(BaseHTTPRequestHandler):
+
+    def do_GET(self):
+        if self.headers.get("Metadata-Flavor") != "Google":
+            return self.reply(403, "text/plain", "Missing Metadata-Flavor:Google header.")
+
+        url = urlparse(self.path)
+        query = parse_qs(url.query)
+
+        if url.path == BASE_PATH + "/token":
+            token = {
+                "access_token": "stand-in." + uuid.uuid4().hex,
+                "expires_in": TOKEN_TTL,
+                "token_type": "Bearer",
+            }
+            return self.reply(200, "application/json", json.dumps(token))
+
+        if url.path == BASE_PATH + "/identity":
+            audience = query.get("audience", [""])[0]
+            if not audience:
+                return self.reply(400, "text/plain", "non-empty audience parameter required")
+            return self.reply(200, "text/plain", id_token(audience))
+
+        return self.reply(404, "text/plain", "Not Found")
+
+    def reply(self, status, content_type, body):
+        data = body.encode("utf-8")
+        self.send_response(status)
+        self.send_header("Metadata-Flavor", "Google")
+        self.send_header("Content-Type", content_type)
+        self.send_header("Content-Length", str(len(data)))
+        self.end_headers()
+        self.wfile.write(data)
+
+
+if __name__ == "__main__":
+    port = int(sys.argv[1]) if len(sys.argv) > 1 else 8099
+    ThreadingHTTPServer(("127.0.0.1", port), MetadataHandler).serve_forever()
@@ -1,3 +1,8 @@
+const fs = require('fs');
+const http = require('http');
+const https = require('https');
+const readline = require('readline');
+const util = require('util');
 const { Command } = require('commander');
 const axios = require('axios');
 const program = new Command();
@@ -8,9 +13,20 @@ class Curl {
     this.curl = curl;
   }
 
+  // same as `curl --header @<file>`: one header per line, `-` is stdin
+  #headerLines() {
+    return this.curl.headers.flatMap(header => {
+      if (!header.startsWith("@")) {
+        return [header];
+      }
+      const file = header.substring(1);
+      return fs.readFileSync((file == "-") ? 0 : file, 'utf8').split(/\r?\n/);
+    });
+  }
+
   #headers() {
     var headers = new Map();
-    this.curl.headers.forEach(header => {
+    this.#headerLines().forEach(header => {
       const parts = header.split(":", 2);
       if (parts.length == 2) {
         headers.set(parts[0].trim(), parts[1].trim());
@@ -54,7 +70,7 @@ class Curl {
       });
   }
 
-  async exec() {
+  async exec(agents = {}) {
     const method = this.#method();
     const headers = this.#headers();
 
@@ -66,6 +82,7 @@ class Curl {
         url: this.curl.url,
         headers: Object.fromEntries(headers),
         data: this.curl.data,
+        ...agents,
       });
       this.#logResponse(response);
     } catch (ex) {
@@ -91,6 +108,59 @@ const newCurl = function (program) {
   return new Curl(curl);
 }
 
+const serve = async function (request) {
+  const output = [];
+  const error = [];
+  const log = console.log;
+  const logError = console.error;
+  // requests are served one at a time: console can be captured while one runs
+  console.log = (...args) => output.push(util.format(...args) + "\n");
+  console.error = (...args) => error.push(util.format(...args) + "\n");
+  try {
+    const curl = new Curl({
+      url: request.url,
+      method: request.method || "GET",
+      headers: Object.entries(request.headers || {}).map(([name, value]) => `${name}: ${value}`),
+      data: request.data || "",
+    });
+    // connections are never reused, same as a one-shot run
+    await curl.exec({
+      httpAgent: new http.Agent({ keepAlive: false }),
+      httpsAgent: new https.Agent({ keepAlive: false }),
+    });
+  } catch (ex) {
+    console.error(ex);
+  } finally {
+    console.log = log;
+    console.error = logError;
+  }
+  return { id: request.id, output: output.join(""), error: error.join("") };
+}
+
+// serves requests from stdin, one JSON document per line, until stdin is closed;
+// each result is a single JSON line on stdout carrying what a one-shot run would print.
+const daemon = async function () {
+  const results = process.stdout;
+  // nothing but results may ever reach stdout
+  console.log = console.error;
+  const requests = readline.createInterface({ input: process.stdin, terminal: false });
+  for await (const line of requests) {
+    if (line.trim().length == 0) {
+      continue;
+    }
+    let request = {};
+    try {
+      request = JSON.parse(line);
+    } catch (ex) {
+      console.error(ex);
+    }
+    const result = request.url
+      ? await serve(request)
+      : { id: request.id, output: "", error: "invalid request" };
+    results.write(JSON.stringify(result) + "\n");
+  }
+}
+
 // must match: https://curl.se/docs/manpage.html
 program
   // https://curl.se/docs/manpage.html#-X
@@ -101,8 +171,12 @@ program
   .option('-D --data-raw <string>', 'data to be sent in the HTTP request payload', "")
   .argument('<string>', 'URL');
 
-program.parse(process.argv);
+if (process.argv.length == 3 && process.argv[2] == '--daemon') {
+  daemon();
+} else {
+  program.parse(process.argv);
 
-const curl = newCurl(program);
+  const curl = newCurl(program);
 
-curl.exec();
+  curl.exec();
+}
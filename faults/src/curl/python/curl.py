@@ -1,3 +1,6 @@
+import contextlib
+import io
+import json
 import sys
 import traceback
 from typing import Dict, List, Optional, Union
@@ -27,8 +30,21 @@ class Curl:
             return "GET"
         return self.method
 
+    # same as `curl --header @<file>`: one header per line, `-` is stdin
+    def __headerLines(self, cmdHeaders: List[str]) -> List[str]:
+        lines = []
+        for cmdHeader in cmdHeaders:
+            if not cmdHeader.startswith("@"):
+                lines.append(cmdHeader)
+            elif cmdHeader == "@-":
+                lines.extend(sys.stdin.read().splitlines())
+            else:
+                with open(cmdHeader[1:]) as file:
+                    lines.extend(file.read().splitlines())
+        return lines
+
     def __headers(self) -> Dict[str, str]:
-        cmdHeaders = self.headers or []
+        cmdHeaders = self.__headerLines(self.headers or [])
         headers = {}
         for cmdHeader in cmdHeaders:
             parts = cmdHeader.split(":", 2)
@@ -87,5 +103,47 @@ def main(
     curl.exec()
 
 
+def serve(request: Dict) -> Dict[str, str]:
+    output, error = io.StringIO(), io.StringIO()
+    with contextlib.redirect_stdout(output), contextlib.redirect_stderr(error):
+        try:
+            headers = [
+                f"{name}: {value}"
+                for name, value in (request.get("headers") or {}).items()
+            ]
+            curl = Curl(
+                request["url"], request.get("method"), headers, request.get("data")
+            )
+            curl.exec()
+        except SystemExit:
+            pass
+        except Exception:
+            traceback.print_exc()
+    return {"output": output.getvalue(), "error": error.getvalue()}
+
+
+# serves requests from stdin, one JSON document per line, until stdin is closed;
+# each result is a single JSON line on stdout carrying what a one-shot run would print.
+def daemon() -> None:
+    results = sys.stdout
+    # nothing but results may ever reach stdout
+    sys.stdout = sys.stderr
+    for line in sys.stdin:
+        if not line.strip():
+            continue
+        try:
+            request = json.loads(line)
+        except Exception:
+            traceback.print_exc()
+            request = {}
+        result = serve(request) if "url" in request else {"output": "", "error": "invalid request"}
+        result["id"] = request.get("id")
+        results.write(json.dumps(result) + "\n")
+        results.flush()
+
+
 if __name__ == "__main__":
-    typer.run(main)
+    if sys.argv[1:] == ["--daemon"]:
+        daemon()
+    else:
+        typer.run(main)
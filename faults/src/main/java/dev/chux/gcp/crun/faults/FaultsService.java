@@ -2,12 +2,22 @@ package dev.chux.gcp.crun.faults;
 
 import java.io.OutputStream;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
 import com.google.inject.Inject;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
 
+import com.google.gson.Gson;
+
+import dev.chux.gcp.crun.faults.binary.Binary;
+import dev.chux.gcp.crun.faults.binary.Curl;
+import dev.chux.gcp.crun.faults.binary.CurlDaemons;
+import dev.chux.gcp.crun.faults.binary.InProcessJavaCurl;
 import dev.chux.gcp.crun.faults.command.FaultCommand;
 import dev.chux.gcp.crun.faults.command.FaultCommandFactory;
 
@@ -23,17 +33,26 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 public class FaultsService {
 
+  private final Gson gson;
   private final FaultCommandFactory faultCommandFactory;
+  private final CurlDaemons curlDaemons;
+  private final InProcessJavaCurl inProcessJavaCurl;
 
   private final Consumer<ManagedProcessProvider> processConsumer;
   private final Consumer<ManagedMultiProcessProvider> multiProcessConsumer;
   
   @Inject
   FaultsService(
+    Gson gson,
     FaultCommandFactory faultCommandFactory,
+    CurlDaemons curlDaemons,
+    InProcessJavaCurl inProcessJavaCurl,
     @ProcessConsumer Consumer<ManagedProcessProvider> processConsumer,
     @MultiProcessConsumer Consumer<ManagedMultiProcessProvider> multiProcessConsumer) {
+    this.gson = gson;
     this.faultCommandFactory = faultCommandFactory;
+    this.curlDaemons = curlDaemons;
+    this.inProcessJavaCurl = inProcessJavaCurl;
     this.processConsumer = processConsumer;
     this.multiProcessConsumer = multiProcessConsumer;
   }
@@ -43,17 +62,144 @@ public class FaultsService {
     final Optional<String> runtime,
     final Optional<OutputStream> stdout,
     final Optional<OutputStream> stderr
+  ) {
+    this.runHttpRequest(request, runtime, stdout, stderr, () -> {});
+  }
+
+  /**
+   * @param started runs right before the request is sent: once a daemon worker was acquired, or
+   *                before spawning; time spent waiting for a busy worker is not part of the request.
+   */
+  public void runHttpRequest(
+    final HttpRequest request,
+    final Optional<String> runtime,
+    final Optional<OutputStream> stdout,
+    final Optional<OutputStream> stderr,
+    final Runnable started
   ) {
     final FaultCommand command = this.faultCommandFactory
       .newHttpRequestCommand(request, runtime, stdout, stderr);
 
     if (runtime.isPresent()) {
-      this.run(command);
+      if (!this.serve(runtime.get(), request, stdout, stderr, started)) {
+        started.run();
+        this.run(command);
+      }
     } else {
-      this.runAll(command);
+      started.run();
+      this.runAll(request, command, stdout, stderr);
+    }
+  }
+
+  /**
+   * Runtimes served in-process or by a daemon run while the others are spawned, all in parallel;
+   * runtimes whose daemon could not take the request are spawned afterwards.
+   *
+   * <p>Each runtime writes into its own buffers, which are multiplexed into {@code stdout}
+   * as NDJSON frames tagged with the runtime and the stream: see {@link OutputMultiplexer}.</p>
+   */
+  private final void runAll(
+    final HttpRequest request,
+    final FaultCommand<HttpRequest> command,
+    final Optional<OutputStream> stdout,
+    final Optional<OutputStream> stderr
+  ) {
+    final Optional<OutputMultiplexer> output = stdout.isPresent()
+      ? Optional.of(new OutputMultiplexer(this.gson, stdout.get()))
+      : Optional.<OutputMultiplexer>absent();
+
+    final ImmutableList.Builder<CompletableFuture<Boolean>> served = ImmutableList.builder();
+    final ImmutableList.Builder<String> submitted = ImmutableList.builder();
+    final ImmutableList.Builder<ManagedProcessProvider> spawned = ImmutableList.builder();
+    for (final ManagedProcessProvider provider : command.getProviders()) {
+      final String runtime = runtimeOf(provider);
+      final Optional<OutputStream> runtimeStdout = stdout(output, runtime);
+      final Optional<OutputStream> runtimeStderr = stderr(output, runtime, stderr);
+      if (this.supports(runtime, request)) {
+        submitted.add(runtime);
+        served.add(this.submit(runtime, request, runtimeStdout, runtimeStderr));
+      } else {
+        spawned.add(this.faultCommandFactory.newHttpRequestCommand(
+          request, Optional.of(runtime), runtimeStdout, runtimeStderr));
+      }
+    }
+    final List<String> runtimes = submitted.build();
+    final List<CompletableFuture<Boolean>> results = served.build();
+
+    final Collection<ManagedProcessProvider> providers = spawned.build();
+    this.runAll(() -> providers);
+
+    for (int i = 0; i < results.size(); i++) {
+      if (!results.get(i).join().booleanValue()) {
+        final String runtime = runtimes.get(i);
+        this.run(this.faultCommandFactory.newHttpRequestCommand(request, Optional.of(runtime),
+          stdout(output, runtime), stderr(output, runtime, stderr)));
+      }
+    }
+
+    if (output.isPresent()) {
+      output.get().finish();
     }
   }
 
+  private static final Optional<OutputStream> stdout(
+    final Optional<OutputMultiplexer> output,
+    final String runtime
+  ) {
+    return output.isPresent()
+      ? Optional.of(output.get().stdout(runtime))
+      : Optional.<OutputStream>absent();
+  }
+
+  private static final Optional<OutputStream> stderr(
+    final Optional<OutputMultiplexer> output,
+    final String runtime,
+    final Optional<OutputStream> stderr
+  ) {
+    return output.isPresent()
+      ? Optional.of(output.get().stderr(runtime))
+      : stderr;
+  }
+
+  private final boolean supports(
+    final String runtime,
+    final HttpRequest request
+  ) {
+    return this.inProcessJavaCurl.supports(runtime, request)
+      || this.curlDaemons.supports(runtime, request);
+  }
+
+  // in-process execution is preferred over daemons: `false` means that the request must be spawned
+  private final boolean serve(
+    final String runtime,
+    final HttpRequest request,
+    final Optional<OutputStream> stdout,
+    final Optional<OutputStream> stderr,
+    final Runnable started
+  ) {
+    if (this.inProcessJavaCurl.supports(runtime, request)) {
+      started.run();
+      return this.inProcessJavaCurl.run(runtime, request, stdout, stderr);
+    }
+    return this.curlDaemons.run(runtime, request, stdout, stderr, started);
+  }
+
+  private final CompletableFuture<Boolean> submit(
+    final String runtime,
+    final HttpRequest request,
+    final Optional<OutputStream> stdout,
+    final Optional<OutputStream> stderr
+  ) {
+    if (this.inProcessJavaCurl.supports(runtime, request)) {
+      return this.inProcessJavaCurl.submit(runtime, request, stdout, stderr);
+    }
+    return this.curlDaemons.submit(runtime, request, stdout, stderr);
+  }
+
+  private static final String runtimeOf(final ManagedProcessProvider provider) {
+    return (provider instanceof Binary) ? ((Binary<?>) provider).get() : Curl.Linux.BINARY;
+  }
+
   public void runGoogleAPIsHttpRequest(
     final GoogleAPIsHttpRequest request,
     final String runtime,
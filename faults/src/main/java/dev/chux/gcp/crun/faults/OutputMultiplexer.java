@@ -0,0 +1,295 @@
+package dev.chux.gcp.crun.faults;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Throwables.getStackTraceAsString;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Gives each runtime of a parallel execution its own stdout and stderr, and interleaves them
+ * into a single stream as NDJSON frames, one per chunk of complete lines:
+ *
+ * <pre>
+ * {"runtime":"java","stream":"stdout","data":"* Response: 200\n"}
+ * {"runtime":"java","done":true,"stdout_bytes":512,"stderr_bytes":0}
+ * </pre>
+ *
+ * <p>Lines are only split across frames when longer than {@value #MAX_LINE_BYTES} bytes, and then only
+ * between UTF-8 characters; frames are written and flushed one at a time.</p>
+ */
+final class OutputMultiplexer {
+  private static final Logger logger = LoggerFactory.getLogger(OutputMultiplexer.class);
+
+  static final String STDOUT = "stdout";
+  static final String STDERR = "stderr";
+
+  // buffers are reused across executions; larger ones are left to the garbage collector
+  private static final int POOL_SIZE = 64;
+  private static final int MAX_POOLED_BUFFER_BYTES = 64 * 1024;
+  private static final Queue<LineBuffer> POOL = new ConcurrentLinkedQueue<LineBuffer>();
+  private static final AtomicInteger POOLED = new AtomicInteger(0);
+
+  // output without newlines must not be buffered without bound
+  static final int MAX_LINE_BYTES = 16 * 1024;
+
+  private final Gson gson;
+  private final OutputStream output;
+  private final Map<String, Sink> sinks;
+
+  OutputMultiplexer(
+    final Gson gson,
+    final OutputStream output
+  ) {
+    this.gson = gson;
+    this.output = output;
+    this.sinks = Maps.newLinkedHashMap();
+  }
+
+  synchronized OutputStream stdout(final String runtime) {
+    return this.sink(runtime, STDOUT);
+  }
+
+  synchronized OutputStream stderr(final String runtime) {
+    return this.sink(runtime, STDERR);
+  }
+
+  private Sink sink(final String runtime, final String stream) {
+    return this.sinks.computeIfAbsent(runtime + "/" + stream, (key) -> new Sink(runtime, stream));
+  }
+
+  /**
+   * Emits whatever is left in every buffer, followed by one {@code done} frame per runtime.
+   */
+  void finish() {
+    final ImmutableList<Sink> sinks;
+    synchronized(this) {
+      sinks = ImmutableList.copyOf(this.sinks.values());
+    }
+    final Map<String, JsonObject> done = Maps.newLinkedHashMap();
+    for (final Sink sink : sinks) {
+      final long bytes = sink.finish();
+      done.computeIfAbsent(sink.runtime, (runtime) -> {
+        final JsonObject frame = new JsonObject();
+        frame.addProperty("runtime", runtime);
+        frame.addProperty("done", Boolean.TRUE);
+        return frame;
+      }).addProperty(sink.stream + "_bytes", Long.valueOf(bytes));
+    }
+    for (final JsonObject frame : done.values()) {
+      this.emit(frame);
+    }
+  }
+
+  private void emit(
+    final String runtime,
+    final String stream,
+    final byte[] bytes,
+    final int offset,
+    final int length
+  ) {
+    final JsonObject frame = new JsonObject();
+    frame.addProperty("runtime", runtime);
+    frame.addProperty("stream", stream);
+    frame.addProperty("data", new String(bytes, offset, length, UTF_8));
+    this.emit(frame);
+  }
+
+  private void emit(final JsonObject frame) {
+    final byte[] bytes = (this.gson.toJson(frame) + "\n").getBytes(UTF_8);
+    // same lock as every other writer of a shared stream
+    synchronized(this.output) {
+      try {
+        this.output.write(bytes);
+        this.output.flush();
+      } catch(final IOException ex) {
+        logger.error("failed to write output frame: {}", getStackTraceAsString(ex));
+      }
+    }
+  }
+
+  private static LineBuffer borrow() {
+    final LineBuffer buffer = POOL.poll();
+    if (buffer == null) {
+      return new LineBuffer(1024);
+    }
+    POOLED.decrementAndGet();
+    return buffer;
+  }
+
+  private static void giveBack(
+    final LineBuffer buffer,
+    final int peakBytes
+  ) {
+    if (peakBytes > MAX_POOLED_BUFFER_BYTES) {
+      return;
+    }
+    buffer.reset();
+    if (POOLED.incrementAndGet() <= POOL_SIZE) {
+      POOL.offer(buffer);
+    } else {
+      POOLED.decrementAndGet();
+    }
+  }
+
+  /**
+   * Buffers one stream of one runtime, and emits complete lines as soon as they are written;
+   * a line which outgrows {@link #MAX_LINE_BYTES} is emitted in parts.
+   */
+  private final class Sink extends OutputStream {
+
+    private final String runtime;
+    private final String stream;
+
+    private LineBuffer buffer;
+    private int peakBytes = 0;
+    private long bytes = 0L;
+
+    private Sink(final String runtime, final String stream) {
+      this.runtime = runtime;
+      this.stream = stream;
+      this.buffer = borrow();
+    }
+
+    @Override
+    public synchronized void write(final int b) {
+      this.write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(final byte[] bytes, final int offset, final int length) {
+      if (this.buffer == null) {
+        // late writes after `finish`: never dropped
+        emit(this.runtime, this.stream, bytes, offset, length);
+        return;
+      }
+      this.buffer.write(bytes, offset, length);
+      this.bytes += length;
+      this.peakBytes = Math.max(this.peakBytes, this.buffer.size());
+      this.drainLines();
+      this.drainPartialLine();
+    }
+
+    private void drainLines() {
+      final int end = this.buffer.completeLines();
+      if (end == 0) {
+        return;
+      }
+      emit(this.runtime, this.stream, this.buffer.array(), 0, end);
+      this.buffer.discard(end);
+    }
+
+    private void drainPartialLine() {
+      if (this.buffer.size() < MAX_LINE_BYTES) {
+        return;
+      }
+      final int end = this.buffer.lastCharBoundary();
+      emit(this.runtime, this.stream, this.buffer.array(), 0, end);
+      this.buffer.discard(end);
+    }
+
+    private synchronized long finish() {
+      if (this.buffer != null) {
+        if (this.buffer.size() > 0) {
+          emit(this.runtime, this.stream, this.buffer.array(), 0, this.buffer.size());
+        }
+        giveBack(this.buffer, this.peakBytes);
+        this.buffer = null;
+      }
+      return this.bytes;
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this)
+        .add("runtime", this.runtime)
+        .add("stream", this.stream)
+        .add("bytes", this.bytes)
+        .toString();
+    }
+
+  }
+
+  /**
+   * Exposes its backing array: complete lines are emitted straight from it, and the rest is compacted in place.
+   */
+  private static final class LineBuffer extends ByteArrayOutputStream {
+
+    // bytes before it were already searched for a newline: none of them is one
+    private int scanned = 0;
+
+    private LineBuffer(final int size) {
+      super(size);
+    }
+
+    /**
+     * Searches only the bytes written since the previous call.
+     *
+     * @return how many bytes, from the start, make up complete lines; {@code 0} if none.
+     */
+    private int completeLines() {
+      int end = this.count;
+      while (end > this.scanned && this.buf[end - 1] != '\n') {
+        end -= 1;
+      }
+      if (end == this.scanned) {
+        this.scanned = this.count;
+        return 0;
+      }
+      return end;
+    }
+
+    /**
+     * @return how many bytes, from the start, make up complete UTF-8 characters; all of them if
+     *         the last character cannot be told apart from invalid input.
+     */
+    private int lastCharBoundary() {
+      // a character is at most 4 bytes long: its lead byte is among the last 4
+      for (int start = this.count - 1; start >= 0 && start >= this.count - 4; start--) {
+        final int b = this.buf[start] & 0xFF;
+        if ((b & 0xC0) == 0x80) {
+          // continuation byte
+          continue;
+        }
+        final int length = b < 0x80 ? 1 : (b & 0xE0) == 0xC0 ? 2 : (b & 0xF0) == 0xE0 ? 3 : (b & 0xF8) == 0xF0 ? 4 : 1;
+        return (start + length > this.count && start > 0) ? start : this.count;
+      }
+      return this.count;
+    }
+
+    private byte[] array() {
+      return this.buf;
+    }
+
+    private void discard(final int length) {
+      System.arraycopy(this.buf, length, this.buf, 0, this.count - length);
+      this.count -= length;
+      this.scanned = this.count;
+    }
+
+    @Override
+    public synchronized void reset() {
+      super.reset();
+      this.scanned = 0;
+    }
+
+  }
+
+}
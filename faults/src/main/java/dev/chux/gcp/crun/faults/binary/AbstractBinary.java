@@ -76,7 +76,7 @@ public abstract class AbstractBinary<T> implements Binary<T> {
   ) {
     final String key = getBinaryKey(propertiesPrefix);
     final String bin = configService.getAppProp(key);
-    checkState(!isNullOrEmpty(bin), "not found:", key);
+    checkState(!isNullOrEmpty(bin), "not found: %s", key);
     return bin;
   }
 
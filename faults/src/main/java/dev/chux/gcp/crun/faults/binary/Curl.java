@@ -2,6 +2,8 @@ package dev.chux.gcp.crun.faults.binary;
 
 import java.io.OutputStream;
 
+import java.net.URI;
+
 import java.util.Map;
 
 import com.google.inject.Inject;
@@ -323,6 +325,7 @@ public class Curl {
     public static final String KEY = CurlModule.NAMESPACE + "/google";
 
     private final CurlFactory curlFactory;
+    private final GoogleTokens googleTokens;
     private final String runtime;
     private final String runtimeKey;
     private final Optional<String> projectId;
@@ -332,11 +335,13 @@ public class Curl {
     public WithGoogleAuthorization(
       final ConfigService configService,
       final CurlFactory curlFactory,
+      final GoogleTokens googleTokens,
       final String binary
     ) {
       super(configService, "google." + binary);
 
       this.curlFactory = curlFactory;
+      this.googleTokens = googleTokens;
 
       this.runtime = Linux.BINARY;
       this.runtimeKey = Linux.KEY;
@@ -348,6 +353,7 @@ public class Curl {
     public WithGoogleAuthorization(
       final ConfigService configService,
       final CurlFactory curlFactory,
+      final GoogleTokens googleTokens,
       final String binary,
       /* assisted */ final String runtime,
       /* assisted */ final Optional<String> projectId,
@@ -362,6 +368,7 @@ public class Curl {
       this.runtimeKey = Curl.runtimeKey(runtime);
 
       this.curlFactory = curlFactory;
+      this.googleTokens = googleTokens;
 
       this.projectId = projectId;
 
@@ -476,10 +483,23 @@ public class Curl {
       checkNotNull(request);
       final AbstractCurl delegate = this.setDelegate(request, stdout, stderr);
       final ManagedProcessBuilder builder = super.getBuilder(request, stdout, stderr);
+      this.setToken(builder, request);
       this.resetDelegate();
       return builder;
     }
 
+    protected final GoogleTokens googleTokens() {
+      return this.googleTokens;
+    }
+
+    /**
+     * Passes a cached token to the wrapper script, which fetches its own when there is none.
+     */
+    protected abstract void setToken(
+      final ManagedProcessBuilder builder,
+      final HttpRequest request
+    );
+
     @Override
     public String toString() {
       return toStringHelper(this)
@@ -503,22 +523,53 @@ public class Curl {
     @Inject
     public WithGoogleIdToken(
       final ConfigService configService,
-      final CurlFactory curlFactory
+      final CurlFactory curlFactory,
+      final GoogleTokens googleTokens
     ) {
-      super(configService, curlFactory, BINARY);
+      super(configService, curlFactory, googleTokens, BINARY);
     }
 
     @AssistedInject
     public WithGoogleIdToken(
       final ConfigService configService,
       final CurlFactory curlFactory,
+      final GoogleTokens googleTokens,
       @Assisted("runtime") String runtime,
       @Assisted("projectId") Optional<String> projectId,
       @Assisted("request") HttpRequest request,
       @Assisted("stdout") Optional<OutputStream> stdout,
       @Assisted("stderr") Optional<OutputStream> stderr
     ) {
-      super(configService, curlFactory, BINARY, runtime, projectId, request, stdout, stderr);
+      super(configService, curlFactory, googleTokens, BINARY, runtime, projectId, request, stdout, stderr);
+    }
+
+    @Override
+    protected void setToken(
+      final ManagedProcessBuilder builder,
+      final HttpRequest request
+    ) {
+      final Optional<String> audience = audience(request);
+      if (!audience.isPresent()) {
+        return;
+      }
+      this.setEnvVar(builder, "X_AUDIENCE", audience.get());
+      final Optional<String> token = this.googleTokens().idToken(audience.get());
+      if (token.isPresent()) {
+        this.setEnvVar(builder, "X_GOOGLE_ID_TOKEN", token.get());
+      }
+    }
+
+    // same as Cloud Run: the audience is the origin of the request URL
+    private static Optional<String> audience(final HttpRequest request) {
+      try {
+        final URI uri = URI.create(request.url());
+        if (isNullOrEmpty(uri.getScheme()) || isNullOrEmpty(uri.getRawAuthority())) {
+          return absent();
+        }
+        return Optional.of(uri.getScheme() + "://" + uri.getRawAuthority());
+      } catch(final IllegalArgumentException ex) {
+        return absent();
+      }
     }
 
   }
@@ -532,22 +583,35 @@ public class Curl {
     @Inject
     public WithGoogleAuthToken(
       final ConfigService configService,
-      final CurlFactory curlFactory
+      final CurlFactory curlFactory,
+      final GoogleTokens googleTokens
     ) {
-      super(configService, curlFactory, BINARY);
+      super(configService, curlFactory, googleTokens, BINARY);
     }
 
     @AssistedInject
     public WithGoogleAuthToken(
       final ConfigService configService,
       final CurlFactory curlFactory,
+      final GoogleTokens googleTokens,
       @Assisted("runtime") String runtime,
       @Assisted("projectId") Optional<String> projectId,
       @Assisted("request") HttpRequest request,
       @Assisted("stdout") Optional<OutputStream> stdout,
       @Assisted("stderr") Optional<OutputStream> stderr
     ) {
-      super(configService, curlFactory, BINARY, runtime, projectId, request, stdout, stderr);
+      super(configService, curlFactory, googleTokens, BINARY, runtime, projectId, request, stdout, stderr);
+    }
+
+    @Override
+    protected void setToken(
+      final ManagedProcessBuilder builder,
+      final HttpRequest request
+    ) {
+      final Optional<String> token = this.googleTokens().accessToken();
+      if (token.isPresent()) {
+        this.setEnvVar(builder, "X_GOOGLE_AUTH_TOKEN", token.get());
+      }
     }
 
   }
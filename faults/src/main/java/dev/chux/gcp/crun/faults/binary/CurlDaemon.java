@@ -0,0 +1,105 @@
+package dev.chux.gcp.crun.faults.binary;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+
+import java.util.List;
+
+import com.google.common.base.MoreObjects;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A long-lived curl worker: requests and results are single-line JSON documents,
+ * exchanged over the worker's stdin and stdout; one request at a time.
+ */
+final class CurlDaemon {
+  private static final Logger logger = LoggerFactory.getLogger(CurlDaemon.class);
+
+  static final String FLAG_DAEMON = "--daemon";
+
+  private final String runtime;
+  private final Process process;
+  private final BufferedWriter requests;
+  private final BufferedReader results;
+
+  // the worker is used by one thread at a time
+  private long requestId = 0L;
+
+  private CurlDaemon(
+    final String runtime,
+    final Process process
+  ) {
+    this.runtime = runtime;
+    this.process = process;
+    this.requests = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), UTF_8));
+    this.results = new BufferedReader(new InputStreamReader(process.getInputStream(), UTF_8));
+  }
+
+  static CurlDaemon start(
+    final String runtime,
+    final List<String> command
+  ) throws IOException {
+    final ProcessBuilder builder = new ProcessBuilder(command)
+      // worker diagnostics must never reach the results stream
+      .redirectError(ProcessBuilder.Redirect.INHERIT);
+    builder.environment().put("X_CURL_RUNTIME", runtime);
+    builder.environment().put("X_CURL_DAEMON", "true");
+    final CurlDaemon daemon = new CurlDaemon(runtime, builder.start());
+    logger.info("started curl daemon: {}", daemon);
+    return daemon;
+  }
+
+  /**
+   * Sends {@code request} and blocks until its result arrives.
+   */
+  JsonObject exchange(
+    final Gson gson,
+    final JsonObject request
+  ) throws IOException {
+    final long id = ++this.requestId;
+    request.addProperty("id", Long.valueOf(id));
+    this.requests.write(gson.toJson(request));
+    this.requests.newLine();
+    this.requests.flush();
+
+    final String line = this.results.readLine();
+    if (line == null) {
+      throw new EOFException("curl daemon exited: " + this);
+    }
+    final JsonObject result = gson.fromJson(line, JsonObject.class);
+    if (result == null || !result.has("id") || result.get("id").getAsLong() != id) {
+      throw new IOException("unexpected result from curl daemon " + this + ": " + line);
+    }
+    return result;
+  }
+
+  boolean isAlive() {
+    return this.process.isAlive();
+  }
+
+  void destroy() {
+    this.process.destroyForcibly();
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+      .add("runtime", this.runtime)
+      .add("pid", this.process.pid())
+      .add("alive", this.process.isAlive())
+      .add("requests", this.requestId)
+      .toString();
+  }
+
+}
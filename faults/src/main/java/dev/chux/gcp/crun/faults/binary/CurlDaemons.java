@@ -0,0 +1,324 @@
+package dev.chux.gcp.crun.faults.binary;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import dev.chux.gcp.crun.ConfigService;
+import dev.chux.gcp.crun.model.HttpRequest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Strings.isNullOrEmpty;
+import static com.google.common.base.Throwables.getStackTraceAsString;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Pools of long-lived curl workers, one per runtime with {@code faults.binary.curl.<runtime>.daemon.enabled};
+ * they avoid paying interpreter or JVM startup on every request.
+ *
+ * <p>Requests with a proxy are not served: proxies are configured through the process environment,
+ * which is fixed for the lifetime of a worker. Whenever a request is not served, the caller must
+ * fall back to spawning the curl binary.</p>
+ */
+@Singleton
+public class CurlDaemons {
+  private static final Logger logger = LoggerFactory.getLogger(CurlDaemons.class);
+
+  private static final ImmutableList<String> RUNTIMES =
+    ImmutableList.of(Curl.Java.BINARY, Curl.Python.BINARY, Curl.NodeJS.BINARY);
+
+  private static final int DEFAULT_WORKERS = 2;
+  private static final long DEFAULT_TIMEOUT_MS = 150_000L;
+  // busy workers are waited for briefly: spawning is slower than a warm worker, but never queues
+  private static final long DEFAULT_ACQUIRE_TIMEOUT_MS = 250L;
+
+  private final Gson gson;
+  private final ImmutableMap<String, Pool> pools;
+  private final ScheduledExecutorService watchdog;
+  private final ExecutorService executor;
+
+  @Inject
+  CurlDaemons(
+    final ConfigService configService,
+    final Gson gson
+  ) {
+    this.gson = gson;
+    this.pools = this.newPools(configService);
+    this.watchdog = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setNameFormat("curl-daemons-watchdog").setDaemon(true).build());
+    // each task holds its thread for the whole request, like spawning and waiting does
+    this.executor = Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder().setNameFormat("curl-daemons-%d").setDaemon(true).build());
+    // same as `setDestroyOnShutdown(true)` for spawned processes
+    Runtime.getRuntime().addShutdownHook(new Thread(this::destroy));
+    logger.info("curl daemons: {}", this.pools.values());
+  }
+
+  private ImmutableMap<String, Pool> newPools(final ConfigService configService) {
+    final ImmutableMap.Builder<String, Pool> pools = ImmutableMap.builder();
+    for (final String runtime : RUNTIMES) {
+      final String prefix = "faults.binary.curl." + runtime;
+      final boolean enabled = configService.getBooleanAppProp(prefix + ".daemon.enabled").or(Boolean.FALSE).booleanValue();
+      final Optional<String> command = configService.getOptionalAppProp(prefix + ".command");
+      if (!enabled || !command.isPresent() || isNullOrEmpty(command.get())) {
+        continue;
+      }
+      final int workers = configService.getIntAppProp(prefix + ".daemon.workers").or(DEFAULT_WORKERS).intValue();
+      final long timeoutMillis = configService.getLongAppProp(prefix + ".daemon.timeout-ms").or(DEFAULT_TIMEOUT_MS).longValue();
+      final long acquireTimeoutMillis = configService.getLongAppProp(prefix + ".daemon.acquire-timeout-ms")
+        .or(DEFAULT_ACQUIRE_TIMEOUT_MS).longValue();
+      checkArgument(workers > 0, "invalid curl daemon workers for '%s': %s", runtime, workers);
+      checkArgument(timeoutMillis > 0, "invalid curl daemon timeout for '%s': %s", runtime, timeoutMillis);
+      checkArgument(acquireTimeoutMillis >= 0, "invalid curl daemon acquire timeout for '%s': %s", runtime, acquireTimeoutMillis);
+      pools.put(runtime, new Pool(runtime, ImmutableList.of(command.get(), CurlDaemon.FLAG_DAEMON),
+        workers, timeoutMillis, acquireTimeoutMillis));
+    }
+    return pools.build();
+  }
+
+  public ImmutableSet<String> runtimes() {
+    return this.pools.keySet();
+  }
+
+  public boolean supports(
+    final String runtime,
+    final HttpRequest request
+  ) {
+    return this.pools.containsKey(runtime) && !request.optionalProxy().isPresent();
+  }
+
+  /**
+   * Blocks until a worker for {@code runtime} executes {@code request}; waits for a busy worker
+   * only up to {@code faults.binary.curl.<runtime>.daemon.acquire-timeout-ms}.
+   *
+   * @return {@code false} if no worker could take the request in time: it was not sent, and must be spawned.
+   */
+  public boolean run(
+    final String runtime,
+    final HttpRequest request,
+    final Optional<OutputStream> stdout,
+    final Optional<OutputStream> stderr
+  ) {
+    return this.run(runtime, request, stdout, stderr, () -> {});
+  }
+
+  /**
+   * @param started runs once a worker was acquired, right before the request is sent to it.
+   */
+  public boolean run(
+    final String runtime,
+    final HttpRequest request,
+    final Optional<OutputStream> stdout,
+    final Optional<OutputStream> stderr,
+    final Runnable started
+  ) {
+    if (!this.supports(runtime, request)) {
+      return false;
+    }
+    final Pool pool = this.pools.get(runtime);
+    final Optional<CurlDaemon> daemon = pool.acquire();
+    if (!daemon.isPresent()) {
+      return false;
+    }
+    started.run();
+    final ScheduledFuture<?> timeout = this.watchdog.schedule(
+      daemon.get()::destroy, pool.timeoutMillis, TimeUnit.MILLISECONDS);
+    boolean healthy = false;
+    try {
+      final JsonObject result = daemon.get().exchange(this.gson, this.toJson(request));
+      healthy = true;
+      write(stdout, result.get("output"));
+      write(stderr, result.get("error"));
+    } catch(final Exception ex) {
+      logger.error("curl daemon failed: {} | {}", daemon.get(), getStackTraceAsString(ex));
+      write(stderr, getStackTraceAsString(ex));
+    } finally {
+      timeout.cancel(false);
+      pool.release(daemon.get(), healthy);
+    }
+    return true;
+  }
+
+  /**
+   * Same as {@link #run}, without blocking the caller.
+   */
+  public CompletableFuture<Boolean> submit(
+    final String runtime,
+    final HttpRequest request,
+    final Optional<OutputStream> stdout,
+    final Optional<OutputStream> stderr
+  ) {
+    return CompletableFuture.supplyAsync(() ->
+      Boolean.valueOf(this.run(runtime, request, stdout, stderr)), this.executor);
+  }
+
+  private JsonObject toJson(final HttpRequest request) {
+    final JsonObject json = new JsonObject();
+    json.addProperty("url", request.url());
+    json.addProperty("method", request.optionalMethod().or("GET"));
+    final JsonObject headers = new JsonObject();
+    for (final Map.Entry<String, String> header : request.headers().entrySet()) {
+      headers.addProperty(header.getKey(), header.getValue());
+    }
+    json.add("headers", headers);
+    if (request.optionalData().isPresent()) {
+      json.addProperty("data", request.optionalData().get());
+    }
+    return json;
+  }
+
+  static void write(
+    final Optional<OutputStream> stream,
+    final JsonElement value
+  ) {
+    if (value != null && !value.isJsonNull()) {
+      write(stream, value.getAsString());
+    }
+  }
+
+  static void write(
+    final Optional<OutputStream> stream,
+    final String value
+  ) {
+    if (!stream.isPresent() || isNullOrEmpty(value)) {
+      return;
+    }
+    final OutputStream output = stream.get();
+    // several runtimes may share the same stream: keep each result contiguous
+    synchronized(output) {
+      try {
+        output.write(value.getBytes(UTF_8));
+        output.flush();
+      } catch(final IOException ex) {
+        logger.error("failed to write curl daemon output: {}", getStackTraceAsString(ex));
+      }
+    }
+  }
+
+  private void destroy() {
+    for (final Pool pool : this.pools.values()) {
+      pool.destroy();
+    }
+  }
+
+  private static final class Pool {
+
+    private final String runtime;
+    private final ImmutableList<String> command;
+    private final long timeoutMillis;
+    private final long acquireTimeoutMillis;
+    private final int workers;
+    private final Semaphore permits;
+    private final BlockingQueue<CurlDaemon> idle;
+    private final Set<CurlDaemon> started;
+
+    private Pool(
+      final String runtime,
+      final ImmutableList<String> command,
+      final int workers,
+      final long timeoutMillis,
+      final long acquireTimeoutMillis
+    ) {
+      this.runtime = runtime;
+      this.command = command;
+      this.workers = workers;
+      this.timeoutMillis = timeoutMillis;
+      this.acquireTimeoutMillis = acquireTimeoutMillis;
+      this.permits = new Semaphore(workers, true);
+      this.idle = new LinkedBlockingQueue<CurlDaemon>();
+      this.started = ConcurrentHashMap.newKeySet();
+    }
+
+    // workers are started lazily, and replaced once they die
+    private Optional<CurlDaemon> acquire() {
+      try {
+        if (!this.permits.tryAcquire(this.acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+          logger.debug("all curl daemons '{}' are busy", this.runtime);
+          return Optional.absent();
+        }
+      } catch(final InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return Optional.absent();
+      }
+      CurlDaemon daemon;
+      while ((daemon = this.idle.poll()) != null) {
+        if (daemon.isAlive()) {
+          return Optional.of(daemon);
+        }
+        logger.warn("discarding dead curl daemon: {}", daemon);
+        this.started.remove(daemon);
+      }
+      try {
+        daemon = CurlDaemon.start(this.runtime, this.command);
+        this.started.add(daemon);
+        return Optional.of(daemon);
+      } catch(final Exception ex) {
+        logger.error("failed to start curl daemon '{}': {}", this.runtime, getStackTraceAsString(ex));
+        this.permits.release();
+      }
+      return Optional.absent();
+    }
+
+    private void release(
+      final CurlDaemon daemon,
+      final boolean healthy
+    ) {
+      if (healthy && daemon.isAlive()) {
+        this.idle.add(daemon);
+      } else {
+        daemon.destroy();
+        this.started.remove(daemon);
+      }
+      this.permits.release();
+    }
+
+    private void destroy() {
+      for (final CurlDaemon daemon : this.started) {
+        daemon.destroy();
+      }
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this)
+        .add("runtime", this.runtime)
+        .add("command", this.command)
+        .add("workers", this.workers)
+        .add("timeoutMillis", this.timeoutMillis)
+        .add("acquireTimeoutMillis", this.acquireTimeoutMillis)
+        .toString();
+    }
+
+  }
+
+}
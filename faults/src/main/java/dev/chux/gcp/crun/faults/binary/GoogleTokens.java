@@ -0,0 +1,361 @@
+package dev.chux.gcp.crun.faults.binary;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse.BodyHandlers;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Optional;
+import com.google.common.net.UrlEscapers;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import dev.chux.gcp.crun.ConfigService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.base.Strings.isNullOrEmpty;
+import static com.google.common.base.Throwables.getStackTraceAsString;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Google access and ID tokens fetched from the metadata server, shared by all {@code gcurl}
+ * and {@code gidcurl} invocations instead of being fetched by every one of them.
+ *
+ * <p>Tokens are cached per audience (ID tokens) and refreshed in the background
+ * {@code faults.google.tokens.refresh-margin-ms} before they expire, as long as they were
+ * used within the last {@code faults.google.tokens.idle-ms}. A failed fetch is remembered for
+ * {@code faults.google.tokens.failure-backoff-ms}, so that callers do not each wait for an
+ * unreachable metadata server.</p>
+ *
+ * <p>The metadata server is {@code faults.google.metadata.url}; when not set, the host in
+ * {@code GCE_METADATA_HOST} is used, same as Google client libraries, so that a local
+ * stand-in can be used for testing.</p>
+ */
+@Singleton
+public class GoogleTokens {
+  private static final Logger logger = LoggerFactory.getLogger(GoogleTokens.class);
+
+  public static final String PROPERTY_ENABLED = "faults.google.tokens.cache.enabled";
+  public static final String PROPERTY_METADATA_URL = "faults.google.metadata.url";
+  public static final String PROPERTY_REFRESH_MARGIN_MS = "faults.google.tokens.refresh-margin-ms";
+  public static final String PROPERTY_IDLE_MS = "faults.google.tokens.idle-ms";
+  public static final String PROPERTY_TIMEOUT_MS = "faults.google.tokens.timeout-ms";
+  public static final String PROPERTY_FAILURE_BACKOFF_MS = "faults.google.tokens.failure-backoff-ms";
+
+  private static final String ENV_METADATA_HOST = "GCE_METADATA_HOST";
+  private static final String DEFAULT_METADATA_HOST = "metadata.google.internal";
+
+  private static final String ACCESS_TOKEN_PATH = "/instance/service-accounts/default/token";
+  private static final String ID_TOKEN_PATH = "/instance/service-accounts/default/identity";
+
+  private static final String ACCESS_TOKEN_KEY = "access";
+  private static final String ID_TOKEN_KEY_PREFIX = "id:";
+
+  private static final long DEFAULT_REFRESH_MARGIN_MS = 300_000L;
+  private static final long DEFAULT_IDLE_MS = 3_600_000L;
+  private static final long DEFAULT_TIMEOUT_MS = 5_000L;
+  private static final long DEFAULT_FAILURE_BACKOFF_MS = 10_000L;
+
+  // used when an ID token carries no readable `exp` claim
+  private static final Duration DEFAULT_TOKEN_LIFETIME = Duration.ofHours(1);
+
+  private final boolean enabled;
+  private final String metadataURL;
+  private final Duration refreshMargin;
+  private final Duration idle;
+  private final long timeoutMillis;
+  private final Duration failureBackoff;
+
+  private final HttpClient client;
+  private final ScheduledExecutorService scheduler;
+  private final ConcurrentMap<String, Entry> entries;
+
+  @Inject
+  GoogleTokens(
+    final ConfigService configService
+  ) {
+    this.enabled = configService.getBooleanAppProp(PROPERTY_ENABLED).or(Boolean.TRUE).booleanValue();
+    this.metadataURL = configService.getOptionalAppProp(PROPERTY_METADATA_URL)
+      .or(() -> defaultMetadataURL());
+    this.refreshMargin = Duration.ofMillis(configService
+      .getLongAppProp(PROPERTY_REFRESH_MARGIN_MS).or(DEFAULT_REFRESH_MARGIN_MS).longValue());
+    this.idle = Duration.ofMillis(configService
+      .getLongAppProp(PROPERTY_IDLE_MS).or(DEFAULT_IDLE_MS).longValue());
+    this.timeoutMillis = configService.getLongAppProp(PROPERTY_TIMEOUT_MS)
+      .or(DEFAULT_TIMEOUT_MS).longValue();
+    this.failureBackoff = Duration.ofMillis(configService
+      .getLongAppProp(PROPERTY_FAILURE_BACKOFF_MS).or(DEFAULT_FAILURE_BACKOFF_MS).longValue());
+    checkArgument(!this.refreshMargin.isNegative(), "invalid token refresh margin: %s", this.refreshMargin);
+    checkArgument(this.timeoutMillis > 0, "invalid token timeout: %s", this.timeoutMillis);
+    checkArgument(!this.failureBackoff.isNegative(), "invalid token failure backoff: %s", this.failureBackoff);
+
+    // the metadata server is link-local: proxies configured for requests must not be used
+    this.client = HttpClient.newBuilder()
+      .proxy(HttpClient.Builder.NO_PROXY)
+      .connectTimeout(Duration.ofMillis(this.timeoutMillis))
+      .build();
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setNameFormat("google-tokens-refresh").setDaemon(true).build());
+    this.entries = new ConcurrentHashMap<String, Entry>();
+    logger.info("google tokens: {}", this);
+  }
+
+  private static String defaultMetadataURL() {
+    final String host = System.getenv(ENV_METADATA_HOST);
+    return "http://" + (isNullOrEmpty(host) ? DEFAULT_METADATA_HOST : host) + "/computeMetadata/v1";
+  }
+
+  public boolean isEnabled() {
+    return this.enabled;
+  }
+
+  /**
+   * OAuth access token of the default service account.
+   *
+   * @return absent if tokens are not cached, or the token could not be fetched;
+   *         in both cases {@code gcurl} fetches its own.
+   */
+  public Optional<String> accessToken() {
+    return this.get(ACCESS_TOKEN_KEY);
+  }
+
+  /**
+   * ID token of the default service account for {@code audience}.
+   *
+   * @return absent if tokens are not cached, or the token could not be fetched;
+   *         in both cases {@code gidcurl} fetches its own.
+   */
+  public Optional<String> idToken(final String audience) {
+    checkArgument(!isNullOrEmpty(audience), "audience is required");
+    return this.get(ID_TOKEN_KEY_PREFIX + audience);
+  }
+
+  private Optional<String> get(final String key) {
+    if (!this.enabled) {
+      return Optional.absent();
+    }
+
+    final Entry entry = this.entries.computeIfAbsent(key, Entry::new);
+    entry.lastUsed = Instant.now();
+
+    final Token token = entry.token;
+    if (token != null && token.isFreshAt(Instant.now())) {
+      return Optional.of(token.value);
+    }
+
+    if (entry.isFailingAt(Instant.now())) {
+      // the last fetch failed moments ago: do not wait for the next one to fail as well
+      return (token != null && token.isValidAt(Instant.now()))
+        ? Optional.of(token.value) : Optional.<String>absent();
+    }
+
+    try {
+      return Optional.of(entry.refresh()
+        .get(this.timeoutMillis, TimeUnit.MILLISECONDS).value);
+    } catch(final InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } catch(final Exception ex) {
+      logger.error("failed to fetch google token '{}': {}", key, getStackTraceAsString(ex));
+    }
+    // a token which has not yet expired is still better than no token at all
+    if (token != null && token.isValidAt(Instant.now())) {
+      return Optional.of(token.value);
+    }
+    return Optional.absent();
+  }
+
+  private CompletableFuture<Token> fetch(final String key) {
+    final boolean isIdToken = key.startsWith(ID_TOKEN_KEY_PREFIX);
+    final String url = isIdToken
+      ? this.metadataURL + ID_TOKEN_PATH + "?format=full&audience="
+        + UrlEscapers.urlFormParameterEscaper().escape(key.substring(ID_TOKEN_KEY_PREFIX.length()))
+      : this.metadataURL + ACCESS_TOKEN_PATH + "?alt=json";
+
+    final java.net.http.HttpRequest request = java.net.http.HttpRequest
+      .newBuilder(URI.create(url))
+      .header("Metadata-Flavor", "Google")
+      .timeout(Duration.ofMillis(this.timeoutMillis))
+      .GET().build();
+
+    final Instant requestedAt = Instant.now();
+    return this.client.sendAsync(request, BodyHandlers.ofString(UTF_8))
+      .thenApply((response) -> {
+        checkState(response.statusCode() == 200,
+          "metadata server responded with %s: %s", response.statusCode(), response.body());
+        return isIdToken
+          ? this.parseIdToken(response.body())
+          : this.parseAccessToken(response.body(), requestedAt);
+      });
+  }
+
+  private Token parseAccessToken(
+    final String body,
+    final Instant requestedAt
+  ) {
+    final JsonObject json = JsonParser.parseString(body).getAsJsonObject();
+    final String value = json.get("access_token").getAsString();
+    // `expires_in` counts from when the metadata server answered, not from when it was parsed
+    final long expiresIn = json.get("expires_in").getAsLong();
+    return this.newToken(value, requestedAt.plusSeconds(expiresIn));
+  }
+
+  private Token parseIdToken(final String body) {
+    final String value = body.trim();
+    checkState(!value.isEmpty(), "empty ID token");
+    try {
+      final String[] parts = value.split("\\.");
+      final JsonObject claims = JsonParser.parseString(
+        new String(Base64.getUrlDecoder().decode(parts[1]), UTF_8)).getAsJsonObject();
+      return this.newToken(value, Instant.ofEpochSecond(claims.get("exp").getAsLong()));
+    } catch(final Exception ex) {
+      logger.warn("ID token expiration is not readable: {}", ex.getMessage());
+      return this.newToken(value, Instant.now().plus(DEFAULT_TOKEN_LIFETIME));
+    }
+  }
+
+  private Token newToken(
+    final String value,
+    final Instant expiresAt
+  ) {
+    final Instant now = Instant.now();
+    // short-lived tokens are refreshed halfway through their lifetime instead
+    final Duration lifetime = Duration.between(now, expiresAt);
+    final Duration margin = this.refreshMargin.compareTo(lifetime.dividedBy(2)) < 0
+      ? this.refreshMargin : lifetime.dividedBy(2);
+    return new Token(value, expiresAt, expiresAt.minus(margin));
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+      .add("enabled", this.enabled)
+      .add("metadata", this.metadataURL)
+      .add("refresh_margin", this.refreshMargin)
+      .add("idle", this.idle)
+      .add("timeout_ms", this.timeoutMillis)
+      .add("failure_backoff", this.failureBackoff)
+      .add("tokens", this.entries.keySet())
+      .toString();
+  }
+
+  private static final class Token {
+
+    private final String value;
+    private final Instant expiresAt;
+    private final Instant refreshAt;
+
+    private Token(
+      final String value,
+      final Instant expiresAt,
+      final Instant refreshAt
+    ) {
+      this.value = value;
+      this.expiresAt = expiresAt;
+      this.refreshAt = refreshAt;
+    }
+
+    // a token handed out while fresh outlives the request that carries it
+    private boolean isFreshAt(final Instant instant) {
+      return this.refreshAt.isAfter(instant);
+    }
+
+    private boolean isValidAt(final Instant instant) {
+      return this.expiresAt.isAfter(instant);
+    }
+
+  }
+
+  /**
+   * One cached token; concurrent misses share a single fetch, and a single refresh is scheduled.
+   */
+  private final class Entry {
+
+    private final String key;
+
+    private volatile Token token;
+    private volatile Instant lastUsed;
+    private volatile Instant failedUntil;
+
+    private CompletableFuture<Token> inflight;
+    private ScheduledFuture<?> scheduled;
+
+    private Entry(final String key) {
+      this.key = key;
+      this.lastUsed = Instant.now();
+      this.failedUntil = Instant.MIN;
+    }
+
+    private boolean isFailingAt(final Instant instant) {
+      return this.failedUntil.isAfter(instant);
+    }
+
+    private synchronized CompletableFuture<Token> refresh() {
+      if (this.inflight != null) {
+        return this.inflight;
+      }
+      final CompletableFuture<Token> inflight = fetch(this.key);
+      this.inflight = inflight;
+      inflight.whenComplete((token, error) -> this.onRefresh(token, error));
+      return inflight;
+    }
+
+    private synchronized void onRefresh(
+      final Token token,
+      final Throwable error
+    ) {
+      this.inflight = null;
+      if (token != null) {
+        this.token = token;
+        this.failedUntil = Instant.MIN;
+        logger.debug("google token '{}' refreshed, expires at {}", this.key, token.expiresAt);
+        this.scheduleRefresh(token);
+      } else {
+        this.failedUntil = Instant.now().plus(failureBackoff);
+      }
+    }
+
+    // refreshes triggered by callers and by the schedule both land here: only the latest one is kept
+    private void scheduleRefresh(final Token token) {
+      if (this.scheduled != null) {
+        this.scheduled.cancel(false);
+      }
+      final Duration delay = Duration.between(Instant.now(), token.refreshAt);
+      this.scheduled = scheduler.schedule(() -> {
+        if (Duration.between(this.lastUsed, Instant.now()).compareTo(idle) > 0) {
+          // not used lately: the next caller fetches it again
+          entries.remove(this.key, this);
+          logger.debug("google token '{}' evicted after being idle", this.key);
+          return;
+        }
+        this.refresh().exceptionally((ex) -> {
+          logger.error("failed to refresh google token '{}': {}", this.key, getStackTraceAsString(ex));
+          return null;
+        });
+      }, Math.max(0L, delay.toMillis()), TimeUnit.MILLISECONDS);
+    }
+
+  }
+
+}
@@ -0,0 +1,234 @@
+package dev.chux.gcp.crun.faults.binary;
+
+import java.io.OutputStream;
+
+import java.net.InetSocketAddress;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodyHandlers;
+
+import java.time.Duration;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Optional;
+import com.google.common.base.Stopwatch;
+
+import dev.chux.gcp.crun.ConfigService;
+import dev.chux.gcp.crun.model.HttpProxy;
+import dev.chux.gcp.crun.model.HttpRequest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Strings.isNullOrEmpty;
+import static com.google.common.base.Throwables.getStackTraceAsString;
+
+import static java.net.http.HttpRequest.BodyPublishers.noBody;
+import static java.net.http.HttpRequest.BodyPublishers.ofString;
+
+/**
+ * Runs requests for the {@code java} runtime inside this JVM, with the same {@code HttpClient}
+ * logic and output as {@code curl_java}, but without forking: clients, and so their connection
+ * pools, are shared by all requests going through the same proxy (or none).
+ *
+ * <p>Disabled by default, and enabled with {@code faults.binary.curl.java.in-process.enabled}: reused
+ * connections do not fail like the fresh ones of a new process. Its output adds per-request timings
+ * after the response.</p>
+ */
+@Singleton
+public class InProcessJavaCurl {
+  private static final Logger logger = LoggerFactory.getLogger(InProcessJavaCurl.class);
+
+  public static final String RUNTIME = Curl.Java.BINARY;
+
+  private static final String NO_PROXY = "";
+
+  // same as `curl_java`
+  private static final Duration REQUEST_TIMEOUT = Duration.ofMinutes(2);
+
+  private final boolean enabled;
+  private final ConcurrentMap<String, HttpClient> clients;
+
+  @Inject
+  InProcessJavaCurl(
+    final ConfigService configService
+  ) {
+    this.enabled = configService
+      .getBooleanAppProp("faults.binary.curl." + RUNTIME + ".in-process.enabled")
+      .or(Boolean.FALSE).booleanValue();
+    this.clients = new ConcurrentHashMap<String, HttpClient>();
+    logger.info("in-process curl: {}", this);
+  }
+
+  public boolean isEnabled() {
+    return this.enabled;
+  }
+
+  public boolean supports(
+    final String runtime,
+    final HttpRequest request
+  ) {
+    return this.enabled && RUNTIME.equals(runtime);
+  }
+
+  /**
+   * Blocks until {@code request} completes.
+   *
+   * @return {@code false} if the request was not sent, and must be spawned.
+   */
+  public boolean run(
+    final String runtime,
+    final HttpRequest request,
+    final Optional<OutputStream> stdout,
+    final Optional<OutputStream> stderr
+  ) {
+    return this.submit(runtime, request, stdout, stderr).join().booleanValue();
+  }
+
+  /**
+   * Same as {@link #run}, without blocking the caller nor holding a thread while waiting.
+   */
+  public CompletableFuture<Boolean> submit(
+    final String runtime,
+    final HttpRequest request,
+    final Optional<OutputStream> stdout,
+    final Optional<OutputStream> stderr
+  ) {
+    if (!this.supports(runtime, request)) {
+      return CompletableFuture.completedFuture(Boolean.FALSE);
+    }
+
+    final StringBuilder output = new StringBuilder();
+    final java.net.http.HttpRequest httpRequest;
+    try {
+      httpRequest = newHttpRequest(request);
+    } catch(final Exception ex) {
+      CurlDaemons.write(stderr, getStackTraceAsString(ex));
+      return CompletableFuture.completedFuture(Boolean.TRUE);
+    }
+    logRequest(output, httpRequest, request.data());
+
+    final Stopwatch stopwatch = Stopwatch.createStarted();
+    final AtomicLong headersMillis = new AtomicLong(-1L);
+    final BodyHandler<String> handler = (info) -> {
+      headersMillis.set(stopwatch.elapsed(TimeUnit.MILLISECONDS));
+      return BodyHandlers.ofString().apply(info);
+    };
+
+    return this.client(request.optionalProxy())
+      .sendAsync(httpRequest, handler)
+      .handle((response, error) -> {
+        final long totalMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+        if (response != null) {
+          logResponse(output, response);
+        }
+        logTimings(output, headersMillis.get(), totalMillis);
+        CurlDaemons.write(stdout, output.toString());
+        if (error != null) {
+          final Throwable cause = (error instanceof CompletionException && error.getCause() != null)
+            ? error.getCause() : error;
+          CurlDaemons.write(stderr, getStackTraceAsString(cause));
+        }
+        return Boolean.TRUE;
+      });
+  }
+
+  private HttpClient client(final Optional<HttpProxy> proxy) {
+    if (!proxy.isPresent()) {
+      return this.clients.computeIfAbsent(NO_PROXY, (key) -> newHttpClient(HttpClient.newBuilder()));
+    }
+    final String host = proxy.get().host();
+    final int port = proxy.get().port().intValue();
+    return this.clients.computeIfAbsent(host + ":" + port, (key) -> newHttpClient(
+      HttpClient.newBuilder().proxy(ProxySelector.of(InetSocketAddress.createUnresolved(host, port)))));
+  }
+
+  private static HttpClient newHttpClient(final HttpClient.Builder builder) {
+    return builder
+      .followRedirects(HttpClient.Redirect.NORMAL)
+      .build();
+  }
+
+  private static java.net.http.HttpRequest newHttpRequest(final HttpRequest request) {
+    final String data = request.data();
+    final java.net.http.HttpRequest.Builder builder = java.net.http.HttpRequest.newBuilder()
+      .uri(URI.create(request.url()))
+      .timeout(REQUEST_TIMEOUT)
+      .method(request.optionalMethod().or("GET"), isNullOrEmpty(data) ? noBody() : ofString(data));
+    for (final Map.Entry<String, String> header : request.headers().entrySet()) {
+      builder.header(header.getKey(), header.getValue());
+    }
+    return builder.build();
+  }
+
+  // the output below must match `curl_java`'s
+
+  private static void logHeaders(
+    final StringBuilder out,
+    final HttpHeaders headers
+  ) {
+    for (final Map.Entry<String, List<String>> header : headers.map().entrySet()) {
+      out.append("\t- Header[").append(header.getKey())
+        .append("]=").append(header.getValue()).append('\n');
+    }
+  }
+
+  private static void logRequest(
+    final StringBuilder out,
+    final java.net.http.HttpRequest request,
+    final String body
+  ) {
+    out.append("\n* Request: ").append(request.method()).append('\n');
+    out.append("\n* Request Headers:\n");
+    logHeaders(out, request.headers());
+    out.append("\n* Request Body:\n\t").append(body).append('\n');
+  }
+
+  private static void logResponse(
+    final StringBuilder out,
+    final HttpResponse<String> response
+  ) {
+    out.append("\n* Response: ").append(response.statusCode()).append('\n');
+    out.append("\n* Response Headers:\n");
+    logHeaders(out, response.headers());
+    out.append("\n* Response Body:\n\t").append(response.body()).append('\n');
+  }
+
+  private static void logTimings(
+    final StringBuilder out,
+    final long headersMillis,
+    final long totalMillis
+  ) {
+    out.append("\n* Timings:\n");
+    if (headersMillis >= 0) {
+      out.append("\t- headers_ms=").append(headersMillis).append('\n');
+    }
+    out.append("\t- total_ms=").append(totalMillis).append('\n');
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+      .add("runtime", RUNTIME)
+      .add("enabled", this.enabled)
+      .add("clients", this.clients.keySet())
+      .toString();
+  }
+
+}
@@ -0,0 +1,188 @@
+package dev.chux.gcp.crun.faults.rest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Optional;
+import com.google.common.base.Stopwatch;
+
+import dev.chux.gcp.crun.faults.FaultsService;
+import dev.chux.gcp.crun.model.HttpRequest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Throwables.getStackTraceAsString;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Runs a batch of HTTP requests on at most {@code parallelism} threads; each request writes
+ * into its own buffers, and results are framed and streamed as soon as they can be written:
+ *
+ * <pre>
+ * --- index=0 runtime=java duration_ms=1234 stdout_bytes=512 stderr_bytes=64
+ * [512 bytes of stdout]
+ * --- stderr index=0
+ * [64 bytes of stderr]
+ * </pre>
+ */
+final class HttpRequestsBatch {
+  private static final Logger logger = LoggerFactory.getLogger(HttpRequestsBatch.class);
+
+  public enum Order {
+    ORIGINAL, COMPLETION;
+
+    static Optional<Order> parse(final String order) {
+      for (final Order value : values()) {
+        if (value.name().equalsIgnoreCase(order)) {
+          return Optional.of(value);
+        }
+      }
+      return Optional.absent();
+    }
+  }
+
+  private static final String ALL_RUNTIMES = "all";
+
+  private final FaultsService faultsService;
+  private final ExecutorService executor;
+  private final Optional<String> runtime;
+  private final List<HttpRequest> requests;
+  private final int parallelism;
+  private final Order order;
+
+  private final AtomicInteger next;
+  private final AtomicBoolean cancelled;
+  private final BlockingQueue<Result> results;
+
+  HttpRequestsBatch(
+    final FaultsService faultsService,
+    final ExecutorService executor,
+    final Optional<String> runtime,
+    final List<HttpRequest> requests,
+    final int parallelism,
+    final Order order
+  ) {
+    checkArgument(parallelism > 0, "invalid parallelism: %s", parallelism);
+    this.faultsService = faultsService;
+    this.executor = executor;
+    this.runtime = runtime;
+    this.requests = requests;
+    this.parallelism = Math.min(parallelism, requests.size());
+    this.order = order;
+    this.next = new AtomicInteger(0);
+    this.cancelled = new AtomicBoolean(false);
+    this.results = new LinkedBlockingQueue<Result>();
+  }
+
+  /**
+   * Blocks until every request has run and its result has been written to {@code output};
+   * if writing fails, requests not yet started are skipped.
+   */
+  void run(final OutputStream output) throws IOException, InterruptedException {
+    for (int i = 0; i < this.parallelism; i++) {
+      this.executor.execute(this::work);
+    }
+    final Result[] pending = new Result[this.requests.size()];
+    int written = 0;
+    try {
+      for (int received = 0; received < pending.length; received++) {
+        final Result result = this.results.take();
+        if (this.order == Order.COMPLETION) {
+          result.writeTo(output);
+          written += 1;
+        } else {
+          pending[result.index] = result;
+          while (written < pending.length && pending[written] != null) {
+            pending[written].writeTo(output);
+            pending[written] = null;
+            written += 1;
+          }
+        }
+        output.flush();
+      }
+    } finally {
+      this.cancelled.set(true);
+    }
+  }
+
+  // each worker pulls the next request until none is left: parallelism is bounded per batch
+  private void work() {
+    int index;
+    while (!this.cancelled.get() && (index = this.next.getAndIncrement()) < this.requests.size()) {
+      this.results.add(this.execute(index, this.requests.get(index)));
+    }
+  }
+
+  private Result execute(final int index, final HttpRequest request) {
+    logger.info("runtime: {} | HTTP request #{}: {}", this.runtime, index, request);
+    final ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+    final ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+    final Stopwatch stopwatch = Stopwatch.createStarted();
+    try {
+      this.faultsService.runHttpRequest(request, this.runtime,
+        Optional.<OutputStream>of(stdout), Optional.<OutputStream>of(stderr));
+    } catch(final Exception ex) {
+      logger.error("HTTP request #{} failed: {}", index, getStackTraceAsString(ex));
+      stderr.writeBytes(getStackTraceAsString(ex).getBytes(UTF_8));
+    }
+    return new Result(index, this.runtime.or(ALL_RUNTIMES),
+      stopwatch.elapsed(TimeUnit.MILLISECONDS), stdout, stderr);
+  }
+
+  private static final class Result {
+
+    private final int index;
+    private final String runtime;
+    private final long durationMillis;
+    private final ByteArrayOutputStream stdout;
+    private final ByteArrayOutputStream stderr;
+
+    private Result(
+      final int index,
+      final String runtime,
+      final long durationMillis,
+      final ByteArrayOutputStream stdout,
+      final ByteArrayOutputStream stderr
+    ) {
+      this.index = index;
+      this.runtime = runtime;
+      this.durationMillis = durationMillis;
+      this.stdout = stdout;
+      this.stderr = stderr;
+    }
+
+    private void writeTo(final OutputStream output) throws IOException {
+      output.write(("--- index=" + this.index + " runtime=" + this.runtime
+        + " duration_ms=" + this.durationMillis + " stdout_bytes=" + this.stdout.size()
+        + " stderr_bytes=" + this.stderr.size() + "\n").getBytes(UTF_8));
+      this.stdout.writeTo(output);
+      output.write(("\n--- stderr index=" + this.index + "\n").getBytes(UTF_8));
+      this.stderr.writeTo(output);
+      output.write('\n');
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this)
+        .add("index", this.index)
+        .add("runtime", this.runtime)
+        .add("durationMillis", this.durationMillis)
+        .toString();
+    }
+
+  }
+
+}
@@ -0,0 +1,393 @@
+package dev.chux.gcp.crun.faults.rest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Optional;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.primitives.Doubles;
+import com.google.common.util.concurrent.RateLimiter;
+
+import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.Since;
+import com.google.gson.annotations.SerializedName;
+
+import dev.chux.gcp.crun.faults.FaultsService;
+import dev.chux.gcp.crun.model.HttpRequest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Throwables.getStackTraceAsString;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Sends the same HTTP request {@code count} times through each runtime, all runtimes at once;
+ * each runtime uses {@code concurrency} threads and, optionally, is throttled to {@code rate}
+ * requests per second. Samples are reduced into a latency histogram and an outcome breakdown
+ * per runtime: the HTTP status code, or the name of the error when no response was received.
+ */
+final class HttpRequestsRepeat {
+  private static final Logger logger = LoggerFactory.getLogger(HttpRequestsRepeat.class);
+
+  // `* Response: 200` for java, python, nodejs and golang; `HTTP/1.1 200` and `< HTTP/1.1 200` for linux
+  private static final Pattern STATUS = Pattern.compile("(?m)^(?:\\* Response: |<? ?HTTP/[0-9.]+ )(\\d{3})\\b");
+  private static final Pattern ERROR = Pattern.compile("\\b((?:[a-zA-Z_$][\\w$]*\\.)*[A-Z][\\w$]*(?:Exception|Error))\\b");
+
+  private static final String NO_RESPONSE = "no_response";
+
+  private final FaultsService faultsService;
+  private final ExecutorService executor;
+  private final List<String> runtimes;
+  private final HttpRequest request;
+  private final int count;
+  private final Optional<Double> rate;
+  private final int concurrency;
+
+  HttpRequestsRepeat(
+    final FaultsService faultsService,
+    final ExecutorService executor,
+    final List<String> runtimes,
+    final HttpRequest request,
+    final int count,
+    final Optional<Double> rate,
+    final int concurrency
+  ) {
+    checkArgument(!runtimes.isEmpty(), "no runtimes");
+    checkArgument(count > 0, "invalid count: %s", count);
+    checkArgument(concurrency > 0, "invalid concurrency: %s", concurrency);
+    checkArgument(!rate.isPresent() || (Doubles.isFinite(rate.get().doubleValue()) && rate.get().doubleValue() > 0),
+      "invalid rate: %s", rate);
+    this.faultsService = faultsService;
+    this.executor = executor;
+    this.runtimes = runtimes;
+    this.request = request;
+    this.count = count;
+    this.rate = rate;
+    this.concurrency = Math.min(concurrency, count);
+  }
+
+  /**
+   * Blocks until every runtime has sent all of its requests.
+   */
+  Report run() throws InterruptedException {
+    final ImmutableList.Builder<Runner> runners = ImmutableList.builder();
+    for (final String runtime : this.runtimes) {
+      runners.add(new Runner(runtime));
+    }
+    final List<Runner> started = runners.build();
+    final CountDownLatch done = new CountDownLatch(started.size() * this.concurrency);
+    // start one worker per runtime at a time, so no runtime waits behind the others
+    for (int i = 0; i < this.concurrency; i++) {
+      for (final Runner runner : started) {
+        this.executor.execute(() -> {
+          try {
+            runner.work();
+          } finally {
+            done.countDown();
+          }
+        });
+      }
+    }
+    try {
+      done.await();
+    } finally {
+      for (final Runner runner : started) {
+        runner.cancelled = true;
+      }
+    }
+    final ImmutableMap.Builder<String, RuntimeReport> reports = ImmutableMap.builder();
+    for (final Runner runner : started) {
+      reports.put(runner.runtime, runner.report());
+    }
+    return new Report(this, reports.build());
+  }
+
+  private static String outcome(final String stdout, final String stderr) {
+    final Optional<String> status = lastStatus(stdout + "\n" + stderr);
+    if (status.isPresent()) {
+      return status.get();
+    }
+    final Matcher error = ERROR.matcher(stderr);
+    if (error.find()) {
+      return error.group(1);
+    }
+    final Matcher output = ERROR.matcher(stdout);
+    return output.find() ? output.group(1) : NO_RESPONSE;
+  }
+
+  // redirects are followed: the last status is the one of the final response
+  private static Optional<String> lastStatus(final String output) {
+    final Matcher matcher = STATUS.matcher(output);
+    String status = null;
+    while (matcher.find()) {
+      status = matcher.group(1);
+    }
+    return Optional.fromNullable(status);
+  }
+
+  // anything but a 2xx or 3xx status code
+  private static boolean isError(final String outcome) {
+    return outcome.length() != 3 || !(outcome.startsWith("2") || outcome.startsWith("3"));
+  }
+
+  private final class Runner {
+
+    private final String runtime;
+    private final Optional<RateLimiter> rateLimiter;
+    private final AtomicInteger next;
+    private final long[] latencies;
+    private final ConcurrentMap<String, LongAdder> outcomes;
+    private final Stopwatch stopwatch;
+
+    private volatile boolean cancelled = false;
+
+    private Runner(final String runtime) {
+      this.runtime = runtime;
+      this.rateLimiter = rate.isPresent()
+        ? Optional.of(RateLimiter.create(rate.get().doubleValue()))
+        : Optional.<RateLimiter>absent();
+      this.next = new AtomicInteger(0);
+      this.latencies = new long[count];
+      this.outcomes = new ConcurrentHashMap<String, LongAdder>();
+      this.stopwatch = Stopwatch.createStarted();
+    }
+
+    private void work() {
+      int index;
+      while (!this.cancelled && (index = this.next.getAndIncrement()) < count) {
+        if (this.rateLimiter.isPresent()) {
+          this.rateLimiter.get().acquire();
+        }
+        this.sample(index);
+      }
+    }
+
+    private void sample(final int index) {
+      final ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+      final ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+      final Stopwatch stopwatch = Stopwatch.createStarted();
+      try {
+        // waiting for a busy daemon worker is not latency of the request
+        faultsService.runHttpRequest(request, Optional.of(this.runtime),
+          Optional.<OutputStream>of(stdout), Optional.<OutputStream>of(stderr),
+          () -> stopwatch.reset().start());
+      } catch(final Exception ex) {
+        logger.error("runtime: {} | HTTP request #{} failed: {}", this.runtime, index, getStackTraceAsString(ex));
+        stderr.writeBytes(getStackTraceAsString(ex).getBytes(UTF_8));
+      }
+      // each index is written by a single thread, and read after all threads are done
+      this.latencies[index] = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+      this.outcomes.computeIfAbsent(outcome(stdout.toString(UTF_8), stderr.toString(UTF_8)),
+        (outcome) -> new LongAdder()).increment();
+    }
+
+    private RuntimeReport report() {
+      final long elapsedMillis = this.stopwatch.elapsed(TimeUnit.MILLISECONDS);
+      final int samples = Math.min(this.next.get(), count);
+      final ImmutableSortedMap.Builder<String, Long> outcomes = ImmutableSortedMap.naturalOrder();
+      long errors = 0L;
+      for (final Map.Entry<String, LongAdder> outcome : this.outcomes.entrySet()) {
+        final long total = outcome.getValue().sum();
+        outcomes.put(outcome.getKey(), Long.valueOf(total));
+        if (isError(outcome.getKey())) {
+          errors += total;
+        }
+      }
+      return new RuntimeReport(samples, errors, elapsedMillis,
+        new Latency(Arrays.copyOf(this.latencies, samples)), outcomes.build());
+    }
+
+  }
+
+  static final class Report {
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="count")
+    private final int count;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="rate")
+    private final Double rate;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="concurrency")
+    private final int concurrency;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="runtimes")
+    private final Map<String, RuntimeReport> runtimes;
+
+    private Report(
+      final HttpRequestsRepeat repeat,
+      final Map<String, RuntimeReport> runtimes
+    ) {
+      this.count = repeat.count;
+      this.rate = repeat.rate.orNull();
+      this.concurrency = repeat.concurrency;
+      this.runtimes = runtimes;
+    }
+
+  }
+
+  static final class RuntimeReport {
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="requests")
+    private final int requests;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="errors")
+    private final long errors;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="duration_ms")
+    private final long durationMillis;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="requests_per_second")
+    private final double requestsPerSecond;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="latency")
+    private final Latency latency;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="outcomes")
+    private final Map<String, Long> outcomes;
+
+    private RuntimeReport(
+      final int requests,
+      final long errors,
+      final long durationMillis,
+      final Latency latency,
+      final Map<String, Long> outcomes
+    ) {
+      this.requests = requests;
+      this.errors = errors;
+      this.durationMillis = durationMillis;
+      this.requestsPerSecond = (durationMillis == 0L) ? 0.0 : (requests * 1000.0) / durationMillis;
+      this.latency = latency;
+      this.outcomes = outcomes;
+    }
+
+  }
+
+  /**
+   * Exact quantiles over all samples, plus power-of-2 millisecond buckets: {@code le_N} counts samples
+   * that took more than {@code N/2} and at most {@code N} milliseconds.
+   */
+  static final class Latency {
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="min_ms")
+    private final long min;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="mean_ms")
+    private final double mean;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="p50_ms")
+    private final long p50;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="p90_ms")
+    private final long p90;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="p99_ms")
+    private final long p99;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="max_ms")
+    private final long max;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="buckets")
+    private final Map<String, Long> buckets;
+
+    private Latency(final long[] samples) {
+      Arrays.sort(samples);
+      final int count = samples.length;
+      long sum = 0L;
+      for (final long sample : samples) {
+        sum += sample;
+      }
+      this.min = (count == 0) ? 0L : samples[0];
+      this.max = (count == 0) ? 0L : samples[count - 1];
+      this.mean = (count == 0) ? 0.0 : ((double) sum) / count;
+      this.p50 = quantile(samples, 0.50);
+      this.p90 = quantile(samples, 0.90);
+      this.p99 = quantile(samples, 0.99);
+      this.buckets = buckets(samples);
+    }
+
+    private static long quantile(final long[] sorted, final double q) {
+      if (sorted.length == 0) {
+        return 0L;
+      }
+      final int rank = (int) Math.ceil(q * sorted.length);
+      return sorted[Math.max(0, rank - 1)];
+    }
+
+    // samples are sorted: buckets come out in ascending order
+    private static Map<String, Long> buckets(final long[] sorted) {
+      final Map<String, Long> buckets = new LinkedHashMap<String, Long>();
+      for (final long sample : sorted) {
+        final long bound = (sample <= 1L) ? 1L : Long.highestOneBit(sample - 1L) << 1;
+        buckets.merge("le_" + bound, Long.valueOf(1L), Long::sum);
+      }
+      return ImmutableMap.copyOf(buckets);
+    }
+
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+      .add("runtimes", this.runtimes)
+      .add("count", this.count)
+      .add("rate", this.rate)
+      .add("concurrency", this.concurrency)
+      .toString();
+  }
+
+}
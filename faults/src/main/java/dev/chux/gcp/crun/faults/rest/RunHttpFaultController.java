@@ -6,13 +6,19 @@ import java.io.OutputStreamWriter;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.servlet.ServletOutputStream;
 
 import com.google.inject.Inject;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.Doubles;
+import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import com.google.gson.Gson;
 
@@ -45,6 +51,17 @@ public class RunHttpFaultController implements Route {
 
   public static final String PROPERTIES_PREFIX = RestModule.PROPERTIES_PREFIX + ".http.request";
   public static final String PROPERTY_ALLOWED_RUNTIMES = PROPERTIES_PREFIX + ".runtimes.allowed";
+  public static final String PROPERTY_BATCH_THREADS = PROPERTIES_PREFIX + ".batch.threads";
+  public static final String PROPERTY_BATCH_PARALLELISM = PROPERTIES_PREFIX + ".batch.parallelism";
+  public static final String PROPERTY_REPEAT_MAX_COUNT = PROPERTIES_PREFIX + ".repeat.count.max";
+  public static final String PROPERTY_REPEAT_MAX_CONCURRENCY = PROPERTIES_PREFIX + ".repeat.concurrency.max";
+
+  private static final int DEFAULT_BATCH_THREADS = 32;
+  private static final int DEFAULT_BATCH_PARALLELISM = 8;
+  private static final int DEFAULT_REPEAT_COUNT = 100;
+  private static final int DEFAULT_REPEAT_MAX_COUNT = 100_000;
+  private static final int DEFAULT_REPEAT_CONCURRENCY = 1;
+  private static final int DEFAULT_REPEAT_MAX_CONCURRENCY = 32;
 
   private static final String SYS_OUT = "sys";
 
@@ -53,6 +70,12 @@ public class RunHttpFaultController implements Route {
   private final Gson gson;
   private final FaultsService faultsService;
   private final Set<String> allowedRuntimes;
+  private final int batchThreads;
+  private final int batchParallelism;
+  private final ExecutorService batchExecutor;
+  private final int repeatMaxCount;
+  private final int repeatMaxConcurrency;
+  private final ExecutorService repeatExecutor;
 
   @Inject
   public RunHttpFaultController(
@@ -63,6 +86,20 @@ public class RunHttpFaultController implements Route {
     this.gson = gson;
     this.faultsService = faultsService;
     this.allowedRuntimes = this.allowedRuntimes(configService);
+    this.batchThreads = configService.getIntAppProp(PROPERTY_BATCH_THREADS)
+      .or(DEFAULT_BATCH_THREADS).intValue();
+    this.batchParallelism = Math.min(this.batchThreads,
+      configService.getIntAppProp(PROPERTY_BATCH_PARALLELISM).or(DEFAULT_BATCH_PARALLELISM).intValue());
+    // shared by all batches: a batch never holds more than its `parallelism` threads
+    this.batchExecutor = Executors.newFixedThreadPool(this.batchThreads,
+      new ThreadFactoryBuilder().setNameFormat("http-requests-batch-%d").setDaemon(true).build());
+    this.repeatMaxCount = configService.getIntAppProp(PROPERTY_REPEAT_MAX_COUNT)
+      .or(DEFAULT_REPEAT_MAX_COUNT).intValue();
+    this.repeatMaxConcurrency = configService.getIntAppProp(PROPERTY_REPEAT_MAX_CONCURRENCY)
+      .or(DEFAULT_REPEAT_MAX_CONCURRENCY).intValue();
+    // runtimes are measured side by side: threads are not shared with batches, nor capped across repeats
+    this.repeatExecutor = Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder().setNameFormat("http-requests-repeat-%d").setDaemon(true).build());
   }
 
   private final Set<String> allowedRuntimes(final ConfigService configService) {
@@ -88,10 +125,13 @@ public class RunHttpFaultController implements Route {
       });
     });
     logger.info("allowed runtimes: {}", this.allowedRuntimes);
+    logger.info("batches: [threads={}, parallelism={}]", this.batchThreads, this.batchParallelism);
+    logger.info("repeats: [max_count={}, max_concurrency={}]", this.repeatMaxCount, this.repeatMaxConcurrency);
   }
 
   public String endpoint(final String root) {
-    return "POST " + root + "/(http|curl)[/[optional:fault]]";
+    return "POST " + root + "/(http|curl)[/[optional:fault]]"
+      + "[?type=batch[&parallelism=N][&order=original|completion]|?count=N[&rate=R][&concurrency=C]]";
   }
 
   public Object handle(
@@ -102,8 +142,14 @@ public class RunHttpFaultController implements Route {
 
     final String rawBody = request.body();
 
+    final boolean isBatch = isMultiple(request, "type");
+    final boolean isRepeat = this.isRepeat(request);
+    if (isBatch && isRepeat) {
+      halt(400, "batches cannot be repeated");
+      return null;
+    }
     final Optional<HttpRequests> httpRequests;
-    if (isMultiple(request, "type")) {
+    if (isBatch) {
       httpRequests = this.requestsPayload(rawBody);
     } else {
       httpRequests = this.requestPayload(rawBody);
@@ -125,7 +171,13 @@ public class RunHttpFaultController implements Route {
 
     logger.info("starting: {}", executionID);
 
-    this.execHttpRequests(request, response, runtime, httpRequests.get());
+    if (isBatch) {
+      this.execHttpRequestsBatch(request, response, runtime, httpRequests.get());
+    } else if (isRepeat) {
+      this.execHttpRequestRepeat(request, response, runtime, httpRequests.get());
+    } else {
+      this.execHttpRequests(request, response, runtime, httpRequests.get());
+    }
 
     logger.info("finished: {}", executionID);
 
@@ -157,14 +209,132 @@ public class RunHttpFaultController implements Route {
       return;
     }
 
+    // all runtimes at once: output is multiplexed as NDJSON frames, and `done` frames delimit each request
+    final boolean isFramed = !runtime.isPresent();
+    if (isFramed) {
+      response.type("application/x-ndjson");
+    }
+
     final OutputStream output = response.raw().getOutputStream();
     final OutputStreamWriter writer = new OutputStreamWriter(output, UTF_8);
 
     for(final HttpRequest httpRequest : tasks) {
       this.execHttpRequest(request, response, runtime, httpRequest, output);
-      writer.write("\n---\n");
-      writer.flush();
+      if (!isFramed) {
+        writer.write("\n---\n");
+        writer.flush();
+      }
+    }
+  }
+
+  private final void execHttpRequestsBatch(
+    final Request request,
+    final Response response,
+    final Optional<String> runtime,
+    final HttpRequests httpRequests
+  ) throws Exception {
+    final List<HttpRequest> tasks = httpRequests.get();
+
+    if (tasks.isEmpty()) {
+      halt(204, "no HTTP requests");
+      return;
+    }
+
+    final int parallelism = this.parallelism(request);
+    final Optional<HttpRequestsBatch.Order> order = this.order(request);
+    if (parallelism <= 0 || !order.isPresent()) {
+      halt(400, "invalid batch parameters");
+      return;
+    }
+
+    logger.info("batch of {} HTTP requests: [parallelism={}, order={}]", tasks.size(), parallelism, order.get());
+
+    new HttpRequestsBatch(this.faultsService, this.batchExecutor,
+      runtime, tasks, parallelism, order.get())
+      .run(response.raw().getOutputStream());
+  }
+
+  private final void execHttpRequestRepeat(
+    final Request request,
+    final Response response,
+    final Optional<String> runtime,
+    final HttpRequests httpRequests
+  ) throws Exception {
+    final List<HttpRequest> tasks = httpRequests.get();
+
+    if (tasks.isEmpty()) {
+      halt(204, "no HTTP requests");
+      return;
+    }
+
+    final int count = this.intQueryParam(request, "count", DEFAULT_REPEAT_COUNT);
+    final int concurrency = this.intQueryParam(request, "concurrency", DEFAULT_REPEAT_CONCURRENCY);
+    final Optional<Double> rate = this.rate(request);
+    if (count <= 0 || count > this.repeatMaxCount
+        || concurrency <= 0 || concurrency > this.repeatMaxConcurrency
+        || (rate.isPresent() && !(Doubles.isFinite(rate.get().doubleValue()) && rate.get().doubleValue() > 0))) {
+      halt(400, "invalid repeat parameters");
+      return;
+    }
+
+    final List<String> runtimes = runtime.isPresent()
+      ? ImmutableList.of(runtime.get()) : ImmutableList.copyOf(this.allowedRuntimes);
+
+    final HttpRequestsRepeat repeat = new HttpRequestsRepeat(this.faultsService,
+      this.repeatExecutor, runtimes, tasks.get(0), count, rate, concurrency);
+    logger.info("repeating HTTP request: {} | {}", tasks.get(0), repeat);
+
+    final HttpRequestsRepeat.Report report = repeat.run();
+
+    response.type("application/json");
+    final OutputStreamWriter writer = new OutputStreamWriter(response.raw().getOutputStream(), UTF_8);
+    this.gson.toJson(report, writer);
+    writer.flush();
+  }
+
+  private final boolean isRepeat(final Request request) {
+    return request.queryParams("count") != null
+      || request.queryParams("rate") != null
+      || request.queryParams("concurrency") != null;
+  }
+
+  private final int intQueryParam(
+    final Request request,
+    final String name,
+    final int defaultValue
+  ) {
+    final String value = request.queryParams(name);
+    if (isNullOrEmpty(value)) {
+      return defaultValue;
+    }
+    final Integer intValue = Ints.tryParse(value);
+    return (intValue == null) ? -1 : intValue.intValue();
+  }
+
+  private final Optional<Double> rate(final Request request) {
+    final String rate = request.queryParams("rate");
+    if (isNullOrEmpty(rate)) {
+      return Optional.absent();
+    }
+    final Double value = Doubles.tryParse(rate);
+    return Optional.of((value == null) ? Double.valueOf(-1) : value);
+  }
+
+  private final int parallelism(final Request request) {
+    final String parallelism = request.queryParams("parallelism");
+    if (isNullOrEmpty(parallelism)) {
+      return this.batchParallelism;
+    }
+    final Integer value = Ints.tryParse(parallelism);
+    return (value == null) ? -1 : Math.min(value.intValue(), this.batchThreads);
+  }
+
+  private final Optional<HttpRequestsBatch.Order> order(final Request request) {
+    final String order = request.queryParams("order");
+    if (isNullOrEmpty(order)) {
+      return Optional.of(HttpRequestsBatch.Order.ORIGINAL);
     }
+    return HttpRequestsBatch.Order.parse(order);
   }
 
   private final Optional<String> runtime(final Request request) {
@@ -0,0 +1,221 @@
+#!/usr/bin/env python3
+
+# Long-lived `gcloud` worker: pays for the Python interpreter and for loading the Cloud CLI
+# only once, and then runs one command at a time.
+#
+# Requests and results are single-line JSON documents exchanged over stdin and stdout; output is
+# streamed back in chunks as soon as it is written, and the exit code comes last:
+#   -> {"id": 1, "args": ["run", "services", "list", "--format=json"], "env": {"NAME": "value"}}
+#   <- {"id": 1, "stream": "stdout", "data": "..."}
+#   <- {"id": 1, "exit_code": 0}
+#
+# `stdout` chunks hold both stdout and stderr, interleaved as written; with `"split": true`, they hold
+# stdout only, and stderr is streamed as `stderr` chunks.
+#
+# Each command runs in a child forked from the warmed-up interpreter, so that commands never
+# share state; `env` overrides apply to that child only. When the Cloud CLI cannot be loaded,
+# or `X_GCLOUD_WORKER_MODE=subprocess`, commands run `X_GCLOUD_BIN` instead.
+
+import codecs
+import ctypes
+import json
+import os
+import shutil
+import signal
+import subprocess
+import sys
+import threading
+import traceback
+
+GCLOUD_BIN = os.environ.get("X_GCLOUD_BIN") or shutil.which("gcloud") or "gcloud"
+MODE = os.environ.get("X_GCLOUD_WORKER_MODE", "in-process")
+
+PR_SET_PDEATHSIG = 1
+
+CHUNK_BYTES = 64 * 1024
+
+
+def die_with_parent() -> None:
+    # commands must not outlive the worker once it is killed for exceeding its deadline
+    try:
+        ctypes.CDLL(None, use_errno=True).prctl(PR_SET_PDEATHSIG, signal.SIGKILL)
+    except Exception:
+        pass
+
+
+def sdk_root():
+    root = os.environ.get("CLOUDSDK_ROOT_DIR")
+    if root:
+        return root
+    gcloud = shutil.which("gcloud")
+    if not gcloud:
+        return None
+    return os.path.dirname(os.path.dirname(os.path.realpath(gcloud)))
+
+
+def load_gcloud():
+    """Returns a function that runs `sys.argv` with the warmed-up Cloud CLI, or `None`."""
+    root = sdk_root()
+    lib = os.path.join(root, "lib") if root else None
+    if not lib or not os.path.isdir(os.path.join(lib, "googlecloudsdk")):
+        return None
+    sys.path[:0] = [lib, os.path.join(lib, "third_party")]
+    try:
+        # same bootstrap as `lib/gcloud.py`
+        import gcloud as bootstrap
+        if hasattr(bootstrap, "_fix_google_module"):
+            bootstrap._fix_google_module()
+        from googlecloudsdk import gcloud_main
+        cli = gcloud_main.CreateCLI([])
+        return lambda: gcloud_main.main(gcloud_cli=cli)
+    except Exception:
+        traceback.print_exc()
+        return None
+
+
+def exit_code_of(ex: SystemExit) -> int:
+    if ex.code is None:
+        return 0
+    return ex.code if isinstance(ex.code, int) else 1
+
+
+class Results:
+    """Writes results, one line at a time: chunks of both streams of a command are interleaved."""
+
+    def __init__(self, stream):
+        self.stream = stream
+        self.lock = threading.Lock()
+
+    def write(self, result) -> None:
+        with self.lock:
+            self.stream.write(json.dumps(result) + "\n")
+            self.stream.flush()
+
+    def emitter(self, request_id):
+        """Returns a function that writes a chunk of output of the command `request_id`."""
+        return lambda stream, data: self.write({"id": request_id, "stream": stream, "data": data})
+
+
+def pump(stream, name, emit) -> None:
+    # chunks may end within a character: it is completed by the next one
+    decoder = codecs.getincrementaldecoder("utf-8")(errors="replace")
+    with stream:
+        while True:
+            chunk = stream.read(CHUNK_BYTES)
+            if not chunk:
+                break
+            data = decoder.decode(chunk)
+            if data:
+                emit(name, data)
+    data = decoder.decode(b"", final=True)
+    if data:
+        emit(name, data)
+
+
+def pump_all(streams, emit) -> None:
+    # both pipes must be drained at once, or a command filling one of them would never exit
+    readers = [threading.Thread(target=pump, args=(stream, name, emit), daemon=True)
+               for name, stream in streams]
+    for reader in readers:
+        reader.start()
+    for reader in readers:
+        reader.join()
+
+
+def run_forked(main, args, env, split, emit):
+    read_fd, write_fd = os.pipe()
+    err_read_fd, err_write_fd = os.pipe() if split else (None, None)
+    pid = os.fork()
+    if pid == 0:
+        code = 1
+        try:
+            die_with_parent()
+            os.close(read_fd)
+            os.dup2(write_fd, 1)
+            os.dup2(err_write_fd if split else write_fd, 2)
+            os.close(write_fd)
+            if split:
+                os.close(err_read_fd)
+                os.close(err_write_fd)
+            devnull = os.open(os.devnull, os.O_RDONLY)
+            os.dup2(devnull, 0)
+            sys.stdin = open(0, "r", closefd=False)
+            sys.stdout = open(1, "w", closefd=False)
+            sys.stderr = open(2, "w", closefd=False)
+            os.environ.update(env)
+            sys.argv = ["gcloud"] + args
+            main()
+            code = 0
+        except SystemExit as ex:
+            code = exit_code_of(ex)
+        except BaseException:
+            traceback.print_exc()
+        finally:
+            sys.stdout.flush()
+            sys.stderr.flush()
+            os._exit(code)
+    os.close(write_fd)
+    streams = [("stdout", os.fdopen(read_fd, "rb", buffering=0))]
+    if split:
+        os.close(err_write_fd)
+        streams.append(("stderr", os.fdopen(err_read_fd, "rb", buffering=0)))
+    pump_all(streams, emit)
+    _, status = os.waitpid(pid, 0)
+    return os.waitstatus_to_exitcode(status)
+
+
+def run_subprocess(args, env, split, emit):
+    process = subprocess.Popen(
+        [GCLOUD_BIN] + args,
+        env={**os.environ, **env},
+        stdin=subprocess.DEVNULL,
+        stdout=subprocess.PIPE,
+        stderr=subprocess.PIPE if split else subprocess.STDOUT,
+        bufsize=0,
+        preexec_fn=die_with_parent,
+    )
+    streams = [("stdout", process.stdout)]
+    if split:
+        streams.append(("stderr", process.stderr))
+    pump_all(streams, emit)
+    return process.wait()
+
+
+def serve(main, request, emit):
+    args = [str(arg) for arg in request.get("args") or []]
+    env = {str(k): str(v) for k, v in (request.get("env") or {}).items()}
+    split = bool(request.get("split"))
+    try:
+        if main is not None:
+            return run_forked(main, args, env, split, emit)
+        return run_subprocess(args, env, split, emit)
+    except Exception:
+        emit("stderr" if split else "stdout", traceback.format_exc())
+        return -1
+
+
+def daemon() -> None:
+    results = Results(sys.stdout)
+    # nothing but results may ever reach stdout
+    sys.stdout = sys.stderr
+    main = load_gcloud() if MODE == "in-process" else None
+    print(f"gcloud worker {os.getpid()}: mode={'in-process' if main else 'subprocess'}", file=sys.stderr)
+    for line in sys.stdin:
+        if not line.strip():
+            continue
+        try:
+            request = json.loads(line)
+        except Exception:
+            traceback.print_exc()
+            request = {}
+        emit = results.emitter(request.get("id"))
+        if "args" in request:
+            code = serve(main, request, emit)
+        else:
+            emit("stdout", "invalid request\n")
+            code = -1
+        results.write({"id": request.get("id"), "exit_code": code})
+
+
+if __name__ == "__main__":
+    daemon()
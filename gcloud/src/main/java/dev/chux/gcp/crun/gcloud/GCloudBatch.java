@@ -0,0 +1,218 @@
+package dev.chux.gcp.crun.gcloud;
+
+import java.io.OutputStream;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Ints;
+
+import dev.chux.gcp.crun.model.GCloudCommand;
+import dev.chux.gcp.crun.model.GCloudCommands;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Commands of a batch along with the dependencies between them: a directed acyclic graph.
+ *
+ * <p>A command runs once all of its dependencies succeeded, and is skipped as soon as one of them did not.
+ * Dependencies are declared with {@code depends}, by ID or by 1-based position; commands which declare
+ * none run after the one before them whatever its status, unless the batch is {@code independent}.</p>
+ */
+public final class GCloudBatch {
+
+  public enum Status { SUCCESS, FAILED, SKIPPED }
+
+  /**
+   * All methods are called from the thread running the batch, one command at a time.
+   */
+  public interface Listener {
+
+    /**
+     * @return where to write the output of the command at {@code index}; absent to discard it.
+     */
+    Optional<OutputStream> started(final int index, final GCloudCommand command);
+
+    /**
+     * Called right after {@link #started}, only if it returned a stream.
+     *
+     * @return where to write stderr of the command at {@code index}; absent to interleave it with stdout.
+     */
+    default Optional<OutputStream> errors(final int index, final GCloudCommand command) {
+      return Optional.absent();
+    }
+
+    void finished(final int index, final GCloudCommand command, final Status status);
+
+  }
+
+  private final ImmutableList<GCloudCommand> commands;
+  // for each command: the positions of the commands it depends on
+  private final ImmutableList<ImmutableList<Integer>> dependencies;
+  // for each command: the positions of the commands that depend on it
+  private final ImmutableList<ImmutableList<Integer>> dependents;
+  // positions of the commands which declared no dependencies: theirs only order them
+  private final ImmutableSet<Integer> ordered;
+  private final boolean sequential;
+
+  private GCloudBatch(
+    final List<GCloudCommand> commands,
+    final List<ImmutableList<Integer>> dependencies,
+    final Set<Integer> ordered
+  ) {
+    this.commands = ImmutableList.copyOf(commands);
+    this.dependencies = ImmutableList.copyOf(dependencies);
+    this.ordered = ImmutableSet.copyOf(ordered);
+
+    final List<List<Integer>> dependents = Lists.newArrayList();
+    boolean sequential = true;
+    for (int i = 0; i < commands.size(); i++) {
+      dependents.add(Lists.<Integer>newArrayList());
+    }
+    for (int i = 0; i < commands.size(); i++) {
+      final List<Integer> required = this.dependencies.get(i);
+      for (final Integer dependency : required) {
+        dependents.get(dependency.intValue()).add(Integer.valueOf(i));
+      }
+      sequential &= (i == 0)
+        ? required.isEmpty()
+        : required.equals(ImmutableList.of(Integer.valueOf(i - 1)));
+    }
+    final ImmutableList.Builder<ImmutableList<Integer>> builder = ImmutableList.builder();
+    for (final List<Integer> outgoing : dependents) {
+      builder.add(ImmutableList.copyOf(outgoing));
+    }
+    this.dependents = builder.build();
+    this.sequential = sequential;
+  }
+
+  /**
+   * @throws IllegalArgumentException if a dependency is unknown, or dependencies form a cycle.
+   */
+  public static GCloudBatch of(final GCloudCommands commands) {
+    checkNotNull(commands);
+    final List<GCloudCommand> values = commands.get();
+
+    final Map<String, Integer> ids = Maps.newHashMap();
+    for (int i = 0; i < values.size(); i++) {
+      final Optional<String> id = values.get(i).optionalId();
+      if (id.isPresent()) {
+        checkArgument(ids.put(id.get(), Integer.valueOf(i)) == null, "duplicate command id: %s", id.get());
+      }
+    }
+
+    final List<ImmutableList<Integer>> dependencies = Lists.newArrayList();
+    final Set<Integer> ordered = Sets.newHashSet();
+    for (int i = 0; i < values.size(); i++) {
+      final Optional<List<String>> declared = values.get(i).optionalDependencies();
+      if (!declared.isPresent()) {
+        ordered.add(Integer.valueOf(i));
+        dependencies.add((i == 0 || commands.independent())
+          ? ImmutableList.<Integer>of() : ImmutableList.of(Integer.valueOf(i - 1)));
+        continue;
+      }
+      final ImmutableSet.Builder<Integer> builder = ImmutableSet.builder();
+      for (final String dependency : declared.get()) {
+        final Integer index = resolve(ids, values.size(), dependency);
+        checkArgument(index.intValue() != i, "command %s depends on itself", i + 1);
+        builder.add(index);
+      }
+      dependencies.add(builder.build().asList());
+    }
+
+    final GCloudBatch batch = new GCloudBatch(values, dependencies, ordered);
+    batch.checkAcyclic();
+    return batch;
+  }
+
+  private static Integer resolve(
+    final Map<String, Integer> ids,
+    final int size,
+    final String dependency
+  ) {
+    final Integer index = ids.get(dependency);
+    if (index != null) {
+      return index;
+    }
+    final Integer position = (dependency == null) ? null : Ints.tryParse(dependency.trim());
+    checkArgument(position != null && position.intValue() >= 1 && position.intValue() <= size,
+      "unknown dependency: %s", dependency);
+    return Integer.valueOf(position.intValue() - 1);
+  }
+
+  // Kahn's algorithm: commands left unvisited are part of a cycle
+  private void checkAcyclic() {
+    final int[] pending = new int[this.size()];
+    final List<Integer> ready = Lists.newArrayList();
+    for (int i = 0; i < this.size(); i++) {
+      pending[i] = this.dependencies.get(i).size();
+      if (pending[i] == 0) {
+        ready.add(Integer.valueOf(i));
+      }
+    }
+    int visited = 0;
+    while (!ready.isEmpty()) {
+      final int index = ready.remove(ready.size() - 1).intValue();
+      visited += 1;
+      for (final Integer dependent : this.dependents.get(index)) {
+        if (--pending[dependent.intValue()] == 0) {
+          ready.add(dependent);
+        }
+      }
+    }
+    checkArgument(visited == this.size(), "dependencies between commands form a cycle");
+  }
+
+  public int size() {
+    return this.commands.size();
+  }
+
+  public boolean isEmpty() {
+    return this.commands.isEmpty();
+  }
+
+  /**
+   * Whether every command depends exactly on the one before it, so that only one can run at a time.
+   */
+  public boolean isSequential() {
+    return this.sequential;
+  }
+
+  GCloudCommand command(final int index) {
+    return this.commands.get(index);
+  }
+
+  ImmutableList<Integer> dependencies(final int index) {
+    return this.dependencies.get(index);
+  }
+
+  ImmutableList<Integer> dependents(final int index) {
+    return this.dependents.get(index);
+  }
+
+  /**
+   * Whether the command at {@code index} runs once its dependencies finished, even if they did not succeed.
+   */
+  boolean isOrderedOnly(final int index) {
+    return this.ordered.contains(Integer.valueOf(index));
+  }
+
+  @Override
+  public String toString() {
+    return toStringHelper(this)
+      .add("size", this.size())
+      .add("sequential", this.sequential)
+      .add("dependencies", this.dependencies)
+      .toString();
+  }
+
+}
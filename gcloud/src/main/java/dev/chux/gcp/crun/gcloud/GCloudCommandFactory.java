@@ -2,10 +2,18 @@ package dev.chux.gcp.crun.gcloud;
 
 import java.io.OutputStream;
 
+import com.google.inject.assistedinject.Assisted;
+
 public interface GCloudCommandFactory {
 
   public GCloudCommand create(final dev.chux.gcp.crun.model.GCloudCommand gcloudCommand);
 
   public GCloudCommand createWithOutputStream(final dev.chux.gcp.crun.model.GCloudCommand gcloudCommand, OutputStream stream);
 
+  public GCloudCommand createWithOutputStreams(
+    final dev.chux.gcp.crun.model.GCloudCommand gcloudCommand,
+    @Assisted("stdout") OutputStream stdout,
+    @Assisted("stderr") OutputStream stderr
+  );
+
 }
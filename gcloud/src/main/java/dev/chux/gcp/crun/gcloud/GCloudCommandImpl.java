@@ -41,6 +41,7 @@ public class GCloudCommandImpl implements GCloudCommand {
   private final String gcloudBinary;
   private final dev.chux.gcp.crun.model.GCloudCommand gcloudCommand;
   private final Optional<OutputStream> stream;
+  private final Optional<OutputStream> errors;
   private final Provider<String> formatProvider;
   private final Set<String> environmentBlacklist;
 
@@ -59,11 +60,23 @@ public class GCloudCommandImpl implements GCloudCommand {
     @Named(GCloudFormatSupplier.KEY) Provider<String> formatProvider,
     @Assisted dev.chux.gcp.crun.model.GCloudCommand gcloudCommand,
     @Assisted OutputStream stream
+  ) {
+    this(configService, formatProvider, gcloudCommand, stream, null);
+  }
+
+  @AssistedInject
+  public GCloudCommandImpl(
+    final ConfigService configService,
+    @Named(GCloudFormatSupplier.KEY) Provider<String> formatProvider,
+    @Assisted dev.chux.gcp.crun.model.GCloudCommand gcloudCommand,
+    @Assisted("stdout") OutputStream stream,
+    @Assisted("stderr") OutputStream errors
   ) {
     this.gcloudBinary = this.gcloudBinary(configService);
     this.formatProvider = formatProvider;
     this.gcloudCommand = gcloudCommand;
     this.stream = fromNullable(stream);
+    this.errors = fromNullable(errors);
     this.environmentBlacklist = this.environmentBlacklist(configService);
   }
 
@@ -189,7 +202,7 @@ public class GCloudCommandImpl implements GCloudCommand {
     if (this.stream.isPresent()) {
       builder
         .addStdOut(this.stream.get())
-        .addStdErr(this.stream.get());
+        .addStdErr(this.errors.or(this.stream.get()));
     }
     return this;
   }
@@ -23,6 +23,8 @@ public class GCloudModule extends AbstractModule {
 
     install(builder.build(GCloudCommandFactory.class));
 
+    bind(GCloudResultCache.class).in(Scopes.SINGLETON);
+    bind(GCloudWorkers.class).in(Scopes.SINGLETON);
     bind(GCloudService.class).in(Scopes.SINGLETON);
 
     install(new RestModule());
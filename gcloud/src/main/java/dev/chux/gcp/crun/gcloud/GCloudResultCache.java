@@ -0,0 +1,212 @@
+package dev.chux.gcp.crun.gcloud;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.name.Named;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Lists;
+
+import dev.chux.gcp.crun.ConfigService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Strings.nullToEmpty;
+
+/**
+ * Outputs of read-only {@code gcloud} commands, so that identical commands within
+ * {@code gcloud.cache.ttl-ms} do not fork {@code gcloud} again.
+ *
+ * <p>Disabled unless {@code gcloud.cache.enabled}; only commands in {@code gcloud.cache.commands}
+ * are cached, and only if they succeed. Identical commands arriving while one is running wait
+ * for its result instead of starting their own. Size is bounded by {@code gcloud.cache.max-bytes}
+ * of output.</p>
+ */
+public class GCloudResultCache {
+  private static final Logger logger = LoggerFactory.getLogger(GCloudResultCache.class);
+
+  public static final String PROPERTY_ENABLED = "gcloud.cache.enabled";
+  public static final String PROPERTY_TTL_MS = "gcloud.cache.ttl-ms";
+  public static final String PROPERTY_MAX_BYTES = "gcloud.cache.max-bytes";
+  public static final String PROPERTY_COMMANDS = "gcloud.cache.commands";
+
+  private static final long DEFAULT_TTL_MS = 30_000L;
+  private static final long DEFAULT_MAX_BYTES = 16L * 1024L * 1024L;
+
+  // verbs which never change anything; everything else is treated as mutating
+  private static final ImmutableSet<String> DEFAULT_COMMANDS =
+    ImmutableSet.of("describe", "list", "get-iam-policy", "get-value", "read");
+
+  private final boolean enabled;
+  private final long ttlMillis;
+  private final long maxBytes;
+  private final Set<String> commands;
+  private final Provider<String> formatProvider;
+  private final Cache<List<Object>, Result> cache;
+
+  @Inject
+  GCloudResultCache(
+    final ConfigService configService,
+    @Named(GCloudFormatSupplier.KEY) final Provider<String> formatProvider
+  ) {
+    this.enabled = configService.getBooleanAppProp(PROPERTY_ENABLED).or(Boolean.FALSE).booleanValue();
+    this.ttlMillis = configService.getLongAppProp(PROPERTY_TTL_MS).or(DEFAULT_TTL_MS).longValue();
+    this.maxBytes = configService.getLongAppProp(PROPERTY_MAX_BYTES).or(DEFAULT_MAX_BYTES).longValue();
+    final List<String> commands = configService.getMultivalueAppProp(PROPERTY_COMMANDS);
+    this.commands = commands.isEmpty() ? DEFAULT_COMMANDS
+      : ImmutableSet.copyOf(Lists.transform(commands, (command) -> command.trim().toLowerCase()));
+    checkArgument(this.ttlMillis > 0, "invalid cache TTL: %s", this.ttlMillis);
+    checkArgument(this.maxBytes > 0, "invalid cache size: %s", this.maxBytes);
+
+    this.formatProvider = formatProvider;
+    this.cache = CacheBuilder.newBuilder()
+      .expireAfterWrite(this.ttlMillis, TimeUnit.MILLISECONDS)
+      .maximumWeight(this.maxBytes)
+      .weigher((final List<Object> key, final Result result) -> result.output.length + result.errors.length)
+      .build();
+    logger.info("gcloud cache: {}", this);
+  }
+
+  public boolean isEnabled() {
+    return this.enabled;
+  }
+
+  public boolean isCacheable(final dev.chux.gcp.crun.model.GCloudCommand command) {
+    return this.enabled && this.commands.contains(nullToEmpty(command.command()).trim().toLowerCase());
+  }
+
+  /**
+   * Runs {@code command} with {@code executor} unless an identical one already did within the TTL,
+   * or is running right now; {@code executor} writes the output to the given stream, and returns the exit code.
+   *
+   * @param split whether {@code executor} must be given a separate stream for stderr.
+   */
+  Result run(
+    final dev.chux.gcp.crun.model.GCloudCommand command,
+    final boolean split,
+    final BiFunction<OutputStream, Optional<OutputStream>, Integer> executor
+  ) throws ExecutionException {
+    checkArgument(this.isCacheable(command), "not cacheable: %s", command);
+    final List<Object> key = this.key(command, split);
+    final Result[] miss = new Result[1];
+    final Result result = this.cache.get(key, () -> {
+      miss[0] = execute(split, executor);
+      return miss[0];
+    });
+    if (miss[0] == null) {
+      logger.debug("gcloud cache hit: {}", key);
+      return result.asHit();
+    }
+    if (!result.succeeded()) {
+      // failures are shared with waiting requests, but never kept
+      this.cache.asMap().remove(key, result);
+    }
+    return result;
+  }
+
+  private static Result execute(
+    final boolean split,
+    final BiFunction<OutputStream, Optional<OutputStream>, Integer> executor
+  ) {
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    final ByteArrayOutputStream errors = new ByteArrayOutputStream();
+    final Integer exitCode = executor.apply(output,
+      split ? Optional.<OutputStream>of(errors) : Optional.<OutputStream>absent());
+    return new Result(exitCode, output.toByteArray(), errors.toByteArray(), false);
+  }
+
+  // everything that may change what `gcloud` prints
+  private List<Object> key(
+    final dev.chux.gcp.crun.model.GCloudCommand command,
+    final boolean split
+  ) {
+    return ImmutableList.<Object>of(
+      Boolean.valueOf(split),
+      nullToEmpty(command.namespace()).trim().toLowerCase(),
+      command.groups(),
+      nullToEmpty(command.command()).trim().toLowerCase(),
+      ImmutableSortedMap.copyOf(command.flags()),
+      command.arguments(),
+      command.optionalProject().or(""),
+      command.optionalFormat().or(this.formatProvider.get()),
+      command.optionalVerbosity().or(""),
+      Boolean.valueOf(command.logHttp()),
+      ImmutableSortedMap.copyOf(command.environment()));
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+      .add("enabled", this.enabled)
+      .add("ttl_ms", this.ttlMillis)
+      .add("max_bytes", this.maxBytes)
+      .add("commands", this.commands)
+      .add("size", this.cache.size())
+      .toString();
+  }
+
+  static final class Result {
+
+    private final Integer exitCode;
+    private final byte[] output;
+    private final byte[] errors;
+    private final boolean hit;
+
+    private Result(
+      final Integer exitCode,
+      final byte[] output,
+      final byte[] errors,
+      final boolean hit
+    ) {
+      this.exitCode = exitCode;
+      this.output = output;
+      this.errors = errors;
+      this.hit = hit;
+    }
+
+    private Result asHit() {
+      return new Result(this.exitCode, this.output, this.errors, true);
+    }
+
+    boolean succeeded() {
+      return this.exitCode != null && this.exitCode.intValue() == 0;
+    }
+
+    /**
+     * Both stdout and stderr, interleaved as written; only stdout if split.
+     */
+    byte[] output() {
+      return this.output;
+    }
+
+    /**
+     * stderr if split; empty otherwise.
+     */
+    byte[] errors() {
+      return this.errors;
+    }
+
+    boolean isHit() {
+      return this.hit;
+    }
+
+  }
+
+}
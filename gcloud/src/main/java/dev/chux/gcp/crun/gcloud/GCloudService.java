@@ -1,27 +1,77 @@
 package dev.chux.gcp.crun.gcloud;
 
 import java.io.OutputStream;
+
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Consumer;
 
 import com.google.inject.Inject;
 
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import dev.chux.gcp.crun.ConfigService;
 import dev.chux.gcp.crun.process.ProcessModule.ProcessConsumer;
 import dev.chux.gcp.crun.process.ManagedProcessProvider;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.base.Strings.isNullOrEmpty;
+import static com.google.common.base.Throwables.getStackTraceAsString;
 
 public class GCloudService {
+  private static final Logger logger = LoggerFactory.getLogger(GCloudService.class);
+
+  public static final String PROPERTY_BATCH_THREADS = "gcloud.batch.threads";
+  public static final String PROPERTY_BATCH_PARALLELISM = "gcloud.batch.parallelism";
+
+  private static final int DEFAULT_BATCH_THREADS = 16;
+  private static final int DEFAULT_BATCH_PARALLELISM = 8;
 
   private final GCloudCommandFactory gcloudCommandFactory;
   private final Consumer<ManagedProcessProvider> processConsumer;
-  
+  private final Function<ManagedProcessProvider, Integer> processExecutor;
+  private final GCloudResultCache resultCache;
+  private final GCloudWorkers workers;
+  private final int batchParallelism;
+  private final ExecutorService batchExecutor;
+
   @Inject
   GCloudService(
+    ConfigService configService,
     GCloudCommandFactory gcloudCommandFactory,
-    @ProcessConsumer Consumer<ManagedProcessProvider> processConsumer
+    @ProcessConsumer Consumer<ManagedProcessProvider> processConsumer,
+    @ProcessConsumer Function<ManagedProcessProvider, Integer> processExecutor,
+    GCloudResultCache resultCache,
+    GCloudWorkers workers
   ) {
     this.gcloudCommandFactory = gcloudCommandFactory;
     this.processConsumer = processConsumer;
+    this.processExecutor = processExecutor;
+    this.resultCache = resultCache;
+    this.workers = workers;
+
+    final int threads = configService.getIntAppProp(PROPERTY_BATCH_THREADS)
+      .or(DEFAULT_BATCH_THREADS).intValue();
+    this.batchParallelism = configService.getIntAppProp(PROPERTY_BATCH_PARALLELISM)
+      .or(DEFAULT_BATCH_PARALLELISM).intValue();
+    checkArgument(threads > 0, "invalid batch threads: %s", threads);
+    checkArgument(this.batchParallelism > 0, "invalid batch parallelism: %s", this.batchParallelism);
+    // shared by all batches: bounds the number of `gcloud` processes running at once
+    this.batchExecutor = Executors.newFixedThreadPool(threads,
+      new ThreadFactoryBuilder().setNameFormat("gcloud-batch-%d").setDaemon(true).build());
+    logger.info("batches: [threads={}, parallelism={}]", threads, this.batchParallelism);
   }
 
   public void run(final dev.chux.gcp.crun.model.GCloudCommand config) {
@@ -43,4 +93,208 @@ public class GCloudService {
     this.processConsumer.accept(gcloudCommand);
   }
 
+  /**
+   * Upper bound, and default, for the parallelism of a batch.
+   */
+  public int batchParallelism() {
+    return this.batchParallelism;
+  }
+
+  /**
+   * Runs every command of {@code batch} once all of its dependencies finished, with at most
+   * {@code parallelism} of them running at once; blocks until all of them finished or were skipped.
+   *
+   * @param cached whether read-only commands may be served from {@link GCloudResultCache}.
+   */
+  public void run(
+    final GCloudBatch batch,
+    final int parallelism,
+    final boolean cached,
+    final GCloudBatch.Listener listener
+  ) throws InterruptedException {
+    checkNotNull(batch);
+    checkNotNull(listener);
+    checkArgument(parallelism > 0, "invalid parallelism: %s", parallelism);
+    run(batch, parallelism, this.batchExecutor, listener,
+      (command, stream, errors) -> this.execute(command, stream, errors, cached));
+  }
+
+  static void run(
+    final GCloudBatch batch,
+    final int parallelism,
+    final ExecutorService executor,
+    final GCloudBatch.Listener listener,
+    final Execution execution
+  ) throws InterruptedException {
+
+    final int size = batch.size();
+    final int[] pending = new int[size];
+    final List<Integer> ready = Lists.newArrayList();
+    for (int i = 0; i < size; i++) {
+      pending[i] = batch.dependencies(i).size();
+      if (pending[i] == 0) {
+        ready.add(Integer.valueOf(i));
+      }
+    }
+
+    final CompletionService<Result> completions = new ExecutorCompletionService<Result>(executor);
+    final boolean[] done = new boolean[size];
+    int running = 0;
+    int finished = 0;
+
+    while (finished < size) {
+      // commands start in the order in which they were declared
+      while (running < parallelism && !ready.isEmpty()) {
+        final int index = ready.remove(0).intValue();
+        final dev.chux.gcp.crun.model.GCloudCommand command = batch.command(index);
+        final Optional<OutputStream> stream = listener.started(index, command);
+        final Optional<OutputStream> errors = stream.isPresent()
+          ? listener.errors(index, command) : Optional.<OutputStream>absent();
+        completions.submit(() -> new Result(index, execution.execute(command, stream, errors)));
+        running += 1;
+      }
+
+      checkState(running > 0, "batch is stalled: %s", batch);
+
+      final Result result = take(completions);
+      running -= 1;
+
+      // a failure skips all of the dependents that declared it, and theirs, before anything else starts
+      final List<Result> results = Lists.newArrayList(result);
+      while (!results.isEmpty()) {
+        final Result next = results.remove(0);
+        done[next.index] = true;
+        finished += 1;
+        listener.finished(next.index, batch.command(next.index), next.status);
+        for (final Integer dependent : batch.dependents(next.index)) {
+          final int d = dependent.intValue();
+          if (done[d] || pending[d] < 0) {
+            continue;
+          }
+          if (next.status != GCloudBatch.Status.SUCCESS && !batch.isOrderedOnly(d)) {
+            // never scheduled: `pending` may not reach 0 anymore
+            pending[d] = -1;
+            results.add(new Result(d, GCloudBatch.Status.SKIPPED));
+          } else if (--pending[d] == 0) {
+            ready.add(dependent);
+          }
+        }
+      }
+    }
+  }
+
+  private GCloudBatch.Status execute(
+    final dev.chux.gcp.crun.model.GCloudCommand config,
+    final Optional<OutputStream> stream,
+    final Optional<OutputStream> errors,
+    final boolean cached
+  ) {
+    if (isNullOrEmpty(config.namespace())) {
+      logger.error("GCLOUD command without namespace: {}", config);
+      return GCloudBatch.Status.FAILED;
+    }
+    try {
+      if (cached && this.resultCache.isCacheable(config)) {
+        return this.executeCached(config, stream, errors);
+      }
+      final Integer exitCode = this.execute(config, stream, errors);
+      return (exitCode != null && exitCode.intValue() == 0)
+        ? GCloudBatch.Status.SUCCESS : GCloudBatch.Status.FAILED;
+    } catch(final Exception ex) {
+      logger.error("GCLOUD command failed: {}", getStackTraceAsString(ex));
+      return GCloudBatch.Status.FAILED;
+    }
+  }
+
+  private GCloudBatch.Status executeCached(
+    final dev.chux.gcp.crun.model.GCloudCommand config,
+    final Optional<OutputStream> stream,
+    final Optional<OutputStream> errors
+  ) throws Exception {
+    final GCloudResultCache.Result result = this.resultCache.run(config, errors.isPresent(),
+      (output, outputErrors) -> this.execute(config, Optional.<OutputStream>of(output), outputErrors));
+    logger.info("GCLOUD command {}: {}", result.isHit() ? "served from cache" : "cached", config);
+    if (stream.isPresent()) {
+      stream.get().write(result.output());
+      stream.get().flush();
+    }
+    if (errors.isPresent()) {
+      errors.get().write(result.errors());
+      errors.get().flush();
+    }
+    return result.succeeded() ? GCloudBatch.Status.SUCCESS : GCloudBatch.Status.FAILED;
+  }
+
+  /**
+   * Dispatches the command to an idle worker, or spawns it.
+   *
+   * @param errors where to write stderr; absent to interleave it with stdout into {@code stream}.
+   */
+  private Integer execute(
+    final dev.chux.gcp.crun.model.GCloudCommand config,
+    final Optional<OutputStream> stream,
+    final Optional<OutputStream> errors
+  ) {
+    if (this.workers.isEnabled()) {
+      try {
+        final Optional<Integer> exitCode = this.workers.run(
+          this.gcloudCommandFactory.create(config).getBuilder(), stream, errors);
+        if (exitCode.isPresent()) {
+          return exitCode.get();
+        }
+      } catch(final Exception ex) {
+        logger.error("failed to dispatch GCLOUD command: {}", getStackTraceAsString(ex));
+      }
+    }
+    final GCloudCommand gcloudCommand;
+    if (stream.isPresent() && errors.isPresent()) {
+      gcloudCommand = this.gcloudCommandFactory.createWithOutputStreams(config, stream.get(), errors.get());
+    } else if (stream.isPresent()) {
+      gcloudCommand = this.gcloudCommandFactory.createWithOutputStream(config, stream.get());
+    } else {
+      gcloudCommand = this.gcloudCommandFactory.create(config);
+    }
+    return this.processExecutor.apply(gcloudCommand);
+  }
+
+  private static Result take(
+    final CompletionService<Result> completions
+  ) throws InterruptedException {
+    try {
+      return completions.take().get();
+    } catch(final ExecutionException ex) {
+      // `execute` handles its own failures
+      throw new IllegalStateException(ex.getCause());
+    }
+  }
+
+  /**
+   * Runs a single command of a batch.
+   */
+  @FunctionalInterface
+  interface Execution {
+
+    GCloudBatch.Status execute(
+      final dev.chux.gcp.crun.model.GCloudCommand command,
+      final Optional<OutputStream> stream,
+      final Optional<OutputStream> errors
+    );
+
+  }
+
+  private static final class Result {
+
+    private final int index;
+    private final GCloudBatch.Status status;
+
+    private Result(
+      final int index,
+      final GCloudBatch.Status status
+    ) {
+      this.index = index;
+      this.status = status;
+    }
+
+  }
+
 }
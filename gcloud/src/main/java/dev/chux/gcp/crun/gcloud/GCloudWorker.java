@@ -0,0 +1,108 @@
+package dev.chux.gcp.crun.gcloud;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import com.google.common.base.MoreObjects;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A long-lived, pre-warmed {@code gcloud} worker: commands and results are single-line JSON documents,
+ * exchanged over the worker's stdin and stdout; one command at a time. Output arrives in chunks while
+ * the command runs, and its exit code comes last.
+ */
+final class GCloudWorker {
+  private static final Logger logger = LoggerFactory.getLogger(GCloudWorker.class);
+
+  private final Process process;
+  private final BufferedWriter commands;
+  private final BufferedReader results;
+
+  // the worker is used by one thread at a time
+  private long commandId = 0L;
+
+  private GCloudWorker(final Process process) {
+    this.process = process;
+    this.commands = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), UTF_8));
+    this.results = new BufferedReader(new InputStreamReader(process.getInputStream(), UTF_8));
+  }
+
+  static GCloudWorker start(
+    final List<String> command,
+    final Map<String, String> environment
+  ) throws IOException {
+    final ProcessBuilder builder = new ProcessBuilder(command)
+      // worker diagnostics must never reach the results stream
+      .redirectError(ProcessBuilder.Redirect.INHERIT);
+    builder.environment().putAll(environment);
+    final GCloudWorker worker = new GCloudWorker(builder.start());
+    logger.info("started gcloud worker: {}", worker);
+    return worker;
+  }
+
+  /**
+   * Sends {@code command}, passes each chunk of its output to {@code output} as it arrives,
+   * and blocks until its result arrives.
+   *
+   * @param output accepts the name of the stream, {@code stdout} or {@code stderr}, and a chunk of it.
+   */
+  JsonObject exchange(
+    final Gson gson,
+    final JsonObject command,
+    final BiConsumer<String, String> output
+  ) throws IOException {
+    final long id = ++this.commandId;
+    command.addProperty("id", Long.valueOf(id));
+    this.commands.write(gson.toJson(command));
+    this.commands.newLine();
+    this.commands.flush();
+
+    while (true) {
+      final String line = this.results.readLine();
+      if (line == null) {
+        throw new EOFException("gcloud worker exited: " + this);
+      }
+      final JsonObject result = gson.fromJson(line, JsonObject.class);
+      if (result == null || !result.has("id") || result.get("id").isJsonNull() || result.get("id").getAsLong() != id) {
+        throw new IOException("unexpected result from gcloud worker " + this + ": " + line);
+      }
+      if (!result.has("stream")) {
+        return result;
+      }
+      output.accept(result.get("stream").getAsString(), result.get("data").getAsString());
+    }
+  }
+
+  boolean isAlive() {
+    return this.process.isAlive();
+  }
+
+  void destroy() {
+    this.process.destroyForcibly();
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+      .add("pid", this.process.pid())
+      .add("alive", this.process.isAlive())
+      .add("commands", this.commandId)
+      .toString();
+  }
+
+}
@@ -0,0 +1,306 @@
+package dev.chux.gcp.crun.gcloud;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.google.inject.Inject;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import ch.vorburger.exec.ManagedProcessBuilder;
+
+import dev.chux.gcp.crun.ConfigService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Strings.emptyToNull;
+import static com.google.common.base.Strings.isNullOrEmpty;
+import static com.google.common.base.Throwables.getStackTraceAsString;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A pool of pre-warmed {@code gcloud} workers (see {@code gcloud/gcloudd.py}), which avoid paying
+ * for Python startup and Cloud CLI imports on every command.
+ *
+ * <p>Disabled unless {@code gcloud.workers.enabled}. With {@code gcloud.workers.fallback}, commands
+ * which find no idle worker are not served instead of waiting for one; whenever a command is not
+ * served, the caller must fall back to spawning {@code gcloud}.</p>
+ *
+ * <p>Commands run without a deadline, same as spawned ones, unless {@code gcloud.workers.timeout-ms}
+ * is greater than 0: then the worker running a command for longer is destroyed.</p>
+ */
+public class GCloudWorkers {
+  private static final Logger logger = LoggerFactory.getLogger(GCloudWorkers.class);
+
+  public static final String PROPERTY_ENABLED = "gcloud.workers.enabled";
+  public static final String PROPERTY_WORKERS = "gcloud.workers.count";
+  public static final String PROPERTY_PYTHON = "gcloud.workers.python";
+  public static final String PROPERTY_SCRIPT = "gcloud.workers.script";
+  public static final String PROPERTY_IN_PROCESS = "gcloud.workers.in-process";
+  public static final String PROPERTY_TIMEOUT_MS = "gcloud.workers.timeout-ms";
+  public static final String PROPERTY_FALLBACK = "gcloud.workers.fallback";
+
+  private static final String PROPERTY_GCLOUD_COMMAND = "gcloud.command";
+
+  private static final int DEFAULT_WORKERS = 4;
+  private static final String DEFAULT_SCRIPT = "/x/gcloudd.py";
+
+  private static final Integer EXIT_CODE_FAILED = Integer.valueOf(-1);
+
+  private static final String STDERR = "stderr";
+
+  private final Gson gson;
+  private final boolean enabled;
+  private final boolean fallback;
+  private final int workers;
+  private final Optional<Long> timeoutMillis;
+  private final ImmutableList<String> command;
+  private final ImmutableMap<String, String> environment;
+  private final Semaphore permits;
+  private final BlockingQueue<GCloudWorker> idle;
+  private final Set<GCloudWorker> started;
+  private final ScheduledExecutorService watchdog;
+
+  @Inject
+  GCloudWorkers(
+    final ConfigService configService,
+    final Gson gson
+  ) {
+    this.gson = gson;
+    this.enabled = configService.getBooleanAppProp(PROPERTY_ENABLED).or(Boolean.FALSE).booleanValue();
+    this.fallback = configService.getBooleanAppProp(PROPERTY_FALLBACK).or(Boolean.TRUE).booleanValue();
+    this.workers = configService.getIntAppProp(PROPERTY_WORKERS).or(DEFAULT_WORKERS).intValue();
+    // operations such as creating clusters take many minutes: no deadline unless one is set
+    final Optional<Long> timeoutMillis = configService.getLongAppProp(PROPERTY_TIMEOUT_MS);
+    this.timeoutMillis = (timeoutMillis.isPresent() && timeoutMillis.get().longValue() > 0)
+      ? timeoutMillis : Optional.<Long>absent();
+    checkArgument(this.workers > 0, "invalid gcloud workers: %s", this.workers);
+
+    final String python = configService.getOptionalAppProp(PROPERTY_PYTHON)
+      .or(fromEnv("CLOUDSDK_PYTHON").or("python3"));
+    this.command = ImmutableList.of(python,
+      configService.getOptionalAppProp(PROPERTY_SCRIPT).or(DEFAULT_SCRIPT));
+
+    final boolean inProcess = configService.getBooleanAppProp(PROPERTY_IN_PROCESS).or(Boolean.TRUE).booleanValue();
+    final ImmutableMap.Builder<String, String> environment = ImmutableMap.builder();
+    environment.put("CLOUDSDK_CORE_DISABLE_PROMPTS", "1");
+    environment.put("X_GCLOUD_WORKER_MODE", inProcess ? "in-process" : "subprocess");
+    final Optional<String> gcloud = configService.getOptionalAppProp(PROPERTY_GCLOUD_COMMAND);
+    if (gcloud.isPresent() && !isNullOrEmpty(gcloud.get())) {
+      environment.put("X_GCLOUD_BIN", gcloud.get());
+    }
+    this.environment = environment.build();
+
+    this.permits = new Semaphore(this.workers, true);
+    this.idle = new LinkedBlockingQueue<GCloudWorker>();
+    this.started = ConcurrentHashMap.newKeySet();
+    this.watchdog = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setNameFormat("gcloud-workers-watchdog").setDaemon(true).build());
+
+    if (this.enabled) {
+      // same as `setDestroyOnShutdown(true)` for spawned processes
+      Runtime.getRuntime().addShutdownHook(new Thread(this::destroy));
+      // warm-up takes seconds: it must not delay the first commands
+      this.watchdog.execute(this::prestart);
+    }
+    logger.info("gcloud workers: {}", this);
+  }
+
+  private static Optional<String> fromEnv(final String name) {
+    return Optional.fromNullable(emptyToNull(System.getenv(name)));
+  }
+
+  public boolean isEnabled() {
+    return this.enabled;
+  }
+
+  /**
+   * Blocks until an idle worker runs the command that {@code builder} would spawn;
+   * its output is written as the worker streams it back.
+   *
+   * @param errors where to write stderr; absent to interleave it with stdout into {@code stream}.
+   * @return the exit code; absent if no worker could take the command: it was not run, and must be spawned.
+   */
+  public Optional<Integer> run(
+    final ManagedProcessBuilder builder,
+    final Optional<OutputStream> stream,
+    final Optional<OutputStream> errors
+  ) {
+    if (!this.enabled) {
+      return Optional.absent();
+    }
+    final Optional<GCloudWorker> worker = this.acquire(!this.fallback);
+    if (!worker.isPresent()) {
+      return Optional.absent();
+    }
+    final Optional<ScheduledFuture<?>> timeout = this.timeoutMillis.isPresent()
+      ? Optional.<ScheduledFuture<?>>of(this.watchdog.schedule(
+        worker.get()::destroy, this.timeoutMillis.get().longValue(), TimeUnit.MILLISECONDS))
+      : Optional.<ScheduledFuture<?>>absent();
+    boolean healthy = false;
+    try {
+      final JsonObject result = worker.get().exchange(this.gson, this.toJson(builder, errors.isPresent()),
+        (name, data) -> write(STDERR.equals(name) ? errors : stream, data));
+      healthy = true;
+      final JsonElement exitCode = result.get("exit_code");
+      return Optional.of((exitCode == null || exitCode.isJsonNull())
+        ? EXIT_CODE_FAILED : Integer.valueOf(exitCode.getAsInt()));
+    } catch(final Exception ex) {
+      logger.error("gcloud worker failed: {} | {}", worker.get(), getStackTraceAsString(ex));
+      write(errors.or(stream), "gcloud worker failed: " + ex.getMessage() + "\n");
+      return Optional.of(EXIT_CODE_FAILED);
+    } finally {
+      if (timeout.isPresent()) {
+        timeout.get().cancel(false);
+      }
+      this.release(worker.get(), healthy);
+    }
+  }
+
+  private JsonObject toJson(
+    final ManagedProcessBuilder builder,
+    final boolean split
+  ) {
+    final JsonObject json = new JsonObject();
+    final JsonArray args = new JsonArray();
+    for (final String argument : builder.getArguments()) {
+      args.add(argument);
+    }
+    json.add("args", args);
+    // workers already inherit this JVM's environment: only overrides are sent
+    final Map<String, String> inherited = System.getenv();
+    final JsonObject env = new JsonObject();
+    for (final Map.Entry<String, String> variable : builder.getEnvironment().entrySet()) {
+      if (!variable.getValue().equals(inherited.get(variable.getKey()))) {
+        env.addProperty(variable.getKey(), variable.getValue());
+      }
+    }
+    json.add("env", env);
+    if (split) {
+      json.addProperty("split", Boolean.TRUE);
+    }
+    return json;
+  }
+
+  private static void write(
+    final Optional<OutputStream> stream,
+    final String value
+  ) {
+    if (!stream.isPresent() || isNullOrEmpty(value)) {
+      return;
+    }
+    final OutputStream output = stream.get();
+    synchronized(output) {
+      try {
+        output.write(value.getBytes(UTF_8));
+        output.flush();
+      } catch(final IOException ex) {
+        logger.error("failed to write gcloud worker output: {}", getStackTraceAsString(ex));
+      }
+    }
+  }
+
+  private void prestart() {
+    // all are held at once: otherwise, the same idle worker would be acquired every time
+    final List<GCloudWorker> workers = Lists.newArrayList();
+    for (int i = 0; i < this.workers; i++) {
+      final Optional<GCloudWorker> worker = this.acquire(true);
+      if (worker.isPresent()) {
+        workers.add(worker.get());
+      }
+    }
+    for (final GCloudWorker worker : workers) {
+      this.release(worker, true);
+    }
+  }
+
+  // workers are replaced once they die
+  private Optional<GCloudWorker> acquire(final boolean wait) {
+    try {
+      if (!wait && !this.permits.tryAcquire()) {
+        return Optional.absent();
+      }
+      if (wait) {
+        this.permits.acquire();
+      }
+    } catch(final InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return Optional.absent();
+    }
+    GCloudWorker worker;
+    while ((worker = this.idle.poll()) != null) {
+      if (worker.isAlive()) {
+        return Optional.of(worker);
+      }
+      logger.warn("discarding dead gcloud worker: {}", worker);
+      this.started.remove(worker);
+    }
+    try {
+      worker = GCloudWorker.start(this.command, this.environment);
+      this.started.add(worker);
+      return Optional.of(worker);
+    } catch(final Exception ex) {
+      logger.error("failed to start gcloud worker: {}", getStackTraceAsString(ex));
+      this.permits.release();
+    }
+    return Optional.absent();
+  }
+
+  private void release(
+    final GCloudWorker worker,
+    final boolean healthy
+  ) {
+    if (healthy && worker.isAlive()) {
+      this.idle.add(worker);
+    } else {
+      worker.destroy();
+      this.started.remove(worker);
+    }
+    this.permits.release();
+  }
+
+  private void destroy() {
+    for (final GCloudWorker worker : this.started) {
+      worker.destroy();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+      .add("enabled", this.enabled)
+      .add("fallback", this.fallback)
+      .add("workers", this.workers)
+      .add("command", this.command)
+      .add("timeoutMillis", this.timeoutMillis.orNull())
+      .add("started", this.started.size())
+      .add("idle", this.idle.size())
+      .toString();
+  }
+
+}
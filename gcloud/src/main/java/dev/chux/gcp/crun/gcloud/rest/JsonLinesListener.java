@@ -0,0 +1,451 @@
+package dev.chux.gcp.crun.gcloud.rest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+
+import java.util.Map;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Optional;
+import com.google.common.collect.Maps;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.Strictness;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import dev.chux.gcp.crun.gcloud.GCloudBatch;
+import dev.chux.gcp.crun.model.GCloudCommand;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Throwables.getStackTraceAsString;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Streams the outputs of a batch as NDJSON: JSON printed by {@code gcloud} is parsed as it arrives,
+ * and each element of a top-level array (or a whole top-level object) becomes its own frame,
+ * so listings are never buffered:
+ *
+ * <pre>
+ * {"command":1,"item":{"name":"projects/p/services/a"}}
+ * {"command":1,"stream":"stderr","data":"Listed 2 items.\n"}
+ * {"command":1,"status":"SUCCESS","items":2}
+ * </pre>
+ *
+ * <p>stdout that is not JSON, and all of stderr, are framed as complete lines, exactly as printed:
+ * text which only looks like JSON, such as {@code [core]}, is framed as text too. Every frame names
+ * its command, so outputs of commands running in parallel are interleaved instead of buffered.</p>
+ */
+final class JsonLinesListener implements GCloudBatch.Listener {
+  private static final Logger logger = LoggerFactory.getLogger(JsonLinesListener.class);
+
+  static final String CONTENT_TYPE = "application/x-ndjson";
+
+  private static final String STDOUT = "stdout";
+  private static final String STDERR = "stderr";
+
+  private final Gson gson;
+  private final OutputStream output;
+  private final boolean discardOutput;
+  private final Map<Integer, Items> items;
+  private final Map<Integer, Lines> errors;
+
+  JsonLinesListener(
+    final Gson gson,
+    final OutputStream output,
+    final boolean discardOutput
+  ) {
+    this.gson = gson;
+    this.output = output;
+    this.discardOutput = discardOutput;
+    this.items = Maps.newConcurrentMap();
+    this.errors = Maps.newConcurrentMap();
+  }
+
+  @Override
+  public Optional<OutputStream> started(final int index, final GCloudCommand command) {
+    logger.info("running GCLOUD command[{}]: {}", index + 1, command);
+    if (this.discardOutput) {
+      return Optional.absent();
+    }
+    final Items items = new Items(index + 1);
+    this.items.put(Integer.valueOf(index), items);
+    return Optional.<OutputStream>of(items);
+  }
+
+  @Override
+  public Optional<OutputStream> errors(final int index, final GCloudCommand command) {
+    final Lines lines = new Lines(index + 1, STDERR);
+    this.errors.put(Integer.valueOf(index), lines);
+    return Optional.<OutputStream>of(lines);
+  }
+
+  @Override
+  public void finished(final int index, final GCloudCommand command, final GCloudBatch.Status status) {
+    logger.info("GCLOUD command[{}] => {}", index + 1, status);
+    final JsonObject frame = new JsonObject();
+    frame.addProperty("command", Integer.valueOf(index + 1));
+    frame.addProperty("status", status.name());
+
+    final Items items = this.items.remove(Integer.valueOf(index));
+    if (items != null) {
+      frame.addProperty("items", Long.valueOf(items.finish()));
+    }
+    final Lines lines = this.errors.remove(Integer.valueOf(index));
+    if (lines != null) {
+      lines.finish();
+    }
+    this.emit(this.frame(frame));
+  }
+
+  private byte[] frame(final JsonObject frame) {
+    return (this.gson.toJson(frame) + "\n").getBytes(UTF_8);
+  }
+
+  private byte[] frame(
+    final int command,
+    final String stream,
+    final byte[] bytes,
+    final int offset,
+    final int length
+  ) {
+    final JsonObject frame = new JsonObject();
+    frame.addProperty("command", Integer.valueOf(command));
+    frame.addProperty("stream", stream);
+    frame.addProperty("data", new String(bytes, offset, length, UTF_8));
+    return this.frame(frame);
+  }
+
+  private void emit(final byte[] frames) {
+    // same lock as every other writer of a shared stream
+    synchronized(this.output) {
+      try {
+        this.output.write(frames);
+        this.output.flush();
+      } catch(final IOException ex) {
+        logger.error("failed to write output frames: {}", getStackTraceAsString(ex));
+      }
+    }
+  }
+
+  /**
+   * Incrementally parses stdout of one command, and emits each top-level value as soon as it is complete;
+   * insignificant whitespace is dropped so that every value fits in a single line.
+   *
+   * <p>Only structure is tracked while parsing: each value is then validated as strict JSON before it is
+   * emitted. A value which is not JSON turns the rest of its line, as printed, into text. Structural
+   * characters are all ASCII, so they never occur within multi-byte UTF-8 sequences.</p>
+   */
+  private final class Items extends OutputStream {
+
+    private final int command;
+    private final byte[] prefix;
+    // the current value: an element of the top-level array, or the top-level object
+    private final ByteArrayOutputStream value = new ByteArrayOutputStream();
+    // everything printed since the last value or line was emitted, whitespace included
+    private final ByteArrayOutputStream raw = new ByteArrayOutputStream();
+    // the current line of stdout which is not JSON
+    private final ByteArrayOutputStream text = new ByteArrayOutputStream();
+    // frames to be emitted once the current write is fully parsed
+    private final ByteArrayOutputStream frames = new ByteArrayOutputStream();
+
+    private int depth = 0;
+    private boolean array = false;
+    private boolean string = false;
+    private boolean escape = false;
+    private long count = 0L;
+
+    private Items(final int command) {
+      this.command = command;
+      this.prefix = ("{\"command\":" + command + ",\"item\":").getBytes(UTF_8);
+    }
+
+    @Override
+    public synchronized void write(final int b) {
+      this.write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(final byte[] bytes, final int offset, final int length) {
+      for (int i = offset; i < offset + length; i++) {
+        this.parse(bytes[i]);
+      }
+      this.flushFrames();
+    }
+
+    private void parse(final byte b) {
+      if (this.text.size() > 0) {
+        this.text(b);
+        return;
+      }
+      this.raw.write(b);
+      if (this.string) {
+        this.value.write(b);
+        if (this.escape) {
+          this.escape = false;
+        } else if (b == '\\') {
+          this.escape = true;
+        } else if (b == '"') {
+          this.string = false;
+        }
+        return;
+      }
+      if (b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+        if (this.depth == 0 && b == '\n') {
+          // blank lines between values
+          this.raw.reset();
+        }
+        return;
+      }
+      if (this.depth == 0) {
+        if (b == '[') {
+          this.depth = 1;
+          this.array = true;
+        } else if (b == '{') {
+          this.depth = 1;
+          this.array = false;
+          this.value.write(b);
+        } else {
+          this.abandon();
+        }
+        return;
+      }
+      switch (b) {
+        case '"':
+          this.string = true;
+          this.value.write(b);
+          break;
+        case '{':
+        case '[':
+          this.depth += 1;
+          this.value.write(b);
+          break;
+        case '}':
+        case ']':
+          this.depth -= 1;
+          if (this.depth > 0 || !this.array) {
+            this.value.write(b);
+          }
+          if (this.depth == 0) {
+            if (this.item()) {
+              this.array = false;
+              this.raw.reset();
+            }
+          } else if (this.depth == 1 && this.array) {
+            // no need to wait for the next `,`
+            this.item();
+          }
+          break;
+        case ',':
+          if (this.array && this.depth == 1) {
+            this.item();
+          } else {
+            this.value.write(b);
+          }
+          break;
+        default:
+          this.value.write(b);
+      }
+    }
+
+    private void text(final byte b) {
+      this.text.write(b);
+      if (b == '\n') {
+        this.text();
+      }
+    }
+
+    private void text() {
+      final byte[] text = this.text.toByteArray();
+      this.frames.writeBytes(frame(this.command, STDOUT, text, 0, text.length));
+      this.text.reset();
+    }
+
+    /**
+     * @return whether the current value, if any, was emitted; otherwise, parsing continues as text.
+     */
+    private boolean item() {
+      if (this.value.size() == 0) {
+        return true;
+      }
+      final byte[] value = this.value.toByteArray();
+      if (!isJson(value)) {
+        this.abandon();
+        return false;
+      }
+      this.frames.writeBytes(this.prefix);
+      this.frames.writeBytes(value);
+      this.frames.write('}');
+      this.frames.write('\n');
+      this.value.reset();
+      this.raw.reset();
+      this.count += 1;
+      return true;
+    }
+
+    // values already emitted stay so: only what was printed after them becomes text
+    private void abandon() {
+      this.value.reset();
+      this.depth = 0;
+      this.array = false;
+      this.string = false;
+      this.escape = false;
+      final byte[] raw = this.raw.toByteArray();
+      this.raw.reset();
+      for (final byte b : raw) {
+        this.text(b);
+      }
+    }
+
+    private void flushFrames() {
+      if (this.frames.size() > 0) {
+        emit(this.frames.toByteArray());
+        this.frames.reset();
+      }
+    }
+
+    /**
+     * Emits whatever could not be parsed as a complete value.
+     *
+     * @return how many values were emitted.
+     */
+    private synchronized long finish() {
+      if (this.depth > 0) {
+        // truncated JSON: emitted as printed
+        this.text.writeBytes(this.raw.toByteArray());
+      }
+      this.value.reset();
+      this.raw.reset();
+      if (this.text.size() > 0) {
+        this.text();
+      }
+      this.depth = 0;
+      this.array = false;
+      this.string = false;
+      this.escape = false;
+      this.flushFrames();
+      return this.count;
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this)
+        .add("command", this.command)
+        .add("items", this.count)
+        .toString();
+    }
+
+  }
+
+  private static boolean isJson(final byte[] value) {
+    final JsonReader reader = new JsonReader(new StringReader(new String(value, UTF_8)));
+    reader.setStrictness(Strictness.STRICT);
+    try {
+      reader.skipValue();
+      return reader.peek() == JsonToken.END_DOCUMENT;
+    } catch(final IOException | RuntimeException ex) {
+      return false;
+    }
+  }
+
+  /**
+   * Buffers one stream of one command, and emits complete lines as soon as they are written.
+   */
+  private final class Lines extends OutputStream {
+
+    private final int command;
+    private final String stream;
+    private final LineBuffer buffer = new LineBuffer(1024);
+
+    private Lines(final int command, final String stream) {
+      this.command = command;
+      this.stream = stream;
+    }
+
+    @Override
+    public synchronized void write(final int b) {
+      this.write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(final byte[] bytes, final int offset, final int length) {
+      this.buffer.write(bytes, offset, length);
+      final int end = this.buffer.completeLines();
+      if (end == 0) {
+        return;
+      }
+      emit(frame(this.command, this.stream, this.buffer.array(), 0, end));
+      this.buffer.discard(end);
+    }
+
+    private synchronized void finish() {
+      if (this.buffer.size() > 0) {
+        emit(frame(this.command, this.stream, this.buffer.array(), 0, this.buffer.size()));
+        this.buffer.reset();
+      }
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this)
+        .add("command", this.command)
+        .add("stream", this.stream)
+        .toString();
+    }
+
+  }
+
+  /**
+   * Exposes its backing array: complete lines are emitted straight from it, and the rest is compacted in place.
+   */
+  private static final class LineBuffer extends ByteArrayOutputStream {
+
+    // bytes before it were already searched for a newline: none of them is one
+    private int scanned = 0;
+
+    private LineBuffer(final int size) {
+      super(size);
+    }
+
+    /**
+     * Searches only the bytes written since the previous call.
+     *
+     * @return how many bytes, from the start, make up complete lines; {@code 0} if none.
+     */
+    private int completeLines() {
+      int end = this.count;
+      while (end > this.scanned && this.buf[end - 1] != '\n') {
+        end -= 1;
+      }
+      if (end == this.scanned) {
+        this.scanned = this.count;
+        return 0;
+      }
+      return end;
+    }
+
+    private byte[] array() {
+      return this.buf;
+    }
+
+    private void discard(final int length) {
+      System.arraycopy(this.buf, length, this.buf, 0, this.count - length);
+      this.count -= length;
+      this.scanned = this.count;
+    }
+
+    @Override
+    public synchronized void reset() {
+      super.reset();
+      this.scanned = 0;
+    }
+
+  }
+
+}
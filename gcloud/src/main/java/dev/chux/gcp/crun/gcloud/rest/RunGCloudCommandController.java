@@ -1,9 +1,12 @@
 package dev.chux.gcp.crun.gcloud.rest;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import javax.servlet.ServletOutputStream;
@@ -11,6 +14,8 @@ import javax.servlet.ServletOutputStream;
 import com.google.inject.Inject;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Ints;
 
 import com.google.gson.Gson;
 
@@ -19,6 +24,7 @@ import spark.Response;
 
 import dev.chux.gcp.crun.model.GCloudCommand;
 import dev.chux.gcp.crun.model.GCloudCommands;
+import dev.chux.gcp.crun.gcloud.GCloudBatch;
 import dev.chux.gcp.crun.gcloud.GCloudService;
 import dev.chux.gcp.crun.rest.Route;
 
@@ -32,6 +38,7 @@ import static com.google.common.base.Optional.fromNullable;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Strings.emptyToNull;
 import static com.google.common.base.Strings.isNullOrEmpty;
+import static com.google.common.base.Strings.nullToEmpty;
 import static com.google.common.base.Throwables.getStackTraceAsString;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
@@ -108,12 +115,25 @@ public class RunGCloudCommandController implements Route {
    *     - POST /gcloud/exec/
    *   - Query Params:
    *     - type: Required<String> = OneOf<batch | multi>
+   *     - parallelism: Optional<Integer>          // max commands running at once; capped by `gcloud.batch.parallelism`
+   *     - cache: Optional<Boolean>                // serve read-only commands (`describe`, `list`, ...) from cache; see `gcloud.cache.*`
+   *     - ndjson: Optional<Boolean>               // stream outputs as NDJSON frames; also for single commands
    *   - JSON payload:
    *     - type: `Multivalue<GCloudCommand>`
    *     - source: <root>/model/src/main/java/dev/chux/gcp/crun/model/GCloudCommands.java
    *     {
    *       "(items|values)": List<GCloudCommand>   // list of simple Google Cloud CLI commands to be executed
+   *       "independent": Optional<Boolean>        // commands without `depends` run right away; by default: after the previous one, even if it failed
+   *       "parallelism": Optional<Integer>        // same as query param `parallelism`
    *     }
+   *   - Each command may also define:
+   *     - "id": Optional<String>                  // to be referenced by `depends` of other commands
+   *     - "depends": Optional<List<String>>       // IDs –or 1-based positions– of commands that must succeed first; `[]` for none
+   *   - Commands run as a DAG: commands that declared a failed one in `depends` are `SKIPPED`; each output is framed by
+   *     `>>> COMMAND[n] >>>` and `<<< COMMAND[n] = (SUCCESS|FAILED|SKIPPED) <<<` in completion order.
+   *   - With `ndjson=true`, each element of a JSON array printed by a command is streamed as soon as it is
+   *     printed as `{"command":n,"item":{...}}`; any other output as `{"command":n,"stream":"stdout|stderr","data":"..."}`,
+   *     and then `{"command":n,"status":"SUCCESS|FAILED|SKIPPED","items":N}`.
    *   - Samples:
    *     - `POST /gcloud/exec?type=batch`
    *       ```json
@@ -164,7 +184,7 @@ public class RunGCloudCommandController implements Route {
   }
 
   public String endpoint(final String root) {
-    return "POST " + root + "/exec[/[optional:namespace]][/?[type=(batch|multi)]]";
+    return "POST " + root + "/exec[/[optional:namespace]][/?[type=(batch|multi)][&parallelism=N][&cache=true][&ndjson=true]]";
   }
 
   public Object handle(
@@ -237,30 +257,20 @@ public class RunGCloudCommandController implements Route {
     return new GCloudCommands(commands);
   }
 
-  private final boolean runCommand(
+  private final int parallelism(
     final Request request,
-    final Response response,
-    final OutputStream stream,
-    final GCloudCommand command
-  )  throws Exception {
-    checkNotNull(command);
-    
-    if (isNullOrEmpty(command.namespace())) {
-      logger.error("GCLOUD command without namespace: {}", command);
-      return false;
+    final GCloudCommands commands
+  ) {
+    final int max = this.gcloudService.batchParallelism();
+    final Optional<Integer> parallelism = fromNullable(Ints.tryParse(nullToEmpty(request.queryParams("parallelism"))))
+      .or(commands.optionalParallelism());
+    if (!parallelism.isPresent()) {
+      return max;
     }
-
-    logger.info("running GCLOUD command: {}", command);
-
-    final String output = request.queryParams("output"); 
-
-    if( isNullOrEmpty(output) ) {
-      this.gcloudService.run(command, stream);
-    } else {
-      this.gcloudService.run(command);
+    if (parallelism.get().intValue() <= 0) {
+      halt(400, "invalid parallelism: " + parallelism.get());
     }
-    
-    return true;
+    return Math.min(parallelism.get().intValue(), max);
   }
 
   private final void runCommands(
@@ -276,24 +286,115 @@ public class RunGCloudCommandController implements Route {
       return;
     }
 
+    GCloudBatch batch = null;
+    try {
+      batch = GCloudBatch.of(commands);
+    } catch(final IllegalArgumentException ex) {
+      logger.error("invalid GCLOUD batch: {}", ex.getMessage());
+      halt(400, ex.getMessage());
+    }
+
+    final int parallelism = this.parallelism(request, commands);
+    final boolean discardOutput = !isNullOrEmpty(request.queryParams("output"));
+    // opt-in: dashboards polling `describe`/`list` tolerate results as old as the cache TTL
+    final boolean cached = Boolean.parseBoolean(request.queryParams("cache"));
+    final boolean ndjson = Boolean.parseBoolean(request.queryParams("ndjson"));
+
+    logger.info("running GCLOUD batch: {} | parallelism: {}", batch, parallelism);
+
     final OutputStream stream = response.raw().getOutputStream();
+
+    if (ndjson) {
+      // every frame names its command: outputs are streamed as they are produced, whatever the parallelism
+      response.type(JsonLinesListener.CONTENT_TYPE);
+      this.gcloudService.run(batch, parallelism, cached,
+        new JsonLinesListener(this.gson, stream, discardOutput));
+      return;
+    }
+
     final OutputStreamWriter writer = new OutputStreamWriter(stream, UTF_8);
 
-    int index = 0;
-    for (final GCloudCommand command : commands.get()) {
+    // only 1 command runs at a time: its output is streamed as it is produced;
+    // otherwise, each output is buffered and framed as soon as its command finishes
+    final boolean streaming = batch.isSequential() || parallelism == 1;
+
+    final Map<Integer, ByteArrayOutputStream> outputs = Maps.newHashMap();
+
+    this.gcloudService.run(batch, parallelism, cached, new GCloudBatch.Listener() {
+
+      @Override
+      public Optional<OutputStream> started(final int index, final GCloudCommand command) {
+        logger.info("running GCLOUD command[{}]: {}", index + 1, command);
+        if (streaming) {
+          writeStart(writer, index);
+          return discardOutput ? Optional.<OutputStream>absent() : Optional.of(stream);
+        }
+        if (discardOutput) {
+          return absent();
+        }
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        outputs.put(Integer.valueOf(index), output);
+        return Optional.<OutputStream>of(output);
+      }
+
+      @Override
+      public void finished(final int index, final GCloudCommand command, final GCloudBatch.Status status) {
+        logger.info("GCLOUD command[{}] => {}", index + 1, status);
+        if (!streaming || status == GCloudBatch.Status.SKIPPED) {
+          writeStart(writer, index);
+          final ByteArrayOutputStream output = outputs.remove(Integer.valueOf(index));
+          if (output != null) {
+            writeOutput(writer, stream, output);
+          }
+        }
+        writeEnd(writer, index, status);
+      }
+
+    });
+  }
+
+  private static void writeStart(
+    final OutputStreamWriter writer,
+    final int index
+  ) {
+    try {
       writer.append("\n>>> COMMAND[")
         .append(Integer.toString(index+1, 10))
         .append("] >>>\n\n")
         .flush();
+    } catch(final IOException ex) {
+      logger.error("failed to write output: {}", getStackTraceAsString(ex));
+    }
+  }
 
-      final boolean ok = this.runCommand(request, response, stream, command);
+  private static void writeOutput(
+    final OutputStreamWriter writer,
+    final OutputStream stream,
+    final ByteArrayOutputStream output
+  ) {
+    try {
+      writer.flush();
+      output.writeTo(stream);
+      stream.flush();
+    } catch(final IOException ex) {
+      logger.error("failed to write output: {}", getStackTraceAsString(ex));
+    }
+  }
 
+  private static void writeEnd(
+    final OutputStreamWriter writer,
+    final int index,
+    final GCloudBatch.Status status
+  ) {
+    try {
       writer.append("\n<<< COMMAND[")
-        .append(Integer.toString(++index, 10))
+        .append(Integer.toString(index+1, 10))
         .append("] = ")
-        .append(ok ? "SUCCESS" : "FAILED")
+        .append(status.name())
         .append(" <<<\n\n")
         .flush();
+    } catch(final IOException ex) {
+      logger.error("failed to write output: {}", getStackTraceAsString(ex));
     }
   }
 
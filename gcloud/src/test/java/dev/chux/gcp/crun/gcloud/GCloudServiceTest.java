@@ -0,0 +1,109 @@
+package dev.chux.gcp.crun.gcloud;
+
+import java.io.OutputStream;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import com.google.gson.Gson;
+
+import dev.chux.gcp.crun.model.GCloudCommand;
+import dev.chux.gcp.crun.model.GCloudCommands;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class GCloudServiceTest {
+
+  private final Gson gson = new Gson();
+
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    this.executor = Executors.newFixedThreadPool(2);
+  }
+
+  @After
+  public void tearDown() {
+    this.executor.shutdownNow();
+  }
+
+  @Test
+  public void commandsWithoutDependenciesRunAfterAFailure() throws Exception {
+    final Statuses statuses = this.run(ImmutableList.of(
+      this.command("{\"ns\":\"first\"}"),
+      this.command("{\"ns\":\"second\"}"),
+      this.command("{\"ns\":\"third\"}")
+    ), "first");
+
+    assertEquals(ImmutableList.of(0, 1, 2), statuses.started);
+    assertEquals(ImmutableMap.of(
+      0, GCloudBatch.Status.FAILED,
+      1, GCloudBatch.Status.SUCCESS,
+      2, GCloudBatch.Status.SUCCESS
+    ), statuses.finished);
+  }
+
+  @Test
+  public void commandsDependingOnAFailureAreSkipped() throws Exception {
+    final Statuses statuses = this.run(ImmutableList.of(
+      this.command("{\"ns\":\"first\"}"),
+      this.command("{\"ns\":\"second\",\"depends\":[\"1\"]}"),
+      this.command("{\"ns\":\"third\"}")
+    ), "first");
+
+    // skipped commands do not stop the ones which only run after them
+    assertEquals(ImmutableList.of(0, 2), statuses.started);
+    assertEquals(ImmutableMap.of(
+      0, GCloudBatch.Status.FAILED,
+      1, GCloudBatch.Status.SKIPPED,
+      2, GCloudBatch.Status.SUCCESS
+    ), statuses.finished);
+  }
+
+  private GCloudCommand command(final String json) {
+    return this.gson.fromJson(json, GCloudCommand.class);
+  }
+
+  private Statuses run(
+    final List<GCloudCommand> commands,
+    final String failing
+  ) throws InterruptedException {
+    final Statuses statuses = new Statuses();
+    GCloudService.run(GCloudBatch.of(new GCloudCommands(commands)), 2, this.executor, statuses,
+      (command, stream, errors) -> command.namespace().equals(failing)
+        ? GCloudBatch.Status.FAILED : GCloudBatch.Status.SUCCESS);
+    return statuses;
+  }
+
+  private static final class Statuses implements GCloudBatch.Listener {
+
+    private final List<Integer> started = Lists.newArrayList();
+    private final Map<Integer, GCloudBatch.Status> finished = Maps.newLinkedHashMap();
+
+    @Override
+    public Optional<OutputStream> started(final int index, final GCloudCommand command) {
+      this.started.add(Integer.valueOf(index));
+      return Optional.absent();
+    }
+
+    @Override
+    public void finished(final int index, final GCloudCommand command, final GCloudBatch.Status status) {
+      this.finished.put(Integer.valueOf(index), status);
+    }
+
+  }
+
+}
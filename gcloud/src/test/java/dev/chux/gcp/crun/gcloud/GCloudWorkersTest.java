@@ -0,0 +1,186 @@
+package dev.chux.gcp.crun.gcloud;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import com.google.gson.Gson;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.TypeLiteral;
+import com.google.inject.name.Names;
+
+import ch.vorburger.exec.ManagedProcessBuilder;
+
+import dev.chux.gcp.crun.ConfigService;
+import dev.chux.gcp.crun.ConfigServiceImpl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs {@code gcloudd.py} in {@code subprocess} mode, with {@code src/test/resources/fake-gcloud}
+ * standing in for the Cloud CLI.
+ */
+public class GCloudWorkersTest {
+
+  private static final TypeLiteral<Map<String, String>> MapTypeStringString = new TypeLiteral<Map<String, String>>() {};
+
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    this.executor = Executors.newSingleThreadExecutor();
+  }
+
+  @After
+  public void tearDown() {
+    this.executor.shutdownNow();
+  }
+
+  @Test
+  public void commandsAreNotServedWhenDisabled() throws Exception {
+    final GCloudWorkers workers = this.workers(ImmutableMap.of(GCloudWorkers.PROPERTY_ENABLED, "false"));
+
+    assertFalse(workers.run(this.command("echo", "hello"), Optional.absent(), Optional.absent()).isPresent());
+  }
+
+  @Test
+  public void commandsAreDispatchedToWorkers() throws Exception {
+    final GCloudWorkers workers = this.workers(ImmutableMap.of());
+    final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+
+    assertEquals(Optional.of(0), this.run(workers, this.command("echo", "hello", "world"), stream));
+    assertEquals("hello world\n", stream.toString(UTF_8));
+
+    assertEquals(Optional.of(3), this.run(workers, this.command("exit", "3"), new ByteArrayOutputStream()));
+  }
+
+  @Test
+  public void stderrIsInterleavedUnlessSplit() throws Exception {
+    final GCloudWorkers workers = this.workers(ImmutableMap.of());
+
+    final ByteArrayOutputStream interleaved = new ByteArrayOutputStream();
+    assertEquals(Optional.of(0), this.run(workers, this.command("stderr", "oops"), interleaved));
+    assertEquals("oops\n", interleaved.toString(UTF_8));
+
+    final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    final ByteArrayOutputStream errors = new ByteArrayOutputStream();
+    assertEquals(Optional.of(0), workers.run(this.command("stderr", "oops"),
+      Optional.<OutputStream>of(stream), Optional.<OutputStream>of(errors)));
+    assertEquals("", stream.toString(UTF_8));
+    assertEquals("oops\n", errors.toString(UTF_8));
+  }
+
+  @Test
+  public void environmentOverridesReachTheCommand() throws Exception {
+    final GCloudWorkers workers = this.workers(ImmutableMap.of());
+    final ManagedProcessBuilder builder = this.command("env", "X_FAKE_GCLOUD_VALUE");
+    builder.getEnvironment().put("X_FAKE_GCLOUD_VALUE", "overridden");
+    final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+
+    assertEquals(Optional.of(0), this.run(workers, builder, stream));
+    assertEquals("overridden\n", stream.toString(UTF_8));
+  }
+
+  @Test
+  public void busyWorkersFallBackToSpawning() throws Exception {
+    final GCloudWorkers workers = this.workers(ImmutableMap.of(GCloudWorkers.PROPERTY_FALLBACK, "true"));
+    final CountDownLatch sleeping = new CountDownLatch(1);
+    final ByteArrayOutputStream stream = new ByteArrayOutputStream() {
+      @Override
+      public synchronized void write(final byte[] bytes, final int offset, final int length) {
+        super.write(bytes, offset, length);
+        sleeping.countDown();
+      }
+    };
+    final Future<Optional<Integer>> busy = this.executor.submit(() -> {
+      Optional<Integer> exitCode;
+      // the only worker may still be held by the warm-up
+      while (!(exitCode = this.run(workers, this.command("sleep", "2"), stream)).isPresent()) {
+        Thread.sleep(10L);
+      }
+      return exitCode;
+    });
+
+    // output is streamed while the command runs
+    assertTrue(sleeping.await(10L, TimeUnit.SECONDS));
+    assertFalse(busy.isDone());
+    assertFalse(this.run(workers, this.command("echo", "hello"), new ByteArrayOutputStream()).isPresent());
+
+    assertEquals(Optional.of(0), busy.get(10L, TimeUnit.SECONDS));
+    assertEquals("sleeping\nslept\n", stream.toString(UTF_8));
+  }
+
+  @Test
+  public void workersRunningPastTheDeadlineAreReplaced() throws Exception {
+    final GCloudWorkers workers = this.workers(ImmutableMap.of(GCloudWorkers.PROPERTY_TIMEOUT_MS, "2000"));
+
+    final ByteArrayOutputStream timedOut = new ByteArrayOutputStream();
+    assertEquals(Optional.of(-1), this.run(workers, this.command("sleep", "30"), timedOut));
+    assertTrue(timedOut.toString(UTF_8).startsWith("sleeping\ngcloud worker failed: "));
+
+    final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    assertEquals(Optional.of(0), this.run(workers, this.command("echo", "again"), stream));
+    assertEquals("again\n", stream.toString(UTF_8));
+  }
+
+  private GCloudWorkers workers(final Map<String, String> overrides) {
+    final Map<String, String> properties = Maps.newHashMap(ImmutableMap.of(
+      GCloudWorkers.PROPERTY_ENABLED, "true",
+      GCloudWorkers.PROPERTY_WORKERS, "1",
+      GCloudWorkers.PROPERTY_FALLBACK, "false",
+      GCloudWorkers.PROPERTY_PYTHON, "python3",
+      GCloudWorkers.PROPERTY_SCRIPT, new File("gcloudd.py").getAbsolutePath(),
+      GCloudWorkers.PROPERTY_IN_PROCESS, "false",
+      "gcloud.command", new File("src/test/resources/fake-gcloud").getAbsolutePath()
+    ));
+    properties.putAll(overrides);
+    final ConfigService configService = Guice.createInjector(new AbstractModule() {
+      @Override
+      protected void configure() {
+        bind(MapTypeStringString).annotatedWith(Names.named("app://environment")).toInstance(ImmutableMap.of());
+        bind(MapTypeStringString).annotatedWith(Names.named("app://properties")).toInstance(properties);
+        bind(MapTypeStringString).annotatedWith(Names.named("sys://properties")).toInstance(ImmutableMap.of());
+        bind(ConfigService.class).to(ConfigServiceImpl.class);
+      }
+    }).getInstance(ConfigService.class);
+    return new GCloudWorkers(configService, new Gson());
+  }
+
+  private ManagedProcessBuilder command(final String... args) throws Exception {
+    final ManagedProcessBuilder builder = new ManagedProcessBuilder("gcloud");
+    for (final String arg : args) {
+      builder.addArgument(arg);
+    }
+    return builder;
+  }
+
+  private Optional<Integer> run(
+    final GCloudWorkers workers,
+    final ManagedProcessBuilder builder,
+    final OutputStream stream
+  ) {
+    return workers.run(builder, Optional.of(stream), Optional.absent());
+  }
+
+}
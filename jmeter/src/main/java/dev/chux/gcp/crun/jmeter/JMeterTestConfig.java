@@ -87,9 +87,9 @@ public class JMeterTestConfig {
   private final Optional<Map<String, String>> headers;
 
   @Since(1.0)
-  @Expose(deserialize=true, serialize=true)
-  @SerializedName(value="body")
-  private final Optional<String> body;
+  @Expose(deserialize=false, serialize=true)
+  @SerializedName(value="body_size")
+  private long bodySize = 0;
 
   @Since(1.0)
   @Expose(deserialize=true, serialize=true)
@@ -183,7 +183,7 @@ public class JMeterTestConfig {
     @CheckForNull @NonNull final String host,
     @Nullable final String path
   ) {
-    this(name, instanceID, id, null, mode, null, null, host, null, path, null, null, null, 1, 1000);
+    this(name, instanceID, id, null, mode, null, null, host, null, path, null, null, 1, 1000);
   }
 
   public JMeterTestConfig(
@@ -199,7 +199,6 @@ public class JMeterTestConfig {
     @Nullable final String path,
     @Nullable final Map<String, String> query,
     @Nullable final Map<String, String> headers,
-    @Nullable final String body,
     final int minLatency,
     final int maxLatency
   ) {
@@ -224,7 +223,6 @@ public class JMeterTestConfig {
     this.path = fromNullable(path);
     this.query = fromNullable(query);
     this.headers = fromNullable(headers);
-    this.body = fromNullable(body);
 
     this.minLatency = minLatency;
     this.maxLatency = maxLatency;
@@ -288,8 +286,15 @@ public class JMeterTestConfig {
     return this.path;
   }
 
-  public Optional<String> body() {
-    return this.body;
+  public long bodySize() {
+    return this.bodySize;
+  }
+
+  public JMeterTestConfig bodySize(
+    final long bodySize
+  ) {
+    this.bodySize = bodySize;
+    return this;
   }
 
   public Optional<String> jmx() {
@@ -19,6 +19,7 @@ import com.google.common.base.Optional;
 import com.google.common.collect.Maps;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.MoreExecutors;
@@ -41,6 +42,7 @@ import static com.google.common.base.Optional.fromNullable;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Strings.isNullOrEmpty;
 import static com.google.common.base.Throwables.getStackTraceAsString;
+import static com.google.common.util.concurrent.Futures.immediateFailedFuture;
 import static com.google.common.util.concurrent.Futures.immediateFuture;
 
 public class JMeterTestService {
@@ -50,6 +52,7 @@ public class JMeterTestService {
   private final JMeterTestFactory jMeterTestFactory;
   private final Provider<String> jmeterTestProvider;
   private final Map<String, JMeterTest> jmeterTestStorage;
+  private final RequestFileGenerator requestFileGenerator;
 
   private final Map<String, ProxyOutputStream> streams = Maps.newConcurrentMap();
   private final Map<String, ListenableFuture<JMeterTest>> tests = Maps.newConcurrentMap();
@@ -61,11 +64,13 @@ public class JMeterTestService {
   JMeterTestService(
     final JMeterTestFactory jMeterTestFactory,
     @Named("jmeter://test.jmx") final Provider<String> jmeterTestProvider,
-    final Map<String, JMeterTest> jmeterTestStorage
+    final Map<String, JMeterTest> jmeterTestStorage,
+    final RequestFileGenerator requestFileGenerator
   ) {
     this.jMeterTestFactory = jMeterTestFactory;
     this.jmeterTestProvider = jmeterTestProvider;
     this.jmeterTestStorage = jmeterTestStorage;
+    this.requestFileGenerator = requestFileGenerator;
   }
 
   public final ListenableFuture<JMeterTest> start(
@@ -73,7 +78,7 @@ public class JMeterTestService {
     final String id, final Optional<String> traceID, final Optional<String> jmx, final String mode,
     final Optional<String> proto, final Optional<String> method, final String host, final Optional<Integer> port,
     final Optional<String> path, final Map<String, String> query, final Map<String, String> headers,
-    final Optional<String> body, final Optional<String> threads, final Optional<String> profile,
+    final Optional<ByteSource> body, final Optional<String> threads, final Optional<String> profile,
     final int concurrency, final int duration, final int rampupTime, final int rampupSteps,
     final int minLatency, final int maxLatency
   ) {
@@ -86,7 +91,7 @@ public class JMeterTestService {
     final String id, final Optional<String> traceID, final Optional<String> jmx, final String mode,
     final Optional<String> proto, final Optional<String> method, final String host, final Optional<Integer> port,
     final Optional<String> path, final Map<String, String> query, final Map<String, String> headers,
-    final Optional<String> body, final Optional<String> threads, final Optional<String> profile,
+    final Optional<ByteSource> body, final Optional<String> threads, final Optional<String> profile,
     final int concurrency, final int duration, final int rampupTime, final int rampupSteps,
     final OutputStream outputStream, final boolean closeableOutputStream,
     final int minLatency, final int maxLatency
@@ -103,7 +108,7 @@ public class JMeterTestService {
     final JMeterTestConfig config = new JMeterTestConfig(
       name, instanceID, id, JMX, mode, proto.orNull(),
       method.orNull(), host, port.orNull(), path.orNull(),
-      query, headers, body.orNull(), minLatency, maxLatency
+      query, headers, minLatency, maxLatency
     )
     .traceID(traceID.orNull())
     .threads(threads.orNull())
@@ -126,6 +131,23 @@ public class JMeterTestService {
       return this.test(id).or(immediateFuture(t.get()));
     }
 
+    // stream the request body into the test's body file before going async:
+    //   the body may be backed by the incoming HTTP request.
+    try {
+      config.bodySize(
+        this.requestFileGenerator.writeBody(
+          config, body.or(ByteSource.empty())
+        )
+      );
+    } catch(final Exception e) {
+      logger.error("{}/failed to write body =>\n{}", id, getStackTraceAsString(e));
+      this.clean(test);
+      final ListenableFuture<JMeterTest> failedTest = immediateFailedFuture(e);
+      // allow the jmaas client to release its resources
+      Futures.<JMeterTest>addCallback(failedTest, callback, MoreExecutors.directExecutor());
+      return failedTest;
+    }
+
     // create a test execution delegate
     final JMeterTestExecutor executor = this.jMeterTestFactory.createExecutor(test);
 
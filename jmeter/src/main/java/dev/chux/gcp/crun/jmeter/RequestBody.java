@@ -0,0 +1,138 @@
+package dev.chux.gcp.crun.jmeter;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.common.base.Optional;
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Request bodies are never materialized in memory:
+ * they are streamed straight into the test's body file.
+ */
+public final class RequestBody {
+
+  private static final byte[] PATTERN =
+    "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz".getBytes(US_ASCII);
+
+  private RequestBody() {}
+
+  /**
+   * Single-use source backed by an open stream; i/e: an incoming HTTP request body.
+   */
+  public static ByteSource ofStream(
+    final InputStream stream
+  ) {
+    return new StreamSource(checkNotNull(stream));
+  }
+
+  /**
+   * Synthetic source producing exactly {@code size} printable ASCII bytes.
+   */
+  public static ByteSource ofSize(
+    final long size
+  ) {
+    checkArgument(size >= 0, "body size must not be negative");
+    return new GeneratedSource(size);
+  }
+
+  private static final class StreamSource extends ByteSource {
+
+    private final InputStream stream;
+    private final AtomicBoolean consumed = new AtomicBoolean(false);
+
+    private StreamSource(
+      final InputStream stream
+    ) {
+      this.stream = stream;
+    }
+
+    @Override
+    public InputStream openStream() {
+      checkState(this.consumed.compareAndSet(false, true), "stream was already consumed");
+      return this.stream;
+    }
+
+    @Override
+    public String toString() {
+      return toStringHelper(this)
+        .add("consumed", this.consumed.get())
+        .toString();
+    }
+
+  }
+
+  private static final class GeneratedSource extends ByteSource {
+
+    private final long size;
+
+    private GeneratedSource(
+      final long size
+    ) {
+      this.size = size;
+    }
+
+    @Override
+    public InputStream openStream() {
+      return ByteStreams.limit(new PatternInputStream(), this.size);
+    }
+
+    @Override
+    public Optional<Long> sizeIfKnown() {
+      return Optional.of(Long.valueOf(this.size));
+    }
+
+    @Override
+    public long size() {
+      return this.size;
+    }
+
+    @Override
+    public String toString() {
+      return toStringHelper(this)
+        .add("size", this.size)
+        .toString();
+    }
+
+  }
+
+  private static final class PatternInputStream extends InputStream {
+
+    private int position = 0;
+
+    @Override
+    public int read() {
+      final int b = PATTERN[this.position];
+      this.position = (this.position + 1) % PATTERN.length;
+      return b;
+    }
+
+    @Override
+    public int read(
+      final byte[] buffer,
+      final int offset,
+      final int length
+    ) throws IOException {
+      int written = 0;
+      while ( written < length ) {
+        final int chunk = Math.min(length - written, PATTERN.length - this.position);
+        System.arraycopy(PATTERN, this.position, buffer, offset + written, chunk);
+        this.position = (this.position + chunk) % PATTERN.length;
+        written += chunk;
+      }
+      return written;
+    }
+
+  }
+
+}
@@ -1,5 +1,7 @@
 package dev.chux.gcp.crun.jmeter;
 
+import java.io.IOException;
+
 import java.util.Map;
 
 import java.nio.file.Files;
@@ -9,11 +11,17 @@ import java.nio.file.Paths;
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.base.Supplier;
+import com.google.common.base.Utf8;
+import com.google.common.io.ByteSource;
+import com.google.common.io.MoreFiles;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
 
 import static com.google.common.base.Optional.fromNullable;
 import static com.google.common.base.Strings.isNullOrEmpty;
@@ -119,54 +127,51 @@ public class RequestFileGenerator implements Function<Supplier<JMeterTestConfig>
     return this;
   }
 
-  private final RequestFileGenerator setPayload(
-    final JMeterTestConfig config,
-    final StringBuilder content
-  ) {
-    final String body = config.body().or("");
-    content
-      .append("Content-Length: ")
-      .append(body.length())
-      .append(LINE_BREAK)
-      .append(LINE_BREAK)
-      .append(body);
-    return this;
-  }
-
   private final Optional<Path> writeRequestFile(
     final JMeterTestConfig config,
     final StringBuilder content
   ) {
-    final String body = config.body().or("");
-
-    // set `Content-Length`
+    // set `Content-Length`: size in bytes of the body file,
+    //   which must have been written already by `writeBody(...)`.
     content
       .append("Content-Length: ")
-      .append(body.length());
+      .append(config.bodySize());
 
-    logger.info("\n{}\n\n{}", content, body);
+    logger.info("\n{}", content);
     try {
-      final Optional<Path> path = fromNullable(
+      return fromNullable(
         Files.writeString(
           this.newRequestFilePath(config),
-          content.insert(0, content.length()-SIZEOF_LINE_BREAK),
+          // header block size must be given in bytes, not in characters
+          content.insert(0, Utf8.encodedLength(content)-SIZEOF_LINE_BREAK),
           UTF_8
         )
       );
-      if ( path.isPresent() ) {
-        final Path p = path.get();
-        // write request body to its own file
-        Files.writeString(
-          this.newRequestBodyFilePath(p), body, UTF_8
-        );
-        return path;
-      }
     } catch(final Exception e) {
       logger.error("failed to write request file: {}", getStackTraceAsString(e));
     }
     return Optional.absent();
   }
 
+  /**
+   * Streams the request body into its own file without buffering it in memory.
+   *
+   * @return number of bytes written; to be used as `Content-Length`.
+   */
+  public long writeBody(
+    final JMeterTestConfig config,
+    final ByteSource body
+  ) throws IOException {
+    final Path path = this.newRequestBodyFilePath(
+      this.newRequestFilePath(config)
+    );
+    final long size = body.copyTo(
+      MoreFiles.asByteSink(path, CREATE, TRUNCATE_EXISTING, WRITE)
+    );
+    logger.info("{}/body: {} bytes => {}", config.id(), size, path);
+    return size;
+  }
+
   public Optional<Path> apply(
     final Supplier<JMeterTestConfig> supplier
   ) {
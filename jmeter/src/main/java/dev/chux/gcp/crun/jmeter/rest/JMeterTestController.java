@@ -7,7 +7,11 @@ import java.util.UUID;
 
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.servlet.MultipartConfigElement;
 import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.Part;
 
 import com.google.inject.Inject;
 
@@ -17,14 +21,18 @@ import com.google.common.base.Optional;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
 import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
 
 import spark.Request;
 import spark.Response;
 
 import dev.chux.gcp.crun.ConfigService;
+import dev.chux.gcp.crun.jmeter.RequestBody;
 import dev.chux.gcp.crun.rest.RestController;
 
 import org.slf4j.Logger;
@@ -37,6 +45,7 @@ import static com.google.common.base.MoreObjects.toStringHelper;
 import static com.google.common.base.Optional.fromNullable;
 import static com.google.common.base.Strings.emptyToNull;
 import static com.google.common.base.Strings.isNullOrEmpty;
+import static com.google.common.base.Strings.nullToEmpty;
 import static com.google.common.base.Throwables.getStackTraceAsString;
 
 import static spark.Spark.*;
@@ -78,6 +87,12 @@ abstract class JMeterTestController extends RestController {
   private static final Integer DEFAULT_MIN_LATENCY = Integer.valueOf(1);
   private static final Integer DEFAULT_MAX_LATENCY = Integer.valueOf(1000);
 
+  private static final String MULTIPART_FORM_DATA = "multipart/form-data";
+  private static final String MULTIPART_BODY_PART = "body";
+  private static final String MULTIPART_CONFIG_ATTRIBUTE = "org.eclipse.jetty.multipartConfig";
+  private static final MultipartConfigElement MULTIPART_CONFIG =
+    new MultipartConfigElement(System.getProperty("java.io.tmpdir"), -1L, -1L, 64 * 1024);
+
   private static final String DEFAULT_TRACE_CONTEXT = DEFAULT_TRACE_ID + "/0000000000000000;o=0";
 
   protected JMeterTestController() {}
@@ -121,6 +136,19 @@ abstract class JMeterTestController extends RestController {
     return Optional.<Integer>absent();
   }
 
+  protected final Optional<Long> optionalLongParam(
+    final Request request,
+    final String param
+  ) {
+    final Optional<String> value = this.optionalParam(request, param);
+    if ( value.isPresent() ) {
+      return fromNullable(
+        Longs.tryParse(value.get())
+      );
+    }
+    return Optional.<Long>absent();
+  }
+
   protected final int optionalIntParamOr(
     final Request request,
     final String param,
@@ -311,8 +339,57 @@ abstract class JMeterTestController extends RestController {
     return metadata(request, "headers");
   }
 
-  protected final Optional<String> body(final Request request) {
-    return fromNullable(emptyToNull(request.body()));
+  protected final Optional<String> bodySizeParam(final Request request) {
+    return this.optionalParam(request, "body_size");
+  }
+
+  protected final Optional<Long> bodySize(final Request request) {
+    return this.optionalLongParam(request, "body_size");
+  }
+
+  protected final Optional<ByteSource> body(final Request request) throws Exception {
+    // `body_size` requests a generated body; it takes precedence over the request payload.
+    final Optional<Long> bodySize = this.bodySize(request);
+    if ( bodySize.isPresent() ) {
+      return Optional.of(RequestBody.ofSize(bodySize.get().longValue()));
+    }
+
+    final HttpServletRequest raw = this.unwrap(request.raw());
+
+    final String contentType = nullToEmpty(raw.getContentType());
+    if ( contentType.startsWith(MULTIPART_FORM_DATA) ) {
+      return this.multipartBody(raw);
+    }
+
+    final boolean chunked = "chunked".equalsIgnoreCase(raw.getHeader("Transfer-Encoding"));
+    if ( !chunked && (raw.getContentLengthLong() <= 0) ) {
+      return Optional.<ByteSource>absent();
+    }
+    return Optional.of(RequestBody.ofStream(raw.getInputStream()));
+  }
+
+  private Optional<ByteSource> multipartBody(
+    final HttpServletRequest raw
+  ) throws Exception {
+    // large parts are spooled to disk by Jetty, never held in memory
+    raw.setAttribute(MULTIPART_CONFIG_ATTRIBUTE, MULTIPART_CONFIG);
+    final Optional<Part> part = fromNullable(raw.getPart(MULTIPART_BODY_PART))
+      .or(fromNullable(Iterables.getFirst(raw.getParts(), null)));
+    if ( part.isPresent() ) {
+      return Optional.of(RequestBody.ofStream(part.get().getInputStream()));
+    }
+    return Optional.<ByteSource>absent();
+  }
+
+  private HttpServletRequest unwrap(
+    final HttpServletRequest request
+  ) {
+    // Spark wraps requests to cache the whole payload in memory
+    //   on `getInputStream()`; use the wrapped request to stream it instead.
+    if ( request instanceof HttpServletRequestWrapper ) {
+      return (HttpServletRequest) ((HttpServletRequestWrapper) request).getRequest();
+    }
+    return request;
   }
 
   protected final void setHeader(
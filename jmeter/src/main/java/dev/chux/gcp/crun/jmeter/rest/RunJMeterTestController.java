@@ -14,6 +14,7 @@ import com.google.common.base.Optional;
 import com.google.common.base.Supplier;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -42,9 +43,15 @@ public class RunJMeterTestController extends JMeterTestController {
 
   private static final Logger logger = LoggerFactory.getLogger(RunJMeterTestController.class);
 
+  public static final String PROPERTY_MAX_BODY_SIZE = "jmeter.test.body-size.max";
+
+  // generated bodies are written to disk before the test starts
+  private static final Long DEFAULT_MAX_BODY_SIZE = Long.valueOf(256L * 1024L * 1024L);
+
   private final JMeterTestService jMeterTestService;
   private final Set<String> modes;
   private final String instanceID;
+  private final long maxBodySize;
 
   private final AtomicBoolean lock = new AtomicBoolean(false);
 
@@ -152,6 +159,8 @@ public class RunJMeterTestController extends JMeterTestController {
     this.jMeterTestService = jMeterTestService;
     this.modes = this.jmeterModes(configService);
     this.instanceID = this.instanceID(configService);
+    this.maxBodySize = configService.getLongAppProp(PROPERTY_MAX_BODY_SIZE)
+      .or(DEFAULT_MAX_BODY_SIZE).longValue();
     logger.info("com.google.cloud.run.instance.id={}", this.instanceID);
   }
 
@@ -213,6 +222,17 @@ public class RunJMeterTestController extends JMeterTestController {
     return super.badRequest(response, message);
   }
 
+  private boolean failed(
+    final ListenableFuture<JMeterTest> test
+  ) {
+    try {
+      Futures.getDone(test);
+    } catch(final Exception e) {
+      return true;
+    }
+    return false;
+  }
+
   public Object handle(
     final Request request,
     final Response response
@@ -224,7 +244,6 @@ public class RunJMeterTestController extends JMeterTestController {
       return "busy";
     }
     
-    final Optional<String> body = body(request);
     final ServletOutputStream responseOutput = response.raw().getOutputStream();
 
     final String output = output(request);
@@ -297,6 +316,19 @@ public class RunJMeterTestController extends JMeterTestController {
       return this.badRequest(response, "duration must be greater than 0");
     }
 
+    // request payload: streamed as-is, or generated when `body_size` is set.
+    final Optional<Long> bodySize = bodySize(request);
+    if ( bodySizeParam(request).isPresent() && !bodySize.isPresent() ) {
+      return this.badRequest(response, "invalid 'body_size': " + bodySizeParam(request).get());
+    }
+    if ( bodySize.isPresent() && (bodySize.get().longValue() < 0) ) {
+      return this.badRequest(response, "'body_size' must not be negative");
+    }
+    if ( bodySize.isPresent() && (bodySize.get().longValue() > this.maxBodySize) ) {
+      return this.badRequest(response, "'body_size' must not be greater than " + this.maxBodySize);
+    }
+    final Optional<ByteSource> body = body(request);
+
     // legacy test parameters
     final int threads     = threads(request);
     final int rampupTime  = rampupTime(request);
@@ -351,6 +383,11 @@ public class RunJMeterTestController extends JMeterTestController {
         minLatency, maxLatency);
     }
 
+    if ( test.isDone() && this.failed(test) ) {
+      response.status(500);
+      return "failed to start test: " + testID;
+    }
+
     setHeader(response, "id", testID);
     setHeader(response, "instance-id", this.instanceID);
     if ( traceID.isPresent() ) {
@@ -18,6 +18,16 @@ import static com.google.common.base.Strings.emptyToNull;
 
 public class GCloudCommand {
 
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="id", alternate={"key"})
+  private String id;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="depends", alternate={"after", "needs"})
+  private List<String> dependencies;
+
   @Since(1.0)
   @Expose(deserialize=true, serialize=true)
   @SerializedName(value="namespace", alternate={"ns"})
@@ -70,6 +80,25 @@ public class GCloudCommand {
 
   public GCloudCommand() {}
   
+  public String id() {
+    return emptyToNull(this.id);
+  }
+
+  public Optional<String> optionalId() {
+    return fromNullable(this.id());
+  }
+
+  /**
+   * IDs –or 1-based positions– of the commands in the same batch that must succeed before this one runs;
+   * absent if not declared, as opposed to declared empty.
+   */
+  public Optional<List<String>> optionalDependencies() {
+    if( this.dependencies == null ) {
+      return Optional.absent();
+    }
+    return Optional.<List<String>>of(ImmutableList.copyOf(this.dependencies));
+  }
+
   public String namespace() {
     return this.namespace;
   }
@@ -153,6 +182,8 @@ public class GCloudCommand {
   @Override
   public String toString() {
     return toStringHelper(this)
+      .add("id", this.optionalId())
+      .add("depends", this.optionalDependencies())
       .add("project", this.optionalProject())
       .add("namespace", this.optionalNamespace())
       .add("groups", this.groups())
@@ -2,13 +2,52 @@ package dev.chux.gcp.crun.model;
 
 import java.util.List;
 
+import com.google.common.base.Optional;
+
+import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.Since;
+import com.google.gson.annotations.SerializedName;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Optional.fromNullable;
+
 public class GCloudCommands extends Multivalue<GCloudCommand> {
 
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="independent", alternate={"parallel"})
+  private Boolean independent;
+
+  @Since(1.0)
+  @Expose(deserialize=true, serialize=true)
+  @SerializedName(value="parallelism", alternate={})
+  private Integer parallelism;
+
   GCloudCommands() {}
 
   public GCloudCommands(final List<GCloudCommand> commands) {
     super(commands);
   }
 
-}
+  /**
+   * Whether commands without declared dependencies may run right away;
+   * otherwise, each of them waits for the one before it to finish, whether it succeeded or not.
+   */
+  public boolean independent() {
+    return (this.independent != null) && this.independent.booleanValue();
+  }
+
+  public Optional<Integer> optionalParallelism() {
+    return fromNullable(this.parallelism);
+  }
 
+  @Override
+  public String toString() {
+    return toStringHelper(this)
+      .add("independent", this.independent())
+      .add("parallelism", this.optionalParallelism())
+      .addValue(this.get())
+      .toString();
+  }
+
+}
@@ -0,0 +1,59 @@
+package dev.chux.gcp.crun.faults.socket;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import dev.chux.gcp.crun.ConfigService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Decides, once per connection, whether its lifecycle is logged: connections are sampled
+ * ({@code faults.socket.log.sample-rate}) and sampled connections are rate limited
+ * ({@code faults.socket.log.max-per-second}), so logging cannot dominate under load.
+ */
+@Singleton
+public class ConnectionLogSampler {
+  private static final Logger logger = LoggerFactory.getLogger(ConnectionLogSampler.class);
+
+  private static final String PROPERTY_SAMPLE_RATE = "faults.socket.log.sample-rate";
+  private static final String PROPERTY_MAX_PER_SECOND = "faults.socket.log.max-per-second";
+
+  private static final double DEFAULT_SAMPLE_RATE = 0.01;
+  private static final double DEFAULT_MAX_PER_SECOND = 10.0;
+
+  private final double sampleRate;
+  private final RateLimiter rateLimiter;
+
+  @Inject
+  ConnectionLogSampler(
+    final ConfigService configService
+  ) {
+    this.sampleRate = configService.getDoubleAppProp(PROPERTY_SAMPLE_RATE)
+      .or(DEFAULT_SAMPLE_RATE).doubleValue();
+    final double maxPerSecond = configService.getDoubleAppProp(PROPERTY_MAX_PER_SECOND)
+      .or(DEFAULT_MAX_PER_SECOND).doubleValue();
+    checkArgument(this.sampleRate >= 0 && this.sampleRate <= 1, "invalid log sample rate: %s", this.sampleRate);
+    checkArgument(maxPerSecond > 0, "invalid log rate: %s", maxPerSecond);
+    this.rateLimiter = RateLimiter.create(maxPerSecond);
+    logger.info("connection logging: [sample-rate={}, max-per-second={}]", this.sampleRate, maxPerSecond);
+  }
+
+  public boolean sample() {
+    if (this.sampleRate <= 0) {
+      return false;
+    }
+    if (this.sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= this.sampleRate) {
+      return false;
+    }
+    return this.rateLimiter.tryAcquire();
+  }
+
+}
@@ -0,0 +1,60 @@
+package dev.chux.gcp.crun.faults.socket;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import dev.chux.gcp.crun.ConfigService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Bounded pool shared by all socket handlers: each accepted connection is an independent task,
+ * so a handler pausing on one connection never delays the others nor the accept loop.
+ */
+public class ConnectionsExecutorProvider implements Provider<ExecutorService> {
+  private static final Logger logger = LoggerFactory.getLogger(ConnectionsExecutorProvider.class);
+
+  private static final String PROPERTY_THREADS = "faults.socket.connections.threads";
+  private static final String PROPERTY_QUEUE = "faults.socket.connections.queue";
+
+  private static final int DEFAULT_THREADS = 1024;
+  private static final int DEFAULT_QUEUE = 1024;
+
+  private final int threads;
+  private final int queue;
+
+  @Inject
+  ConnectionsExecutorProvider(
+    final ConfigService configService
+  ) {
+    this.threads = configService.getIntAppProp(PROPERTY_THREADS).or(DEFAULT_THREADS).intValue();
+    this.queue = configService.getIntAppProp(PROPERTY_QUEUE).or(DEFAULT_QUEUE).intValue();
+    checkArgument(this.threads > 0, "invalid connection threads: %s", this.threads);
+    checkArgument(this.queue > 0, "invalid connection queue: %s", this.queue);
+  }
+
+  @Override
+  public ExecutorService get() {
+    final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+      this.threads, this.threads, 60L, TimeUnit.SECONDS,
+      new LinkedBlockingQueue<Runnable>(this.queue),
+      new ThreadFactoryBuilder()
+        .setNameFormat("socket-faults-connection-%d")
+        .setDaemon(true)
+        .build());
+    executor.allowCoreThreadTimeOut(true);
+    logger.info("connections executor: [threads={}, queue={}]", this.threads, this.queue);
+    return executor;
+  }
+
+}
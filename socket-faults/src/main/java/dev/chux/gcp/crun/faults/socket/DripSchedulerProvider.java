@@ -0,0 +1,51 @@
+package dev.chux.gcp.crun.faults.socket;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import dev.chux.gcp.crun.ConfigService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Scheduler shared by all slow-drip handlers: each tick moves one chunk on one connection
+ * without blocking, so thousands of slow streams are served by a handful of threads.
+ */
+public class DripSchedulerProvider implements Provider<ScheduledExecutorService> {
+  private static final Logger logger = LoggerFactory.getLogger(DripSchedulerProvider.class);
+
+  private static final String PROPERTY_THREADS = "faults.socket.drip.threads";
+
+  private static final int DEFAULT_THREADS = 2;
+
+  private final int threads;
+
+  @Inject
+  DripSchedulerProvider(
+    final ConfigService configService
+  ) {
+    this.threads = configService.getIntAppProp(PROPERTY_THREADS).or(DEFAULT_THREADS).intValue();
+    checkArgument(this.threads > 0, "invalid drip threads: %s", this.threads);
+  }
+
+  @Override
+  public ScheduledExecutorService get() {
+    final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(this.threads,
+      new ThreadFactoryBuilder()
+        .setNameFormat("socket-faults-drip-%d")
+        .setDaemon(true)
+        .build());
+    scheduler.setRemoveOnCancelPolicy(true);
+    logger.info("drip scheduler: [threads={}]", this.threads);
+    return scheduler;
+  }
+
+}
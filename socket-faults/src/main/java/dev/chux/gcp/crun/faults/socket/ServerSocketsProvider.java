@@ -3,9 +3,30 @@ package dev.chux.gcp.crun.faults.socket;
 import java.net.ServerSocket;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
 
 public interface ServerSocketsProvider {
 
   public Optional<ServerSocket> get(final String socketName);
 
+  /**
+   * All the sockets bound to the port of {@code socketName}: with {@code SO_REUSEPORT}
+   * the kernel spreads incoming connections across them, one acceptor per socket.
+   *
+   * @return an empty list if the socket does not exist; otherwise {@link #get} is its first element.
+   */
+  public ImmutableList<ServerSocket> acceptors(final String socketName);
+
+  /**
+   * Binds a new server socket at runtime; port {@code 0} picks any free port.
+   *
+   * @return {@code absent} if the name is taken or the port cannot be bound.
+   */
+  public Optional<ServerSocket> create(final String socketName, final int port);
+
+  /**
+   * Closes and forgets a server socket.
+   */
+  public boolean release(final String socketName);
+
 }
@@ -2,14 +2,19 @@ package dev.chux.gcp.crun.faults.socket;
 
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
 
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
 
 import com.google.common.base.Supplier;
 import com.google.common.base.Optional;
-import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableList;
 
 import com.netflix.governator.annotations.Configuration;
 
@@ -18,48 +23,155 @@ import dev.chux.gcp.crun.ConfigService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import static com.google.common.base.Optional.fromNullable;
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Throwables.getStackTraceAsString;
 
 public class ServerSocketsProviderImpl implements ServerSocketsProvider {
   private static final Logger logger = LoggerFactory.getLogger(ServerSocketsProviderImpl.class);
 
-  private final Map<String, ServerSocket> serverSockets;
+  private static final String PROPERTY_ACCEPTORS = "faults.socket.acceptors";
+  private static final String PROPERTY_BACKLOG = "faults.socket.backlog";
+
+  private static final int DEFAULT_ACCEPTORS = 1;
+  // the kernel silently caps it at `net.core.somaxconn`
+  private static final int DEFAULT_BACKLOG = 4096;
+
+  private final ConfigService configService;
+  private final int acceptors;
+  private final int backlog;
+  private final ConcurrentMap<String, ImmutableList<ServerSocket>> serverSockets;
 
   @Inject
   public ServerSocketsProviderImpl(final ConfigService configService,
     @Named("socket-faults://names") final Set<String> socketNames) {
-    this.serverSockets = this.createServerSockets(configService, socketNames);
+    this.configService = configService;
+    this.acceptors = configService.getIntAppProp(PROPERTY_ACCEPTORS).or(DEFAULT_ACCEPTORS).intValue();
+    this.backlog = configService.getIntAppProp(PROPERTY_BACKLOG).or(DEFAULT_BACKLOG).intValue();
+    checkArgument(this.acceptors > 0, "invalid acceptors: %s", this.acceptors);
+    checkArgument(this.backlog > 0, "invalid backlog: %s", this.backlog);
+    logger.info("server sockets: [acceptors={}, backlog={}]", this.acceptors, this.backlog);
+    this.serverSockets = this.createServerSockets(socketNames);
     checkState(this.serverSockets.size() == socketNames.size(), "incimplete sockets");
   }
 
-  private Map<String, ServerSocket> createServerSockets(final ConfigService configService, final Set<String> socketNames) {
-    final ImmutableMap.Builder<String, ServerSocket> sockets = ImmutableMap.<String, ServerSocket>builder();
+  private ConcurrentMap<String, ImmutableList<ServerSocket>> createServerSockets(final Set<String> socketNames) {
+    final ConcurrentMap<String, ImmutableList<ServerSocket>> sockets = new ConcurrentHashMap<String, ImmutableList<ServerSocket>>();
     for(final String socketName : socketNames) {
-      final Optional<Integer> port = this.getSocketPort(configService, socketName);
-      checkState(port.isPresent(), "undefined port for socket: ", socketName);
-      this.addSocket(sockets, socketName, port.get());
+      final Optional<Integer> port = this.getSocketPort(socketName);
+      checkState(port.isPresent(), "undefined port for socket: %s", socketName);
+      final Optional<ImmutableList<ServerSocket>> socket = this.newSockets(socketName, port.get());
+      if (socket.isPresent()) {
+        sockets.put(socketName, socket.get());
+      }
     }
-    return sockets.build();
+    return sockets;
+  }
+
+  private Optional<Integer> getSocketPort(final String socketName) {
+    return this.configService.getIntAppProp("faults.socket." + socketName + ".port");
   }
 
-  private Optional<Integer> getSocketPort(final ConfigService configService, final String socketName) {
-    return configService.getIntAppProp("faults.socket." + socketName + ".port");
+  private int getSocketAcceptors(final String socketName) {
+    return this.configService.getIntAppProp("faults.socket." + socketName + ".acceptors")
+      .or(this.acceptors).intValue();
   }
 
-  private void addSocket(final ImmutableMap.Builder<String, ServerSocket> sockets, final String name, final Integer port) {
+  private int getSocketBacklog(final String socketName) {
+    return this.configService.getIntAppProp("faults.socket." + socketName + ".backlog")
+      .or(this.backlog).intValue();
+  }
+
+  private Optional<ImmutableList<ServerSocket>> newSockets(final String name, final Integer port) {
+    final int backlog = this.getSocketBacklog(name);
+    int acceptors = this.getSocketAcceptors(name);
+    final ImmutableList.Builder<ServerSocket> sockets = ImmutableList.builder();
+    ServerSocketChannel channel = null;
     try {
-      sockets.put(name, new ServerSocket(port.intValue()));
-      logger.info("created server socket '{}' at port '{}'", name, port);
+      // channel backed: usable by both blocking and non-blocking handlers
+      channel = ServerSocketChannel.open();
+      if (acceptors > 1 && !channel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+        logger.warn("SO_REUSEPORT is not supported: server socket '{}' will have a single acceptor", name);
+        acceptors = 1;
+      }
+      if (acceptors > 1) {
+        channel.setOption(StandardSocketOptions.SO_REUSEPORT, Boolean.TRUE);
+      }
+      channel.bind(new InetSocketAddress(port.intValue()), backlog);
+      sockets.add(channel.socket());
+      // port `0` is resolved by the first bind: the rest must share it
+      final int localPort = channel.socket().getLocalPort();
+      for (int i = 1; i < acceptors; i++) {
+        channel = ServerSocketChannel.open();
+        channel.setOption(StandardSocketOptions.SO_REUSEPORT, Boolean.TRUE);
+        channel.bind(new InetSocketAddress(localPort), backlog);
+        sockets.add(channel.socket());
+      }
+      logger.info("created server socket '{}' at port '{}': [acceptors={}, backlog={}]", name, localPort, acceptors, backlog);
+      return Optional.of(sockets.build());
     } catch(final Exception ex) {
       logger.error("failed to create server socket '{}' at port '{}': {}", name, port, getStackTraceAsString(ex));
+      if (channel != null && !channel.socket().isBound()) {
+        this.closeQuietly(name, channel.socket());
+      }
+      this.closeQuietly(name, sockets.build());
     }
+    return Optional.absent();
   }
 
   @Override
   public Optional<ServerSocket> get(final String socketName) {
-    return fromNullable(this.serverSockets.get(socketName));
+    final ImmutableList<ServerSocket> sockets = this.acceptors(socketName);
+    return sockets.isEmpty() ? Optional.<ServerSocket>absent() : Optional.of(sockets.get(0));
+  }
+
+  @Override
+  public ImmutableList<ServerSocket> acceptors(final String socketName) {
+    final ImmutableList<ServerSocket> sockets = this.serverSockets.get(socketName);
+    return (sockets == null) ? ImmutableList.<ServerSocket>of() : sockets;
+  }
+
+  @Override
+  public Optional<ServerSocket> create(final String socketName, final int port) {
+    if (this.serverSockets.containsKey(socketName)) {
+      logger.error("server socket '{}' already exists", socketName);
+      return Optional.absent();
+    }
+    final Optional<ImmutableList<ServerSocket>> sockets = this.newSockets(socketName, Integer.valueOf(port));
+    if (!sockets.isPresent()) {
+      return Optional.absent();
+    }
+    if (this.serverSockets.putIfAbsent(socketName, sockets.get()) != null) {
+      logger.error("server socket '{}' already exists", socketName);
+      this.closeQuietly(socketName, sockets.get());
+      return Optional.absent();
+    }
+    return Optional.of(sockets.get().get(0));
+  }
+
+  @Override
+  public boolean release(final String socketName) {
+    final ImmutableList<ServerSocket> sockets = this.serverSockets.remove(socketName);
+    if (sockets == null) {
+      return false;
+    }
+    this.closeQuietly(socketName, sockets);
+    logger.info("released server socket '{}'", socketName);
+    return true;
+  }
+
+  private void closeQuietly(final String socketName, final Iterable<ServerSocket> sockets) {
+    for (final ServerSocket socket : sockets) {
+      this.closeQuietly(socketName, socket);
+    }
+  }
+
+  private void closeQuietly(final String socketName, final ServerSocket socket) {
+    try {
+      socket.close();
+    } catch(final Exception ex) {
+      logger.error("failed to close server socket '{}': {}", socketName, getStackTraceAsString(ex));
+    }
   }
 
 }
@@ -18,6 +18,7 @@ import org.slf4j.LoggerFactory;
 
 import dev.chux.gcp.crun.AppMainThread;
 import dev.chux.gcp.crun.faults.socket.handlers.SocketFaultHandler;
+import dev.chux.gcp.crun.faults.socket.listeners.FaultListeners;
 
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -31,18 +32,21 @@ final class SocketFaultsMainThread implements AppMainThread {
   private final CountDownLatch doneSignal;
   private final Set<String> socketNames;
   private final Map<String, SocketFaultHandler> socketHandlers;
+  private final FaultListeners faultListeners;
 
   private int startedSocketHandlers;
 
   @Inject
   SocketFaultsMainThread(
     @Named("socket-faults://names") final Set<String> socketNames,
-    @Named("socket-faults://handlers") final Map<String, SocketFaultHandler> socketHandlers
+    @Named("socket-faults://handlers") final Map<String, SocketFaultHandler> socketHandlers,
+    final FaultListeners faultListeners
   ) {
     checkState(socketNames.size() == socketHandlers.size());
     this.doneSignal = new CountDownLatch(1);
     this.socketNames = socketNames;
     this.socketHandlers = socketHandlers;
+    this.faultListeners = faultListeners;
   }
 
   @PostConstruct
@@ -57,6 +61,7 @@ final class SocketFaultsMainThread implements AppMainThread {
 
   @Override
   public void run() {
+    this.faultListeners.deleteAll();
     final CountDownLatch stopSignal = newStopSignal();
     for(final String socketName : this.socketNames) {
       this.stopSocketHandler(socketName, stopSignal);
@@ -84,13 +89,13 @@ final class SocketFaultsMainThread implements AppMainThread {
   private Boolean startSocketHandler(final String socketName) {
     final SocketFaultHandler handler = this.socketHandlers.get(socketName);
     logger.info("starting socket handler '{}': {}", socketName, handler);
-    return checkNotNull(handler, "handler not found:", socketName).start();
+    return checkNotNull(handler, "handler not found: %s", socketName).start();
   }
 
   private Boolean stopSocketHandler(final String socketName, final CountDownLatch stopSignal) {
     final SocketFaultHandler handler = this.socketHandlers.get(socketName);
     logger.info("stopping socket handler '{}': {}", socketName, handler);
-    return checkNotNull(handler, "handler not found:", socketName).stop(stopSignal);
+    return checkNotNull(handler, "handler not found: %s", socketName).stop(stopSignal);
   }
   
 }
@@ -1,5 +1,7 @@
 package dev.chux.gcp.crun.faults.socket;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.function.Consumer;
 
 import com.google.inject.AbstractModule;
@@ -16,6 +18,9 @@ import dev.chux.gcp.crun.AppMainThread;
 import dev.chux.gcp.crun.annotations.MainThread;
 import dev.chux.gcp.crun.faults.socket.handlers.FaultHandlersModule;
 import dev.chux.gcp.crun.faults.socket.handlers.SocketFaultHandler;
+import dev.chux.gcp.crun.faults.socket.rest.RestModule;
+import dev.chux.gcp.crun.http.HttpModule;
+import dev.chux.gcp.crun.http.HttpServer;
 
 public class SocketFaultsModule extends AbstractModule implements Consumer<Injector> {
   private static final Logger logger = LoggerFactory.getLogger(SocketFaultsModule.class);
@@ -31,15 +36,31 @@ public class SocketFaultsModule extends AbstractModule implements Consumer<Injec
     MapBinder.newMapBinder(binder(),
       String.class, SocketFaultHandler.class, Names.named("socket-faults://handlers"));
 
+    bind(ExecutorService.class)
+      .annotatedWith(Names.named("socket-faults://connections"))
+      .toProvider(ConnectionsExecutorProvider.class)
+      .asEagerSingleton();
+
+    bind(ScheduledExecutorService.class)
+      .annotatedWith(Names.named("socket-faults://drip"))
+      .toProvider(DripSchedulerProvider.class)
+      .asEagerSingleton();
+
     bind(ServerSocketsProvider.class)
       .to(ServerSocketsProviderImpl.class)
       .asEagerSingleton();
 
     install(new FaultHandlersModule());
+
+    // REST API to manage runtime fault listeners
+    install(new dev.chux.gcp.crun.rest.RestModule());
+    install(new HttpModule());
+    install(new RestModule());
   }
 
   @Override
   public void accept(final Injector injector) {
+    injector.getInstance(HttpServer.class).start();
     logger.info("socket faults generator module started");
   }
 
@@ -0,0 +1,225 @@
+package dev.chux.gcp.crun.faults.socket.handlers;
+
+import java.io.IOException;
+
+import java.net.Socket;
+import java.net.SocketAddress;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dev.chux.gcp.crun.ConfigService;
+import dev.chux.gcp.crun.faults.socket.ServerSocketsProvider;
+import dev.chux.gcp.crun.faults.socket.http.HttpRequestReader;
+import dev.chux.gcp.crun.faults.socket.metrics.ConnectionOutcome;
+import dev.chux.gcp.crun.faults.socket.metrics.ConnectionTracker;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.base.Throwables.getStackTraceAsString;
+
+/**
+ * Trickles bytes to or from a connection: {@code faults.socket.<name>.chunk-size} bytes
+ * at a time at {@code faults.socket.<name>.bytes-per-second}.
+ *
+ * <p>Once the request has been handled by the pooled connection thread, the connection is
+ * switched to non-blocking mode and every chunk becomes a task on the shared drip scheduler.</p>
+ */
+abstract class AbstractSlowDripHandler extends AbstractSocketFaultHandler {
+  private static final Logger logger = LoggerFactory.getLogger(AbstractSlowDripHandler.class);
+
+  private final int bytesPerSecond;
+  private final int chunkSize;
+  private final long periodNanos;
+
+  private ScheduledExecutorService dripScheduler;
+
+  public AbstractSlowDripHandler(
+    final String socketName,
+    final ServerSocketsProvider serverSocketsProvider,
+    final ConfigService configService,
+    final int defaultBytesPerSecond,
+    final int defaultChunkSize
+  ) {
+    super(socketName, serverSocketsProvider);
+    this.bytesPerSecond = configService.getIntAppProp("faults.socket." + socketName + ".bytes-per-second")
+      .or(defaultBytesPerSecond).intValue();
+    this.chunkSize = configService.getIntAppProp("faults.socket." + socketName + ".chunk-size")
+      .or(defaultChunkSize).intValue();
+    checkArgument(this.bytesPerSecond > 0, "invalid bytes per second: %s", this.bytesPerSecond);
+    checkArgument(this.chunkSize > 0, "invalid chunk size: %s", this.chunkSize);
+    this.periodNanos = Math.max(1L, (TimeUnit.SECONDS.toNanos(1) * this.chunkSize) / this.bytesPerSecond);
+    logger.info("socket handler '{}' drip: [bytes-per-second={}, chunk-size={}]",
+      socketName, this.bytesPerSecond, this.chunkSize);
+  }
+
+  @Inject
+  void setDripScheduler(
+    @Named("socket-faults://drip") final ScheduledExecutorService dripScheduler
+  ) {
+    this.dripScheduler = checkNotNull(dripScheduler);
+  }
+
+  protected final int bytesPerSecond() {
+    return this.bytesPerSecond;
+  }
+
+  /**
+   * Writes {@code data} one chunk per tick, then closes the connection.
+   */
+  protected final void dripWrite(final Socket socket, final byte[] data) throws Exception {
+    this.startDrip(new Drip(socket, super.isLogging()) {
+      private int offset = 0;
+
+      @Override
+      protected boolean tick() throws IOException {
+        final int length = Math.min(chunkSize(), data.length - this.offset);
+        // a client that stops reading only stalls its own drip
+        final int written = this.channel.write(ByteBuffer.wrap(data, this.offset, length));
+        this.tracker.bytesOut(written);
+        this.offset += written;
+        return this.offset < data.length;
+      }
+
+      @Override
+      protected long transferred() {
+        return this.offset;
+      }
+    });
+  }
+
+  /**
+   * Reads the rest of the request body one chunk per tick, then writes {@code response} and
+   * closes the connection; the request must have been parsed past its headers.
+   */
+  protected final void dripRead(
+    final Socket socket,
+    final HttpRequestReader in,
+    final byte[] response
+  ) throws Exception {
+    final long contentLength = in.parser().contentLength();
+    // body bytes that arrived along with the headers are paced as well
+    final long buffered = Math.min(contentLength, in.buffered());
+    this.startDrip(new Drip(socket, super.isLogging()) {
+      private final ByteBuffer buffer = ByteBuffer.allocate(chunkSize());
+      private long pendingBuffered = buffered;
+      private long remaining = contentLength;
+      // the response is not paced, but a non-blocking write may still take several ticks
+      private ByteBuffer pending = null;
+
+      @Override
+      protected boolean tick() throws IOException {
+        if (this.remaining > 0) {
+          final long fromBuffer = Math.min(this.pendingBuffered, this.buffer.capacity());
+          this.pendingBuffered -= fromBuffer;
+          this.remaining -= fromBuffer;
+          final int toRead = (int) Math.min(this.buffer.capacity() - fromBuffer, this.remaining - this.pendingBuffered);
+          if (toRead > 0) {
+            this.buffer.clear();
+            this.buffer.limit(toRead);
+            final int read = this.channel.read(this.buffer);
+            if (read < 0) {
+              throw new IOException("connection closed by client");
+            }
+            this.tracker.bytesIn(read);
+            this.remaining -= read;
+          }
+          if (this.remaining > 0) {
+            return true;
+          }
+        }
+        if (this.pending == null) {
+          this.pending = ByteBuffer.wrap(response);
+        }
+        this.tracker.bytesOut(this.channel.write(this.pending));
+        return this.pending.hasRemaining();
+      }
+
+      @Override
+      protected long transferred() {
+        return contentLength - this.remaining;
+      }
+    });
+  }
+
+  private int chunkSize() {
+    return this.chunkSize;
+  }
+
+  private void startDrip(final Drip drip) throws Exception {
+    drip.channel.configureBlocking(false);
+    drip.tracker = super.detachConnection();
+    if (drip.logging) {
+      logger.info("{} - dripping at {} bytes per second: {}", this.get(), this.bytesPerSecond, drip.remoteAddress);
+    }
+    this.schedule(drip);
+  }
+
+  private void schedule(final Drip drip) {
+    checkNotNull(this.dripScheduler).schedule(drip, this.periodNanos, TimeUnit.NANOSECONDS);
+  }
+
+  private abstract class Drip implements Runnable {
+
+    protected final SocketChannel channel;
+    private final SocketAddress remoteAddress;
+    private final boolean logging;
+    protected ConnectionTracker tracker;
+
+    private Drip(final Socket socket, final boolean logging) {
+      this.channel = socket.getChannel();
+      checkState(this.channel != null, "socket is not backed by a channel: %s", socket);
+      this.remoteAddress = socket.getRemoteSocketAddress();
+      this.logging = logging;
+    }
+
+    /**
+     * @return {@code true} if another tick is needed.
+     */
+    protected abstract boolean tick() throws IOException;
+
+    protected abstract long transferred();
+
+    @Override
+    public void run() {
+      try {
+        if (this.tick()) {
+          schedule(this);
+          return;
+        }
+        if (this.logging) {
+          logger.info("{} - dripped {} bytes, closing: {}", get(), this.transferred(), this.remoteAddress);
+        }
+        this.tracker.close(ConnectionOutcome.SERVER_CLOSED);
+      } catch(final Exception ex) {
+        this.tracker.close((ex instanceof IOException) ? ConnectionOutcome.CLIENT_CLOSED : ConnectionOutcome.ERROR);
+        if (this.logging) {
+          logger.info("{} - drip aborted after {} bytes: {} - {}", get(), this.transferred(), this.remoteAddress, ex.getMessage());
+        } else {
+          logger.debug("{} - {}", get(), getStackTraceAsString(ex));
+        }
+      }
+      this.close();
+    }
+
+    private void close() {
+      try {
+        this.channel.close();
+      } catch(final Exception ex) {
+        logger.debug("{} - {}", get(), getStackTraceAsString(ex));
+      }
+    }
+
+  }
+
+}
@@ -1,12 +1,12 @@
 package dev.chux.gcp.crun.faults.socket.handlers;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
+import java.io.IOException;
 import java.io.OutputStreamWriter;
 
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
@@ -17,67 +17,133 @@ import java.net.ServerSocket;
 
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.core.ObservableEmitter;
+import io.reactivex.rxjava3.core.ObservableOnSubscribe;
+import io.reactivex.rxjava3.core.Observer;
 import io.reactivex.rxjava3.schedulers.Schedulers;
 import io.reactivex.rxjava3.disposables.Disposable;
 import io.reactivex.rxjava3.observables.ConnectableObservable;
 
-import com.google.common.io.ByteStreams;
-import com.google.common.io.CharStreams;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Optional;
 import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.CountingInputStream;
+import com.google.common.io.CountingOutputStream;
+
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import dev.chux.gcp.crun.faults.socket.ConnectionLogSampler;
 import dev.chux.gcp.crun.faults.socket.ServerSocketsProvider;
 import dev.chux.gcp.crun.faults.socket.handlers.SocketFaultHandler;
+import dev.chux.gcp.crun.faults.socket.http.HttpRequestParser;
+import dev.chux.gcp.crun.faults.socket.http.HttpRequestReader;
+import dev.chux.gcp.crun.faults.socket.metrics.ConnectionOutcome;
+import dev.chux.gcp.crun.faults.socket.metrics.ConnectionTracker;
+import dev.chux.gcp.crun.faults.socket.metrics.HandlerMetrics;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
 
 import static com.google.common.base.Optional.absent;
-import static com.google.common.base.Optional.fromNullable;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
-import static com.google.common.base.Strings.emptyToNull;
-import static com.google.common.base.Strings.isNullOrEmpty;
 import static com.google.common.base.Throwables.getStackTraceAsString;
 
-abstract class AbstractSocketFaultHandler implements SocketFaultHandler {
+abstract class AbstractSocketFaultHandler implements SocketFaultHandler, Observer<Socket> {
 
   private static final Logger logger = LoggerFactory.getLogger(AbstractSocketFaultHandler.class);
 
+  private static final String CRLF = "\r\n";
+  private static final int WRITE_BUFFER_SIZE = 8 * 1024;
+
+  // the connection being handled by the current thread
+  private static final ThreadLocal<Connection> CONNECTION = new ThreadLocal<Connection>();
+
+  private static final class Connection {
+
+    private final boolean logging;
+    private final ConnectionTracker tracker;
+
+    private CountingInputStream in;
+    private CountingOutputStream out;
+    private ConnectionOutcome outcome = ConnectionOutcome.SERVER_CLOSED;
+    private boolean detached = false;
+
+    private Connection(final boolean logging, final ConnectionTracker tracker) {
+      this.logging = logging;
+      this.tracker = tracker;
+    }
+
+    private void flushCounts() {
+      if (this.in != null) {
+        this.tracker.bytesIn(this.in.getCount());
+        this.in = null;
+      }
+      if (this.out != null) {
+        this.tracker.bytesOut(this.out.getCount());
+        this.out = null;
+      }
+    }
+
+  }
+
   private final String socketName;
-  private final ServerSocket serverSocket;
+  private final ImmutableList<ServerSocket> serverSockets;
   private final ConnectableObservable<Socket> socketObservable;
   private final AtomicBoolean isActive;
   private final AtomicReference<Disposable> disposable;
   private final CountDownLatch completeSignal;
+  private final HandlerMetrics metrics;
 
   private Disposable _disposable;
+  private ExecutorService connectionsExecutor;
+  private ConnectionLogSampler logSampler;
 
   public AbstractSocketFaultHandler(
     final String socketName,
     final ServerSocketsProvider serverSocketsProvider
   ) {
     this.socketName = socketName;
-    this.serverSocket = this.getServerSocket(serverSocketsProvider);
+    this.serverSockets = this.getServerSockets(serverSocketsProvider);
     this.socketObservable = this.newSocketObservable();
     this.isActive = new AtomicBoolean(false);
     this.disposable = new AtomicReference(null);
     this.completeSignal = new CountDownLatch(1);
+    this.metrics = new HandlerMetrics();
+    this.metrics.acceptors(this.serverSockets.size());
+  }
+
+  @Inject
+  void setConnectionsExecutor(
+    @Named("socket-faults://connections") final ExecutorService connectionsExecutor
+  ) {
+    this.connectionsExecutor = checkNotNull(connectionsExecutor);
+  }
+
+  @Inject
+  void setLogSampler(
+    final ConnectionLogSampler logSampler
+  ) {
+    this.logSampler = checkNotNull(logSampler);
   }
 
   private final ConnectableObservable<Socket> newSocketObservable() {
-    return Observable.create(this)
-      .observeOn(Schedulers.io())
-      .subscribeOn(Schedulers.io())
-      .publish();
+    final ImmutableList.Builder<Observable<Socket>> acceptors = ImmutableList.builder();
+    for (final ServerSocket serverSocket : this.serverSockets) {
+      acceptors.add(Observable.create(new Acceptor(serverSocket)).subscribeOn(Schedulers.io()));
+    }
+    // every acceptor blocks on its own thread; `onNext` only hands connections over to the pool
+    return Observable.merge(acceptors.build()).publish();
   }
 
-  private final ServerSocket getServerSocket(final ServerSocketsProvider serverSocketsProvider) {
-    final Optional<ServerSocket> serverSocket = serverSocketsProvider.get(this.get());
-    checkArgument(serverSocket.isPresent(), "socket not found", socketName);
-    return serverSocket.get();
+  private final ImmutableList<ServerSocket> getServerSockets(final ServerSocketsProvider serverSocketsProvider) {
+    final ImmutableList<ServerSocket> serverSockets = serverSocketsProvider.acceptors(this.get());
+    checkArgument(!serverSockets.isEmpty(), "socket not found: %s", socketName);
+    return serverSockets;
   }
 
   @Override
@@ -102,7 +168,7 @@ abstract class AbstractSocketFaultHandler implements SocketFaultHandler {
       return Boolean.FALSE;
     }
 
-    this.closeServerSocket();
+    this.closeServerSockets();
 
     try {
       this.completeSignal.await(3L, TimeUnit.SECONDS);
@@ -119,11 +185,13 @@ abstract class AbstractSocketFaultHandler implements SocketFaultHandler {
     return Boolean.TRUE;
   }
 
-  private void closeServerSocket() {
-    try {
-      this.serverSocket.close();
-    } catch(final Exception ex) {
-      logger.error("'{}': {}", this.get(), getStackTraceAsString(ex));
+  private void closeServerSockets() {
+    for (final ServerSocket serverSocket : this.serverSockets) {
+      try {
+        serverSocket.close();
+      } catch(final Exception ex) {
+        logger.error("'{}': {}", this.get(), getStackTraceAsString(ex));
+      }
     }
   }
 
@@ -137,27 +205,97 @@ abstract class AbstractSocketFaultHandler implements SocketFaultHandler {
     return this.socketName;
   }
 
+  @Override
+  public HandlerMetrics metrics() {
+    return this.metrics;
+  }
+
   protected abstract void handle(final Socket socket) throws Exception;
 
-  @Override
-  public void subscribe(final ObservableEmitter<Socket> emitter) {
-    while(this.isActive()) {
-      try {
-        emitter.onNext(this.serverSocket.accept());
-      } catch(final Exception ex) {
-        logger.error("'{}': {}", this.get(), getStackTraceAsString(ex));
+  private final class Acceptor implements ObservableOnSubscribe<Socket> {
+
+    private final ServerSocket serverSocket;
+
+    private Acceptor(final ServerSocket serverSocket) {
+      this.serverSocket = serverSocket;
+    }
+
+    @Override
+    public void subscribe(final ObservableEmitter<Socket> emitter) {
+      while(isActive()) {
+        try {
+          emitter.onNext(this.serverSocket.accept());
+        } catch(final Exception ex) {
+          // closing the socket is how `stop` unblocks `accept`
+          if (isActive()) {
+            metrics.acceptFailed();
+            logger.error("'{}': {}", get(), getStackTraceAsString(ex));
+          }
+        }
       }
+      emitter.onComplete();
     }
-    emitter.onComplete();
+
   }
 
   @Override
   public void onNext(final Socket socket) {
-    try {
+    final boolean logging = checkNotNull(this.logSampler).sample();
+    if (logging) {
       logger.info("new connection for handler '{}': {}", this.get(), socket);
+    }
+    final ConnectionTracker tracker = this.metrics.open();
+    try {
+      // never handle inline: a paused connection must not hold back the rest
+      checkNotNull(this.connectionsExecutor).execute(() -> this.handleConnection(socket, new Connection(logging, tracker)));
+    } catch(final RejectedExecutionException ex) {
+      logger.error("connection rejected by handler '{}': {}", this.get(), socket);
+      tracker.close(ConnectionOutcome.ERROR);
+      this.closeQuietly(socket);
+    }
+  }
+
+  private void handleConnection(final Socket socket, final Connection connection) {
+    CONNECTION.set(connection);
+    try {
       this.handle(socket);
     } catch(final Exception ex) {
-      logger.error("error handling connection '{}': {}", this.get(), getStackTraceAsString(ex));
+      if (ex instanceof IOException) {
+        // the client reset or closed the connection under the handler
+        connection.outcome = ConnectionOutcome.CLIENT_CLOSED;
+        if (connection.logging) {
+          logger.info("{} - connection closed by client: {}", this.get(), ex.getMessage());
+        }
+      } else {
+        connection.outcome = ConnectionOutcome.ERROR;
+        logger.error("error handling connection '{}': {}", this.get(), getStackTraceAsString(ex));
+      }
+      this.closeQuietly(socket);
+    } finally {
+      CONNECTION.remove();
+      if (!connection.detached) {
+        connection.flushCounts();
+        connection.tracker.close(connection.outcome);
+      }
+    }
+  }
+
+  /**
+   * Hands the current connection over to another thread: from now on the caller
+   * must report bytes and close the returned tracker itself.
+   */
+  protected final ConnectionTracker detachConnection() {
+    final Connection connection = checkNotNull(CONNECTION.get(), "no connection");
+    connection.flushCounts();
+    connection.detached = true;
+    return connection.tracker;
+  }
+
+  private void closeQuietly(final Socket socket) {
+    try {
+      socket.close();
+    } catch(final Exception ex) {
+      logger.error("'{}': {}", this.get(), getStackTraceAsString(ex));
     }
   }
 
@@ -185,15 +323,45 @@ abstract class AbstractSocketFaultHandler implements SocketFaultHandler {
     return MoreObjects.toStringHelper(this)
       .addValue(this.get())
       .add("isActive", this.isActive())
+      .add("acceptors", this.serverSockets.size())
     .toString();
   }
 
-  protected final BufferedReader newBufferedReader(final Socket socket) throws Exception {
-    return new BufferedReader(new InputStreamReader(socket.getInputStream()), 1);
+  protected final HttpRequestReader newHttpRequestReader(final Socket socket) throws Exception {
+    final Connection connection = CONNECTION.get();
+    if (connection == null) {
+      return new HttpRequestReader(socket.getInputStream());
+    }
+    connection.in = new CountingInputStream(socket.getInputStream());
+    return new HttpRequestReader(connection.in);
   }
 
   protected final BufferedWriter newBufferedWriter(final Socket socket) throws Exception {
-    return new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()), 1);
+    final Connection connection = CONNECTION.get();
+    if (connection == null) {
+      return new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), US_ASCII), WRITE_BUFFER_SIZE);
+    }
+    connection.out = new CountingOutputStream(socket.getOutputStream());
+    return new BufferedWriter(new OutputStreamWriter(connection.out, US_ASCII), WRITE_BUFFER_SIZE);
+  }
+
+  /**
+   * Per-connection details are only logged for connections chosen by {@link ConnectionLogSampler}.
+   */
+  protected final boolean isLogging() {
+    final Connection connection = CONNECTION.get();
+    return connection != null && connection.logging;
+  }
+
+  private boolean readPast(final HttpRequestReader in, final HttpRequestParser.Phase phase) throws Exception {
+    if (in.readPast(phase)) {
+      return true;
+    }
+    final Connection connection = CONNECTION.get();
+    if (connection != null) {
+      connection.outcome = ConnectionOutcome.CLIENT_CLOSED;
+    }
+    return false;
   }
 
   protected final SocketAddress getRemoteAddress(final Socket socket) throws Exception {
@@ -201,12 +369,16 @@ abstract class AbstractSocketFaultHandler implements SocketFaultHandler {
   }
 
   protected final void close(final Socket socket) throws Exception {
-    logger.info("closing connection for handler '{}': {}", this.get(), getRemoteAddress(socket));
+    if (this.isLogging()) {
+      logger.info("closing connection for handler '{}': {}", this.get(), getRemoteAddress(socket));
+    }
     socket.close();
   }
 
   protected final void pauseMilliseconds(final Socket socket, final long milliseconds) throws Exception {
-    logger.info("{} - pausing {} ms: {}", this.get(), milliseconds, getRemoteAddress(socket));
+    if (this.isLogging()) {
+      logger.info("{} - pausing {} ms: {}", this.get(), milliseconds, getRemoteAddress(socket));
+    }
     TimeUnit.MILLISECONDS.sleep(milliseconds);
   }
 
@@ -218,48 +390,41 @@ abstract class AbstractSocketFaultHandler implements SocketFaultHandler {
     this.pauseSeconds(socket, seconds);
   }
 
-  protected final Optional<String> consumeHttpRequestLine(final Socket socket, final BufferedReader in) throws Exception {
-    final String httpRequestLine = in.readLine();
-    if (isNullOrEmpty(httpRequestLine)) {
-      logger.warn("missing HTTP request line: {}", getRemoteAddress(socket));
+  protected final Optional<String> consumeHttpRequestLine(final Socket socket, final HttpRequestReader in) throws Exception {
+    if (!this.readPast(in, HttpRequestParser.Phase.REQUEST_LINE)) {
+      if (this.isLogging()) {
+        logger.warn("missing HTTP request line: {}", getRemoteAddress(socket));
+      }
       return absent();
     }
-    logger.info("{} - got HTTP request line '{}' from: {}", this.get(), httpRequestLine, getRemoteAddress(socket));
-    return fromNullable(emptyToNull(httpRequestLine));
+    final Optional<String> httpRequestLine = in.parser().requestLine();
+    if (this.isLogging()) {
+      logger.info("{} - got HTTP request line '{}' from: {}", this.get(), httpRequestLine.orNull(), getRemoteAddress(socket));
+    }
+    return httpRequestLine;
   }
 
-  protected final int consumeHttpRequestHeaders(final Socket socket, final BufferedReader in) throws Exception {
-    String header;
-    int contentLength = 0;
-    while (!isNullOrEmpty(header = in.readLine())) {
-      if (header.toLowerCase().startsWith("content-length:")) {
-        contentLength = Integer.parseInt(header.split(":", 2)[1].trim(), 10);
-      }
-      logger.info("{} - got HTTP request header '{}' from: {}", this.get(), header, getRemoteAddress(socket));
+  protected final long consumeHttpRequestHeaders(final Socket socket, final HttpRequestReader in) throws Exception {
+    this.readPast(in, HttpRequestParser.Phase.HEADERS);
+    final HttpRequestParser request = in.parser();
+    if (this.isLogging()) {
+      logger.info("{} - got {} HTTP request headers and 'Content-Length: {}' from: {}",
+        this.get(), request.headers(), request.contentLength(), getRemoteAddress(socket));
     }
-    logger.info("{} - got HTTP 'Content-Length: {}' from: {}", this.get(), contentLength, getRemoteAddress(socket));
-    return contentLength;
+    return request.contentLength();
   }
 
-  protected final void consumeHttpRequestPayload(
-    final Socket socket,
-    final BufferedReader in,
-    final int contentLength
-  ) throws Exception {
-    final StringBuilder data = new StringBuilder();
-    int character;
-    int index = 0;
-    while((index < contentLength) && in.ready() && ((character = in.read()) != -1)) {
-      data.append((char) character);
-      index += 1;
+  protected final void consumeHttpRequestPayload(final Socket socket, final HttpRequestReader in) throws Exception {
+    this.readPast(in, HttpRequestParser.Phase.BODY);
+    if (this.isLogging()) {
+      logger.info("{} - got HTTP request of {} bytes from: {}", this.get(), in.parser().consumed(), getRemoteAddress(socket));
     }
-    logger.info("{} - got HTTP request payload '{}' from: {}", this.get(), data, getRemoteAddress(socket));
   }
 
-  protected final void consumeHttpRequest(final Socket socket, final BufferedReader in) throws Exception {
+  protected final void consumeHttpRequest(final Socket socket, final HttpRequestReader in) throws Exception {
     this.consumeHttpRequestLine(socket, in);
-    final int contentLength = this.consumeHttpRequestHeaders(socket, in);
-    this.consumeHttpRequestPayload(socket, in, contentLength);
+    this.consumeHttpRequestHeaders(socket, in);
+    this.consumeHttpRequestPayload(socket, in);
   }
 
   protected final void write(
@@ -268,7 +433,9 @@ abstract class AbstractSocketFaultHandler implements SocketFaultHandler {
     final String data
   ) throws Exception {
     out.write(data);
-    logger.info("{} - wrote data '{}' to: {}", this.get(), data, getRemoteAddress(socket));
+    if (this.isLogging()) {
+      logger.info("{} - wrote data '{}' to: {}", this.get(), data, getRemoteAddress(socket));
+    }
   }
 
   protected final void append(
@@ -277,7 +444,9 @@ abstract class AbstractSocketFaultHandler implements SocketFaultHandler {
     final String data
   ) throws Exception {
     out.append(data);
-    logger.info("{} - appended data '{}' to: {}", this.get(), data, getRemoteAddress(socket));
+    if (this.isLogging()) {
+      logger.info("{} - appended data '{}' to: {}", this.get(), data, getRemoteAddress(socket));
+    }
   }
 
   protected final void send(
@@ -287,15 +456,13 @@ abstract class AbstractSocketFaultHandler implements SocketFaultHandler {
   ) throws Exception {
     this.write(socket, out, data);
     out.flush();
-    logger.info("{} - sent data '{}' to: {}", this.get(), data, getRemoteAddress(socket));
   }
 
   protected final void writeLineBreak(
     final Socket socket,
     final BufferedWriter out
   ) throws Exception {
-    out.newLine();
-    logger.info("{} - wrote line break to: {}", this.get(), getRemoteAddress(socket));
+    out.write(CRLF);
   }
 
   protected final void sendLineBreak(
@@ -304,7 +471,6 @@ abstract class AbstractSocketFaultHandler implements SocketFaultHandler {
   ) throws Exception {
     this.writeLineBreak(socket, out);
     out.flush();
-    logger.info("{} - sent line break to: {}", this.get(), getRemoteAddress(socket));
   }
 
   protected final void writeHttpResponseLine(
@@ -316,9 +482,11 @@ abstract class AbstractSocketFaultHandler implements SocketFaultHandler {
     out.append("HTTP/1.1 ")
       .append(Integer.toString(code, 10))
       .append(" ")
-      .append(status);
-    out.newLine();
-    logger.info("{} - wrote HTTP response line 'HTTP/1.1 {} {}' to: {}", this.get(), code, status, getRemoteAddress(socket));
+      .append(status)
+      .append(CRLF);
+    if (this.isLogging()) {
+      logger.info("{} - wrote HTTP response line 'HTTP/1.1 {} {}' to: {}", this.get(), code, status, getRemoteAddress(socket));
+    }
   }
 
   protected final void sendHttpResponseLine(
@@ -329,7 +497,6 @@ abstract class AbstractSocketFaultHandler implements SocketFaultHandler {
   ) throws Exception {
     this.writeHttpResponseLine(socket, out, code, status);
     out.flush();
-    logger.info("{} - sent HTTP response line 'HTTP/1.1 {} {}' to: {}", this.get(), code, status, getRemoteAddress(socket));
   }
 
   protected final void writeHttpResponseHeader(
@@ -340,9 +507,11 @@ abstract class AbstractSocketFaultHandler implements SocketFaultHandler {
   ) throws Exception {
     out.append(name)
       .append(": ")
-      .append(value);
-    out.newLine();
-    logger.info("{} - wrote HTTP response header '{}: {}' to: {}", this.get(), name, value, getRemoteAddress(socket));
+      .append(value)
+      .append(CRLF);
+    if (this.isLogging()) {
+      logger.info("{} - wrote HTTP response header '{}: {}' to: {}", this.get(), name, value, getRemoteAddress(socket));
+    }
   }
 
   protected final void sendHttpResponseHeader(
@@ -353,7 +522,6 @@ abstract class AbstractSocketFaultHandler implements SocketFaultHandler {
   ) throws Exception {
     this.writeHttpResponseHeader(socket, out, name, value);
     out.flush();
-    logger.info("{} - sent HTTP response header '{}: {}' to: {}", this.get(), name, value, getRemoteAddress(socket));
   }
 
   protected final void writeHttpResponseBody(
@@ -361,9 +529,8 @@ abstract class AbstractSocketFaultHandler implements SocketFaultHandler {
     final BufferedWriter out,
     final String data
   ) throws Exception {
-    out.newLine();
+    out.write(CRLF);
     this.write(socket, out, data);
-    logger.info("{} - wrote HTTP response body '{}' to: {}", this.get(), data, getRemoteAddress(socket));
   }
 
   protected final void sendHttpResponseBody(
@@ -373,7 +540,6 @@ abstract class AbstractSocketFaultHandler implements SocketFaultHandler {
   ) throws Exception {
     this.writeHttpResponseBody(socket, out, data);
     out.flush();
-    logger.info("{} - sent HTTP response body '{}' to: {}", this.get(), data, getRemoteAddress(socket));
   }
 
 }
@@ -5,6 +5,11 @@ import com.google.inject.multibindings.Multibinder;
 import com.google.inject.multibindings.MapBinder;
 import com.google.inject.name.Names;
 
+import dev.chux.gcp.crun.faults.socket.nio.FaultScript;
+import dev.chux.gcp.crun.faults.socket.nio.FaultScripts;
+import dev.chux.gcp.crun.faults.socket.nio.MixedSocketFaultHandlerProvider;
+import dev.chux.gcp.crun.faults.socket.proxy.ProxySocketFaultHandlerProvider;
+
 public class FaultHandlersModule extends AbstractModule {
 
   protected void configure() {
@@ -15,49 +20,79 @@ public class FaultHandlersModule extends AbstractModule {
       binder(), String.class, SocketFaultHandler.class, Names.named("socket-faults://handlers"));
 
 
-    handlersBinder.addBinding(ImmediateTermination.SOCKET_NAME)
-      .to(ImmediateTermination.class).asEagerSingleton();
-    socketNames.addBinding().toInstance(ImmediateTermination.SOCKET_NAME);
+    bindHandler(handlersBinder, socketNames,
+      ImmediateTermination.SOCKET_NAME, ImmediateTermination.class, FaultScripts.IMMEDIATE_TERMINATION);
+
+    bindHandler(handlersBinder, socketNames,
+      ResetAfterHttpRequestLine.SOCKET_NAME, ResetAfterHttpRequestLine.class, FaultScripts.RESET_AFTER_HTTP_REQUEST_LINE);
+
+    bindHandler(handlersBinder, socketNames,
+      ResetAfterHttpRequestHeaders.SOCKET_NAME, ResetAfterHttpRequestHeaders.class, FaultScripts.RESET_AFTER_HTTP_REQUEST_HEADERS);
+
+    bindHandler(handlersBinder, socketNames,
+      ResetAfterHttpRequest.SOCKET_NAME, ResetAfterHttpRequest.class, FaultScripts.RESET_AFTER_HTTP_REQUEST);
+
+    bindHandler(handlersBinder, socketNames,
+      ResetAfterHttpResponseLine.SOCKET_NAME, ResetAfterHttpResponseLine.class, FaultScripts.RESET_AFTER_HTTP_RESPONSE_LINE);
 
-    handlersBinder.addBinding(ResetAfterHttpRequestLine.SOCKET_NAME)
-      .to(ResetAfterHttpRequestLine.class).asEagerSingleton();
-    socketNames.addBinding().toInstance(ResetAfterHttpRequestLine.SOCKET_NAME);
+    bindHandler(handlersBinder, socketNames,
+      ResetIncompleteHttpResponse.SOCKET_NAME, ResetIncompleteHttpResponse.class, FaultScripts.RESET_INCOMPLETE_HTTP_RESPONSE);
 
-    handlersBinder.addBinding(ResetAfterHttpRequestHeaders.SOCKET_NAME)
-      .to(ResetAfterHttpRequestHeaders.class).asEagerSingleton();
-    socketNames.addBinding().toInstance(ResetAfterHttpRequestHeaders.SOCKET_NAME);
+    bindHandler(handlersBinder, socketNames,
+      ResetWithChoppedHttpResponseHeader.SOCKET_NAME, ResetWithChoppedHttpResponseHeader.class, FaultScripts.RESET_WITH_CHOPPED_HTTP_RESPONSE_HEADER);
 
-    handlersBinder.addBinding(ResetAfterHttpRequest.SOCKET_NAME)
-      .to(ResetAfterHttpRequest.class).asEagerSingleton();
-    socketNames.addBinding().toInstance(ResetAfterHttpRequest.SOCKET_NAME);
+    bindHandler(handlersBinder, socketNames,
+      ResetWithChoppedHttpResponseLine.SOCKET_NAME, ResetWithChoppedHttpResponseLine.class, FaultScripts.RESET_WITH_CHOPPED_HTTP_RESPONSE_LINE);
 
-    handlersBinder.addBinding(ResetAfterHttpResponseLine.SOCKET_NAME)
-      .to(ResetAfterHttpResponseLine.class).asEagerSingleton();
-    socketNames.addBinding().toInstance(ResetAfterHttpResponseLine.SOCKET_NAME);
+    bindHandler(handlersBinder, socketNames,
+      TimeoutBeforeHttpRequest.SOCKET_NAME, TimeoutBeforeHttpRequest.class, FaultScripts.TIMEOUT_BEFORE_HTTP_REQUEST);
 
-    handlersBinder.addBinding(ResetIncompleteHttpResponse.SOCKET_NAME)
-      .to(ResetIncompleteHttpResponse.class).asEagerSingleton();
-    socketNames.addBinding().toInstance(ResetIncompleteHttpResponse.SOCKET_NAME);
+    bindHandler(handlersBinder, socketNames,
+      TimeoutAfterHttpRequest.SOCKET_NAME, TimeoutAfterHttpRequest.class, FaultScripts.TIMEOUT_AFTER_HTTP_REQUEST);
 
-    handlersBinder.addBinding(ResetWithChoppedHttpResponseHeader.SOCKET_NAME)
-      .to(ResetWithChoppedHttpResponseHeader.class).asEagerSingleton();
-    socketNames.addBinding().toInstance(ResetWithChoppedHttpResponseHeader.SOCKET_NAME);
+    bindHandler(handlersBinder, socketNames,
+      TimeoutAfterHttpResponseHeaders.SOCKET_NAME, TimeoutAfterHttpResponseHeaders.class, FaultScripts.TIMEOUT_AFTER_HTTP_RESPONSE_HEADERS);
 
-    handlersBinder.addBinding(ResetWithChoppedHttpResponseLine.SOCKET_NAME)
-      .to(ResetWithChoppedHttpResponseLine.class).asEagerSingleton();
-    socketNames.addBinding().toInstance(ResetWithChoppedHttpResponseLine.SOCKET_NAME);
+    bindSlowDripHandler(handlersBinder, socketNames,
+      SlowHttpResponseHeaders.SOCKET_NAME, SlowHttpResponseHeaders.class);
 
-    handlersBinder.addBinding(TimeoutBeforeHttpRequest.SOCKET_NAME)
-      .to(TimeoutBeforeHttpRequest.class).asEagerSingleton();
-    socketNames.addBinding().toInstance(TimeoutBeforeHttpRequest.SOCKET_NAME);
+    bindSlowDripHandler(handlersBinder, socketNames,
+      SlowHttpResponseBody.SOCKET_NAME, SlowHttpResponseBody.class);
 
-    handlersBinder.addBinding(TimeoutAfterHttpRequest.SOCKET_NAME)
-      .to(TimeoutAfterHttpRequest.class).asEagerSingleton();
-    socketNames.addBinding().toInstance(TimeoutAfterHttpRequest.SOCKET_NAME);
+    bindSlowDripHandler(handlersBinder, socketNames,
+      SlowHttpRequestBody.SOCKET_NAME, SlowHttpRequestBody.class);
+
+    handlersBinder.addBinding(ProxySocketFaultHandlerProvider.SOCKET_NAME)
+      .toProvider(ProxySocketFaultHandlerProvider.class).asEagerSingleton();
+    socketNames.addBinding().toInstance(ProxySocketFaultHandlerProvider.SOCKET_NAME);
+
+    handlersBinder.addBinding(MixedSocketFaultHandlerProvider.SOCKET_NAME)
+      .toProvider(MixedSocketFaultHandlerProvider.class).asEagerSingleton();
+    socketNames.addBinding().toInstance(MixedSocketFaultHandlerProvider.SOCKET_NAME);
+  }
+
+  private static void bindHandler(
+    final MapBinder<String, SocketFaultHandler> handlersBinder,
+    final Multibinder<String> socketNames,
+    final String socketName,
+    final Class<? extends SocketFaultHandler> blockingHandler,
+    final FaultScript script
+  ) {
+    handlersBinder.addBinding(socketName)
+      .toProvider(new SocketFaultHandlerProvider(socketName, blockingHandler, script))
+      .asEagerSingleton();
+    socketNames.addBinding().toInstance(socketName);
+  }
 
-    handlersBinder.addBinding(TimeoutAfterHttpResponseHeaders.SOCKET_NAME)
-      .to(TimeoutAfterHttpResponseHeaders.class).asEagerSingleton();
-    socketNames.addBinding().toInstance(TimeoutAfterHttpResponseHeaders.SOCKET_NAME);
+  // slow-drip handlers are paced by the shared drip scheduler regardless of the engine
+  private static void bindSlowDripHandler(
+    final MapBinder<String, SocketFaultHandler> handlersBinder,
+    final Multibinder<String> socketNames,
+    final String socketName,
+    final Class<? extends AbstractSlowDripHandler> handler
+  ) {
+    handlersBinder.addBinding(socketName).to(handler).asEagerSingleton();
+    socketNames.addBinding().toInstance(socketName);
   }
 
 }
@@ -1,6 +1,5 @@
 package dev.chux.gcp.crun.faults.socket.handlers;
 
-import java.io.BufferedReader;
 import java.net.Socket;
 import java.net.SocketAddress;
 
@@ -10,6 +9,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import dev.chux.gcp.crun.faults.socket.ServerSocketsProvider;
+import dev.chux.gcp.crun.faults.socket.http.HttpRequestReader;
 
 import static com.google.common.base.Strings.isNullOrEmpty;
 import static com.google.common.base.Throwables.getStackTraceAsString;
@@ -28,7 +28,7 @@ public class ResetAfterHttpRequest extends AbstractSocketFaultHandler {
 
   @Override
   protected void handle(final Socket socket) throws Exception {
-    final BufferedReader in = super.newBufferedReader(socket);
+    final HttpRequestReader in = super.newHttpRequestReader(socket);
     super.consumeHttpRequest(socket, in);
     super.close(socket);
   }
@@ -1,6 +1,5 @@
 package dev.chux.gcp.crun.faults.socket.handlers;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 
 import java.net.Socket;
@@ -12,6 +11,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import dev.chux.gcp.crun.faults.socket.ServerSocketsProvider;
+import dev.chux.gcp.crun.faults.socket.http.HttpRequestReader;
 
 import static com.google.common.base.Strings.isNullOrEmpty;
 import static com.google.common.base.Throwables.getStackTraceAsString;
@@ -30,7 +30,7 @@ public class ResetAfterHttpResponseLine extends AbstractSocketFaultHandler {
 
   @Override
   protected void handle(final Socket socket) throws Exception {
-    final BufferedReader in = super.newBufferedReader(socket);
+    final HttpRequestReader in = super.newHttpRequestReader(socket);
     super.consumeHttpRequest(socket, in);
 
     final BufferedWriter out = super.newBufferedWriter(socket);
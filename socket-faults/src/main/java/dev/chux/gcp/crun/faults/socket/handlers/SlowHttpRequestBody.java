@@ -0,0 +1,43 @@
+package dev.chux.gcp.crun.faults.socket.handlers;
+
+import java.net.Socket;
+
+import com.google.inject.Inject;
+
+import dev.chux.gcp.crun.ConfigService;
+import dev.chux.gcp.crun.faults.socket.ServerSocketsProvider;
+import dev.chux.gcp.crun.faults.socket.http.HttpRequestReader;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * Reads the request body slowly: once kernel buffers fill up, the client's upload is throttled.
+ */
+public class SlowHttpRequestBody extends AbstractSlowDripHandler {
+
+  static final String SOCKET_NAME = "slow-http-request-body";
+
+  private static final byte[] RESPONSE = ("HTTP/1.1 200 OK\r\n"
+    + "Content-Type: text/plain\r\n"
+    + "Content-Length: 2\r\n"
+    + "Connection: close\r\n"
+    + "\r\n"
+    + "OK").getBytes(US_ASCII);
+
+  @Inject
+  public SlowHttpRequestBody(
+    final ServerSocketsProvider serverSocketsProvider,
+    final ConfigService configService
+  ) {
+    super(SOCKET_NAME, serverSocketsProvider, configService, 1024, 128);
+  }
+
+  @Override
+  protected void handle(final Socket socket) throws Exception {
+    final HttpRequestReader in = super.newHttpRequestReader(socket);
+    super.consumeHttpRequestLine(socket, in);
+    super.consumeHttpRequestHeaders(socket, in);
+    super.dripRead(socket, in, RESPONSE);
+  }
+
+}
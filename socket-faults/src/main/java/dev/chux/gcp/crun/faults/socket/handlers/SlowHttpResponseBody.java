@@ -0,0 +1,52 @@
+package dev.chux.gcp.crun.faults.socket.handlers;
+
+import java.io.BufferedWriter;
+
+import java.net.Socket;
+
+import java.util.Arrays;
+
+import com.google.inject.Inject;
+
+import dev.chux.gcp.crun.ConfigService;
+import dev.chux.gcp.crun.faults.socket.ServerSocketsProvider;
+import dev.chux.gcp.crun.faults.socket.http.HttpRequestReader;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+public class SlowHttpResponseBody extends AbstractSlowDripHandler {
+
+  static final String SOCKET_NAME = "slow-http-response-body";
+
+  private static final String PROPERTY_LENGTH = "faults.socket." + SOCKET_NAME + ".length";
+
+  private final byte[] body;
+
+  @Inject
+  public SlowHttpResponseBody(
+    final ServerSocketsProvider serverSocketsProvider,
+    final ConfigService configService
+  ) {
+    super(SOCKET_NAME, serverSocketsProvider, configService, 1024, 128);
+    final int length = configService.getIntAppProp(PROPERTY_LENGTH).or(64 * 1024).intValue();
+    checkArgument(length >= 0, "invalid body length: %s", length);
+    this.body = new byte[length];
+    Arrays.fill(this.body, (byte) 'x');
+  }
+
+  @Override
+  protected void handle(final Socket socket) throws Exception {
+    final HttpRequestReader in = super.newHttpRequestReader(socket);
+    super.consumeHttpRequest(socket, in);
+
+    final BufferedWriter out = super.newBufferedWriter(socket);
+    super.writeHttpResponseLine(socket, out, 200, "OK");
+    super.writeHttpResponseHeader(socket, out, "Content-Type", "text/plain");
+    super.writeHttpResponseHeader(socket, out, "Content-Length", Integer.toString(this.body.length, 10));
+    super.writeHttpResponseHeader(socket, out, "Connection", "close");
+    super.sendLineBreak(socket, out);
+
+    super.dripWrite(socket, this.body);
+  }
+
+}
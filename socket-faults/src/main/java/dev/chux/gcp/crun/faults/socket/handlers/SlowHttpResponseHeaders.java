@@ -0,0 +1,40 @@
+package dev.chux.gcp.crun.faults.socket.handlers;
+
+import java.net.Socket;
+
+import com.google.inject.Inject;
+
+import dev.chux.gcp.crun.ConfigService;
+import dev.chux.gcp.crun.faults.socket.ServerSocketsProvider;
+import dev.chux.gcp.crun.faults.socket.http.HttpRequestReader;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+public class SlowHttpResponseHeaders extends AbstractSlowDripHandler {
+
+  static final String SOCKET_NAME = "slow-http-response-headers";
+
+  private static final byte[] RESPONSE = ("HTTP/1.1 200 OK\r\n"
+    + "Content-Type: text/plain\r\n"
+    + "Content-Length: 2\r\n"
+    + "Connection: close\r\n"
+    + "\r\n"
+    + "OK").getBytes(US_ASCII);
+
+  @Inject
+  public SlowHttpResponseHeaders(
+    final ServerSocketsProvider serverSocketsProvider,
+    final ConfigService configService
+  ) {
+    super(SOCKET_NAME, serverSocketsProvider, configService, 1, 1);
+  }
+
+  @Override
+  protected void handle(final Socket socket) throws Exception {
+    final HttpRequestReader in = super.newHttpRequestReader(socket);
+    super.consumeHttpRequest(socket, in);
+    // HTTP client should time out waiting for the headers
+    super.dripWrite(socket, RESPONSE);
+  }
+
+}
@@ -1,18 +1,16 @@
 package dev.chux.gcp.crun.faults.socket.handlers;
 
-import java.net.Socket;
 import java.util.concurrent.CountDownLatch;
 
 import com.google.common.base.Supplier;
 
-import io.reactivex.rxjava3.core.ObservableOnSubscribe;
-import io.reactivex.rxjava3.core.Observer;
+import dev.chux.gcp.crun.faults.socket.metrics.HandlerMetrics;
 
-public interface SocketFaultHandler extends Supplier<String>, ObservableOnSubscribe<Socket>, Observer<Socket> {
+public interface SocketFaultHandler extends Supplier<String> {
 
   public Boolean start();
   public Boolean stop(final CountDownLatch stopSignal);
   public Boolean isActive();
+  public HandlerMetrics metrics();
 
 }
-
@@ -0,0 +1,77 @@
+package dev.chux.gcp.crun.faults.socket.handlers;
+
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Provider;
+
+import dev.chux.gcp.crun.ConfigService;
+import dev.chux.gcp.crun.faults.socket.ServerSocketsProvider;
+import dev.chux.gcp.crun.faults.socket.nio.FaultScript;
+import dev.chux.gcp.crun.faults.socket.nio.NioSocketFaultHandler;
+import dev.chux.gcp.crun.faults.socket.nio.SelectorLoops;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Selects the engine for a socket: {@code faults.socket.<name>.engine}, or {@code faults.socket.engine},
+ * either {@code blocking} (default: one pooled thread per connection) or {@code nio} (selector loops).
+ */
+class SocketFaultHandlerProvider implements Provider<SocketFaultHandler> {
+  private static final Logger logger = LoggerFactory.getLogger(SocketFaultHandlerProvider.class);
+
+  private static final String ENGINE_BLOCKING = "blocking";
+  private static final String ENGINE_NIO = "nio";
+
+  private final String socketName;
+  private final Class<? extends SocketFaultHandler> blockingHandler;
+  private final FaultScript script;
+
+  private Injector injector;
+  private ConfigService configService;
+  private ServerSocketsProvider serverSocketsProvider;
+  private Provider<SelectorLoops> selectorLoops;
+
+  SocketFaultHandlerProvider(
+    final String socketName,
+    final Class<? extends SocketFaultHandler> blockingHandler,
+    final FaultScript script
+  ) {
+    this.socketName = checkNotNull(socketName);
+    this.blockingHandler = checkNotNull(blockingHandler);
+    this.script = checkNotNull(script);
+  }
+
+  @Inject
+  void setDependencies(
+    final Injector injector,
+    final ConfigService configService,
+    final ServerSocketsProvider serverSocketsProvider,
+    final Provider<SelectorLoops> selectorLoops
+  ) {
+    this.injector = injector;
+    this.configService = configService;
+    this.serverSocketsProvider = serverSocketsProvider;
+    this.selectorLoops = selectorLoops;
+  }
+
+  @Override
+  public SocketFaultHandler get() {
+    final String engine = this.engine();
+    logger.info("socket handler '{}' engine: {}", this.socketName, engine);
+    if (ENGINE_NIO.equalsIgnoreCase(engine)) {
+      return new NioSocketFaultHandler(this.socketName, this.script,
+        this.serverSocketsProvider, this.selectorLoops.get());
+    }
+    return this.injector.getInstance(this.blockingHandler);
+  }
+
+  private String engine() {
+    return this.configService.getOptionalAppProp("faults.socket." + this.socketName + ".engine")
+      .or(this.configService.getOptionalAppProp("faults.socket.engine"))
+      .or(ENGINE_BLOCKING);
+  }
+
+}
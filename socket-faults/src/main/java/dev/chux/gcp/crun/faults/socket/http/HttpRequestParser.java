@@ -0,0 +1,239 @@
+package dev.chux.gcp.crun.faults.socket.http;
+
+import java.nio.ByteBuffer;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Optional;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+import static com.google.common.base.Optional.fromNullable;
+
+/**
+ * Incremental HTTP/1.x request parser: it may be fed arbitrary fragments of the request
+ * and only retains the line being parsed, so idle connections hold no buffers at all.
+ */
+public final class HttpRequestParser {
+
+  public enum Phase {
+    REQUEST_LINE,
+    HEADERS,
+    BODY,
+    COMPLETE,
+  }
+
+  private static final int INITIAL_LINE_SIZE = 128;
+  private static final int MAX_LINE_SIZE = 8 * 1024;
+
+  private static final byte CR = '\r';
+  private static final byte LF = '\n';
+
+  private static final byte[] CONTENT_LENGTH = "content-length:".getBytes(ISO_8859_1);
+
+  private Phase phase = Phase.REQUEST_LINE;
+
+  private byte[] line = null;
+  private int lineLength = 0;
+
+  private String requestLine = null;
+  private int headers = 0;
+  private long contentLength = 0;
+  private long bodyRemaining = 0;
+  private long consumed = 0;
+
+  public Phase phase() {
+    return this.phase;
+  }
+
+  public boolean isPast(final Phase phase) {
+    return this.phase.compareTo(phase) > 0;
+  }
+
+  public boolean isComplete() {
+    return this.phase == Phase.COMPLETE;
+  }
+
+  public Optional<String> requestLine() {
+    return fromNullable(this.requestLine);
+  }
+
+  public int headers() {
+    return this.headers;
+  }
+
+  public long contentLength() {
+    return this.contentLength;
+  }
+
+  public long consumed() {
+    return this.consumed;
+  }
+
+  /**
+   * Consumes bytes from {@code buffer} up to the end of the request;
+   * bytes past the end of the request (i/e: pipelined requests) are left in the buffer.
+   */
+  public int parse(final ByteBuffer buffer) {
+    return this.parse(buffer, Phase.BODY);
+  }
+
+  /**
+   * Consumes bytes from {@code buffer} only until the request is parsed past {@code until}:
+   * the buffer's position is then exactly at the phase boundary.
+   */
+  public int parse(
+    final ByteBuffer buffer,
+    final Phase until
+  ) {
+    if (buffer.hasArray()) {
+      final int consumed = this.parse(buffer.array(),
+        buffer.arrayOffset() + buffer.position(), buffer.remaining(), until);
+      buffer.position(buffer.position() + consumed);
+      return consumed;
+    }
+    int consumed = 0;
+    while (buffer.hasRemaining() && !this.isPast(until)) {
+      if (this.phase == Phase.BODY) {
+        final int skip = (int) Math.min(this.bodyRemaining, buffer.remaining());
+        buffer.position(buffer.position() + skip);
+        consumed += skip;
+        this.consumeBody(skip);
+      } else {
+        consumed += 1;
+        this.consume(buffer.get());
+      }
+    }
+    this.consumed += consumed;
+    return consumed;
+  }
+
+  public int parse(
+    final byte[] data,
+    final int offset,
+    final int length
+  ) {
+    return this.parse(data, offset, length, Phase.BODY);
+  }
+
+  public int parse(
+    final byte[] data,
+    final int offset,
+    final int length,
+    final Phase until
+  ) {
+    int index = offset;
+    final int end = offset + length;
+    while (index < end && !this.isPast(until)) {
+      if (this.phase == Phase.BODY) {
+        final int skip = (int) Math.min(this.bodyRemaining, end - index);
+        index += skip;
+        this.consumeBody(skip);
+      } else {
+        this.consume(data[index++]);
+      }
+    }
+    final int consumed = index - offset;
+    this.consumed += consumed;
+    return consumed;
+  }
+
+  private void consumeBody(final int size) {
+    this.bodyRemaining -= size;
+    if (this.bodyRemaining <= 0) {
+      this.phase = Phase.COMPLETE;
+    }
+  }
+
+  private void consume(final byte b) {
+    if (b == LF) {
+      this.onLine();
+      this.lineLength = 0;
+    } else if (b != CR) {
+      this.append(b);
+    }
+  }
+
+  private void append(final byte b) {
+    if (this.line == null) {
+      this.line = new byte[INITIAL_LINE_SIZE];
+    } else if (this.lineLength == this.line.length) {
+      if (this.line.length >= MAX_LINE_SIZE) {
+        // oversized lines are truncated, but still fully consumed
+        return;
+      }
+      final byte[] line = new byte[Math.min(MAX_LINE_SIZE, this.line.length * 2)];
+      System.arraycopy(this.line, 0, line, 0, this.lineLength);
+      this.line = line;
+    }
+    this.line[this.lineLength++] = b;
+  }
+
+  private void onLine() {
+    if (this.phase == Phase.REQUEST_LINE) {
+      // leading empty lines are ignored: RFC 9112, section 2.2
+      if (this.lineLength > 0) {
+        this.requestLine = new String(this.line, 0, this.lineLength, ISO_8859_1);
+        this.phase = Phase.HEADERS;
+      }
+      return;
+    }
+    if (this.lineLength == 0) {
+      this.onHeadersComplete();
+      return;
+    }
+    this.headers += 1;
+    if (this.startsWithIgnoreCase(CONTENT_LENGTH)) {
+      this.contentLength = this.parseContentLength(CONTENT_LENGTH.length);
+    }
+  }
+
+  private void onHeadersComplete() {
+    // the request buffer is only needed while parsing the request line and headers
+    this.line = null;
+    if (this.contentLength > 0) {
+      this.bodyRemaining = this.contentLength;
+      this.phase = Phase.BODY;
+    } else {
+      this.phase = Phase.COMPLETE;
+    }
+  }
+
+  private boolean startsWithIgnoreCase(final byte[] prefix) {
+    if (this.lineLength < prefix.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (Character.toLowerCase(this.line[i]) != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private long parseContentLength(final int offset) {
+    long value = 0;
+    boolean digits = false;
+    for (int i = offset; i < this.lineLength; i++) {
+      final byte b = this.line[i];
+      if (b >= '0' && b <= '9') {
+        value = (value * 10) + (b - '0');
+        digits = true;
+      } else if (digits || (b != ' ' && b != '\t')) {
+        break;
+      }
+    }
+    return value;
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+      .add("phase", this.phase)
+      .add("requestLine", this.requestLine)
+      .add("headers", this.headers)
+      .add("contentLength", this.contentLength)
+      .add("consumed", this.consumed)
+      .toString();
+  }
+
+}
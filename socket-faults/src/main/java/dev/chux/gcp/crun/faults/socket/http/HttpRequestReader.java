@@ -0,0 +1,85 @@
+package dev.chux.gcp.crun.faults.socket.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.google.common.base.MoreObjects;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Blocking counterpart of feeding a {@link HttpRequestParser} from a selector:
+ * reads the request in buffer-sized chunks and parses it in place.
+ */
+public final class HttpRequestReader {
+
+  private static final int BUFFER_SIZE = 8 * 1024;
+
+  private final InputStream stream;
+  private final HttpRequestParser parser;
+  private final byte[] buffer;
+
+  private int position = 0;
+  private int limit = 0;
+  private boolean eof = false;
+
+  public HttpRequestReader(final InputStream stream) {
+    this.stream = checkNotNull(stream);
+    this.parser = new HttpRequestParser();
+    this.buffer = new byte[BUFFER_SIZE];
+  }
+
+  public HttpRequestParser parser() {
+    return this.parser;
+  }
+
+  /**
+   * @return bytes read from the stream but not yet parsed.
+   */
+  public int buffered() {
+    return this.limit - this.position;
+  }
+
+  public boolean isEndOfStream() {
+    return this.eof;
+  }
+
+  /**
+   * Blocks until the request is parsed past {@code phase}.
+   *
+   * @return {@code false} if the stream ended before reaching it.
+   */
+  public boolean readPast(final HttpRequestParser.Phase phase) throws IOException {
+    while (!this.parser.isPast(phase)) {
+      if (this.position == this.limit && !this.fill()) {
+        return false;
+      }
+      this.position += this.parser.parse(this.buffer, this.position, this.limit - this.position, phase);
+    }
+    return true;
+  }
+
+  private boolean fill() throws IOException {
+    if (this.eof) {
+      return false;
+    }
+    final int read = this.stream.read(this.buffer);
+    if (read < 0) {
+      this.eof = true;
+      return false;
+    }
+    this.position = 0;
+    this.limit = read;
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+      .add("parser", this.parser)
+      .add("buffered", this.buffered())
+      .add("eof", this.eof)
+      .toString();
+  }
+
+}
@@ -0,0 +1,151 @@
+package dev.chux.gcp.crun.faults.socket.listeners;
+
+import java.util.Map;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableMap;
+
+import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.Since;
+import com.google.gson.annotations.SerializedName;
+
+import dev.chux.gcp.crun.faults.socket.metrics.HandlerMetrics;
+import dev.chux.gcp.crun.faults.socket.nio.AbstractNioSocketFaultHandler;
+
+/**
+ * A fault socket created at runtime; see {@link FaultListeners}.
+ */
+public final class FaultListener {
+
+  private final String name;
+  private final String type;
+  private final int port;
+  private final ImmutableMap<String, String> params;
+  private final AbstractNioSocketFaultHandler handler;
+  private final long createdAt;
+
+  FaultListener(
+    final String name,
+    final String type,
+    final int port,
+    final ImmutableMap<String, String> params,
+    final AbstractNioSocketFaultHandler handler
+  ) {
+    this.name = name;
+    this.type = type;
+    this.port = port;
+    this.params = params;
+    this.handler = handler;
+    this.createdAt = System.currentTimeMillis();
+  }
+
+  public String name() {
+    return this.name;
+  }
+
+  public String type() {
+    return this.type;
+  }
+
+  public int port() {
+    return this.port;
+  }
+
+  public Map<String, String> params() {
+    return this.params;
+  }
+
+  AbstractNioSocketFaultHandler handler() {
+    return this.handler;
+  }
+
+  public HandlerMetrics metrics() {
+    return this.handler.metrics();
+  }
+
+  public long activeConnections() {
+    return this.metrics().active();
+  }
+
+  public long acceptedConnections() {
+    return this.metrics().accepted();
+  }
+
+  public Status status() {
+    return new Status(this);
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+      .addValue(this.name)
+      .add("type", this.type)
+      .add("port", this.port)
+      .add("params", this.params)
+      .add("handler", this.handler)
+      .toString();
+  }
+
+  /**
+   * Point-in-time view of a listener, including its live connection counts.
+   */
+  public static final class Status {
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="name")
+    private final String name;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="type")
+    private final String type;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="port")
+    private final int port;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="params")
+    private final Map<String, String> params;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="is_active")
+    private final boolean isActive;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="active_connections")
+    private final long activeConnections;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="accepted_connections")
+    private final long acceptedConnections;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="created_at")
+    private final long createdAt;
+
+    private Status(final FaultListener listener) {
+      this.name = listener.name;
+      this.type = listener.type;
+      this.port = listener.port;
+      this.params = listener.params;
+      this.isActive = listener.handler.isActive().booleanValue();
+      this.activeConnections = listener.activeConnections();
+      this.acceptedConnections = listener.acceptedConnections();
+      this.createdAt = listener.createdAt;
+    }
+
+    public String name() {
+      return this.name;
+    }
+
+  }
+
+}
@@ -0,0 +1,249 @@
+package dev.chux.gcp.crun.faults.socket.listeners;
+
+import java.net.ServerSocket;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.primitives.Doubles;
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import dev.chux.gcp.crun.ConfigService;
+import dev.chux.gcp.crun.faults.socket.ServerSocketsProvider;
+import dev.chux.gcp.crun.faults.socket.nio.AbstractNioSocketFaultHandler;
+import dev.chux.gcp.crun.faults.socket.nio.FaultScript;
+import dev.chux.gcp.crun.faults.socket.nio.FaultScripts;
+import dev.chux.gcp.crun.faults.socket.nio.NioSocketFaultHandler;
+import dev.chux.gcp.crun.faults.socket.nio.SelectorLoops;
+import dev.chux.gcp.crun.faults.socket.nio.WeightedFaultScripts;
+import dev.chux.gcp.crun.faults.socket.proxy.ProxyProfile;
+import dev.chux.gcp.crun.faults.socket.proxy.ProxySocketFaultHandler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Optional.fromNullable;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Fault sockets created and torn down at runtime, each bound to its own port and accepting
+ * on a selector loop; {@code type} chooses how connections fail:
+ *
+ * <ul>
+ *   <li>{@code fault}: {@code fault=<name>}, optionally {@code delay-ms}, {@code offset}, {@code reset} and {@code probability}.</li>
+ *   <li>{@code mixed}: {@code weights=<name>:<weight>,...}; see {@link WeightedFaultScripts}.</li>
+ *   <li>{@code proxy}: {@code upstream=<host>:<port>} and the rest of {@link ProxyProfile}.</li>
+ * </ul>
+ */
+@Singleton
+public class FaultListeners {
+  private static final Logger logger = LoggerFactory.getLogger(FaultListeners.class);
+
+  public static final String TYPE_FAULT = "fault";
+  public static final String TYPE_MIXED = "mixed";
+  public static final String TYPE_PROXY = "proxy";
+
+  private static final String PROPERTY_MAX_LISTENERS = "faults.socket.listeners.max";
+  private static final int DEFAULT_MAX_LISTENERS = 64;
+
+  private static final String SOCKET_NAME_PREFIX = "listener:";
+
+  private static final CharMatcher NAME_CHARS = CharMatcher.inRange('a', 'z')
+    .or(CharMatcher.inRange('0', '9')).or(CharMatcher.anyOf("-_."));
+
+  private final ServerSocketsProvider serverSocketsProvider;
+  private final SelectorLoops selectorLoops;
+  private final int maxListeners;
+  private final ConcurrentMap<String, FaultListener> listeners;
+
+  @Inject
+  FaultListeners(
+    final ConfigService configService,
+    final ServerSocketsProvider serverSocketsProvider,
+    final SelectorLoops selectorLoops
+  ) {
+    this.serverSocketsProvider = serverSocketsProvider;
+    this.selectorLoops = selectorLoops;
+    this.maxListeners = configService.getIntAppProp(PROPERTY_MAX_LISTENERS)
+      .or(DEFAULT_MAX_LISTENERS).intValue();
+    this.listeners = new ConcurrentHashMap<String, FaultListener>();
+  }
+
+  /**
+   * @throws IllegalArgumentException if {@code params} do not describe a valid listener.
+   * @throws IllegalStateException if the listener cannot be created.
+   */
+  public FaultListener create(
+    final String name,
+    final Map<String, String> params
+  ) {
+    checkArgument(!name.isEmpty() && name.length() <= 64 && NAME_CHARS.matchesAllOf(name), "invalid listener name: %s", name);
+    checkState(!this.listeners.containsKey(name), "listener already exists: %s", name);
+    checkState(this.listeners.size() < this.maxListeners, "too many listeners: %s", this.maxListeners);
+
+    final ImmutableMap<String, String> spec = ImmutableMap.copyOf(params);
+    final Function<String, Optional<String>> param = new Function<String, Optional<String>>() {
+      @Override
+      public Optional<String> apply(final String key) {
+        return fromNullable(spec.get(key));
+      }
+    };
+    final String type = param.apply("type").or(TYPE_FAULT);
+    final int port = intParam(param, "port", 0);
+    checkArgument(port >= 0 && port <= 0xFFFF, "invalid port: %s", port);
+
+    final String socketName = SOCKET_NAME_PREFIX + name;
+    final Optional<ServerSocket> socket = this.serverSocketsProvider.create(socketName, port);
+    checkState(socket.isPresent(), "failed to bind listener '%s' at port: %s", name, port);
+
+    final FaultListener listener;
+    try {
+      final AbstractNioSocketFaultHandler handler = this.newHandler(socketName, type, param);
+      listener = new FaultListener(name, type, socket.get().getLocalPort(), spec, handler);
+      this.register(listener);
+    } catch(final RuntimeException ex) {
+      this.serverSocketsProvider.release(socketName);
+      throw ex;
+    }
+    if (!listener.handler().start().booleanValue()) {
+      this.listeners.remove(name, listener);
+      this.serverSocketsProvider.release(socketName);
+      throw new IllegalStateException(String.format("failed to start listener: %s", name));
+    }
+    logger.info("created listener: {}", listener);
+    return listener;
+  }
+
+  /**
+   * Checks the limit and inserts under one lock: concurrent requests cannot exceed it.
+   */
+  private void register(final FaultListener listener) {
+    synchronized(this.listeners) {
+      checkState(!this.listeners.containsKey(listener.name()), "listener already exists: %s", listener.name());
+      checkState(this.listeners.size() < this.maxListeners, "too many listeners: %s", this.maxListeners);
+      this.listeners.put(listener.name(), listener);
+    }
+  }
+
+  private AbstractNioSocketFaultHandler newHandler(
+    final String socketName,
+    final String type,
+    final Function<String, Optional<String>> param
+  ) {
+    if (TYPE_FAULT.equals(type)) {
+      return new NioSocketFaultHandler(socketName, this.faultScripts(param),
+        this.serverSocketsProvider, this.selectorLoops);
+    }
+    if (TYPE_MIXED.equals(type)) {
+      final Optional<String> weights = param.apply("weights");
+      checkArgument(weights.isPresent(), "missing 'weights'");
+      return new NioSocketFaultHandler(socketName, WeightedFaultScripts.parse(weights.get()),
+        this.serverSocketsProvider, this.selectorLoops);
+    }
+    if (TYPE_PROXY.equals(type)) {
+      return new ProxySocketFaultHandler(socketName, ProxyProfile.parse(param),
+        this.serverSocketsProvider, this.selectorLoops);
+    }
+    throw new IllegalArgumentException("unknown listener type: " + type);
+  }
+
+  private Supplier<FaultScript> faultScripts(final Function<String, Optional<String>> param) {
+    final Optional<String> fault = param.apply("fault");
+    checkArgument(fault.isPresent(), "missing 'fault'");
+    final Optional<FaultScript> maybeScript = FaultScripts.forName(fault.get());
+    checkArgument(maybeScript.isPresent(), "unknown fault: %s", fault.get());
+
+    FaultScript script = maybeScript.get();
+    final Optional<String> delay = param.apply("delay-ms");
+    if (delay.isPresent()) {
+      script = script.withPauses(longParam(param, "delay-ms", 0L));
+    }
+    final Optional<String> offset = param.apply("offset");
+    if (offset.isPresent()) {
+      script = script.truncatedAt(longParam(param, "offset", 0L));
+    }
+    if (Boolean.parseBoolean(param.apply("reset").or("false"))) {
+      script = script.withReset();
+    }
+
+    final Optional<String> probability = param.apply("probability");
+    if (probability.isPresent()) {
+      final Double p = Doubles.tryParse(probability.get());
+      checkArgument(p != null, "invalid 'probability': %s", probability.get());
+      return WeightedFaultScripts.withProbability(fault.get(), script, p.doubleValue());
+    }
+    return Suppliers.ofInstance(script);
+  }
+
+  private static int intParam(
+    final Function<String, Optional<String>> param,
+    final String key,
+    final int defaultValue
+  ) {
+    final Optional<String> value = param.apply(key);
+    if (!value.isPresent()) {
+      return defaultValue;
+    }
+    final Integer parsed = Ints.tryParse(value.get());
+    checkArgument(parsed != null, "invalid '%s': %s", key, value.get());
+    return parsed.intValue();
+  }
+
+  private static long longParam(
+    final Function<String, Optional<String>> param,
+    final String key,
+    final long defaultValue
+  ) {
+    final Optional<String> value = param.apply(key);
+    if (!value.isPresent()) {
+      return defaultValue;
+    }
+    final Long parsed = Longs.tryParse(value.get());
+    checkArgument(parsed != null, "invalid '%s': %s", key, value.get());
+    return parsed.longValue();
+  }
+
+  public Optional<FaultListener> get(final String name) {
+    return fromNullable(this.listeners.get(name));
+  }
+
+  public Collection<FaultListener> all() {
+    return ImmutableList.copyOf(this.listeners.values());
+  }
+
+  /**
+   * Stops accepting connections; connections already accepted run to completion.
+   */
+  public Optional<FaultListener> delete(final String name) {
+    final FaultListener listener = this.listeners.remove(name);
+    if (listener == null) {
+      return Optional.absent();
+    }
+    listener.handler().stop(new CountDownLatch(1));
+    this.serverSocketsProvider.release(SOCKET_NAME_PREFIX + name);
+    logger.info("deleted listener: {}", listener);
+    return Optional.of(listener);
+  }
+
+  public void deleteAll() {
+    for (final String name : ImmutableList.copyOf(this.listeners.keySet())) {
+      this.delete(name);
+    }
+  }
+
+}
@@ -0,0 +1,31 @@
+package dev.chux.gcp.crun.faults.socket.metrics;
+
+import com.google.common.base.CaseFormat;
+
+/**
+ * How a fault connection ended.
+ */
+public enum ConnectionOutcome {
+  // the handler closed the connection: the fault was delivered
+  SERVER_CLOSED,
+  // the handler reset the connection: the fault was delivered
+  SERVER_RESET,
+  // the client went away before the fault was delivered
+  CLIENT_CLOSED,
+  ERROR;
+
+  private final String key;
+
+  private ConnectionOutcome() {
+    this.key = CaseFormat.UPPER_UNDERSCORE.to(CaseFormat.LOWER_UNDERSCORE, this.name());
+  }
+
+  public String key() {
+    return this.key;
+  }
+
+  public boolean isFault() {
+    return this == SERVER_CLOSED || this == SERVER_RESET;
+  }
+
+}
@@ -0,0 +1,56 @@
+package dev.chux.gcp.crun.faults.socket.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Metrics of a single connection; used by one thread at a time, like the connection itself.
+ */
+public final class ConnectionTracker {
+
+  private final HandlerMetrics metrics;
+  private final long acceptedAtNanos;
+
+  private boolean closed = false;
+
+  ConnectionTracker(final HandlerMetrics metrics) {
+    this.metrics = metrics;
+    this.acceptedAtNanos = System.nanoTime();
+  }
+
+  public void bytesIn(final long bytes) {
+    if (bytes > 0) {
+      this.metrics.bytesIn(bytes);
+    }
+  }
+
+  public void bytesOut(final long bytes) {
+    if (bytes > 0) {
+      this.metrics.bytesOut(bytes);
+    }
+  }
+
+  /**
+   * Records how the connection ended; only the first outcome counts.
+   */
+  public void close(final ConnectionOutcome outcome) {
+    if (this.closed) {
+      return;
+    }
+    this.closed = true;
+    this.metrics.close(outcome, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.acceptedAtNanos));
+  }
+
+  public boolean isClosed() {
+    return this.closed;
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+      .add("closed", this.closed)
+      .toString();
+  }
+
+}
@@ -0,0 +1,178 @@
+package dev.chux.gcp.crun.faults.socket.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.collect.ImmutableMap;
+
+import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.Since;
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * Per-handler counters: {@link LongAdder}s and lock-free {@link RateMeter} slots, so connections
+ * on different threads never contend on a lock and the accept path is never serialized.
+ */
+public final class HandlerMetrics {
+
+  private final LongAdder accepted;
+  private final LongAdder acceptErrors;
+  private final RateMeter acceptRate;
+  private final LongAdder active;
+  private final LongAdder bytesIn;
+  private final LongAdder bytesOut;
+  private final EnumMap<ConnectionOutcome, LongAdder> outcomes;
+  private final LatencyHistogram timeToFault;
+  private final LatencyHistogram timeToClientClose;
+
+  private volatile int acceptors = 1;
+
+  public HandlerMetrics() {
+    this.accepted = new LongAdder();
+    this.acceptErrors = new LongAdder();
+    this.acceptRate = new RateMeter();
+    this.active = new LongAdder();
+    this.bytesIn = new LongAdder();
+    this.bytesOut = new LongAdder();
+    this.outcomes = new EnumMap<ConnectionOutcome, LongAdder>(ConnectionOutcome.class);
+    for (final ConnectionOutcome outcome : ConnectionOutcome.values()) {
+      this.outcomes.put(outcome, new LongAdder());
+    }
+    this.timeToFault = new LatencyHistogram();
+    this.timeToClientClose = new LatencyHistogram();
+  }
+
+  /**
+   * Accounts for a new connection; it stays active until its tracker is closed.
+   */
+  public ConnectionTracker open() {
+    this.accepted.increment();
+    this.acceptRate.mark();
+    this.active.increment();
+    return new ConnectionTracker(this);
+  }
+
+  public void acceptFailed() {
+    this.acceptErrors.increment();
+  }
+
+  /**
+   * Number of sockets accepting connections for the handler.
+   */
+  public void acceptors(final int acceptors) {
+    this.acceptors = acceptors;
+  }
+
+  void bytesIn(final long bytes) {
+    this.bytesIn.add(bytes);
+  }
+
+  void bytesOut(final long bytes) {
+    this.bytesOut.add(bytes);
+  }
+
+  void close(final ConnectionOutcome outcome, final long millis) {
+    this.active.decrement();
+    this.outcomes.get(outcome).increment();
+    if (outcome.isFault()) {
+      this.timeToFault.record(millis);
+    } else if (outcome == ConnectionOutcome.CLIENT_CLOSED) {
+      this.timeToClientClose.record(millis);
+    }
+  }
+
+  public long accepted() {
+    return this.accepted.sum();
+  }
+
+  public long active() {
+    return this.active.sum();
+  }
+
+  public Snapshot snapshot(final String name) {
+    return new Snapshot(name, this);
+  }
+
+  public static final class Snapshot {
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="name")
+    private final String name;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="accepted")
+    private final long accepted;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="acceptors")
+    private final int acceptors;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="accept_errors")
+    private final long acceptErrors;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="accepts_per_second")
+    private final RateMeter.Snapshot acceptRate;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="active")
+    private final long active;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="bytes_in")
+    private final long bytesIn;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="bytes_out")
+    private final long bytesOut;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="outcomes")
+    private final Map<String, Long> outcomes;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="time_to_fault")
+    private final LatencyHistogram.Snapshot timeToFault;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="time_to_client_close")
+    private final LatencyHistogram.Snapshot timeToClientClose;
+
+    private Snapshot(final String name, final HandlerMetrics metrics) {
+      this.name = name;
+      this.accepted = metrics.accepted();
+      this.acceptors = metrics.acceptors;
+      this.acceptErrors = metrics.acceptErrors.sum();
+      this.acceptRate = metrics.acceptRate.snapshot();
+      this.active = metrics.active();
+      this.bytesIn = metrics.bytesIn.sum();
+      this.bytesOut = metrics.bytesOut.sum();
+      final ImmutableMap.Builder<String, Long> outcomes = ImmutableMap.builder();
+      for (final Map.Entry<ConnectionOutcome, LongAdder> outcome : metrics.outcomes.entrySet()) {
+        outcomes.put(outcome.getKey().key(), Long.valueOf(outcome.getValue().sum()));
+      }
+      this.outcomes = outcomes.build();
+      this.timeToFault = metrics.timeToFault.snapshot();
+      this.timeToClientClose = metrics.timeToClientClose.snapshot();
+    }
+
+    public String name() {
+      return this.name;
+    }
+
+  }
+
+}
@@ -0,0 +1,128 @@
+package dev.chux.gcp.crun.faults.socket.metrics;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.collect.ImmutableMap;
+
+import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.Since;
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * Millisecond histogram with power-of-2 buckets, from {@code <= 1ms} to {@code > 2^20ms}:
+ * recording is a couple of uncontended {@link LongAdder} increments, and quantiles are bucket bounds.
+ */
+public final class LatencyHistogram {
+
+  private static final int BUCKETS = 22;
+
+  private final LongAdder[] buckets;
+  private final LongAdder sum;
+
+  public LatencyHistogram() {
+    this.buckets = new LongAdder[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      this.buckets[i] = new LongAdder();
+    }
+    this.sum = new LongAdder();
+  }
+
+  public void record(final long millis) {
+    final long value = Math.max(0L, millis);
+    this.buckets[bucket(value)].increment();
+    this.sum.add(value);
+  }
+
+  private static int bucket(final long millis) {
+    if (millis <= 1L) {
+      return 0;
+    }
+    // smallest `i` such that `millis <= 2^i`
+    return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(millis - 1L));
+  }
+
+  private static long upperBound(final int bucket) {
+    return 1L << bucket;
+  }
+
+  public Snapshot snapshot() {
+    final long[] counts = new long[BUCKETS];
+    long count = 0L;
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] = this.buckets[i].sum();
+      count += counts[i];
+    }
+    return new Snapshot(counts, count, this.sum.sum());
+  }
+
+  public static final class Snapshot {
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="count")
+    private final long count;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="mean_ms")
+    private final double mean;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="p50_ms")
+    private final long p50;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="p90_ms")
+    private final long p90;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="p99_ms")
+    private final long p99;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="buckets")
+    private final Map<String, Long> buckets;
+
+    private Snapshot(final long[] counts, final long count, final long sum) {
+      this.count = count;
+      this.mean = (count == 0L) ? 0.0 : ((double) sum) / count;
+      this.p50 = quantile(counts, count, 0.50);
+      this.p90 = quantile(counts, count, 0.90);
+      this.p99 = quantile(counts, count, 0.99);
+      final ImmutableMap.Builder<String, Long> buckets = ImmutableMap.builder();
+      for (int i = 0; i < counts.length; i++) {
+        if (counts[i] > 0L) {
+          final String bound = (i == counts.length - 1) ? "inf" : Long.toString(upperBound(i));
+          buckets.put("le_" + bound, Long.valueOf(counts[i]));
+        }
+      }
+      this.buckets = buckets.build();
+    }
+
+    private static long quantile(final long[] counts, final long count, final double q) {
+      if (count == 0L) {
+        return 0L;
+      }
+      final long rank = (long) Math.ceil(q * count);
+      long seen = 0L;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= rank) {
+          return upperBound(i);
+        }
+      }
+      return upperBound(counts.length - 1);
+    }
+
+    public long count() {
+      return this.count;
+    }
+
+  }
+
+}
@@ -0,0 +1,94 @@
+package dev.chux.gcp.crun.faults.socket.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.Since;
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * Events per second over the last 1, 10 and 60 complete seconds: a ring of one-second slots,
+ * each packing its second and its count into a single {@code long}, so a slot is recycled
+ * and counted with the same compare-and-set and no event is ever lost to a reset.
+ */
+public final class RateMeter {
+
+  // more slots than the longest window: the slot being filled is never read
+  private static final int SLOTS = 64;
+  private static final int COUNT_BITS = 32;
+  private static final long COUNT_MASK = (1L << COUNT_BITS) - 1L;
+
+  private final AtomicLongArray slots;
+
+  public RateMeter() {
+    this.slots = new AtomicLongArray(SLOTS);
+  }
+
+  private static long nowSeconds() {
+    return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+  }
+
+  private static int slot(final long second) {
+    return (int) Math.floorMod(second, (long) SLOTS);
+  }
+
+  private static long tag(final long second) {
+    return second & COUNT_MASK;
+  }
+
+  public void mark() {
+    final long now = nowSeconds();
+    final int slot = slot(now);
+    final long tag = tag(now);
+    long current;
+    long next;
+    do {
+      current = this.slots.get(slot);
+      next = ((current >>> COUNT_BITS) == tag) ? (current + 1L) : ((tag << COUNT_BITS) | 1L);
+    } while (!this.slots.compareAndSet(slot, current, next));
+  }
+
+  private double perSecond(final long now, final int window) {
+    long count = 0L;
+    for (long second = now - window; second < now; second++) {
+      final long value = this.slots.get(slot(second));
+      if ((value >>> COUNT_BITS) == tag(second)) {
+        count += (value & COUNT_MASK);
+      }
+    }
+    return ((double) count) / window;
+  }
+
+  public Snapshot snapshot() {
+    final long now = nowSeconds();
+    return new Snapshot(this.perSecond(now, 1),
+      this.perSecond(now, 10), this.perSecond(now, 60));
+  }
+
+  public static final class Snapshot {
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="last_1s")
+    private final double last1s;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="last_10s")
+    private final double last10s;
+
+    @Since(1.0)
+    @Expose(deserialize=false, serialize=true)
+    @SerializedName(value="last_60s")
+    private final double last60s;
+
+    private Snapshot(final double last1s, final double last10s, final double last60s) {
+      this.last1s = last1s;
+      this.last10s = last10s;
+      this.last60s = last60s;
+    }
+
+  }
+
+}
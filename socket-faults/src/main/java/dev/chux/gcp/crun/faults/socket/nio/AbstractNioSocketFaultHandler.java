@@ -0,0 +1,207 @@
+package dev.chux.gcp.crun.faults.socket.nio;
+
+import java.net.ServerSocket;
+import java.net.StandardSocketOptions;
+
+import java.nio.channels.Channel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dev.chux.gcp.crun.faults.socket.ServerSocketsProvider;
+import dev.chux.gcp.crun.faults.socket.handlers.SocketFaultHandler;
+import dev.chux.gcp.crun.faults.socket.metrics.ConnectionTracker;
+import dev.chux.gcp.crun.faults.socket.metrics.HandlerMetrics;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Throwables.getStackTraceAsString;
+
+/**
+ * Accepts connections on a {@link SelectorLoop} per server socket and hands each one,
+ * already non-blocking, to the next loop of {@link SelectorLoops}.
+ */
+public abstract class AbstractNioSocketFaultHandler implements SocketFaultHandler {
+  private static final Logger logger = LoggerFactory.getLogger(AbstractNioSocketFaultHandler.class);
+
+  private final String socketName;
+  private final ImmutableList<Acceptor> acceptors;
+  private final SelectorLoops loops;
+  private final AtomicBoolean isActive;
+  private final HandlerMetrics metrics;
+
+  protected AbstractNioSocketFaultHandler(
+    final String socketName,
+    final ServerSocketsProvider serverSocketsProvider,
+    final SelectorLoops loops
+  ) {
+    this.socketName = socketName;
+    this.acceptors = this.getAcceptors(serverSocketsProvider);
+    this.loops = loops;
+    this.isActive = new AtomicBoolean(false);
+    this.metrics = new HandlerMetrics();
+    this.metrics.acceptors(this.acceptors.size());
+  }
+
+  private ImmutableList<Acceptor> getAcceptors(final ServerSocketsProvider serverSocketsProvider) {
+    final ImmutableList<ServerSocket> serverSockets = serverSocketsProvider.acceptors(this.get());
+    checkArgument(!serverSockets.isEmpty(), "socket not found: %s", this.get());
+    final ImmutableList.Builder<Acceptor> acceptors = ImmutableList.builder();
+    for (final ServerSocket serverSocket : serverSockets) {
+      acceptors.add(new Acceptor(checkNotNull(serverSocket.getChannel(), "socket has no channel: %s", this.get())));
+    }
+    return acceptors.build();
+  }
+
+  @Override
+  public Boolean start() {
+    if (!this.isActive.compareAndSet(false, true)) {
+      logger.warn("socket handler already started: {}", this.get());
+      return Boolean.FALSE;
+    }
+    try {
+      for (final Acceptor acceptor : this.acceptors) {
+        acceptor.channel.configureBlocking(false);
+      }
+    } catch(final Exception ex) {
+      logger.error("'{}': {}", this.get(), getStackTraceAsString(ex));
+      this.isActive.set(false);
+      return Boolean.FALSE;
+    }
+    // acceptors are spread across loops, so accepting scales with them
+    for (final Acceptor acceptor : this.acceptors) {
+      acceptor.loop = this.loops.next();
+      acceptor.loop.execute(acceptor::register);
+    }
+    logger.info("socket handler started: {}", this.get());
+    return Boolean.TRUE;
+  }
+
+  private final class Acceptor implements SelectionHandler {
+
+    private final ServerSocketChannel channel;
+
+    private SelectorLoop loop;
+    private SelectionKey key;
+
+    private Acceptor(final ServerSocketChannel channel) {
+      this.channel = channel;
+    }
+
+    private void register() {
+      try {
+        this.key = this.loop.register(this.channel, SelectionKey.OP_ACCEPT, this);
+      } catch(final Exception ex) {
+        logger.error("'{}': {}", get(), getStackTraceAsString(ex));
+      }
+    }
+
+    @Override
+    public void onSelected(final SelectionKey key) throws Exception {
+      SocketChannel channel;
+      while ((channel = this.channel.accept()) != null) {
+        dispatch(channel);
+      }
+    }
+
+    @Override
+    public void onError(final SelectionKey key, final Exception error) {
+      // a failed accept must not tear down the listener
+      metrics.acceptFailed();
+      logger.error("error at socket handler '{}': {}", get(), getStackTraceAsString(error));
+    }
+
+    private void close(final Runnable onClosed) {
+      this.loop.execute(() -> {
+        if (this.key != null) {
+          this.key.cancel();
+        }
+        closeQuietly(this.channel);
+        onClosed.run();
+      });
+    }
+
+  }
+
+  private void dispatch(final SocketChannel channel) {
+    try {
+      channel.configureBlocking(false);
+      channel.setOption(StandardSocketOptions.TCP_NODELAY, Boolean.TRUE);
+    } catch(final Exception ex) {
+      logger.error("'{}': {}", this.get(), getStackTraceAsString(ex));
+      closeQuietly(channel);
+      return;
+    }
+    final ConnectionTracker tracker = this.metrics.open();
+    final SelectorLoop loop = this.loops.next();
+    loop.execute(() -> this.onAccepted(channel, loop, tracker));
+  }
+
+  /**
+   * Invoked on {@code loop}, which owns {@code channel} and {@code tracker} from now on;
+   * {@code tracker} must be closed when the connection is done.
+   */
+  protected abstract void onAccepted(final SocketChannel channel, final SelectorLoop loop, final ConnectionTracker tracker);
+
+  @Override
+  public HandlerMetrics metrics() {
+    return this.metrics;
+  }
+
+  @Override
+  public Boolean stop(final CountDownLatch stopSignal) {
+    if (!this.isActive.compareAndSet(true, false)) {
+      logger.warn("socket handler already stopped: {}", this.get());
+      return Boolean.FALSE;
+    }
+    final AtomicInteger open = new AtomicInteger(this.acceptors.size());
+    for (final Acceptor acceptor : this.acceptors) {
+      acceptor.close(() -> {
+        if (open.decrementAndGet() == 0) {
+          stopSignal.countDown();
+          logger.info("socket handler stopped: {}", this.get());
+        }
+      });
+    }
+    return Boolean.TRUE;
+  }
+
+  protected static void closeQuietly(final Channel channel) {
+    try {
+      channel.close();
+    } catch(final Exception ex) {
+      logger.error("{}", getStackTraceAsString(ex));
+    }
+  }
+
+  @Override
+  public Boolean isActive() {
+    return Boolean.valueOf(this.isActive.get());
+  }
+
+  @Override
+  public String get() {
+    return this.socketName;
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+      .addValue(this.get())
+      .add("isActive", this.isActive())
+      .add("acceptors", this.acceptors.size())
+      .add("activeConnections", this.metrics.active())
+      .toString();
+  }
+
+}
@@ -0,0 +1,197 @@
+package dev.chux.gcp.crun.faults.socket.nio;
+
+import java.io.IOException;
+
+import java.net.StandardSocketOptions;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dev.chux.gcp.crun.faults.socket.http.HttpRequestParser;
+import dev.chux.gcp.crun.faults.socket.metrics.ConnectionOutcome;
+import dev.chux.gcp.crun.faults.socket.metrics.ConnectionTracker;
+
+import static com.google.common.base.Throwables.getStackTraceAsString;
+
+/**
+ * Runs a {@link FaultScript} against one connection; confined to its {@link SelectorLoop}.
+ * A stalled connection costs a selection key, a pending timeout and this object: no thread, no buffers.
+ */
+final class FaultConnection implements SelectionHandler {
+  private static final Logger logger = LoggerFactory.getLogger(FaultConnection.class);
+
+  private final String handlerName;
+  private final SocketChannel channel;
+  private final SelectorLoop loop;
+  private final List<FaultScript.Step> steps;
+  private final ConnectionTracker tracker;
+
+  private SelectionKey key;
+  private HttpRequestParser parser;
+  private ByteBuffer pending;
+  private int step = 0;
+  private boolean closed = false;
+
+  FaultConnection(
+    final String handlerName,
+    final SocketChannel channel,
+    final SelectorLoop loop,
+    final FaultScript script,
+    final ConnectionTracker tracker
+  ) {
+    this.handlerName = handlerName;
+    this.channel = channel;
+    this.loop = loop;
+    this.steps = script.steps();
+    this.tracker = tracker;
+  }
+
+  void start() {
+    try {
+      this.key = this.loop.register(this.channel, 0, this);
+      this.advance();
+    } catch(final Exception ex) {
+      this.onError(this.key, ex);
+    }
+  }
+
+  @Override
+  public void onSelected(final SelectionKey key) throws Exception {
+    this.advance();
+  }
+
+  @Override
+  public void onError(final SelectionKey key, final Exception error) {
+    logger.debug("{} - connection failed: {}", this.handlerName, getStackTraceAsString(error));
+    this.close((error instanceof IOException) ? ConnectionOutcome.CLIENT_CLOSED : ConnectionOutcome.ERROR);
+  }
+
+  private void resume() {
+    try {
+      this.advance();
+    } catch(final Exception ex) {
+      this.onError(this.key, ex);
+    }
+  }
+
+  private void advance() throws IOException {
+    while (!this.closed && this.step < this.steps.size()) {
+      final FaultScript.Step step = this.steps.get(this.step);
+      switch (step.action()) {
+        case READ_REQUEST_LINE:
+          if (!this.read(HttpRequestParser.Phase.REQUEST_LINE)) {
+            return;
+          }
+          break;
+        case READ_REQUEST_HEADERS:
+          if (!this.read(HttpRequestParser.Phase.HEADERS)) {
+            return;
+          }
+          break;
+        case READ_REQUEST:
+          if (!this.read(HttpRequestParser.Phase.BODY)) {
+            return;
+          }
+          break;
+        case WRITE:
+          if (!this.write(step.data())) {
+            return;
+          }
+          break;
+        case PAUSE:
+          this.step += 1;
+          this.interest(0);
+          this.loop.schedule(this::resume, step.millis(), TimeUnit.MILLISECONDS);
+          return;
+        case CLOSE:
+          this.close(ConnectionOutcome.SERVER_CLOSED);
+          return;
+        case RESET:
+          this.close(ConnectionOutcome.SERVER_RESET);
+          return;
+      }
+      this.step += 1;
+    }
+    if (!this.closed) {
+      this.close(ConnectionOutcome.SERVER_CLOSED);
+    }
+  }
+
+  /**
+   * @return {@code true} once the request has been parsed past {@code phase}.
+   */
+  private boolean read(final HttpRequestParser.Phase phase) throws IOException {
+    if (this.parser == null) {
+      this.parser = new HttpRequestParser();
+    }
+    while (!this.parser.isPast(phase)) {
+      final ByteBuffer buffer = this.loop.readBuffer();
+      final int read = this.channel.read(buffer);
+      if (read < 0) {
+        logger.debug("{} - connection closed by client: {}", this.handlerName, this.parser);
+        this.close(ConnectionOutcome.CLIENT_CLOSED);
+        return false;
+      }
+      if (read == 0) {
+        this.interest(SelectionKey.OP_READ);
+        return false;
+      }
+      this.tracker.bytesIn(read);
+      buffer.flip();
+      this.parser.parse(buffer);
+    }
+    return true;
+  }
+
+  private boolean write(final byte[] data) throws IOException {
+    if (this.pending == null) {
+      this.pending = ByteBuffer.wrap(data);
+    }
+    this.tracker.bytesOut(this.channel.write(this.pending));
+    if (this.pending.hasRemaining()) {
+      this.interest(SelectionKey.OP_WRITE);
+      return false;
+    }
+    this.pending = null;
+    return true;
+  }
+
+  private void interest(final int ops) {
+    if (this.key.isValid() && this.key.interestOps() != ops) {
+      this.key.interestOps(ops);
+    }
+  }
+
+  private void close(final ConnectionOutcome outcome) {
+    if (this.closed) {
+      return;
+    }
+    this.closed = true;
+    this.tracker.close(outcome);
+    try {
+      if (outcome == ConnectionOutcome.SERVER_RESET) {
+        // linger=0 makes the kernel send RST instead of FIN
+        this.channel.setOption(StandardSocketOptions.SO_LINGER, Integer.valueOf(0));
+      }
+    } catch(final Exception ex) {
+      logger.debug("{} - {}", this.handlerName, getStackTraceAsString(ex));
+    }
+    if (this.key != null) {
+      SelectorLoop.closeQuietly(this.key);
+    } else {
+      try {
+        this.channel.close();
+      } catch(final Exception ex) {
+        logger.debug("{} - {}", this.handlerName, getStackTraceAsString(ex));
+      }
+    }
+  }
+
+}
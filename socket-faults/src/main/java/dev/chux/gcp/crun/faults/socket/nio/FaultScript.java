@@ -0,0 +1,194 @@
+package dev.chux.gcp.crun.faults.socket.nio;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Declarative description of how a non-blocking fault connection misbehaves:
+ * an ordered list of steps executed by a {@link FaultConnection}.
+ */
+public final class FaultScript {
+
+  public enum Action {
+    READ_REQUEST_LINE,
+    READ_REQUEST_HEADERS,
+    READ_REQUEST,
+    WRITE,
+    PAUSE,
+    CLOSE,
+    RESET,
+  }
+
+  public static final class Step {
+
+    private final Action action;
+    private final byte[] data;
+    private final long millis;
+
+    private Step(
+      final Action action,
+      final byte[] data,
+      final long millis
+    ) {
+      this.action = action;
+      this.data = data;
+      this.millis = millis;
+    }
+
+    public Action action() {
+      return this.action;
+    }
+
+    byte[] data() {
+      return this.data;
+    }
+
+    public long millis() {
+      return this.millis;
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this)
+        .addValue(this.action)
+        .add("bytes", this.data.length)
+        .add("millis", this.millis)
+        .omitNullValues()
+        .toString();
+    }
+
+  }
+
+  private static final byte[] NO_DATA = new byte[0];
+
+  private final ImmutableList<Step> steps;
+
+  private FaultScript(
+    final ImmutableList<Step> steps
+  ) {
+    this.steps = steps;
+  }
+
+  public List<Step> steps() {
+    return this.steps;
+  }
+
+  /**
+   * @return a copy of this script in which every pause lasts {@code millis}.
+   */
+  public FaultScript withPauses(final long millis) {
+    checkArgument(millis >= 0, "invalid pause: %s", millis);
+    final ImmutableList.Builder<Step> steps = ImmutableList.builder();
+    for (final Step step : this.steps) {
+      steps.add((step.action == Action.PAUSE) ? new Step(Action.PAUSE, NO_DATA, millis) : step);
+    }
+    return new FaultScript(steps.build());
+  }
+
+  /**
+   * @return a copy of this script that stops writing after {@code offset} response bytes and closes the connection.
+   */
+  public FaultScript truncatedAt(final long offset) {
+    checkArgument(offset >= 0, "invalid offset: %s", offset);
+    final ImmutableList.Builder<Step> steps = ImmutableList.builder();
+    long remaining = offset;
+    for (final Step step : this.steps) {
+      if (step.action != Action.WRITE) {
+        steps.add(step);
+        continue;
+      }
+      if (step.data.length >= remaining) {
+        steps.add(new Step(Action.WRITE, Arrays.copyOf(step.data, (int) remaining), 0L));
+        steps.add(new Step(Action.CLOSE, NO_DATA, 0L));
+        return new FaultScript(steps.build());
+      }
+      remaining -= step.data.length;
+      steps.add(step);
+    }
+    return this;
+  }
+
+  /**
+   * @return a copy of this script that resets the connection wherever it would have closed it.
+   */
+  public FaultScript withReset() {
+    final ImmutableList.Builder<Step> steps = ImmutableList.builder();
+    for (final Step step : this.steps) {
+      steps.add((step.action == Action.CLOSE) ? new Step(Action.RESET, NO_DATA, 0L) : step);
+    }
+    return new FaultScript(steps.build());
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+      .addValue(this.steps)
+      .toString();
+  }
+
+  public static final class Builder {
+
+    private final ImmutableList.Builder<Step> steps = ImmutableList.builder();
+
+    private Builder() {}
+
+    public Builder readRequestLine() {
+      return this.add(Action.READ_REQUEST_LINE);
+    }
+
+    public Builder readRequestHeaders() {
+      return this.add(Action.READ_REQUEST_HEADERS);
+    }
+
+    public Builder readRequest() {
+      return this.add(Action.READ_REQUEST);
+    }
+
+    public Builder write(final String data) {
+      return this.write(checkNotNull(data).getBytes(US_ASCII));
+    }
+
+    public Builder write(final byte[] data) {
+      this.steps.add(new Step(Action.WRITE, checkNotNull(data), 0L));
+      return this;
+    }
+
+    public Builder pause(final long delay, final TimeUnit unit) {
+      checkArgument(delay >= 0, "invalid pause: %s", delay);
+      this.steps.add(new Step(Action.PAUSE, NO_DATA, unit.toMillis(delay)));
+      return this;
+    }
+
+    public Builder close() {
+      return this.add(Action.CLOSE);
+    }
+
+    public Builder reset() {
+      return this.add(Action.RESET);
+    }
+
+    private Builder add(final Action action) {
+      this.steps.add(new Step(action, NO_DATA, 0L));
+      return this;
+    }
+
+    public FaultScript build() {
+      return new FaultScript(this.steps.build());
+    }
+
+  }
+
+}
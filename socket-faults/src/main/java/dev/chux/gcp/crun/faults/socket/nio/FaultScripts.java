@@ -0,0 +1,112 @@
+package dev.chux.gcp.crun.faults.socket.nio;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+
+import static com.google.common.base.Optional.fromNullable;
+
+/**
+ * Non-blocking counterparts of the blocking socket fault handlers, plus {@code ok}: a well-formed response.
+ */
+public final class FaultScripts {
+
+  private static final String CRLF = "\r\n";
+
+  private static final long TIMEOUT_SECONDS = 300L;
+
+  private FaultScripts() {}
+
+  public static final FaultScript OK = FaultScript.builder()
+    .readRequest()
+    .write("HTTP/1.1 200 OK" + CRLF + "Content-Type: text/plain" + CRLF
+      + "Content-Length: 2" + CRLF + "Connection: close" + CRLF + CRLF + "OK")
+    .close()
+    .build();
+
+  public static final FaultScript IMMEDIATE_TERMINATION = FaultScript.builder()
+    .close()
+    .build();
+
+  public static final FaultScript RESET_AFTER_HTTP_REQUEST_LINE = FaultScript.builder()
+    .readRequestLine()
+    .close()
+    .build();
+
+  public static final FaultScript RESET_AFTER_HTTP_REQUEST_HEADERS = FaultScript.builder()
+    .readRequestHeaders()
+    .close()
+    .build();
+
+  public static final FaultScript RESET_AFTER_HTTP_REQUEST = FaultScript.builder()
+    .readRequest()
+    .close()
+    .build();
+
+  public static final FaultScript RESET_AFTER_HTTP_RESPONSE_LINE = FaultScript.builder()
+    .readRequest()
+    .write("HTTP/1.1 200 OK" + CRLF)
+    .close()
+    .build();
+
+  public static final FaultScript RESET_INCOMPLETE_HTTP_RESPONSE = FaultScript.builder()
+    .readRequest()
+    .write("HTTP/1.1 200 OK" + CRLF + "Content-Length: 1000" + CRLF + CRLF + "incomplete data")
+    .close()
+    .build();
+
+  public static final FaultScript RESET_WITH_CHOPPED_HTTP_RESPONSE_HEADER = FaultScript.builder()
+    .readRequest()
+    .write("HTTP/1.1 200 OK" + CRLF + "Content-Type: text/plain" + CRLF + "Content-Len")
+    .close()
+    .build();
+
+  public static final FaultScript RESET_WITH_CHOPPED_HTTP_RESPONSE_LINE = FaultScript.builder()
+    .readRequest()
+    .write("HTTP/1.1 ")
+    .close()
+    .build();
+
+  public static final FaultScript TIMEOUT_BEFORE_HTTP_REQUEST = FaultScript.builder()
+    .pause(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+    .readRequest()
+    .close()
+    .build();
+
+  public static final FaultScript TIMEOUT_AFTER_HTTP_REQUEST = FaultScript.builder()
+    .readRequest()
+    .pause(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+    .close()
+    .build();
+
+  public static final FaultScript TIMEOUT_AFTER_HTTP_RESPONSE_HEADERS = FaultScript.builder()
+    .readRequest()
+    .write("HTTP/1.1 200 OK" + CRLF + "Content-Type: text/plain" + CRLF + "Content-Length: 1000" + CRLF + CRLF)
+    .pause(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+    .close()
+    .build();
+
+  private static final ImmutableMap<String, FaultScript> SCRIPTS = ImmutableMap.<String, FaultScript>builder()
+    .put("ok", OK)
+    .put("immediate-termination", IMMEDIATE_TERMINATION)
+    .put("reset-after-http-request-line", RESET_AFTER_HTTP_REQUEST_LINE)
+    .put("reset-after-http-request-headers", RESET_AFTER_HTTP_REQUEST_HEADERS)
+    .put("reset-after-http-request", RESET_AFTER_HTTP_REQUEST)
+    .put("reset-after-http-response-line", RESET_AFTER_HTTP_RESPONSE_LINE)
+    .put("reset-incomplete-http-response", RESET_INCOMPLETE_HTTP_RESPONSE)
+    .put("reset-with-chopped-http-response-header", RESET_WITH_CHOPPED_HTTP_RESPONSE_HEADER)
+    .put("reset-with-chopped-http-response-line", RESET_WITH_CHOPPED_HTTP_RESPONSE_LINE)
+    .put("timeout-before-http-request", TIMEOUT_BEFORE_HTTP_REQUEST)
+    .put("timeout-after-http-request", TIMEOUT_AFTER_HTTP_REQUEST)
+    .put("timeout-after-http-response-headers", TIMEOUT_AFTER_HTTP_RESPONSE_HEADERS)
+    .build();
+
+  /**
+   * @param name the name of a fault socket, or {@code ok}.
+   */
+  public static Optional<FaultScript> forName(final String name) {
+    return fromNullable(SCRIPTS.get(name));
+  }
+
+}
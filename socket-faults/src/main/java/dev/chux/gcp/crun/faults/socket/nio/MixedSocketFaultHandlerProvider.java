@@ -0,0 +1,48 @@
+package dev.chux.gcp.crun.faults.socket.nio;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+
+import dev.chux.gcp.crun.ConfigService;
+import dev.chux.gcp.crun.faults.socket.ServerSocketsProvider;
+import dev.chux.gcp.crun.faults.socket.handlers.SocketFaultHandler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A single socket whose connections fail in different ways according to
+ * {@code faults.socket.mixed.weights}; see {@link WeightedFaultScripts}.
+ */
+public class MixedSocketFaultHandlerProvider implements Provider<SocketFaultHandler> {
+  private static final Logger logger = LoggerFactory.getLogger(MixedSocketFaultHandlerProvider.class);
+
+  public static final String SOCKET_NAME = "mixed";
+
+  private static final String PROPERTY_WEIGHTS = "faults.socket." + SOCKET_NAME + ".weights";
+
+  private final ConfigService configService;
+  private final ServerSocketsProvider serverSocketsProvider;
+  private final SelectorLoops selectorLoops;
+
+  @Inject
+  MixedSocketFaultHandlerProvider(
+    final ConfigService configService,
+    final ServerSocketsProvider serverSocketsProvider,
+    final SelectorLoops selectorLoops
+  ) {
+    this.configService = configService;
+    this.serverSocketsProvider = serverSocketsProvider;
+    this.selectorLoops = selectorLoops;
+  }
+
+  @Override
+  public SocketFaultHandler get() {
+    final String weights = this.configService.getAppPropOrDefault(PROPERTY_WEIGHTS, "ok:1");
+    final WeightedFaultScripts scripts = WeightedFaultScripts.parse(weights);
+    logger.info("socket handler '{}': {}", SOCKET_NAME, scripts);
+    return new NioSocketFaultHandler(SOCKET_NAME, scripts,
+      this.serverSocketsProvider, this.selectorLoops);
+  }
+
+}
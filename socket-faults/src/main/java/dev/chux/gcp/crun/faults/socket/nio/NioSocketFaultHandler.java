@@ -0,0 +1,58 @@
+package dev.chux.gcp.crun.faults.socket.nio;
+
+import java.nio.channels.SocketChannel;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+
+import dev.chux.gcp.crun.faults.socket.ServerSocketsProvider;
+import dev.chux.gcp.crun.faults.socket.metrics.ConnectionTracker;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Non-blocking {@link dev.chux.gcp.crun.faults.socket.handlers.SocketFaultHandler}: connections are driven by {@link SelectorLoops},
+ * and pauses are timeouts on a {@link TimerWheel} instead of sleeping threads.
+ */
+public class NioSocketFaultHandler extends AbstractNioSocketFaultHandler {
+
+  private final Supplier<FaultScript> scripts;
+
+  public NioSocketFaultHandler(
+    final String socketName,
+    final FaultScript script,
+    final ServerSocketsProvider serverSocketsProvider,
+    final SelectorLoops loops
+  ) {
+    this(socketName, Suppliers.ofInstance(checkNotNull(script)), serverSocketsProvider, loops);
+  }
+
+  /**
+   * @param scripts queried once per connection: it chooses how each connection fails.
+   */
+  public NioSocketFaultHandler(
+    final String socketName,
+    final Supplier<FaultScript> scripts,
+    final ServerSocketsProvider serverSocketsProvider,
+    final SelectorLoops loops
+  ) {
+    super(socketName, serverSocketsProvider, loops);
+    this.scripts = checkNotNull(scripts);
+  }
+
+  @Override
+  protected void onAccepted(final SocketChannel channel, final SelectorLoop loop, final ConnectionTracker tracker) {
+    new FaultConnection(this.get(), channel, loop, this.scripts.get(), tracker).start();
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+      .addValue(this.get())
+      .add("isActive", this.isActive())
+      .add("scripts", this.scripts)
+      .toString();
+  }
+
+}
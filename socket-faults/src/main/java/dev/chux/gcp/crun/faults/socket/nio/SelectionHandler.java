@@ -0,0 +1,11 @@
+package dev.chux.gcp.crun.faults.socket.nio;
+
+import java.nio.channels.SelectionKey;
+
+public interface SelectionHandler {
+
+  public void onSelected(final SelectionKey key) throws Exception;
+
+  public void onError(final SelectionKey key, final Exception error);
+
+}
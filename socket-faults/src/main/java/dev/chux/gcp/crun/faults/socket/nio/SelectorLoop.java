@@ -0,0 +1,202 @@
+package dev.chux.gcp.crun.faults.socket.nio;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.common.base.MoreObjects;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.base.Throwables.getStackTraceAsString;
+
+/**
+ * Single-threaded event loop: every channel registered here, and every timeout scheduled
+ * on its {@link TimerWheel}, is only ever touched by the loop thread.
+ */
+public final class SelectorLoop implements Executor, Runnable {
+  private static final Logger logger = LoggerFactory.getLogger(SelectorLoop.class);
+
+  private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+  private final String name;
+  private final Selector selector;
+  private final TimerWheel timers;
+  private final ByteBuffer readBuffer;
+  private final Queue<Runnable> tasks;
+  private final AtomicBoolean wakeup;
+  private final Thread thread;
+
+  private volatile boolean running;
+
+  SelectorLoop(
+    final String name,
+    final long tickMillis,
+    final int wheelSize
+  ) throws IOException {
+    this.name = name;
+    this.selector = Selector.open();
+    this.timers = new TimerWheel(tickMillis, wheelSize, now());
+    this.readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    this.tasks = new ConcurrentLinkedQueue<Runnable>();
+    this.wakeup = new AtomicBoolean(false);
+    this.thread = new Thread(this, name);
+    this.thread.setDaemon(true);
+  }
+
+  void start() {
+    this.running = true;
+    this.thread.start();
+    logger.info("selector loop started: {}", this.name);
+  }
+
+  void stop() {
+    this.running = false;
+    this.selector.wakeup();
+  }
+
+  public boolean inLoop() {
+    return Thread.currentThread() == this.thread;
+  }
+
+  @Override
+  public void execute(final Runnable task) {
+    this.tasks.add(checkNotNull(task));
+    if (!this.inLoop() && this.wakeup.compareAndSet(false, true)) {
+      this.selector.wakeup();
+    }
+  }
+
+  public SelectionKey register(
+    final SelectableChannel channel,
+    final int interestOps,
+    final SelectionHandler handler
+  ) throws ClosedChannelException {
+    checkState(this.inLoop(), "not in selector loop: %s", this.name);
+    return channel.register(this.selector, interestOps, checkNotNull(handler));
+  }
+
+  public TimerWheel.Timeout schedule(
+    final Runnable task,
+    final long delay,
+    final TimeUnit unit
+  ) {
+    checkState(this.inLoop(), "not in selector loop: %s", this.name);
+    return this.timers.schedule(task, delay, unit, now());
+  }
+
+  /**
+   * Scratch buffer shared by all channels of this loop; it must not be retained across events.
+   */
+  public ByteBuffer readBuffer() {
+    checkState(this.inLoop(), "not in selector loop: %s", this.name);
+    this.readBuffer.clear();
+    return this.readBuffer;
+  }
+
+  public int connections() {
+    return this.selector.keys().size();
+  }
+
+  @Override
+  public void run() {
+    while (this.running) {
+      try {
+        this.select();
+        this.processSelectedKeys();
+        this.timers.advance(now());
+        this.runTasks();
+      } catch(final Exception ex) {
+        logger.error("'{}': {}", this.name, getStackTraceAsString(ex));
+      }
+    }
+    this.closeSelector();
+    logger.info("selector loop stopped: {}", this.name);
+  }
+
+  private void select() throws IOException {
+    if (!this.tasks.isEmpty()) {
+      this.selector.selectNow();
+    } else {
+      this.selector.select(this.timers.millisToNextTick(now()));
+    }
+    this.wakeup.set(false);
+  }
+
+  private void processSelectedKeys() {
+    final Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+    while (keys.hasNext()) {
+      final SelectionKey key = keys.next();
+      keys.remove();
+      if (!key.isValid()) {
+        continue;
+      }
+      final SelectionHandler handler = (SelectionHandler) key.attachment();
+      try {
+        handler.onSelected(key);
+      } catch(final Exception ex) {
+        logger.debug("'{}': {}", this.name, getStackTraceAsString(ex));
+        handler.onError(key, ex);
+      }
+    }
+  }
+
+  private void runTasks() {
+    Runnable task;
+    while ((task = this.tasks.poll()) != null) {
+      try {
+        task.run();
+      } catch(final Exception ex) {
+        logger.error("'{}': {}", this.name, getStackTraceAsString(ex));
+      }
+    }
+  }
+
+  private void closeSelector() {
+    for (final SelectionKey key : this.selector.keys()) {
+      closeQuietly(key);
+    }
+    try {
+      this.selector.close();
+    } catch(final Exception ex) {
+      logger.error("'{}': {}", this.name, getStackTraceAsString(ex));
+    }
+  }
+
+  static void closeQuietly(final SelectionKey key) {
+    key.cancel();
+    try {
+      key.channel().close();
+    } catch(final Exception ex) {
+      logger.debug("{}", getStackTraceAsString(ex));
+    }
+  }
+
+  static long now() {
+    return System.nanoTime() / 1_000_000L;
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+      .addValue(this.name)
+      .add("running", this.running)
+      .add("timers", this.timers.pending())
+      .toString();
+  }
+
+}
@@ -0,0 +1,76 @@
+package dev.chux.gcp.crun.faults.socket.nio;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.ImmutableList;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import dev.chux.gcp.crun.ConfigService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Throwables.getStackTraceAsString;
+
+/**
+ * One {@link SelectorLoop} per core; connections are spread round-robin across them.
+ */
+@Singleton
+public class SelectorLoops {
+  private static final Logger logger = LoggerFactory.getLogger(SelectorLoops.class);
+
+  private static final String PROPERTY_LOOPS = "faults.socket.nio.loops";
+  private static final String PROPERTY_TICK = "faults.socket.nio.tick-ms";
+  private static final String PROPERTY_WHEEL_SIZE = "faults.socket.nio.wheel-size";
+
+  private static final int DEFAULT_TICK_MILLIS = 10;
+  private static final int DEFAULT_WHEEL_SIZE = 512;
+
+  private final ImmutableList<SelectorLoop> loops;
+  private final AtomicInteger next;
+
+  @Inject
+  SelectorLoops(
+    final ConfigService configService
+  ) {
+    final int size = configService.getIntAppProp(PROPERTY_LOOPS)
+      .or(Runtime.getRuntime().availableProcessors()).intValue();
+    final int tickMillis = configService.getIntAppProp(PROPERTY_TICK).or(DEFAULT_TICK_MILLIS).intValue();
+    final int wheelSize = configService.getIntAppProp(PROPERTY_WHEEL_SIZE).or(DEFAULT_WHEEL_SIZE).intValue();
+    checkArgument(size > 0, "invalid selector loops: %s", size);
+    this.loops = newLoops(size, tickMillis, wheelSize);
+    this.next = new AtomicInteger(0);
+    logger.info("selector loops: [loops={}, tick={}ms, wheel={}]", size, tickMillis, wheelSize);
+  }
+
+  private static ImmutableList<SelectorLoop> newLoops(
+    final int size,
+    final int tickMillis,
+    final int wheelSize
+  ) {
+    final ImmutableList.Builder<SelectorLoop> loops = ImmutableList.builder();
+    for (int i = 0; i < size; i++) {
+      try {
+        final SelectorLoop loop = new SelectorLoop("socket-faults-selector-" + i, tickMillis, wheelSize);
+        loop.start();
+        loops.add(loop);
+      } catch(final Exception ex) {
+        logger.error("failed to create selector loop: {}", getStackTraceAsString(ex));
+        throw new IllegalStateException(ex);
+      }
+    }
+    return loops.build();
+  }
+
+  public SelectorLoop next() {
+    return this.loops.get(Math.floorMod(this.next.getAndIncrement(), this.loops.size()));
+  }
+
+  public ImmutableList<SelectorLoop> all() {
+    return this.loops;
+  }
+
+}
@@ -0,0 +1,184 @@
+package dev.chux.gcp.crun.faults.socket.nio;
+
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Throwables.getStackTraceAsString;
+
+/**
+ * Hashed timer wheel confined to a single {@link SelectorLoop} thread:
+ * scheduling and cancelling are O(1) and cost one small node per pending timeout.
+ */
+public final class TimerWheel {
+  private static final Logger logger = LoggerFactory.getLogger(TimerWheel.class);
+
+  private static final int DONE = -1;
+  private static final int EXPIRING = -2;
+
+  private final long tickMillis;
+  private final long startMillis;
+  private final Timeout[] slots;
+  private final int mask;
+
+  private long currentTick = 0;
+  private int pending = 0;
+
+  TimerWheel(
+    final long tickMillis,
+    final int wheelSize,
+    final long nowMillis
+  ) {
+    checkArgument(tickMillis > 0, "invalid tick: %s", tickMillis);
+    checkArgument(wheelSize > 0 && Integer.bitCount(wheelSize) == 1, "wheel size must be a power of 2: %s", wheelSize);
+    this.tickMillis = tickMillis;
+    this.startMillis = nowMillis;
+    this.slots = new Timeout[wheelSize];
+    this.mask = wheelSize - 1;
+  }
+
+  public Timeout schedule(
+    final Runnable task,
+    final long delay,
+    final TimeUnit unit,
+    final long nowMillis
+  ) {
+    checkArgument(delay >= 0, "invalid delay: %s", delay);
+    final long elapsed = (nowMillis - this.startMillis) + unit.toMillis(delay);
+    final long targetTick = (elapsed + this.tickMillis - 1) / this.tickMillis;
+    final long ticks = Math.max(1L, targetTick - this.currentTick);
+    final Timeout timeout = new Timeout(this, checkNotNull(task), (ticks - 1) / this.slots.length);
+    this.link(timeout, (int) ((this.currentTick + ticks) & this.mask));
+    return timeout;
+  }
+
+  public int pending() {
+    return this.pending;
+  }
+
+  /**
+   * @return milliseconds the owning selector may block for; {@code 0} when there is nothing to wait for.
+   */
+  long millisToNextTick(final long nowMillis) {
+    if (this.pending == 0) {
+      return 0L;
+    }
+    final long nextTickMillis = this.startMillis + ((this.currentTick + 1) * this.tickMillis);
+    return Math.max(1L, nextTickMillis - nowMillis);
+  }
+
+  void advance(final long nowMillis) {
+    final long targetTick = (nowMillis - this.startMillis) / this.tickMillis;
+    if (this.pending == 0) {
+      this.currentTick = Math.max(this.currentTick, targetTick);
+      return;
+    }
+    while (this.currentTick < targetTick) {
+      this.currentTick += 1;
+      this.expire((int) (this.currentTick & this.mask));
+    }
+  }
+
+  private void expire(final int slot) {
+    // detach first: expired tasks may schedule or cancel timeouts on this very slot
+    Timeout expired = null;
+    Timeout timeout = this.slots[slot];
+    while (timeout != null) {
+      final Timeout next = timeout.next;
+      if (timeout.rounds <= 0) {
+        this.unlink(timeout);
+        timeout.slot = EXPIRING;
+        timeout.next = expired;
+        expired = timeout;
+      } else {
+        timeout.rounds -= 1;
+      }
+      timeout = next;
+    }
+    while (expired != null) {
+      final Timeout next = expired.next;
+      expired.next = null;
+      expired.slot = DONE;
+      if (!expired.cancelled) {
+        this.run(expired.task);
+      }
+      expired = next;
+    }
+  }
+
+  private void run(final Runnable task) {
+    try {
+      task.run();
+    } catch(final Exception ex) {
+      logger.error("timeout task failed: {}", getStackTraceAsString(ex));
+    }
+  }
+
+  private void link(final Timeout timeout, final int slot) {
+    final Timeout head = this.slots[slot];
+    timeout.slot = slot;
+    timeout.next = head;
+    if (head != null) {
+      head.previous = timeout;
+    }
+    this.slots[slot] = timeout;
+    this.pending += 1;
+  }
+
+  private void unlink(final Timeout timeout) {
+    if (timeout.previous != null) {
+      timeout.previous.next = timeout.next;
+    } else {
+      this.slots[timeout.slot] = timeout.next;
+    }
+    if (timeout.next != null) {
+      timeout.next.previous = timeout.previous;
+    }
+    timeout.previous = null;
+    timeout.next = null;
+    timeout.slot = DONE;
+    this.pending -= 1;
+  }
+
+  public static final class Timeout {
+
+    private final TimerWheel wheel;
+    private final Runnable task;
+
+    private long rounds;
+    private int slot = DONE;
+    private boolean cancelled = false;
+    private Timeout previous;
+    private Timeout next;
+
+    private Timeout(
+      final TimerWheel wheel,
+      final Runnable task,
+      final long rounds
+    ) {
+      this.wheel = wheel;
+      this.task = task;
+      this.rounds = rounds;
+    }
+
+    /**
+     * Must be invoked from the thread that owns the wheel.
+     */
+    public boolean cancel() {
+      if (this.slot == EXPIRING) {
+        this.cancelled = true;
+        return true;
+      }
+      if (this.slot == DONE) {
+        return false;
+      }
+      this.wheel.unlink(this);
+      return true;
+    }
+
+  }
+
+}
@@ -0,0 +1,125 @@
+package dev.chux.gcp.crun.faults.socket.nio;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Optional;
+import com.google.common.base.Splitter;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.primitives.Ints;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Chooses a {@link FaultScript} per connection with probability proportional to its weight;
+ * i/e: {@code ok:90,reset-after-http-request-headers:5,timeout-after-http-request:5}.
+ */
+public final class WeightedFaultScripts implements Supplier<FaultScript> {
+
+  private static final int PROBABILITY_SCALE = 10_000;
+
+  private final ImmutableMap<String, Integer> weights;
+  private final FaultScript[] scripts;
+  private final int[] cumulativeWeights;
+  private final int totalWeight;
+
+  private WeightedFaultScripts(
+    final ImmutableMap<String, Integer> weights
+  ) {
+    this(weights, scripts(weights));
+  }
+
+  private WeightedFaultScripts(
+    final ImmutableMap<String, Integer> weights,
+    final FaultScript[] scripts
+  ) {
+    this.weights = weights;
+    this.scripts = scripts;
+    this.cumulativeWeights = new int[weights.size()];
+    int index = 0;
+    int total = 0;
+    for (final Integer weight : weights.values()) {
+      total += weight.intValue();
+      this.cumulativeWeights[index] = total;
+      index += 1;
+    }
+    checkArgument(total > 0, "weights must add up to more than 0");
+    this.totalWeight = total;
+  }
+
+  private static FaultScript[] scripts(final ImmutableMap<String, Integer> weights) {
+    final FaultScript[] scripts = new FaultScript[weights.size()];
+    int index = 0;
+    for (final String name : weights.keySet()) {
+      final Optional<FaultScript> script = FaultScripts.forName(name);
+      checkArgument(script.isPresent(), "unknown fault: %s", name);
+      scripts[index] = script.get();
+      index += 1;
+    }
+    return scripts;
+  }
+
+  /**
+   * Fails connections with {@code script} with the given {@code probability}, and answers {@code ok} otherwise.
+   */
+  public static WeightedFaultScripts withProbability(
+    final String name,
+    final FaultScript script,
+    final double probability
+  ) {
+    checkArgument(probability >= 0 && probability <= 1, "invalid probability: %s", probability);
+    checkArgument(!"ok".equals(name), "'ok' cannot be combined with a probability");
+    final int faultWeight = (int) Math.round(probability * PROBABILITY_SCALE);
+    final ImmutableMap.Builder<String, Integer> weights = ImmutableMap.builder();
+    final ImmutableList.Builder<FaultScript> scripts = ImmutableList.builder();
+    if (faultWeight > 0) {
+      weights.put(name, Integer.valueOf(faultWeight));
+      scripts.add(script);
+    }
+    if (faultWeight < PROBABILITY_SCALE) {
+      weights.put("ok", Integer.valueOf(PROBABILITY_SCALE - faultWeight));
+      scripts.add(FaultScripts.OK);
+    }
+    return new WeightedFaultScripts(weights.build(),
+      scripts.build().toArray(new FaultScript[0]));
+  }
+
+  public static WeightedFaultScripts parse(final String spec) {
+    final Map<String, String> entries = Splitter.on(',')
+      .trimResults().omitEmptyStrings()
+      .withKeyValueSeparator(Splitter.on(':').trimResults())
+      .split(spec);
+    final ImmutableMap.Builder<String, Integer> weights = ImmutableMap.builder();
+    for (final Map.Entry<String, String> entry : entries.entrySet()) {
+      final Integer weight = Ints.tryParse(entry.getValue());
+      checkArgument(weight != null && weight.intValue() >= 0, "invalid weight for fault: %s", entry.getKey());
+      if (weight.intValue() > 0) {
+        weights.put(entry.getKey(), weight);
+      }
+    }
+    return new WeightedFaultScripts(weights.build());
+  }
+
+  @Override
+  public FaultScript get() {
+    final int point = ThreadLocalRandom.current().nextInt(this.totalWeight);
+    final int index = Arrays.binarySearch(this.cumulativeWeights, point + 1);
+    return this.scripts[(index >= 0) ? index : (-index - 1)];
+  }
+
+  public ImmutableMap<String, Integer> weights() {
+    return this.weights;
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+      .addValue(this.weights)
+      .toString();
+  }
+
+}
@@ -0,0 +1,74 @@
+package dev.chux.gcp.crun.faults.socket.proxy;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.google.common.base.Ascii;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Splitter;
+import com.google.common.primitives.Doubles;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Random delay added to every relayed chunk, in milliseconds:
+ * {@code none}, {@code uniform:<max>}, {@code normal:<stddev>} or {@code exponential:<mean>}.
+ */
+public final class Jitter {
+
+  public enum Distribution {
+    NONE,
+    UNIFORM,
+    NORMAL,
+    EXPONENTIAL,
+  }
+
+  public static final Jitter NONE = new Jitter(Distribution.NONE, 0);
+
+  private final Distribution distribution;
+  private final double millis;
+
+  private Jitter(
+    final Distribution distribution,
+    final double millis
+  ) {
+    this.distribution = distribution;
+    this.millis = millis;
+  }
+
+  public static Jitter parse(final String spec) {
+    final List<String> parts = Splitter.on(':').trimResults().limit(2).splitToList(spec);
+    final Distribution distribution = Distribution.valueOf(Ascii.toUpperCase(parts.get(0)));
+    if (distribution == Distribution.NONE) {
+      return NONE;
+    }
+    checkArgument(parts.size() == 2, "missing jitter parameter: %s", spec);
+    final Double millis = Doubles.tryParse(parts.get(1));
+    checkArgument(millis != null && millis.doubleValue() >= 0, "invalid jitter parameter: %s", spec);
+    return new Jitter(distribution, millis.doubleValue());
+  }
+
+  public long nextMillis() {
+    final ThreadLocalRandom random = ThreadLocalRandom.current();
+    switch (this.distribution) {
+      case UNIFORM:
+        return Math.round(random.nextDouble() * this.millis);
+      case NORMAL:
+        // half-normal: delays cannot be negative
+        return Math.round(Math.abs(random.nextGaussian()) * this.millis);
+      case EXPONENTIAL:
+        return Math.round(-Math.log(1.0 - random.nextDouble()) * this.millis);
+      default:
+        return 0L;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+      .addValue(this.distribution)
+      .add("millis", this.millis)
+      .toString();
+  }
+
+}
@@ -0,0 +1,406 @@
+package dev.chux.gcp.crun.faults.socket.proxy;
+
+import java.io.IOException;
+
+import java.net.StandardSocketOptions;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dev.chux.gcp.crun.faults.socket.http.HttpRequestParser;
+import dev.chux.gcp.crun.faults.socket.metrics.ConnectionOutcome;
+import dev.chux.gcp.crun.faults.socket.metrics.ConnectionTracker;
+import dev.chux.gcp.crun.faults.socket.nio.SelectionHandler;
+import dev.chux.gcp.crun.faults.socket.nio.SelectorLoop;
+
+import static com.google.common.base.Throwables.getStackTraceAsString;
+
+/**
+ * Relays one client connection to the upstream, and the upstream's responses back,
+ * degrading both directions according to a {@link ProxyProfile}; confined to its {@link SelectorLoop}.
+ *
+ * Bytes are relayed through direct buffers, so they never cross the Java heap.
+ */
+final class ProxyConnection {
+  private static final Logger logger = LoggerFactory.getLogger(ProxyConnection.class);
+
+  private enum RelayState {
+    IDLE,
+    READING,
+    DELAYED,
+    WRITING,
+    THROTTLED,
+    DONE,
+  }
+
+  private final String handlerName;
+  private final ProxyProfile profile;
+  private final SelectorLoop loop;
+  private final Endpoint client;
+  private final Optional<ProxyPhase> reset;
+  private final ConnectionTracker tracker;
+
+  private Endpoint upstream;
+  private boolean closed = false;
+  private boolean clientClosedFirst = false;
+
+  ProxyConnection(
+    final String handlerName,
+    final ProxyProfile profile,
+    final SocketChannel client,
+    final SelectorLoop loop,
+    final ConnectionTracker tracker
+  ) {
+    this.handlerName = handlerName;
+    this.profile = profile;
+    this.loop = loop;
+    this.client = new Endpoint(client);
+    this.reset = profile.nextReset();
+    this.tracker = tracker;
+  }
+
+  void start() {
+    try {
+      this.client.register(0);
+      if (this.resetAt(ProxyPhase.CONNECT)) {
+        this.close(true);
+        return;
+      }
+      final long delay = this.profile.connectDelayMillis();
+      if (delay > 0) {
+        this.loop.schedule(this::connect, delay, TimeUnit.MILLISECONDS);
+      } else {
+        this.connect();
+      }
+    } catch(final Exception ex) {
+      this.fail(ex);
+    }
+  }
+
+  private void connect() {
+    if (this.closed) {
+      return;
+    }
+    try {
+      final SocketChannel channel = SocketChannel.open();
+      channel.configureBlocking(false);
+      channel.setOption(StandardSocketOptions.TCP_NODELAY, Boolean.TRUE);
+      this.upstream = new Endpoint(channel);
+      if (channel.connect(this.profile.upstream())) {
+        this.upstream.register(0);
+        this.onConnected();
+      } else {
+        this.upstream.register(SelectionKey.OP_CONNECT);
+      }
+    } catch(final Exception ex) {
+      this.fail(ex);
+    }
+  }
+
+  private void onConnected() {
+    final Relay requests = new Relay(this.client, this.upstream, true);
+    final Relay responses = new Relay(this.upstream, this.client, false);
+    this.client.bind(requests, responses);
+    this.upstream.bind(responses, requests);
+    requests.resume();
+    responses.resume();
+  }
+
+  private boolean resetAt(final ProxyPhase phase) {
+    return this.reset.isPresent() && (this.reset.get() == phase);
+  }
+
+  private void fail(final Exception error) {
+    logger.debug("{} - proxied connection failed: {}", this.handlerName, getStackTraceAsString(error));
+    this.tracker.close(ConnectionOutcome.ERROR);
+    this.close(true);
+  }
+
+  private void onRelayDone() {
+    if (this.client.isDone() && this.upstream.isDone()) {
+      this.close(false);
+    }
+  }
+
+  private void close(final boolean reset) {
+    if (this.closed) {
+      return;
+    }
+    this.closed = true;
+    if (reset) {
+      this.tracker.close(ConnectionOutcome.SERVER_RESET);
+    } else {
+      this.tracker.close(this.clientClosedFirst ? ConnectionOutcome.CLIENT_CLOSED : ConnectionOutcome.SERVER_CLOSED);
+    }
+    this.client.close(reset);
+    if (this.upstream != null) {
+      this.upstream.close(reset);
+    }
+  }
+
+  private final class Endpoint implements SelectionHandler {
+
+    private final SocketChannel channel;
+
+    private SelectionKey key;
+    // relay reading from this endpoint
+    private Relay in;
+    // relay writing to this endpoint
+    private Relay out;
+
+    private Endpoint(final SocketChannel channel) {
+      this.channel = channel;
+    }
+
+    private void register(final int interestOps) throws IOException {
+      this.key = loop.register(this.channel, interestOps, this);
+    }
+
+    private void bind(final Relay in, final Relay out) {
+      this.in = in;
+      this.out = out;
+    }
+
+    private boolean isDone() {
+      return this.in == null || this.in.state == RelayState.DONE;
+    }
+
+    private void updateInterest() {
+      if (closed || this.key == null || !this.key.isValid()) {
+        return;
+      }
+      int ops = 0;
+      if (this.in != null && this.in.state == RelayState.READING) {
+        ops |= SelectionKey.OP_READ;
+      }
+      if (this.out != null && this.out.state == RelayState.WRITING) {
+        ops |= SelectionKey.OP_WRITE;
+      }
+      if (this.key.interestOps() != ops) {
+        this.key.interestOps(ops);
+      }
+    }
+
+    @Override
+    public void onSelected(final SelectionKey key) throws Exception {
+      if (key.isConnectable()) {
+        this.channel.finishConnect();
+        onConnected();
+        return;
+      }
+      if (key.isWritable()) {
+        this.out.write();
+      }
+      if (!closed && key.isValid() && key.isReadable()) {
+        this.in.read();
+      }
+    }
+
+    @Override
+    public void onError(final SelectionKey key, final Exception error) {
+      if (this == client && (error instanceof IOException)) {
+        tracker.close(ConnectionOutcome.CLIENT_CLOSED);
+      }
+      fail(error);
+    }
+
+    private void close(final boolean reset) {
+      try {
+        if (reset && this.channel.isOpen()) {
+          // linger=0 makes the kernel send RST instead of FIN
+          this.channel.setOption(StandardSocketOptions.SO_LINGER, Integer.valueOf(0));
+        }
+      } catch(final Exception ex) {
+        logger.debug("{} - {}", handlerName, getStackTraceAsString(ex));
+      }
+      if (this.key != null) {
+        this.key.cancel();
+      }
+      try {
+        this.channel.close();
+      } catch(final Exception ex) {
+        logger.debug("{} - {}", handlerName, getStackTraceAsString(ex));
+      }
+    }
+
+  }
+
+  private final class Relay {
+
+    private final Endpoint from;
+    private final Endpoint to;
+    private final boolean isRequest;
+    private final ByteBuffer buffer;
+
+    private RelayState state = RelayState.IDLE;
+    private HttpRequestParser request;
+    private int responseNewLines = 0;
+    private boolean responseHeadersDone = false;
+    private boolean resetAfterWrite = false;
+    private int chunk = 0;
+
+    private Relay(
+      final Endpoint from,
+      final Endpoint to,
+      final boolean isRequest
+    ) {
+      this.from = from;
+      this.to = to;
+      this.isRequest = isRequest;
+      this.buffer = ByteBuffer.allocateDirect(profile.chunkSize());
+    }
+
+    private void transition(final RelayState state) {
+      this.state = state;
+      this.from.updateInterest();
+      this.to.updateInterest();
+    }
+
+    private void resume() {
+      if (!closed) {
+        this.transition(RelayState.READING);
+      }
+    }
+
+    private void read() throws IOException {
+      this.buffer.clear();
+      final int read = this.from.channel.read(this.buffer);
+      if (read < 0) {
+        if (this.isRequest && !this.to.isDone()) {
+          clientClosedFirst = true;
+        }
+        // half-close: propagate EOF and keep relaying the other direction
+        this.transition(RelayState.DONE);
+        if (this.to.channel.isOpen()) {
+          this.to.channel.shutdownOutput();
+        }
+        onRelayDone();
+        return;
+      }
+      if (read == 0) {
+        return;
+      }
+      if (this.isRequest) {
+        tracker.bytesIn(read);
+      }
+      this.buffer.flip();
+      this.observe();
+      this.chunk = this.buffer.remaining();
+      final long delay = profile.chunkDelayMillis(this.chunk);
+      if (delay > 0) {
+        this.transition(RelayState.DELAYED);
+        loop.schedule(this::delayedWrite, delay, TimeUnit.MILLISECONDS);
+      } else {
+        this.write();
+      }
+    }
+
+    private void delayedWrite() {
+      try {
+        this.write();
+      } catch(final Exception ex) {
+        fail(ex);
+      }
+    }
+
+    private void write() throws IOException {
+      if (closed) {
+        return;
+      }
+      final int written = this.to.channel.write(this.buffer);
+      if (!this.isRequest) {
+        tracker.bytesOut(written);
+      }
+      if (this.buffer.hasRemaining()) {
+        this.transition(RelayState.WRITING);
+        return;
+      }
+      if (this.resetAfterWrite) {
+        close(true);
+        return;
+      }
+      final long throttle = profile.transferMillis(this.chunk);
+      if (throttle > 0) {
+        this.transition(RelayState.THROTTLED);
+        loop.schedule(this::resume, throttle, TimeUnit.MILLISECONDS);
+      } else {
+        this.resume();
+      }
+    }
+
+    /**
+     * Tracks the HTTP phase of the relayed bytes: when the connection is to be reset at a phase,
+     * the buffer is cut exactly at that phase's boundary and the reset happens once it is relayed.
+     */
+    private void observe() {
+      if (!reset.isPresent() || this.resetAfterWrite) {
+        return;
+      }
+      if (this.isRequest) {
+        this.observeRequest();
+      } else {
+        this.observeResponse();
+      }
+    }
+
+    private void observeRequest() {
+      final HttpRequestParser.Phase until;
+      if (resetAt(ProxyPhase.REQUEST_HEADERS)) {
+        until = HttpRequestParser.Phase.HEADERS;
+      } else if (resetAt(ProxyPhase.REQUEST)) {
+        until = HttpRequestParser.Phase.BODY;
+      } else {
+        return;
+      }
+      if (this.request == null) {
+        this.request = new HttpRequestParser();
+      }
+      final ByteBuffer view = this.buffer.duplicate();
+      this.request.parse(view, until);
+      if (this.request.isPast(until)) {
+        this.buffer.limit(view.position());
+        this.resetAfterWrite = true;
+      }
+    }
+
+    private void observeResponse() {
+      if (resetAt(ProxyPhase.RESPONSE_BODY) && this.responseHeadersDone) {
+        this.resetAfterWrite = true;
+        return;
+      }
+      if (this.responseHeadersDone
+          || !(resetAt(ProxyPhase.RESPONSE_HEADERS) || resetAt(ProxyPhase.RESPONSE_BODY))) {
+        return;
+      }
+      for (int i = this.buffer.position(); i < this.buffer.limit(); i++) {
+        final byte b = this.buffer.get(i);
+        if (b == '\n') {
+          this.responseNewLines += 1;
+        } else if (b != '\r') {
+          this.responseNewLines = 0;
+        }
+        if (this.responseNewLines == 2) {
+          this.responseHeadersDone = true;
+          if (resetAt(ProxyPhase.RESPONSE_HEADERS)) {
+            this.buffer.limit(i + 1);
+            this.resetAfterWrite = true;
+          } else if (i + 1 < this.buffer.limit()) {
+            // the first chunk of the body came along with the headers
+            this.resetAfterWrite = true;
+          }
+          return;
+        }
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,27 @@
+package dev.chux.gcp.crun.faults.socket.proxy;
+
+import com.google.common.base.Ascii;
+
+/**
+ * Points of an HTTP exchange at which a proxied connection may be reset.
+ */
+public enum ProxyPhase {
+  // before connecting to the upstream
+  CONNECT,
+  // once the request headers were forwarded upstream
+  REQUEST_HEADERS,
+  // once the whole request was forwarded upstream
+  REQUEST,
+  // once the response headers were forwarded to the client
+  RESPONSE_HEADERS,
+  // once the first chunk of the response body was forwarded to the client
+  RESPONSE_BODY;
+
+  /**
+   * @return the configuration key of this phase; i/e: {@code request-headers}.
+   */
+  public String key() {
+    return Ascii.toLowerCase(this.name()).replace('_', '-');
+  }
+
+}
@@ -0,0 +1,174 @@
+package dev.chux.gcp.crun.faults.socket.proxy;
+
+import java.net.InetSocketAddress;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.google.common.base.Function;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.net.HostAndPort;
+import com.google.common.primitives.Doubles;
+import com.google.common.primitives.Longs;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * How a proxied connection is degraded; built from {@code <key>=<value>} parameters:
+ *
+ * <ul>
+ *   <li>{@code upstream}: {@code host:port} to forward to.</li>
+ *   <li>{@code latency.connect-ms}: delay before connecting upstream.</li>
+ *   <li>{@code latency.per-kb-ms}: delay per relayed KiB.</li>
+ *   <li>{@code bandwidth.bytes-per-second}: per direction cap; {@code 0} means unlimited.</li>
+ *   <li>{@code jitter}: see {@link Jitter}.</li>
+ *   <li>{@code reset.<phase>}: probability of resetting at {@link ProxyPhase#key()}.</li>
+ *   <li>{@code buffer-size}: maximum bytes relayed per read.</li>
+ * </ul>
+ */
+public final class ProxyProfile {
+
+  private static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+
+  private final HostAndPort upstream;
+  private final InetSocketAddress upstreamAddress;
+  private final long connectLatencyMillis;
+  private final double perKbLatencyMillis;
+  private final long bytesPerSecond;
+  private final Jitter jitter;
+  private final ImmutableMap<ProxyPhase, Double> resets;
+  private final int chunkSize;
+
+  private ProxyProfile(
+    final HostAndPort upstream,
+    final long connectLatencyMillis,
+    final double perKbLatencyMillis,
+    final long bytesPerSecond,
+    final Jitter jitter,
+    final ImmutableMap<ProxyPhase, Double> resets,
+    final int bufferSize
+  ) {
+    this.upstream = upstream;
+    this.upstreamAddress = new InetSocketAddress(upstream.getHost(), upstream.getPort());
+    this.connectLatencyMillis = connectLatencyMillis;
+    this.perKbLatencyMillis = perKbLatencyMillis;
+    this.bytesPerSecond = bytesPerSecond;
+    this.jitter = jitter;
+    this.resets = resets;
+    // with a bandwidth cap, relay in ~100ms worth of bytes so the stream is paced smoothly
+    this.chunkSize = (bytesPerSecond > 0)
+      ? (int) Math.max(1L, Math.min(bufferSize, bytesPerSecond / 10)) : bufferSize;
+  }
+
+  public static ProxyProfile parse(final Function<String, Optional<String>> params) {
+    final Optional<String> upstream = params.apply("upstream");
+    checkArgument(upstream.isPresent(), "missing proxy upstream");
+
+    final ImmutableMap.Builder<ProxyPhase, Double> resets = ImmutableMap.builder();
+    for (final ProxyPhase phase : ProxyPhase.values()) {
+      final double probability = doubleParam(params, "reset." + phase.key(), 0);
+      checkArgument(probability >= 0 && probability <= 1, "invalid reset probability: %s", phase.key());
+      if (probability > 0) {
+        resets.put(phase, Double.valueOf(probability));
+      }
+    }
+
+    final long connectLatencyMillis = longParam(params, "latency.connect-ms", 0);
+    final double perKbLatencyMillis = doubleParam(params, "latency.per-kb-ms", 0);
+    final long bytesPerSecond = longParam(params, "bandwidth.bytes-per-second", 0);
+    final int bufferSize = (int) longParam(params, "buffer-size", DEFAULT_BUFFER_SIZE);
+    checkArgument(connectLatencyMillis >= 0, "invalid connect latency");
+    checkArgument(perKbLatencyMillis >= 0, "invalid per-kb latency");
+    checkArgument(bytesPerSecond >= 0, "invalid bandwidth");
+    checkArgument(bufferSize > 0, "invalid buffer size");
+
+    return new ProxyProfile(
+      HostAndPort.fromString(upstream.get()).requireBracketsForIPv6(),
+      connectLatencyMillis, perKbLatencyMillis, bytesPerSecond,
+      Jitter.parse(params.apply("jitter").or("none")),
+      resets.build(), bufferSize);
+  }
+
+  private static long longParam(
+    final Function<String, Optional<String>> params,
+    final String key,
+    final long defaultValue
+  ) {
+    final Optional<String> value = params.apply(key);
+    if (!value.isPresent()) {
+      return defaultValue;
+    }
+    final Long parsed = Longs.tryParse(value.get().trim());
+    checkArgument(parsed != null, "invalid proxy parameter: %s", key);
+    return parsed.longValue();
+  }
+
+  private static double doubleParam(
+    final Function<String, Optional<String>> params,
+    final String key,
+    final double defaultValue
+  ) {
+    final Optional<String> value = params.apply(key);
+    if (!value.isPresent()) {
+      return defaultValue;
+    }
+    final Double parsed = Doubles.tryParse(value.get().trim());
+    checkArgument(parsed != null, "invalid proxy parameter: %s", key);
+    return parsed.doubleValue();
+  }
+
+  /**
+   * Resolved once: connecting upstream must never block a selector loop on DNS.
+   */
+  InetSocketAddress upstream() {
+    return this.upstreamAddress;
+  }
+
+  int chunkSize() {
+    return this.chunkSize;
+  }
+
+  long connectDelayMillis() {
+    return this.connectLatencyMillis + this.jitter.nextMillis();
+  }
+
+  long chunkDelayMillis(final int bytes) {
+    return Math.round((this.perKbLatencyMillis * bytes) / 1024.0) + this.jitter.nextMillis();
+  }
+
+  /**
+   * @return how long relaying {@code bytes} takes at the configured bandwidth.
+   */
+  long transferMillis(final int bytes) {
+    return (this.bytesPerSecond > 0) ? ((bytes * 1000L) / this.bytesPerSecond) : 0L;
+  }
+
+  /**
+   * @return the phase at which a new connection is to be reset, if any.
+   */
+  Optional<ProxyPhase> nextReset() {
+    final ThreadLocalRandom random = ThreadLocalRandom.current();
+    for (final Map.Entry<ProxyPhase, Double> reset : this.resets.entrySet()) {
+      if (random.nextDouble() < reset.getValue().doubleValue()) {
+        return Optional.of(reset.getKey());
+      }
+    }
+    return Optional.absent();
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+      .add("upstream", this.upstream)
+      .add("connectLatencyMillis", this.connectLatencyMillis)
+      .add("perKbLatencyMillis", this.perKbLatencyMillis)
+      .add("bytesPerSecond", this.bytesPerSecond)
+      .add("jitter", this.jitter)
+      .add("resets", this.resets)
+      .add("chunkSize", this.chunkSize)
+      .toString();
+  }
+
+}
@@ -0,0 +1,46 @@
+package dev.chux.gcp.crun.faults.socket.proxy;
+
+import java.nio.channels.SocketChannel;
+
+import com.google.common.base.MoreObjects;
+
+import dev.chux.gcp.crun.faults.socket.ServerSocketsProvider;
+import dev.chux.gcp.crun.faults.socket.metrics.ConnectionTracker;
+import dev.chux.gcp.crun.faults.socket.nio.AbstractNioSocketFaultHandler;
+import dev.chux.gcp.crun.faults.socket.nio.SelectorLoop;
+import dev.chux.gcp.crun.faults.socket.nio.SelectorLoops;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Forwards connections to a real upstream while degrading them as described by a {@link ProxyProfile}.
+ */
+public class ProxySocketFaultHandler extends AbstractNioSocketFaultHandler {
+
+  private final ProxyProfile profile;
+
+  public ProxySocketFaultHandler(
+    final String socketName,
+    final ProxyProfile profile,
+    final ServerSocketsProvider serverSocketsProvider,
+    final SelectorLoops loops
+  ) {
+    super(socketName, serverSocketsProvider, loops);
+    this.profile = checkNotNull(profile);
+  }
+
+  @Override
+  protected void onAccepted(final SocketChannel channel, final SelectorLoop loop, final ConnectionTracker tracker) {
+    new ProxyConnection(this.get(), this.profile, channel, loop, tracker).start();
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+      .addValue(this.get())
+      .add("isActive", this.isActive())
+      .add("profile", this.profile)
+      .toString();
+  }
+
+}
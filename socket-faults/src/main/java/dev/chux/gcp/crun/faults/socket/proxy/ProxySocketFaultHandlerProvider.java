@@ -0,0 +1,81 @@
+package dev.chux.gcp.crun.faults.socket.proxy;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+
+import dev.chux.gcp.crun.ConfigService;
+import dev.chux.gcp.crun.faults.socket.ServerSocketsProvider;
+import dev.chux.gcp.crun.faults.socket.handlers.SocketFaultHandler;
+import dev.chux.gcp.crun.faults.socket.nio.SelectorLoops;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * The proxy is configured by {@code faults.socket.proxy.*}; see {@link ProxyProfile}.
+ *
+ * <p>Its upstream must be the service to degrade: never this server, nor the proxy itself.</p>
+ */
+public class ProxySocketFaultHandlerProvider implements Provider<SocketFaultHandler> {
+  private static final Logger logger = LoggerFactory.getLogger(ProxySocketFaultHandlerProvider.class);
+
+  public static final String SOCKET_NAME = "proxy";
+
+  private static final String ENV__SERVER_PORT = "PORT";
+  private static final String PROPERTY__SERVER_PORT = "server.port";
+  private static final int DEFAULT__SERVER_PORT = 8080;
+
+  private final ConfigService configService;
+  private final ServerSocketsProvider serverSocketsProvider;
+  private final SelectorLoops selectorLoops;
+
+  @Inject
+  ProxySocketFaultHandlerProvider(
+    final ConfigService configService,
+    final ServerSocketsProvider serverSocketsProvider,
+    final SelectorLoops selectorLoops
+  ) {
+    this.configService = configService;
+    this.serverSocketsProvider = serverSocketsProvider;
+    this.selectorLoops = selectorLoops;
+  }
+
+  @Override
+  public SocketFaultHandler get() {
+    final ProxyProfile profile = ProxyProfile.parse(new Function<String, Optional<String>>() {
+      @Override
+      public Optional<String> apply(final String key) {
+        return configService.getOptionalAppProp("faults.socket." + SOCKET_NAME + "." + key);
+      }
+    });
+    checkUpstream(profile.upstream());
+    logger.info("socket handler '{}': {}", SOCKET_NAME, profile);
+    return new ProxySocketFaultHandler(SOCKET_NAME, profile,
+      this.serverSocketsProvider, this.selectorLoops);
+  }
+
+  private void checkUpstream(final InetSocketAddress upstream) {
+    final InetAddress address = upstream.getAddress();
+    if (address == null || !(address.isLoopbackAddress() || address.isAnyLocalAddress())) {
+      return;
+    }
+    final int serverPort = this.configService.getIntEnvVar(ENV__SERVER_PORT)
+      .or(this.configService.getIntAppProp(PROPERTY__SERVER_PORT))
+      .or(DEFAULT__SERVER_PORT).intValue();
+    final Optional<Integer> proxyPort = this.configService
+      .getIntAppProp("faults.socket." + SOCKET_NAME + ".port");
+    checkArgument(upstream.getPort() != serverPort,
+      "proxy upstream points back at this server: %s", upstream);
+    checkArgument(!proxyPort.isPresent() || upstream.getPort() != proxyPort.get().intValue(),
+      "proxy upstream points back at the proxy: %s", upstream);
+  }
+
+}
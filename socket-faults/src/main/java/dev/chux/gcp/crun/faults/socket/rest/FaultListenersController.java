@@ -0,0 +1,186 @@
+package dev.chux.gcp.crun.faults.socket.rest;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.inject.Inject;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import com.google.gson.Gson;
+
+import spark.Request;
+import spark.Response;
+
+import dev.chux.gcp.crun.faults.socket.listeners.FaultListener;
+import dev.chux.gcp.crun.faults.socket.listeners.FaultListeners;
+import dev.chux.gcp.crun.rest.RestController;
+import dev.chux.gcp.crun.rest.RestResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static spark.Spark.*;
+
+import static com.google.common.base.Optional.fromNullable;
+import static com.google.common.base.Strings.emptyToNull;
+
+/**
+ * Creates, lists and deletes runtime fault listeners: listener parameters are given as query parameters,
+ * i/e: {@code POST /listeners/exp-1?type=fault&fault=timeout-after-http-request&delay-ms=5000&probability=0.2}.
+ */
+public class FaultListenersController extends RestController {
+  private static final Logger logger = LoggerFactory.getLogger(FaultListenersController.class);
+
+  public static final String KEY = RestModule.NAMESPACE + "/listeners";
+
+  private final Gson gson;
+  private final FaultListeners listeners;
+
+  private static class ApiResponse extends RestResponse<FaultListener.Status> {
+
+    private ApiResponse(
+      final RestController controller,
+      final FaultListener listener
+    ) {
+      super(controller, listener.status());
+    }
+
+    @Override
+    protected Map<String, String> links(
+      final RestController controller,
+      final FaultListener.Status status
+    ) {
+      return ImmutableMap.<String, String>of(
+        "self", controller.apiBase() + "/" + status.name()
+      );
+    }
+
+  }
+
+  private static class ApiListResponse extends RestResponse<List<FaultListener.Status>> {
+
+    private ApiListResponse(
+      final RestController controller,
+      final List<FaultListener.Status> statuses
+    ) {
+      super(controller, statuses);
+    }
+
+    @Override
+    protected Map<String, String> links(
+      final RestController controller,
+      final List<FaultListener.Status> statuses
+    ) {
+      return ImmutableMap.<String, String>of(
+        "self", controller.apiBase()
+      );
+    }
+
+  }
+
+  @Inject
+  public FaultListenersController(
+    final Gson gson,
+    final FaultListeners listeners
+  ) {
+    this.gson = gson;
+    this.listeners = listeners;
+  }
+
+  @Override
+  public void register(
+    final String basePath
+  ) {
+    register(basePath, RestModule.API_BASE, null);
+    path(apiBase(), () -> {
+      get("", "application/json", this);
+      get("/:name", "application/json", this);
+      post("/:name", "*/*", this);
+      delete("/:name", "*/*", this);
+    });
+  }
+
+  @Override
+  public String endpoint(
+    final String basePath
+  ) {
+    return "[GET] " + apiBase() + " | [GET|POST|DELETE] " + apiBase() + "/:name";
+  }
+
+  public Object handle(
+    final Request request,
+    final Response response
+  ) throws Exception {
+    final Optional<String> name = fromNullable(emptyToNull(request.params(":name")));
+    final String method = requestMethod(request);
+
+    response.type("application/json");
+
+    if (!name.isPresent()) {
+      return this.list();
+    }
+
+    if (method.equals("POST")) {
+      return this.create(name.get(), request, response);
+    }
+
+    final Optional<FaultListener> listener = method.equals("DELETE")
+      ? this.listeners.delete(name.get()) : this.listeners.get(name.get());
+
+    if (!listener.isPresent()) {
+      halt(404, "listener not found: " + name.get());
+      return null;
+    }
+
+    return this.toJSON(listener.get());
+  }
+
+  private Object create(
+    final String name,
+    final Request request,
+    final Response response
+  ) {
+    final ImmutableMap.Builder<String, String> params = ImmutableMap.builder();
+    for (final String param : request.queryParams()) {
+      params.put(param, request.queryParams(param));
+    }
+
+    final FaultListener listener;
+    try {
+      listener = this.listeners.create(name, params.build());
+    } catch(final IllegalArgumentException ex) {
+      halt(400, ex.getMessage());
+      return null;
+    } catch(final IllegalStateException ex) {
+      halt(409, ex.getMessage());
+      return null;
+    }
+
+    response.status(201);
+    return this.toJSON(listener);
+  }
+
+  private String list() {
+    final ImmutableList.Builder<FaultListener.Status> statuses = ImmutableList.builder();
+    for (final FaultListener listener : this.listeners.all()) {
+      statuses.add(listener.status());
+    }
+    return this.gson.toJson(
+      new ApiListResponse(this, statuses.build()),
+      ApiListResponse.class
+    );
+  }
+
+  private String toJSON(
+    final FaultListener listener
+  ) {
+    return this.gson.toJson(
+      new ApiResponse(this, listener),
+      ApiResponse.class
+    );
+  }
+
+}
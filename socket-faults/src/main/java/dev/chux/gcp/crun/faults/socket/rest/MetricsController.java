@@ -0,0 +1,134 @@
+package dev.chux.gcp.crun.faults.socket.rest;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import com.google.gson.Gson;
+
+import spark.Request;
+import spark.Response;
+
+import dev.chux.gcp.crun.faults.socket.handlers.SocketFaultHandler;
+import dev.chux.gcp.crun.faults.socket.listeners.FaultListener;
+import dev.chux.gcp.crun.faults.socket.listeners.FaultListeners;
+import dev.chux.gcp.crun.faults.socket.metrics.HandlerMetrics;
+import dev.chux.gcp.crun.rest.RestController;
+import dev.chux.gcp.crun.rest.RestResponse;
+
+import static spark.Spark.*;
+
+import static com.google.common.base.Optional.fromNullable;
+import static com.google.common.base.Strings.emptyToNull;
+
+/**
+ * Metrics of every fault socket: the ones from configuration by name, and runtime listeners as {@code listener:<name>}.
+ */
+public class MetricsController extends RestController {
+
+  public static final String KEY = RestModule.NAMESPACE + "/metrics";
+
+  private static final String LISTENER_PREFIX = "listener:";
+
+  private final Gson gson;
+  private final Map<String, SocketFaultHandler> handlers;
+  private final FaultListeners listeners;
+
+  private static class ApiResponse extends RestResponse<List<HandlerMetrics.Snapshot>> {
+
+    private ApiResponse(
+      final RestController controller,
+      final List<HandlerMetrics.Snapshot> snapshots
+    ) {
+      super(controller, snapshots);
+    }
+
+    @Override
+    protected Map<String, String> links(
+      final RestController controller,
+      final List<HandlerMetrics.Snapshot> snapshots
+    ) {
+      final ImmutableMap.Builder<String, String> links = ImmutableMap.builder();
+      for (final HandlerMetrics.Snapshot snapshot : snapshots) {
+        links.put(snapshot.name(), controller.apiBase() + "/" + snapshot.name());
+      }
+      return links.build();
+    }
+
+  }
+
+  @Inject
+  public MetricsController(
+    final Gson gson,
+    @Named("socket-faults://handlers") final Map<String, SocketFaultHandler> handlers,
+    final FaultListeners listeners
+  ) {
+    this.gson = gson;
+    this.handlers = handlers;
+    this.listeners = listeners;
+  }
+
+  @Override
+  public void register(
+    final String basePath
+  ) {
+    register(basePath, "metrics", null);
+    path(apiBase(), () -> {
+      get("", "application/json", this);
+      get("/:name", "application/json", this);
+    });
+  }
+
+  @Override
+  public String endpoint(
+    final String basePath
+  ) {
+    return "[GET] " + apiBase() + "[/:name]";
+  }
+
+  public Object handle(
+    final Request request,
+    final Response response
+  ) throws Exception {
+    final Optional<String> name = fromNullable(emptyToNull(request.params(":name")));
+
+    final ImmutableList.Builder<HandlerMetrics.Snapshot> snapshots = ImmutableList.builder();
+    if (name.isPresent()) {
+      final Optional<HandlerMetrics> metrics = this.metrics(name.get());
+      if (!metrics.isPresent()) {
+        halt(404, "socket not found: " + name.get());
+        return null;
+      }
+      snapshots.add(metrics.get().snapshot(name.get()));
+    } else {
+      for (final Map.Entry<String, SocketFaultHandler> handler : this.handlers.entrySet()) {
+        snapshots.add(handler.getValue().metrics().snapshot(handler.getKey()));
+      }
+      for (final FaultListener listener : this.listeners.all()) {
+        snapshots.add(listener.metrics().snapshot(LISTENER_PREFIX + listener.name()));
+      }
+    }
+
+    response.type("application/json");
+    return this.gson.toJson(
+      new ApiResponse(this, snapshots.build()),
+      ApiResponse.class
+    );
+  }
+
+  private Optional<HandlerMetrics> metrics(final String name) {
+    if (name.startsWith(LISTENER_PREFIX)) {
+      final Optional<FaultListener> listener = this.listeners.get(name.substring(LISTENER_PREFIX.length()));
+      return listener.isPresent() ? Optional.of(listener.get().metrics()) : Optional.<HandlerMetrics>absent();
+    }
+    final SocketFaultHandler handler = this.handlers.get(name);
+    return (handler == null) ? Optional.<HandlerMetrics>absent() : Optional.of(handler.metrics());
+  }
+
+}
@@ -0,0 +1,26 @@
+package dev.chux.gcp.crun.faults.socket.rest;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Scopes;
+import com.google.inject.multibindings.MapBinder;
+
+import dev.chux.gcp.crun.rest.Route;
+
+public class RestModule extends AbstractModule {
+
+  public static final String NAMESPACE = "socket-faults://rest";
+
+  static final String API_BASE = "listeners";
+
+  protected void configure() {
+    final MapBinder<String, Route> routesBinder =
+      MapBinder.newMapBinder(binder(), String.class, Route.class);
+
+    routesBinder.addBinding(FaultListenersController.KEY)
+      .to(FaultListenersController.class).in(Scopes.SINGLETON);
+
+    routesBinder.addBinding(MetricsController.KEY)
+      .to(MetricsController.class).in(Scopes.SINGLETON);
+  }
+
+}